@@ -11,6 +11,8 @@ import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import com.tiyb.tev.startup.StartupTimingListener;
+
 /**
  * <p>
  * This is the main class for the <b>Tumblr Export Viewer (TEV)</b> application. As the name
@@ -73,13 +75,17 @@ public class TevApplication {
     private String dsDriverClassName;
 
     /**
-     * The main function for starting the application, called by Spring Boot at boot-up. No custom
-     * implementation, the standard implementation for Spring Boot is used.
+     * The main function for starting the application, called by Spring Boot at boot-up. The
+     * standard implementation for Spring Boot is used, with a
+     * {@link com.tiyb.tev.startup.StartupTimingListener StartupTimingListener} added to log how long
+     * startup takes.
      *
      * @param args Command-line arguments, if any. (TEV doesn't expect/use any.)
      */
     public static void main(final String[] args) {
-        SpringApplication.run(TevApplication.class, args);
+        final SpringApplication application = new SpringApplication(TevApplication.class);
+        application.addListeners(new StartupTimingListener());
+        application.run(args);
     }
 
     /**
@@ -1,21 +1,30 @@
 package com.tiyb.tev.controller;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.nio.file.FileAlreadyExistsException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PreDestroy;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -25,12 +34,26 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.tiyb.tev.controller.helper.ExportRenderPool;
+import com.tiyb.tev.controller.helper.PostFlagBuffer;
 import com.tiyb.tev.datamodel.Photo;
 import com.tiyb.tev.datamodel.Post;
 import com.tiyb.tev.exception.InvalidTypeException;
+import com.tiyb.tev.exception.ResourceNotFoundException;
+import com.tiyb.tev.media.MediaFetchJob;
+import com.tiyb.tev.media.MediaFetcher;
+import com.tiyb.tev.media.MediaImportJob;
+import com.tiyb.tev.media.MediaImporter;
+import com.tiyb.tev.media.MediaIndex;
+import com.tiyb.tev.media.MediaStore;
+import com.tiyb.tev.media.ThumbnailService;
 import com.tiyb.tev.repository.PostRepository;
+import com.tiyb.tev.xml.BlogExportWriter;
+import com.tiyb.tev.xml.helper.ExportFilter;
+import com.tiyb.tev.xml.helper.PostContentBatch;
 
 /**
  * <p>
@@ -43,10 +66,18 @@ import com.tiyb.tev.repository.PostRepository;
  * APIs are ever intended to be used by the UI.
  * </p>
  *
+ * <p>
+ * This controller is always created at startup, even when beans are initialized lazily, because
+ * its {@link #preDestroy()} method compacts the DB at shutdown; otherwise HSQLDB would have to
+ * replay its log the next time the application starts. The media importer, which only it uses, is
+ * still created on first use.
+ * </p>
+ *
  * @author tiyb
  */
 @RestController
 @RequestMapping("/admintools")
+@Lazy(false)
 public class TEVAdminToolsController {
 
     /**
@@ -74,12 +105,61 @@ public class TEVAdminToolsController {
     @Autowired
     private TEVMetadataRestController mdController;
 
+    /**
+     * The REST controller used for working with conversations
+     */
+    @Autowired
+    private TEVConvoRestController convoController;
+
     /**
      * The underlying repo used for posts
      */
     @Autowired
     private PostRepository postRepo;
 
+    /**
+     * Service used for generating thumbnails of images
+     */
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    /**
+     * Index of the files in media directories
+     */
+    @Autowired
+    private MediaIndex mediaIndex;
+
+    /**
+     * Service used for importing media files in bulk
+     */
+    @Autowired
+    @Lazy
+    private MediaImporter mediaImporter;
+
+    /**
+     * Queue used for downloading media files
+     */
+    @Autowired
+    private MediaFetcher mediaFetcher;
+
+    /**
+     * Content-addressed media store
+     */
+    @Autowired
+    private MediaStore mediaStore;
+
+    /**
+     * Write-behind buffer for read/favourite flags
+     */
+    @Autowired
+    private PostFlagBuffer flagBuffer;
+
+    /**
+     * Pool on which blog exports are rendered
+     */
+    @Autowired
+    private ExportRenderPool exportRenderPool;
+
     /**
      * Success message returned from the API.
      */
@@ -104,12 +184,30 @@ public class TEVAdminToolsController {
     @Value("${controllers.admintools.errorCopyingFiles}")
     private String errorCopyingFilesMessage;
 
+    /**
+     * Localized message used when an error is encountered exporting a blog to a file
+     */
+    @Value("${controllers.admintools.errorExportingBlog}")
+    private String errorExportingBlogMessage;
+
+    /**
+     * Localized message used when the media store is used without being enabled
+     */
+    @Value("${controllers.admintools.mediaStoreDisabled}")
+    private String mediaStoreDisabledMessage;
+
     /**
      * Used to compact the database upon shutdown. This causes shutdown to take longer, but it's not
-     * very noticeable for an application of this size with a local DB.
+     * very noticeable for an application of this size with a local DB. Any buffered read/favourite
+     * flags are written first, since the DB can't be used afterwards.
      */
     @PreDestroy
     public void preDestroy() {
+        try {
+            flagBuffer.flush();
+        } catch (RuntimeException e) {
+            logger.error("Error writing buffered flags in preDestroy method: ", e);
+        }
         try {
             jdbcTemplate.execute("SHUTDOWN COMPACT");
         } catch (DataAccessException e) {
@@ -134,7 +232,7 @@ public class TEVAdminToolsController {
             throw new InvalidTypeException();
         }
 
-        return postRepo.findByTumblelogAndType(blog, type);
+        return flagBuffer.apply(postRepo.findByTumblelogAndType(blog, type));
     }
 
     /**
@@ -145,11 +243,11 @@ public class TEVAdminToolsController {
      */
     @GetMapping("/posts/{blog}/markAllRead")
     public ResponseEntity<String> markAllPostsReadForBlog(@PathVariable("blog") final String blog) {
-        final List<Post> posts = postController.getAllPostsForBlog(blog);
-
-        for (Post post : posts) {
-            postController.markPostReadForBlog(blog, post.getId());
+        final List<String> postIds = new ArrayList<String>();
+        for (Post post : postController.getAllPostsForBlog(blog)) {
+            postIds.add(post.getId());
         }
+        postController.markPostsReadForBlog(blog, postIds);
 
         return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
     }
@@ -162,11 +260,27 @@ public class TEVAdminToolsController {
      */
     @GetMapping("/posts/{blog}/markAllUnread")
     public ResponseEntity<String> markAllPostsUnreadForBlog(@PathVariable("blog") final String blog) {
-        final List<Post> posts = postController.getAllPostsForBlog(blog);
-
-        for (Post post : posts) {
-            postController.markPostUnreadForBlog(blog, post.getId());
+        final List<String> postIds = new ArrayList<String>();
+        for (Post post : postController.getAllPostsForBlog(blog)) {
+            postIds.add(post.getId());
         }
+        postController.markPostsUnreadForBlog(blog, postIds);
+
+        return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
+    }
+
+    /**
+     * GET request to rebuild the full-text search index for all conversation messages for a given
+     * blog. Only needed for conversations imported before the index existed; new imports are indexed
+     * as they're loaded.
+     *
+     * @param blog Blog for which the index should be rebuilt
+     * @return Success indicator
+     */
+    @GetMapping("/conversations/{blog}/rebuildSearchIndex")
+    public ResponseEntity<String> rebuildConvoSearchIndexForBlog(@PathVariable("blog") final String blog) {
+        final int numIndexed = convoController.rebuildSearchIndexForBlog(blog);
+        logger.info("Indexed {} conversation messages for blog {}", numIndexed, blog);
 
         return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
     }
@@ -184,101 +298,365 @@ public class TEVAdminToolsController {
      */
     @GetMapping("/posts/{blog}/cleanImagesOnHD")
     public ResponseEntity<String> cleanImagesOnHDForBlog(@PathVariable("blog") final String blog) {
-        final ArrayList<String> allCleanFiles = new ArrayList<String>();
-        String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
         if (imageDirectory == null || imageDirectory.equals(StringUtils.EMPTY)) {
             logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory);
             return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
         }
 
-        if (imageDirectory.charAt(imageDirectory.length() - 1) != '/') {
-            imageDirectory = imageDirectory.concat("/");
+        final Path folder = Paths.get(imageDirectory);
+        final Map<String, List<String>> filesByPost;
+        try {
+            filesByPost = mediaIndex.rescan(folder);
+        } catch (IOException e) {
+            logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory, e);
+            return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
         }
 
-        final File folder = new File(imageDirectory);
-
-        final List<Post> photoPosts = getPostsByBlogByType(blog, Post.POST_TYPE_PHOTO);
-        for (Post post : photoPosts) {
-            final List<Photo> photosForPost =
-                    postController.getPhotoController().getPhotoForBlogById(post.getTumblelog(), post.getId());
-            final int numPhotos = photosForPost.size();
-
-            final File[] imagesForPost = folder.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(final File dir, final String name) {
-                    return name.startsWith(post.getId());
-                }
-            });
-            if (imagesForPost.length == (numPhotos * 2)) {
-                for (int i = numPhotos; i < imagesForPost.length; i++) {
-                    imagesForPost[i].delete();
+        final Set<String> allCleanFiles = new HashSet<String>();
+        final List<String> photoPostIds = new ArrayList<String>();
+        for (Post post : getPostsByBlogByType(blog, Post.POST_TYPE_PHOTO)) {
+            photoPostIds.add(post.getId());
+        }
+        for (int i = 0; i < photoPostIds.size(); i += PostContentBatch.DEFAULT_BATCH_SIZE) {
+            final List<String> batchIds =
+                    photoPostIds.subList(i, Math.min(i + PostContentBatch.DEFAULT_BATCH_SIZE, photoPostIds.size()));
+            final Map<String, List<Photo>> photosByPost =
+                    postController.getPhotoController().getPhotosForBlogByIds(blog, batchIds);
+
+            for (String postId : batchIds) {
+                final List<String> imagesForPost = filesByPost.getOrDefault(postId, Collections.emptyList());
+                final int numPhotos = photosByPost.getOrDefault(postId, Collections.emptyList()).size();
+
+                if (imagesForPost.size() == (numPhotos * 2)) {
+                    for (String duplicate : imagesForPost.subList(numPhotos, imagesForPost.size())) {
+                        deleteMediaFile(folder, duplicate);
+                    }
                 }
-            }
-            for (int i = 0; i < imagesForPost.length; i++) {
-                allCleanFiles.add(imagesForPost[i].getName());
+                allCleanFiles.addAll(imagesForPost);
             }
         }
 
-        final File[] remainingImages = folder.listFiles();
-        for (int i = 0; i < remainingImages.length; i++) {
-            if (!allCleanFiles.contains(remainingImages[i].getName())) {
-                remainingImages[i].delete();
+        for (List<String> files : filesByPost.values()) {
+            for (String file : files) {
+                if (!allCleanFiles.contains(file)) {
+                    deleteMediaFile(folder, file);
+                }
             }
         }
         return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
     }
 
+    /**
+     * Deletes a file from a media directory, keeping the media index and media store current
+     *
+     * @param folder   The media directory
+     * @param fileName Name of the file to be deleted
+     */
+    private void deleteMediaFile(final Path folder, final String fileName) {
+        try {
+            Files.deleteIfExists(folder.resolve(fileName));
+            mediaIndex.fileRemoved(folder, fileName);
+            mediaStore.remove(fileName);
+        } catch (IOException e) {
+            logger.warn("Unable to delete media file {}", fileName, e);
+        }
+    }
+
     /**
      * Copies all files from a source directory (posted as the body of the request) to the images
-     * directory stored in the metadata. Calls the {@link #cleanImagesOnHDForBlog(String)
-     * cleanImagesOnHDForBlog()} method when it's done, to clean the directory back up.
+     * directory stored in the metadata, waiting for the copy to finish. Files are copied in
+     * parallel by the {@link MediaImporter}, and files already present with the same size and
+     * modification time are skipped. Calls the {@link #cleanImagesOnHDForBlog(String)
+     * cleanImagesOnHDForBlog()} method when it's done, to clean the directory back up, and then
+     * starts generating thumbnails for the images in the background. For large imports, use
+     * {@link #startImageImportForBlog(String, boolean, String) startImageImportForBlog()} instead,
+     * which doesn't tie up the request.
      *
      * @param blog      The name of the blog for which images shoudl be imported
      * @param imagePath The path of the source directory, from whence images should be retrieved.
-     * @return Success/failure message
+     * @return Success/failure message; failure if any file couldn't be copied (the others are
+     *         still copied)
      */
     @PostMapping("/posts/{blog}/importImages")
     public ResponseEntity<String> importImagesForBlog(@PathVariable("blog") final String blog,
             @RequestBody final String imagePath) {
-        String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
-        if (imageDirectory == null || imageDirectory.equals(StringUtils.EMPTY)) {
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        final ResponseEntity<String> invalidResponse = validateImageImport(imageDirectory, imagePath);
+        if (invalidResponse != null) {
+            return invalidResponse;
+        }
+
+        final Path destinationFolderPath = Paths.get(imageDirectory);
+        final MediaImportJob job = mediaImporter.startImport(Paths.get(imagePath), destinationFolderPath, false, null);
+        try {
+            job.awaitCompletion(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity<String>(errorCopyingFilesMessage, null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        if (job.getStatus() == MediaImportJob.Status.FAILED) {
+            return new ResponseEntity<String>(errorCopyingFilesMessage, null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        final ResponseEntity<String> cleanResponse = cleanImagesOnHDForBlog(blog);
+        thumbnailService.generateInBackground(destinationFolderPath);
+        if (job.getFailedFiles() > 0) {
+            return new ResponseEntity<String>(errorCopyingFilesMessage, null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        return cleanResponse;
+    }
+
+    /**
+     * POST request to start importing all files from a source directory (posted as the body of the
+     * request) to the images directory stored in the metadata, as a background job. Returns as soon
+     * as the job has been queued; its progress can be retrieved with
+     * {@link #getImageImportJob(String) getImageImportJob()}. Once all files have been processed the
+     * directory is cleaned up (see {@link #cleanImagesOnHDForBlog(String) cleanImagesOnHDForBlog()})
+     * and thumbnails are generated in the background.
+     *
+     * @param blog      The name of the blog for which images should be imported
+     * @param link      Whether files should be hard-linked rather than copied, when the source and
+     *                  images directories are on the same file system
+     * @param imagePath The path of the source directory, from whence images should be retrieved.
+     * @return ID of the job (with a status of 202), or failure message
+     */
+    @PostMapping("/posts/{blog}/importImagesJob")
+    public ResponseEntity<String> startImageImportForBlog(@PathVariable("blog") final String blog,
+            @RequestParam(name = "link", defaultValue = "false") final boolean link,
+            @RequestBody final String imagePath) {
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        final ResponseEntity<String> invalidResponse = validateImageImport(imageDirectory, imagePath);
+        if (invalidResponse != null) {
+            return invalidResponse;
+        }
+
+        final Path destinationFolderPath = Paths.get(imageDirectory);
+        final MediaImportJob job = mediaImporter.startImport(Paths.get(imagePath), destinationFolderPath, link,
+                importJob -> {
+                    final ResponseEntity<String> cleanResponse = cleanImagesOnHDForBlog(blog);
+                    if (cleanResponse.getStatusCode() != HttpStatus.OK) {
+                        logger.error("Error cleaning images after import for blog {}: {}", blog,
+                                cleanResponse.getBody());
+                    }
+                    thumbnailService.generateInBackground(destinationFolderPath);
+                });
+
+        return new ResponseEntity<String>(job.getId(), null, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * GET request for the progress of an image import started by
+     * {@link #startImageImportForBlog(String, boolean, String) startImageImportForBlog()}
+     *
+     * @param id ID of the job
+     * @return The job's progress
+     */
+    @GetMapping("/importJobs/{id}")
+    public MediaImportJob getImageImportJob(@PathVariable("id") final String id) {
+        final MediaImportJob job = mediaImporter.getJob(id);
+        if (job == null) {
+            throw new ResourceNotFoundException("MediaImportJob", "id", id);
+        }
+
+        return job;
+    }
+
+    /**
+     * POST request to download, in the background, every photo in a blog that's missing from the
+     * blog's media directory (see
+     * {@link TEVPhotoController#downloadPhotosForBlogForPost(String, String)
+     * downloadPhotosForBlogForPost()} for the single-post equivalent). The downloads are queued with
+     * the {@link MediaFetcher} before this returns; their progress can be retrieved with
+     * {@link #getPhotoFetchJob(String) getPhotoFetchJob()}.
+     *
+     * @param blog Blog for which photos should be fetched
+     * @return ID of the job (with a status of 202), or failure message
+     */
+    @PostMapping("/posts/{blog}/fetchMissingPhotos")
+    public ResponseEntity<String> fetchMissingPhotosForBlog(@PathVariable("blog") final String blog) {
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        if (imageDirectory == null || !new File(imageDirectory).isDirectory()) {
             logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory);
             return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
         }
 
-        if (imageDirectory.charAt(imageDirectory.length() - 1) != '/') {
-            imageDirectory = imageDirectory.concat("/");
+        final Path folder = Paths.get(imageDirectory);
+        try {
+            mediaIndex.rescan(folder);
+        } catch (IOException e) {
+            logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory, e);
+            return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
         }
 
-        final File destinationFolder = new File(imageDirectory);
-        if (!destinationFolder.isDirectory()) {
+        final MediaFetchJob job = mediaFetcher.startJob(String.format("Missing photos for %s", blog));
+        final List<String> photoPostIds = new ArrayList<String>();
+        for (Post post : getPostsByBlogByType(blog, Post.POST_TYPE_PHOTO)) {
+            photoPostIds.add(post.getId());
+        }
+        try {
+            for (int i = 0; i < photoPostIds.size(); i += PostContentBatch.DEFAULT_BATCH_SIZE) {
+                final List<String> batchIds = photoPostIds.subList(i,
+                        Math.min(i + PostContentBatch.DEFAULT_BATCH_SIZE, photoPostIds.size()));
+                for (List<Photo> photos : postController.getPhotoController().getPhotosForBlogByIds(blog, batchIds)
+                        .values()) {
+                    for (int photoIndex = 0; photoIndex < photos.size(); photoIndex++) {
+                        final Photo photo = photos.get(photoIndex);
+                        final String fileName = TEVPhotoController.getPhotoFileName(photo, photoIndex);
+                        if (!mediaIndex.isPresent(folder, fileName)) {
+                            job.track(mediaFetcher.fetch(photo.getUrl1280(), folder.resolve(fileName)), fileName);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory, e);
+            return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
+        } finally {
+            job.allQueued();
+        }
+
+        return new ResponseEntity<String>(job.getId(), null, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * GET request for the progress of a download job started by
+     * {@link #fetchMissingPhotosForBlog(String) fetchMissingPhotosForBlog()}
+     *
+     * @param id ID of the job
+     * @return The job's progress
+     */
+    @GetMapping("/fetchJobs/{id}")
+    public MediaFetchJob getPhotoFetchJob(@PathVariable("id") final String id) {
+        final MediaFetchJob job = mediaFetcher.getJob(id);
+        if (job == null) {
+            throw new ResourceNotFoundException("MediaFetchJob", "id", id);
+        }
+
+        return job;
+    }
+
+    /**
+     * Checks that the directories for an image import are valid
+     *
+     * @param imageDirectory The images directory from the blog's metadata
+     * @param imagePath      The source directory
+     * @return Failure response if either directory is invalid, otherwise null
+     */
+    private ResponseEntity<String> validateImageImport(final String imageDirectory, final String imagePath) {
+        if (imageDirectory == null || !new File(imageDirectory).isDirectory()) {
             logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory);
             return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
         }
-        final Path destinationFolderPath = destinationFolder.toPath();
 
-        final File sourceFolder = new File(imagePath);
-        if (!sourceFolder.isDirectory()) {
+        if (imagePath == null || !new File(imagePath).isDirectory()) {
             logger.error(INVALID_IMAGE_DIRECTORY, imagePath);
             return new ResponseEntity<String>(invalidSourceImagesMessage, null, HttpStatus.BAD_REQUEST);
         }
 
-        final File[] sourceFiles = sourceFolder.listFiles();
-        for (File inputFile : sourceFiles) {
-            final Path inputFilePath = inputFile.toPath();
-            try {
-                Files.copy(inputFilePath, destinationFolderPath.resolve(inputFilePath.getFileName()));
-            } catch (FileAlreadyExistsException e) {
-                logger.debug("File already exists: {}", inputFilePath.getFileName());
-                // Skip copying files that don't exist
-            } catch (IOException e) {
-                logger.error("Error copying file from source to destination: {}", inputFilePath.getFileName());
-                logger.debug("File Copy Error:", e);
-                return new ResponseEntity<String>(errorCopyingFilesMessage, null, HttpStatus.INTERNAL_SERVER_ERROR);
+        return null;
+    }
+
+    /**
+     * GET request to generate (in the background) any missing thumbnails for all of the images in a
+     * blog's media directory, so that they don't need to be generated when first viewed. Returns
+     * immediately.
+     *
+     * @param blog Blog for which thumbnails should be generated
+     * @return Success/failure message
+     */
+    @GetMapping("/posts/{blog}/generateThumbnails")
+    public ResponseEntity<String> generateThumbnailsForBlog(@PathVariable("blog") final String blog) {
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        if (imageDirectory == null || !new File(imageDirectory).isDirectory()) {
+            logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory);
+            return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
+        }
+
+        thumbnailService.generateInBackground(Paths.get(imageDirectory));
+
+        return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
+    }
+
+    /**
+     * GET request to add (in the background) all of the files in a blog's media directory to the
+     * content-addressed media store, replacing duplicates with links to a single stored copy.
+     * Only needed for media imported before the store was enabled. Returns immediately.
+     *
+     * @param blog Blog whose media should be added to the store
+     * @return Success/failure message
+     */
+    @GetMapping("/posts/{blog}/storeMedia")
+    public ResponseEntity<String> storeMediaForBlog(@PathVariable("blog") final String blog) {
+        if (!mediaStore.isEnabled()) {
+            return new ResponseEntity<String>(mediaStoreDisabledMessage, null, HttpStatus.BAD_REQUEST);
+        }
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        if (imageDirectory == null || !new File(imageDirectory).isDirectory()) {
+            logger.error(INVALID_IMAGE_DIRECTORY, imageDirectory);
+            return new ResponseEntity<String>(invalidImagesMessage, null, HttpStatus.BAD_REQUEST);
+        }
+
+        mediaStore.storeInBackground(Paths.get(imageDirectory));
+
+        return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
+    }
+
+    /**
+     * POST request to export an entire blog (or the posts in it matching the given criteria) to an
+     * XML file on the server, in the same format as the Tumblr export. The document is written to a
+     * temporary file alongside the target, which is only moved into place once the export is
+     * complete, so a failed export never leaves a partial file behind.
+     *
+     * @param blog       The blog to be exported
+     * @param targetFile Full path of the file to be written
+     * @param type       Only export posts of this type
+     * @param tag        Only export posts with this hashtag
+     * @param from       Only export posts at or after this Unix timestamp
+     * @param to         Only export posts at or before this Unix timestamp
+     * @return Success/failure message
+     */
+    @PostMapping("/posts/{blog}/exportToFile")
+    public ResponseEntity<String> exportBlogToFile(@PathVariable("blog") final String blog,
+            @RequestBody final String targetFile, @RequestParam("type") final Optional<String> type,
+            @RequestParam("tag") final Optional<String> tag, @RequestParam("from") final Optional<Long> from,
+            @RequestParam("to") final Optional<Long> to) {
+        final Path target = Paths.get(targetFile).toAbsolutePath();
+        final ExportFilter filter = new ExportFilter(type, tag, from, to);
+        Path tempFile = null;
+
+        try {
+            tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                final int numPosts = BlogExportWriter.writeBlogExport(filter, postController, blog, out,
+                        exportRenderPool.getPool());
+                logger.info("Exported {} posts for blog {} to {}", numPosts, blog, target);
             }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | XMLStreamException e) {
+            logger.error("Error exporting blog {} to {}", blog, target, e);
+            deleteQuietly(tempFile);
+            return new ResponseEntity<String>(errorExportingBlogMessage, null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
 
-        return cleanImagesOnHDForBlog(blog);
+        return new ResponseEntity<String>(successMessage, null, HttpStatus.OK);
+    }
+
+    /**
+     * Deletes a file if it exists, logging (rather than throwing) any errors
+     *
+     * @param file The file to be deleted; may be null
+     */
+    private void deleteQuietly(final Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete temporary file {}", file, e);
+        }
     }
 
 }
@@ -0,0 +1,372 @@
+package com.tiyb.tev.controller;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.tiyb.tev.controller.helper.DataVersions;
+import com.tiyb.tev.controller.helper.PostFlagBuffer;
+import com.tiyb.tev.datamodel.BlogStats;
+import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.datamodel.helpers.PostHistogramBucket;
+import com.tiyb.tev.exception.InvalidTypeException;
+import com.tiyb.tev.repository.BlogStatsRepository;
+import com.tiyb.tev.repository.ConversationMessageRepository;
+import com.tiyb.tev.repository.ConversationRepository;
+import com.tiyb.tev.repository.HashtagRepository;
+import com.tiyb.tev.repository.PhotoRepository;
+import com.tiyb.tev.repository.PostRepository;
+
+/**
+ * <p>
+ * REST controller for the per-blog statistics snapshot (see
+ * {@link com.tiyb.tev.datamodel.BlogStats BlogStats}).
+ * </p>
+ *
+ * <p>
+ * Other controllers notify this one as data changes: read/favourite toggles are applied to the
+ * snapshot directly, while anything else (imports, creates, deletes) simply flags the snapshot as
+ * stale, so that a bulk import costs a single recalculation rather than an update per row.
+ * </p>
+ *
+ * @author tiyb
+ */
+@RestController
+@RequestMapping("/api")
+public class TEVBlogStatsController {
+
+    /**
+     * Most histograms kept in the cache; the least recently used are dropped
+     */
+    private static final int MAX_CACHED_HISTOGRAMS = 100;
+
+    /**
+     * Intervals into which a histogram's posts can be grouped
+     */
+    public enum HistogramInterval {
+        /**
+         * One bucket per day
+         */
+        DAY,
+
+        /**
+         * One bucket per week, starting on Monday
+         */
+        WEEK,
+
+        /**
+         * One bucket per calendar month
+         */
+        MONTH
+    }
+
+    private Logger logger = LoggerFactory.getLogger(TEVBlogStatsController.class);
+
+    /**
+     * Repo for the snapshots themselves
+     */
+    @Autowired
+    private BlogStatsRepository statsRepo;
+
+    /**
+     * Repo for working with Post data
+     */
+    @Autowired
+    private PostRepository postRepo;
+
+    /**
+     * Repo for working with Photo data
+     */
+    @Autowired
+    private PhotoRepository photoRepo;
+
+    /**
+     * Repo for working with Conversation data
+     */
+    @Autowired
+    private ConversationRepository convoRepo;
+
+    /**
+     * Repo for working with Conversation Message data
+     */
+    @Autowired
+    private ConversationMessageRepository msgRepo;
+
+    /**
+     * Repo for working with Hashtag data
+     */
+    @Autowired
+    private HashtagRepository hashtagRepo;
+
+    /**
+     * Blogs known to have stale snapshots, so that repeated changes (e.g. every row of an import)
+     * only flag the snapshot in the DB once
+     */
+    private final Set<String> staleBlogs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Write-behind buffer for read/favourite flags, which has to be written before the counts are
+     * returned
+     */
+    @Autowired
+    private PostFlagBuffer flagBuffer;
+
+    /**
+     * Versions of each blog's data, so that cached histograms can tell when they're stale
+     */
+    @Autowired
+    private DataVersions dataVersions;
+
+    /**
+     * Metadata controller, for the list of valid post types
+     */
+    @Autowired
+    private TEVMetadataRestController mdController;
+
+    /**
+     * Cached results of {@link #getPostHistogramForBlog(String, HistogramInterval, String, Long, Long)},
+     * by blog and criteria, in least recently used order. Guarded by itself.
+     */
+    private final Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Histogram> eldest) {
+            return size() > MAX_CACHED_HISTOGRAMS;
+        }
+    };
+
+    /**
+     * GET request for the statistics for a given blog. The stored snapshot is returned as-is if
+     * it's current; otherwise it's recalculated first.
+     *
+     * @param blog Blog for which stats should be returned
+     * @return The blog's statistics
+     */
+    @GetMapping("/stats/{blog}")
+    public BlogStats getStatsForBlog(@PathVariable("blog") final String blog) {
+        flagBuffer.flush();
+
+        final Optional<BlogStats> stats = statsRepo.findById(blog);
+
+        if (stats.isPresent() && !stats.get().getStale() && !staleBlogs.contains(blog)) {
+            return stats.get();
+        }
+
+        return recalculateStatsForBlog(blog);
+    }
+
+    /**
+     * GET request for a histogram of a blog's posts over time, with the number of posts in each
+     * day, week, or month (UTC). Posts are counted per day by an aggregate query, and the days
+     * are then grouped into the requested interval; the result is cached until the blog's data
+     * next changes. Only intervals with at least one post are returned, and posts without a
+     * timestamp aren't counted.
+     *
+     * @param blog     Blog for which the histogram should be returned
+     * @param interval Interval into which posts are grouped (DAY, WEEK, or MONTH)
+     * @param type     Post type to count; all types if not specified
+     * @param from     Earliest Unix timestamp to count
+     * @param to       Latest Unix timestamp to count
+     * @return The number of posts in each interval, oldest first
+     */
+    @GetMapping("/stats/{blog}/histogram")
+    public List<PostHistogramBucket> getPostHistogramForBlog(@PathVariable("blog") final String blog,
+            @RequestParam(name = "interval", defaultValue = "MONTH") final HistogramInterval interval,
+            @RequestParam(name = "type", required = false) final String type,
+            @RequestParam(name = "from", required = false) final Long from,
+            @RequestParam(name = "to", required = false) final Long to) {
+        final List<String> allTypeNames = mdController.getAllTypes();
+        if (type != null && !TEVMetadataRestController.isValidType(type, allTypeNames)) {
+            logger.error("Invalid type name: {}", type);
+            throw new InvalidTypeException();
+        }
+
+        final String key = String.join("\n", blog, interval.name(), String.valueOf(type), String.valueOf(from),
+                String.valueOf(to));
+        final long version = dataVersions.getVersion(blog);
+        Histogram histogram;
+        synchronized (histograms) {
+            histogram = histograms.get(key);
+        }
+        if (histogram != null && histogram.version == version) {
+            return histogram.buckets;
+        }
+
+        final List<Object[]> days = postRepo.countByDayForBlog(blog,
+                type == null ? allTypeNames : Collections.singletonList(type), from == null ? Long.MIN_VALUE : from,
+                to == null ? Long.MAX_VALUE : to);
+        final Map<LocalDate, Long> counts = new LinkedHashMap<LocalDate, Long>();
+        for (Object[] row : days) {
+            final LocalDate day = LocalDate.ofEpochDay(((Number) row[0]).longValue());
+            counts.merge(startOfInterval(day, interval), ((Number) row[1]).longValue(), Long::sum);
+        }
+        final List<PostHistogramBucket> buckets = new ArrayList<PostHistogramBucket>(counts.size());
+        for (Map.Entry<LocalDate, Long> count : counts.entrySet()) {
+            final PostHistogramBucket bucket = new PostHistogramBucket();
+            bucket.setStart(count.getKey().atStartOfDay(ZoneOffset.UTC).toEpochSecond());
+            bucket.setCount(count.getValue());
+            buckets.add(bucket);
+        }
+
+        histogram = new Histogram(version, Collections.unmodifiableList(buckets));
+        synchronized (histograms) {
+            histograms.put(key, histogram);
+        }
+
+        return histogram.buckets;
+    }
+
+    /**
+     * Returns the first day of the interval containing a given day
+     *
+     * @param day      The day
+     * @param interval The interval
+     * @return First day of the interval
+     */
+    private static LocalDate startOfInterval(final LocalDate day, final HistogramInterval interval) {
+        switch (interval) {
+        case WEEK:
+            return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        case MONTH:
+            return day.withDayOfMonth(1);
+        default:
+            return day;
+        }
+    }
+
+    /**
+     * Recalculates a blog's snapshot from the underlying tables, using aggregate queries
+     *
+     * @param blog Blog for which stats should be recalculated
+     * @return The new snapshot
+     */
+    public BlogStats recalculateStatsForBlog(final String blog) {
+        staleBlogs.remove(blog);
+
+        final BlogStats stats = new BlogStats(blog);
+        long totalPosts = 0;
+        for (Object[] row : postRepo.countByTypeForBlog(blog)) {
+            final Long count = (Long) row[1];
+            totalPosts += count;
+            switch (String.valueOf(row[0])) {
+            case Post.POST_TYPE_ANSWER:
+                stats.setAnswerPosts(count);
+                break;
+            case Post.POST_TYPE_LINK:
+                stats.setLinkPosts(count);
+                break;
+            case Post.POST_TYPE_PHOTO:
+                stats.setPhotoPosts(count);
+                break;
+            case Post.POST_TYPE_REGULAR:
+                stats.setRegularPosts(count);
+                break;
+            case Post.POST_TYPE_VIDEO:
+                stats.setVideoPosts(count);
+                break;
+            default:
+                break;
+            }
+        }
+        stats.setTotalPosts(totalPosts);
+        stats.setReadPosts(postRepo.countReadForBlog(blog));
+        stats.setFavouritePosts(postRepo.countFavouritesForBlog(blog));
+        stats.setPhotos(photoRepo.countForBlog(blog));
+        stats.setConversations(convoRepo.countByBlog(blog));
+        stats.setMessages(msgRepo.countForBlog(blog));
+        stats.setDistinctTags(hashtagRepo.countByBlog(blog));
+        stats.setStale(false);
+        stats.setLastCalculated(System.currentTimeMillis());
+
+        return statsRepo.save(stats);
+    }
+
+    /**
+     * Flags a blog's snapshot as stale, after a change that can't be applied as a simple delta
+     *
+     * @param blog Blog whose data has changed
+     */
+    public void markStale(final String blog) {
+        if (staleBlogs.add(blog)) {
+            statsRepo.markStale(blog);
+        }
+    }
+
+    /**
+     * Flags every blog's snapshot as stale
+     */
+    public void markAllStale() {
+        statsRepo.markAllStale();
+    }
+
+    /**
+     * Applies a change in the number of read posts to a blog's snapshot
+     *
+     * @param blog  Blog that was changed
+     * @param delta Number of posts newly read (negative for posts marked unread)
+     */
+    public void adjustReadPosts(final String blog, final long delta) {
+        if (delta != 0 && !staleBlogs.contains(blog)) {
+            statsRepo.adjustReadPosts(blog, delta);
+        }
+    }
+
+    /**
+     * Applies a change in the number of favourite posts to a blog's snapshot
+     *
+     * @param blog  Blog that was changed
+     * @param delta Number of posts newly favourited (negative for posts no longer favourites)
+     */
+    public void adjustFavouritePosts(final String blog, final long delta) {
+        if (delta != 0 && !staleBlogs.contains(blog)) {
+            statsRepo.adjustFavouritePosts(blog, delta);
+        }
+    }
+
+    /**
+     * Immutable holder for a cached histogram, and the version of the blog's data it was built
+     * from
+     */
+    private static final class Histogram {
+
+        /**
+         * Version of the blog's data the histogram was built from
+         */
+        private final long version;
+
+        /**
+         * The histogram's buckets
+         */
+        private final List<PostHistogramBucket> buckets;
+
+        /**
+         * Constructor
+         *
+         * @param version Version of the blog's data the histogram was built from
+         * @param buckets The histogram's buckets
+         */
+        private Histogram(final long version, final List<PostHistogramBucket> buckets) {
+            this.version = version;
+            this.buckets = buckets;
+        }
+    }
+}
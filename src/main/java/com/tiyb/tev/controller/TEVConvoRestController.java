@@ -1,13 +1,23 @@
 package com.tiyb.tev.controller;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,13 +27,20 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.tiyb.tev.controller.helper.DataVersions;
+import com.tiyb.tev.controller.helper.MessageTokenizer;
 import com.tiyb.tev.datamodel.Conversation;
 import com.tiyb.tev.datamodel.ConversationMessage;
+import com.tiyb.tev.datamodel.ConversationMessageTerm;
+import com.tiyb.tev.datamodel.helpers.ConversationMessagePage;
+import com.tiyb.tev.datamodel.helpers.MessageSearchResult;
 import com.tiyb.tev.exception.InvalidConvoParentException;
 import com.tiyb.tev.exception.ResourceNotFoundException;
 import com.tiyb.tev.repository.ConversationMessageRepository;
+import com.tiyb.tev.repository.ConversationMessageTermRepository;
 import com.tiyb.tev.repository.ConversationRepository;
 
 /**
@@ -51,6 +68,39 @@ public class TEVConvoRestController {
     @Autowired
     private ConversationMessageRepository msgRepo;
 
+    /**
+     * The Repo for working with the full-text search index of Conversation Messages
+     */
+    @Autowired
+    private ConversationMessageTermRepository termRepo;
+
+    /**
+     * REST controller for the per-blog statistics snapshot
+     */
+    @Autowired
+    private TEVBlogStatsController statsController;
+
+    /**
+     * Versions of each blog's data, for cached API responses
+     */
+    @Autowired
+    private DataVersions dataVersions;
+
+    /**
+     * Largest page size allowed when searching messages
+     */
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    /**
+     * Largest number of messages returned in a single page of a conversation
+     */
+    private static final int MAX_MESSAGE_PAGE_SIZE = 500;
+
+    /**
+     * Number of messages in a page of a conversation, if not specified
+     */
+    public static final int DEFAULT_MESSAGE_PAGE_SIZE = 100;
+
     /**
      * GET request for listing all conversations for a given blog
      *
@@ -151,7 +201,11 @@ public class TEVConvoRestController {
     public Conversation createConversationForBlog(@PathVariable("blog") final String blog,
             @Valid @RequestBody final Conversation conversation) {
         conversation.setBlog(blog);
-        return convoRepo.save(conversation);
+        final Conversation savedConvo = convoRepo.save(conversation);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
+
+        return savedConvo;
     }
 
     /**
@@ -172,7 +226,10 @@ public class TEVConvoRestController {
 
         convo.updateData(convoDetails);
 
-        return convoRepo.save(convo);
+        final Conversation updatedConvo = convoRepo.save(convo);
+        dataVersions.dataChanged(updatedConvo.getBlog());
+
+        return updatedConvo;
     }
 
     /**
@@ -193,6 +250,7 @@ public class TEVConvoRestController {
         convo.setHideConversation(true);
 
         convo = convoRepo.save(convo);
+        dataVersions.dataChanged(blog);
 
         return convo;
     }
@@ -213,6 +271,7 @@ public class TEVConvoRestController {
         convo.setHideConversation(false);
 
         convo = convoRepo.save(convo);
+        dataVersions.dataChanged(blog);
 
         return convo;
     }
@@ -234,6 +293,7 @@ public class TEVConvoRestController {
             convo.setHideConversation(false);
             convoRepo.save(convo);
         }
+        dataVersions.dataChanged(blog);
 
         return;
     }
@@ -257,6 +317,8 @@ public class TEVConvoRestController {
             throw new InvalidConvoParentException();
         }
         convoRepo.delete(convo);
+        statsController.markStale(convo.getBlog());
+        dataVersions.dataChanged(convo.getBlog());
 
         return ResponseEntity.ok().build();
     }
@@ -272,6 +334,8 @@ public class TEVConvoRestController {
     @DeleteMapping("/conversations/{blog}")
     public ResponseEntity<?> deleteAllConversationsForBlog(@PathVariable("blog") final String blog) {
         convoRepo.deleteByBlog(blog);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
 
         return ResponseEntity.ok().build();
     }
@@ -296,7 +360,12 @@ public class TEVConvoRestController {
                 throw new InvalidConvoParentException();
             }
         }
-        return msgRepo.save(convoMsg);
+        final ConversationMessage savedMsg = msgRepo.save(convoMsg);
+        indexMessage(blog, savedMsg);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
+
+        return savedMsg;
     }
 
     /**
@@ -312,6 +381,113 @@ public class TEVConvoRestController {
         return msgRepo.findByConversationIdOrderByTimestamp(convoId);
     }
 
+    /**
+     * <p>
+     * GET to return one page of the messages for a particular conversation for a given blog, so
+     * that long conversations can be loaded incrementally. Pages are keyed on the (timestamp, ID) of
+     * the message next to them, rather than an offset, so every page costs the same no matter how
+     * far into the conversation it is, and messages added in the meantime don't shift the pages.
+     * </p>
+     *
+     * <p>
+     * With a <code>before</code> key, returns the messages immediately older than that message; with
+     * an <code>after</code> key, the messages immediately newer than it; with
+     * <code>fromTimestamp</code>, the first messages at or after that time (or the last page, if
+     * there are none); and otherwise the first page of the conversation.
+     * </p>
+     *
+     * @param blog            Not used
+     * @param convoId         The conversation ID
+     * @param beforeTimestamp Timestamp of the message before which the page ends
+     * @param beforeId        ID of the message before which the page ends
+     * @param afterTimestamp  Timestamp of the message after which the page starts
+     * @param afterId         ID of the message after which the page starts
+     * @param fromTimestamp   Time (in seconds) at which the page starts
+     * @param size            Number of messages in the page
+     * @return The page of messages, oldest first
+     */
+    @GetMapping("/conversations/{blog}/messagesForConvoId/{id}/page")
+    public ConversationMessagePage getConvoMsgPageForBlogByConvoID(@PathVariable("blog") final String blog,
+            @PathVariable("id") final Long convoId,
+            @RequestParam(name = "beforeTimestamp", required = false) final Long beforeTimestamp,
+            @RequestParam(name = "beforeId", required = false) final Long beforeId,
+            @RequestParam(name = "afterTimestamp", required = false) final Long afterTimestamp,
+            @RequestParam(name = "afterId", required = false) final Long afterId,
+            @RequestParam(name = "fromTimestamp", required = false) final Long fromTimestamp,
+            @RequestParam(name = "size", defaultValue = "100") final int size) {
+        final int pageSize = Math.min(Math.max(size, 1), MAX_MESSAGE_PAGE_SIZE);
+
+        if (beforeTimestamp != null && beforeId != null) {
+            return pageBefore(convoId, beforeTimestamp, beforeId, pageSize);
+        }
+        if (afterTimestamp != null && afterId != null) {
+            final ConversationMessagePage page = pageAfter(convoId, afterTimestamp, afterId, pageSize);
+            page.setHasOlder(true);
+            return page;
+        }
+        if (fromTimestamp != null) {
+            final ConversationMessagePage page = pageAfter(convoId, fromTimestamp, Long.MIN_VALUE, pageSize);
+            if (page.getMessages().isEmpty()) {
+                return pageBefore(convoId, Long.MAX_VALUE, Long.MAX_VALUE, pageSize);
+            }
+            final ConversationMessage first = page.getMessages().get(0);
+            page.setHasOlder(!msgRepo
+                    .findPageBefore(convoId, first.getTimestamp(), first.getId(), PageRequest.of(0, 1)).isEmpty());
+            return page;
+        }
+
+        final ConversationMessagePage page = pageAfter(convoId, Long.MIN_VALUE, Long.MIN_VALUE, pageSize);
+        page.setHasOlder(false);
+        return page;
+    }
+
+    /**
+     * Returns the messages immediately newer than a given message. Whether there are older
+     * messages is left for the caller to fill in.
+     *
+     * @param convoId   The conversation ID
+     * @param timestamp Timestamp of the message after which the page starts
+     * @param id        ID of the message after which the page starts
+     * @param size      Number of messages in the page
+     * @return The page of messages, oldest first
+     */
+    private ConversationMessagePage pageAfter(final Long convoId, final Long timestamp, final Long id,
+            final int size) {
+        final List<ConversationMessage> messages =
+                msgRepo.findPageAfter(convoId, timestamp, id, PageRequest.of(0, size + 1));
+
+        final ConversationMessagePage page = new ConversationMessagePage();
+        page.setHasNewer(messages.size() > size);
+        page.setMessages(new ArrayList<ConversationMessage>(messages.subList(0, Math.min(size, messages.size()))));
+
+        return page;
+    }
+
+    /**
+     * Returns the messages immediately older than a given message
+     *
+     * @param convoId   The conversation ID
+     * @param timestamp Timestamp of the message before which the page ends
+     * @param id        ID of the message before which the page ends
+     * @param size      Number of messages in the page
+     * @return The page of messages, oldest first
+     */
+    private ConversationMessagePage pageBefore(final Long convoId, final Long timestamp, final Long id,
+            final int size) {
+        final List<ConversationMessage> messages =
+                msgRepo.findPageBefore(convoId, timestamp, id, PageRequest.of(0, size + 1));
+
+        final ConversationMessagePage page = new ConversationMessagePage();
+        page.setHasOlder(messages.size() > size);
+        page.setHasNewer(timestamp != Long.MAX_VALUE);
+        final List<ConversationMessage> newestFirst = messages.subList(0, Math.min(size, messages.size()));
+        final List<ConversationMessage> oldestFirst = new ArrayList<ConversationMessage>(newestFirst);
+        Collections.reverse(oldestFirst);
+        page.setMessages(oldestFirst);
+
+        return page;
+    }
+
     /**
      * PUT to update a conversation message for a given blog
      *
@@ -329,6 +505,9 @@ public class TEVConvoRestController {
         cm.updateData(convoMsg);
 
         final ConversationMessage updatedCM = msgRepo.save(cm);
+        termRepo.deleteByMessageId(updatedCM.getId());
+        indexMessage(blog, updatedCM);
+        dataVersions.dataChanged(blog);
 
         return updatedCM;
     }
@@ -350,6 +529,9 @@ public class TEVConvoRestController {
                 msgRepo.delete(cm);
             }
         }
+        termRepo.deleteByBlog(blog);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
 
         return ResponseEntity.ok().build();
     }
@@ -369,7 +551,117 @@ public class TEVConvoRestController {
                 .orElseThrow(() -> new ResourceNotFoundException("ConversationMessage", "id", msgId));
 
         msgRepo.delete(cm);
+        termRepo.deleteByMessageId(msgId);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
 
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * GET to perform a full-text search across all conversation messages for a given blog. Results
+     * are ranked by the number of query terms each message contains (and then by how often those
+     * terms appear), and returned one page at a time.
+     *
+     * @param blog  Blog for which messages should be searched
+     * @param query Free-text query
+     * @param page  Zero-based page of results to return
+     * @param size  Number of results per page
+     * @return Page of search results
+     */
+    @GetMapping("/conversations/{blog}/messages/search")
+    public Page<MessageSearchResult> searchConvoMsgsForBlog(@PathVariable("blog") final String blog,
+            @RequestParam("query") final String query,
+            @RequestParam(name = "page", defaultValue = "0") final int page,
+            @RequestParam(name = "size", defaultValue = "25") final int size) {
+        final Pageable pageable = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_SEARCH_PAGE_SIZE));
+        final Set<String> terms = MessageTokenizer.tokenize(query).keySet();
+
+        if (terms.isEmpty()) {
+            return new PageImpl<MessageSearchResult>(new ArrayList<MessageSearchResult>(), pageable, 0);
+        }
+
+        final Page<Object[]> hits = termRepo.findRankedMessageIds(blog, terms, pageable);
+
+        final List<Long> messageIds = new ArrayList<Long>();
+        for (Object[] hit : hits.getContent()) {
+            messageIds.add((Long) hit[0]);
+        }
+
+        final Map<Long, ConversationMessage> messages = new HashMap<Long, ConversationMessage>();
+        final Set<Long> convoIds = new HashSet<Long>();
+        for (ConversationMessage msg : msgRepo.findAllById(messageIds)) {
+            messages.put(msg.getId(), msg);
+            convoIds.add(msg.getConversationId());
+        }
+
+        final Map<Long, Conversation> convos = new HashMap<Long, Conversation>();
+        for (Conversation convo : convoRepo.findAllById(convoIds)) {
+            convos.put(convo.getId(), convo);
+        }
+
+        final List<MessageSearchResult> results = new ArrayList<MessageSearchResult>();
+        for (Object[] hit : hits.getContent()) {
+            final ConversationMessage msg = messages.get(hit[0]);
+            if (msg == null) {
+                continue;
+            }
+            final MessageSearchResult result = new MessageSearchResult();
+            result.setMessageId(msg.getId());
+            result.setConversationId(msg.getConversationId());
+            final Conversation convo = convos.get(msg.getConversationId());
+            if (convo != null) {
+                result.setParticipant(convo.getParticipant());
+            }
+            result.setTimestamp(msg.getTimestamp());
+            result.setReceived(msg.getReceived());
+            result.setSnippet(MessageTokenizer.buildSnippet(msg.getMessage(), terms));
+            result.setMatchedTerms((Long) hit[1]);
+            result.setOccurrences((Long) hit[2]);
+            results.add(result);
+        }
+
+        return new PageImpl<MessageSearchResult>(results, pageable, hits.getTotalElements());
+    }
+
+    /**
+     * Rebuilds the full-text search index for all conversation messages for a given blog, for use
+     * with data that was imported before the index existed.
+     *
+     * @param blog Blog for which the index should be rebuilt
+     * @return Number of messages indexed
+     */
+    public int rebuildSearchIndexForBlog(final String blog) {
+        termRepo.deleteByBlog(blog);
+
+        int numIndexed = 0;
+        for (Conversation c : convoRepo.findByBlog(blog)) {
+            for (ConversationMessage cm : msgRepo.findByConversationIdOrderByTimestamp(c.getId())) {
+                indexMessage(blog, cm);
+                numIndexed++;
+            }
+        }
+
+        return numIndexed;
+    }
+
+    /**
+     * Adds a message's terms to the full-text search index
+     *
+     * @param blog Blog to which the message belongs
+     * @param msg  The message to be indexed (must already have an ID)
+     */
+    private void indexMessage(final String blog, final ConversationMessage msg) {
+        final Map<String, Integer> terms = MessageTokenizer.tokenize(msg.getMessage());
+        if (terms.isEmpty()) {
+            return;
+        }
+
+        final List<ConversationMessageTerm> entries = new ArrayList<ConversationMessageTerm>(terms.size());
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            entries.add(new ConversationMessageTerm(term.getKey(), msg.getId(), msg.getConversationId(), blog,
+                    term.getValue()));
+        }
+        termRepo.saveAll(entries);
+    }
 }
@@ -1,9 +1,10 @@
 package com.tiyb.tev.controller;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.validation.Valid;
 
@@ -17,8 +18,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.tiyb.tev.controller.helper.DataVersions;
+import com.tiyb.tev.controller.helper.HashtagSuggestionIndex;
 import com.tiyb.tev.datamodel.Hashtag;
 import com.tiyb.tev.exception.ExistingTagException;
 import com.tiyb.tev.exception.InvalidTagException;
@@ -37,40 +41,79 @@ import com.tiyb.tev.repository.HashtagRepository;
 public class TEVHashtagController {
 
     /**
-     * String used to separate multiple blog names, when a hashtag shows up in
-     * multiple blogs
+     * Repo for working with hashtags
      */
-    private static final String BLOG_SEPARATOR = ", ";
+    @Autowired
+    private HashtagRepository hashtagRepo;
 
     /**
-     * Repo for working with hashtags
+     * REST controller for the per-blog statistics snapshot
      */
     @Autowired
-    private HashtagRepository hashtagRepo;
+    private TEVBlogStatsController statsController;
+
+    /**
+     * Versions of each blog's data, for cached API responses
+     */
+    @Autowired
+    private DataVersions dataVersions;
+
+    /**
+     * Version of the hashtag data; incremented every time a hashtag is created,
+     * updated, or deleted, so that cached results can tell when they're stale
+     */
+    private final AtomicLong hashtagVersion = new AtomicLong();
+
+    /**
+     * Cached results of {@link #getAllHashtags()}, along with the version of the
+     * data they were built from
+     */
+    private volatile TagCloud cachedTagCloud;
+
+    /**
+     * Prefix index used for autocomplete suggestions
+     */
+    private final HashtagSuggestionIndex suggestionIndex = new HashtagSuggestionIndex();
+
+    /**
+     * Largest number of suggestions that can be requested at once
+     */
+    private static final int MAX_SUGGESTIONS = 50;
 
     /**
      * GET request for listing <i>all</i> hashtags in the system, regardless of
-     * blog. Because hashtags might be duplicated, logic is included to combine them
-     * together.
+     * blog. Hashtags duplicated across blogs are combined by the DB, and the
+     * combined list is cached until the next time hashtag data changes.
      *
      * @return List of hashtags with their counts.
      */
     @GetMapping("/hashtags")
     public List<Hashtag> getAllHashtags() {
-        final List<Hashtag> allHT = hashtagRepo.findAll();
-        final HashMap<String, Hashtag> filtered = new HashMap<String, Hashtag>();
-
-        for (Hashtag h : allHT) {
-            if (filtered.containsKey(h.getTag())) {
-                final Hashtag current = filtered.get(h.getTag());
-                current.setCount(current.getCount() + h.getCount());
-                current.setBlog(current.getBlog() + BLOG_SEPARATOR + h.getBlog());
-            } else {
-                filtered.put(h.getTag(), h);
+        final long version = hashtagVersion.get();
+        TagCloud tagCloud = cachedTagCloud;
+
+        if (tagCloud == null || tagCloud.version != version) {
+            final List<Hashtag> tags = new ArrayList<Hashtag>();
+            for (Object[] row : hashtagRepo.aggregateAcrossBlogs()) {
+                final Hashtag ht = new Hashtag((String) row[1], ((Number) row[2]).intValue(), (String) row[3]);
+                ht.setId(((Number) row[0]).longValue());
+                tags.add(ht);
             }
+            tagCloud = new TagCloud(version, Collections.unmodifiableList(tags));
+            cachedTagCloud = tagCloud;
         }
 
-        return new ArrayList<Hashtag>(filtered.values());
+        return tagCloud.tags;
+    }
+
+    /**
+     * Returns the current version of the hashtag data, which changes every time a
+     * hashtag is created, updated, or deleted.
+     *
+     * @return Hashtag data version
+     */
+    public long getHashtagVersion() {
+        return hashtagVersion.get();
     }
 
     /**
@@ -84,6 +127,31 @@ public class TEVHashtagController {
         return hashtagRepo.findByBlog(blog);
     }
 
+    /**
+     * GET request for autocomplete suggestions: returns the most-used hashtags
+     * starting with the given prefix (ignoring case), either for a given blog or
+     * across all blogs
+     *
+     * @param blog     Blog for which tags should be suggested
+     * @param prefix   Text typed so far
+     * @param limit    Maximum number of suggestions to return
+     * @param allBlogs Whether tags from all blogs should be suggested, instead of
+     *                 just the given blog
+     * @return {@link java.util.List List} of tag names, most-used first
+     */
+    @GetMapping("/hashtags/{blog}/suggest")
+    public List<String> suggestHashtagsForBlog(@PathVariable("blog") final String blog,
+            @RequestParam(name = "prefix", defaultValue = "") final String prefix,
+            @RequestParam(name = "limit", defaultValue = "10") final int limit,
+            @RequestParam(name = "allBlogs", defaultValue = "false") final boolean allBlogs) {
+        final int cappedLimit = Math.min(limit, MAX_SUGGESTIONS);
+
+        if (allBlogs) {
+            return suggestionIndex.suggestForAllBlogs(prefix, cappedLimit, () -> getAllHashtags());
+        }
+        return suggestionIndex.suggestForBlog(blog, prefix, cappedLimit, () -> hashtagRepo.findByBlog(blog));
+    }
+
     /**
      * POST request to insert a new hashtag into the system for a given blog. If it
      * already exists the existing hashtag is simply returned (no error is thrown).
@@ -100,6 +168,9 @@ public class TEVHashtagController {
         if (existingTag != null) {
             existingTag.setCount(existingTag.getCount() + 1);
             existingTag = hashtagRepo.save(existingTag);
+            hashtagVersion.incrementAndGet();
+            dataVersions.dataChanged(blog);
+            suggestionIndex.tagAdded(blog, hashtag);
             return existingTag;
         }
 
@@ -109,6 +180,10 @@ public class TEVHashtagController {
         newTag.setCount(1);
 
         newTag = hashtagRepo.save(newTag);
+        hashtagVersion.incrementAndGet();
+        dataVersions.dataChanged(blog);
+        suggestionIndex.tagAdded(blog, hashtag);
+        statsController.markStale(blog);
         return newTag;
     }
 
@@ -148,6 +223,10 @@ public class TEVHashtagController {
     @DeleteMapping("/hashtags/forBlog/{blog}")
     public ResponseEntity<?> deleteAllHashtagsForBlog(@PathVariable("blog") final String blog) {
         hashtagRepo.deleteByBlog(blog);
+        hashtagVersion.incrementAndGet();
+        dataVersions.dataChanged(blog);
+        suggestionIndex.clearBlog(blog);
+        statsController.markStale(blog);
 
         return ResponseEntity.ok().build();
     }
@@ -167,6 +246,11 @@ public class TEVHashtagController {
         }
 
         hashtagRepo.delete(htToDelete.get());
+        hashtagVersion.incrementAndGet();
+        dataVersions.dataChanged(htToDelete.get().getBlog());
+        suggestionIndex.tagRemoved(htToDelete.get().getBlog(), htToDelete.get().getTag(),
+                htToDelete.get().getCount());
+        statsController.markStale(htToDelete.get().getBlog());
 
         return ResponseEntity.ok().build();
     }
@@ -177,5 +261,37 @@ public class TEVHashtagController {
      */
     public void deleteAllHTs() {
         hashtagRepo.deleteAll();
+        hashtagVersion.incrementAndGet();
+        dataVersions.allDataChanged();
+        suggestionIndex.clearAll();
+        statsController.markAllStale();
+    }
+
+    /**
+     * Immutable holder for a cached list of hashtags, and the version of the
+     * hashtag data it was built from
+     */
+    private static final class TagCloud {
+
+        /**
+         * Version of the hashtag data the list was built from
+         */
+        private final long version;
+
+        /**
+         * The aggregated list of hashtags
+         */
+        private final List<Hashtag> tags;
+
+        /**
+         * Constructor
+         *
+         * @param version Version of the hashtag data the list was built from
+         * @param tags    The aggregated list of hashtags
+         */
+        private TagCloud(final long version, final List<Hashtag> tags) {
+            this.version = version;
+            this.tags = tags;
+        }
     }
 }
@@ -3,7 +3,10 @@ package com.tiyb.tev.controller;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +22,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.tiyb.tev.datamodel.Metadata;
+import com.tiyb.tev.datamodel.helpers.CacheStats;
 import com.tiyb.tev.datamodel.helpers.StaticListData;
 import com.tiyb.tev.exception.NoMetadataFoundException;
 import com.tiyb.tev.exception.ResourceNotFoundException;
@@ -32,6 +36,15 @@ import com.tiyb.tev.repository.MetadataRepository;
  * applied; not having a theme is a fatal bug for the application, so extra care
  * is taken to guard agaisnt that eventuality.
  *
+ * <p>
+ * Metadata is read on nearly every page render, but rarely changes, and there
+ * are only ever a handful of blogs, so all of it is cached in memory the first
+ * time it's needed. Every change goes through this controller, which writes it
+ * to the DB and then to the cache, so reads never need to go back to the DB.
+ * The cache holds its own copies of the objects, and hands out copies, since
+ * callers are free to modify what they're given.
+ * </p>
+ *
  * @author tiyb
  */
 @RestController
@@ -64,6 +77,38 @@ public class TEVMetadataRestController {
     @Autowired
     private TEVConvoRestController convoController;
 
+    /**
+     * Cached Metadata, by ID (kept sorted, so that MDs are listed in the same
+     * order the DB would return them)
+     */
+    private final Map<Integer, Metadata> cacheById = new ConcurrentSkipListMap<Integer, Metadata>();
+
+    /**
+     * IDs of cached Metadata, by blog name
+     */
+    private final Map<String, Integer> cachedIdsByBlog = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Whether the cache has been loaded from the DB
+     */
+    private volatile boolean cacheLoaded = false;
+
+    /**
+     * Held while the cache is being loaded, or while Metadata is being written
+     * to the DB and the cache, so that the two are updated in the same order
+     */
+    private final Object cacheLock = new Object();
+
+    /**
+     * Number of reads answered from the cache
+     */
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * Number of reads for which the cache had to be loaded from the DB
+     */
+    private final AtomicLong cacheMisses = new AtomicLong();
+
     /**
      * GET to return all Types stored in the system. This implementation is
      * <i>very</i> hard-coded, because there are only a specific number of types
@@ -106,20 +151,18 @@ public class TEVMetadataRestController {
      */
     @GetMapping("/metadata")
     public List<Metadata> getAllMetadata() {
-        final List<Metadata> list = metadataRepo.findAll();
-
-        if (list.size() < 1) {
-            Metadata md = Metadata.newDefaultMetadata();
-            md = metadataRepo.save(md);
-            list.add(md);
-            return list;
-        }
+        final List<Metadata> list = new ArrayList<Metadata>();
 
-        for (Metadata md : list) {
-            if (!Metadata.THEMES.contains(md.getTheme())) {
-                md.setTheme(Metadata.DEFAULT_THEME);
+        if (loadCache().isEmpty()) {
+            synchronized (cacheLock) {
+                if (cacheById.isEmpty()) {
+                    saveAndCache(Metadata.newDefaultMetadata());
+                }
             }
         }
+        for (Metadata md : cacheById.values()) {
+            list.add(copyOf(md));
+        }
 
         return list;
     }
@@ -133,18 +176,9 @@ public class TEVMetadataRestController {
      */
     @GetMapping("/metadata/{id}")
     public Metadata getMetadataByID(@PathVariable("id") final Integer id) {
-        final Optional<Metadata> response = metadataRepo.findById(id);
-        if (!response.isPresent()) {
-            return null;
-        }
-
-        final Metadata md = response.get();
-
-        if (!Metadata.THEMES.contains(md.getTheme())) {
-            md.setTheme(Metadata.DEFAULT_THEME);
-        }
+        final Metadata md = loadCache().get(id);
 
-        return md;
+        return md == null ? null : copyOf(md);
     }
 
     /**
@@ -156,17 +190,19 @@ public class TEVMetadataRestController {
      */
     @PutMapping("/metadata/{id}/markAsDefault")
     public Metadata markBlogAsDefault(@PathVariable("id") final Integer id) {
-        final List<Metadata> allMDs = metadataRepo.findAll();
         Metadata response = null;
 
-        for (Metadata md : allMDs) {
-            if (id.equals(md.getId())) {
-                md.setIsDefault(true);
-                metadataRepo.save(md);
-                response = md;
-            } else {
-                md.setIsDefault(false);
-                metadataRepo.save(md);
+        synchronized (cacheLock) {
+            for (Metadata cached : new ArrayList<Metadata>(loadCache().values())) {
+                final boolean isDefault = id.equals(cached.getId());
+                Metadata md = copyOf(cached);
+                if (!Boolean.valueOf(isDefault).equals(md.getIsDefault())) {
+                    md.setIsDefault(isDefault);
+                    md = saveAndCache(md);
+                }
+                if (isDefault) {
+                    response = md;
+                }
             }
         }
 
@@ -182,7 +218,13 @@ public class TEVMetadataRestController {
      */
     @GetMapping("/metadata/default")
     public Metadata getDefaultMetadata() {
-        return metadataRepo.findByIsDefaultTrue();
+        for (Metadata md : loadCache().values()) {
+            if (Boolean.TRUE.equals(md.getIsDefault())) {
+                return copyOf(md);
+            }
+        }
+
+        return null;
     }
 
     /**
@@ -209,7 +251,9 @@ public class TEVMetadataRestController {
      */
     @GetMapping("/metadata/byBlog/{blog}")
     public Metadata getMetadataForBlog(@PathVariable("blog") final String blog) {
-        return metadataRepo.findByBlog(blog);
+        final Metadata md = cachedForBlog(blog);
+
+        return md == null ? null : copyOf(md);
     }
 
     /**
@@ -223,20 +267,24 @@ public class TEVMetadataRestController {
      */
     @GetMapping("/metadata/byBlog/{blog}/orDefault")
     public Metadata getMetadataForBlogOrDefault(@PathVariable("blog") final String blog) {
-        final List<Metadata> all = metadataRepo.findAll();
+        final Metadata md = cachedForBlog(blog);
+        if (md != null) {
+            return copyOf(md);
+        }
 
-        for (Metadata md : all) {
-            if (blog.equals(md.getBlog())) {
-                return md;
+        synchronized (cacheLock) {
+            final Metadata existing = cachedForBlog(blog);
+            if (existing != null) {
+                return copyOf(existing);
             }
-        }
 
-        final Metadata defaultMD = Metadata.newDefaultMetadata();
-        defaultMD.setBlog(blog);
-        if (all.size() < 1) {
-            defaultMD.setIsDefault(true);
+            final Metadata defaultMD = Metadata.newDefaultMetadata();
+            defaultMD.setBlog(blog);
+            if (cacheById.isEmpty()) {
+                defaultMD.setIsDefault(true);
+            }
+            return saveAndCache(defaultMD);
         }
-        return metadataRepo.save(defaultMD);
     }
 
     /**
@@ -291,7 +339,10 @@ public class TEVMetadataRestController {
         Assert.isTrue(Metadata.THEMES.contains(metadataDetails.getTheme()),
                 "Theme must be one of the pre-defined values");
 
-        return metadataRepo.save(metadataDetails);
+        synchronized (cacheLock) {
+            loadCache();
+            return saveAndCache(metadataDetails);
+        }
     }
 
     /**
@@ -314,20 +365,17 @@ public class TEVMetadataRestController {
      */
     @DeleteMapping("/metadata/{id}")
     public ResponseEntity<?> deleteMetadata(@PathVariable("id") final Integer id) {
-        final Optional<Metadata> omd = metadataRepo.findById(id);
-        if (!omd.isPresent()) {
+        final Metadata md = getMetadataByID(id);
+        if (md == null) {
             logger.error("Unable to find MD with this ID: {}", id);
             throw new ResourceNotFoundException("Metadata", "ID", id);
         }
 
-        List<Metadata> allMDs = getAllMetadata();
-        if (allMDs.size() < 2) {
+        if (cacheById.size() < 2) {
             logger.error("Attempting to delete the only MD left in the system");
             throw new UnableToDeleteMetadataException();
         }
 
-        final Metadata md = omd.get();
-
         convoController.deleteAllConvoMsgsForBlog(md.getBlog());
         convoController.deleteAllConversationsForBlog(md.getBlog());
 
@@ -339,12 +387,15 @@ public class TEVMetadataRestController {
         postController.deleteAllPostsForBlog(md.getBlog());
         postController.getHashtagController().deleteAllHashtagsForBlog(md.getBlog());
 
-        metadataRepo.deleteById(id);
+        synchronized (cacheLock) {
+            metadataRepo.deleteById(id);
+            uncache(id);
+        }
 
-        allMDs = getAllMetadata();
+        final List<Metadata> allMDs = getAllMetadata();
         boolean aDefaultExists = false;
         for (Metadata m : allMDs) {
-            if (m.getIsDefault()) {
+            if (Boolean.TRUE.equals(m.getIsDefault())) {
                 aDefaultExists = true;
             }
         }
@@ -355,12 +406,133 @@ public class TEVMetadataRestController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * GET to report how well the Metadata cache is working
+     *
+     * @return Hit/miss counts, and the number of cached MD objects
+     */
+    @GetMapping("/metadata/cacheStats")
+    public CacheStats getCacheStats() {
+        return new CacheStats(cacheHits.get(), cacheMisses.get(), cacheById.size());
+    }
+
     /**
      * Package-private method to delete all MD objects in the DB. Never used by TEV;
      * only used by JUnit test cases.
      */
     void deleteAllMD() {
-        metadataRepo.deleteAll();
+        synchronized (cacheLock) {
+            metadataRepo.deleteAll();
+            cacheById.clear();
+            cachedIdsByBlog.clear();
+            cacheLoaded = false;
+        }
+    }
+
+    /**
+     * Returns the cached Metadata, loading it from the DB the first time it's
+     * needed, and counting the read as a cache hit or miss
+     *
+     * @return All cached Metadata, by ID; the objects must not be modified or
+     *         handed out
+     */
+    private Map<Integer, Metadata> loadCache() {
+        if (cacheLoaded) {
+            cacheHits.incrementAndGet();
+            return cacheById;
+        }
+
+        synchronized (cacheLock) {
+            if (!cacheLoaded) {
+                cacheMisses.incrementAndGet();
+                for (Metadata md : metadataRepo.findAll()) {
+                    cache(md);
+                }
+                cacheLoaded = true;
+            } else {
+                cacheHits.incrementAndGet();
+            }
+        }
+
+        return cacheById;
+    }
+
+    /**
+     * Returns the cached Metadata for a blog
+     *
+     * @param blog Name of the blog
+     * @return The cached object, which must not be modified or handed out, or
+     *         null if there's no MD for the blog
+     */
+    private Metadata cachedForBlog(final String blog) {
+        final Map<Integer, Metadata> cache = loadCache();
+        if (blog == null) {
+            return null;
+        }
+        final Integer id = cachedIdsByBlog.get(blog);
+
+        return id == null ? null : cache.get(id);
+    }
+
+    /**
+     * Saves Metadata to the DB, and then to the cache. Callers must hold
+     * {@link #cacheLock}.
+     *
+     * @param md The MD to be saved
+     * @return A copy of the saved MD
+     */
+    private Metadata saveAndCache(final Metadata md) {
+        final Metadata saved = metadataRepo.save(md);
+        cache(saved);
+
+        return copyOf(saved);
+    }
+
+    /**
+     * Puts a copy of an MD object in the cache, applying the default theme if it
+     * doesn't have a valid one. Callers must hold {@link #cacheLock}.
+     *
+     * @param md The MD to be cached
+     */
+    private void cache(final Metadata md) {
+        final Metadata copy = copyOf(md);
+        if (!Metadata.THEMES.contains(copy.getTheme())) {
+            copy.setTheme(Metadata.DEFAULT_THEME);
+        }
+
+        final Metadata previous = cacheById.put(copy.getId(), copy);
+        if (previous != null && previous.getBlog() != null && !previous.getBlog().equals(copy.getBlog())) {
+            cachedIdsByBlog.remove(previous.getBlog(), copy.getId());
+        }
+        if (copy.getBlog() != null) {
+            cachedIdsByBlog.put(copy.getBlog(), copy.getId());
+        }
+    }
+
+    /**
+     * Removes an MD object from the cache. Callers must hold {@link #cacheLock}.
+     *
+     * @param id ID of the MD to be removed
+     */
+    private void uncache(final Integer id) {
+        final Metadata previous = cacheById.remove(id);
+        if (previous != null && previous.getBlog() != null) {
+            cachedIdsByBlog.remove(previous.getBlog(), id);
+        }
+    }
+
+    /**
+     * Copies an MD object, so that the cache's copies are never shared with
+     * callers
+     *
+     * @param md The MD to be copied
+     * @return The copy
+     */
+    private static Metadata copyOf(final Metadata md) {
+        final Metadata copy = new Metadata();
+        copy.updateData(md);
+
+        return copy;
     }
 
 }
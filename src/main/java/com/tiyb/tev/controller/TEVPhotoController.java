@@ -1,12 +1,14 @@
 package com.tiyb.tev.controller;
 
-import java.io.BufferedInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import javax.validation.Valid;
 
@@ -23,11 +25,13 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.tiyb.tev.datamodel.Photo;
 import com.tiyb.tev.datamodel.Post;
 import com.tiyb.tev.exception.NoParentPostException;
 import com.tiyb.tev.exception.ResourceNotFoundException;
+import com.tiyb.tev.media.MediaFetcher;
 import com.tiyb.tev.repository.PhotoRepository;
 import com.tiyb.tev.repository.PostRepository;
 
@@ -44,9 +48,9 @@ import com.tiyb.tev.repository.PostRepository;
 public class TEVPhotoController {
 
     /**
-     * Used in buffering operations
+     * How long a request to fix a post's photos waits for the downloads to finish
      */
-    private static final int BYTE_BUFFER_LENGTH = 1024;
+    private static final long FIX_PHOTOS_TIMEOUT_MILLIS = 120000;
 
     private Logger logger = LoggerFactory.getLogger(TEVPhotoController.class);
 
@@ -68,52 +72,83 @@ public class TEVPhotoController {
     @Autowired
     private TEVMetadataRestController mdController;
 
+    /**
+     * Autowired statistics controller
+     */
+    @Autowired
+    private TEVBlogStatsController statsController;
+
+    /**
+     * Queue used for downloading photos
+     */
+    @Autowired
+    private MediaFetcher mediaFetcher;
+
     /**
      * The Tumblr export doesn't always include every image, for some reason. However, in many cases
      * the images referred to in the image URLs from Tumblr's export XML still exist on Tumblr's
      * servers. So, in cases where a post is missing its images, this API can be used to fetch the
      * images from Tumblr's servers (according to their URLs in the XML), download them, and save
      * them to the media directory being used by TEV, using the naming convention Tumblr would have
-     * used, if the images had been included in the export.
+     * used, if the images had been included in the export. The downloads are queued with the
+     * {@link MediaFetcher}, and the response is sent once they've all finished, without tying up a
+     * request thread in the meantime.
      *
-     * @param blog   Not used
+     * @param blog   The blog to which the post belongs
      * @param postId The ID of the post to be "fixed"
-     * @return bool indicating whether the action completed successfully or not.
+     * @return bool indicating whether all of the images were downloaded successfully; false if
+     *         they haven't all been downloaded within {@link #FIX_PHOTOS_TIMEOUT_MILLIS} (though
+     *         the downloads will continue in the background)
      */
     @GetMapping("/posts/{blog}/{id}/fixPhotos")
-    public Boolean fixPhotosForBlogForPost(@PathVariable("blog") final String blog,
+    public DeferredResult<Boolean> fixPhotosForBlogForPost(@PathVariable("blog") final String blog,
             @PathVariable("id") final String postId) {
-        String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
-        if (imageDirectory == null || imageDirectory.equals(StringUtils.EMPTY)) {
-            return false;
-        }
+        final DeferredResult<Boolean> result = new DeferredResult<Boolean>(FIX_PHOTOS_TIMEOUT_MILLIS, Boolean.FALSE);
+        downloadPhotosForBlogForPost(blog, postId).thenAccept(result::setResult);
+        return result;
+    }
 
-        if (imageDirectory.charAt(imageDirectory.length() - 1) != '/') {
-            imageDirectory = imageDirectory.concat("/");
+    /**
+     * Queues the downloads of a post's images with the {@link MediaFetcher}, as described in
+     * {@link #fixPhotosForBlogForPost(String, String) fixPhotosForBlogForPost()}. Not exposed as a
+     * REST API; used by callers that need to wait for the images to be on disk before carrying on.
+     *
+     * @param blog   The blog to which the post belongs
+     * @param postId The ID of the post to be "fixed"
+     * @return Future completed once all of the downloads have finished, with true if all of the
+     *         images were downloaded successfully, or false if any failed or the blog has no media
+     *         directory
+     */
+    public CompletableFuture<Boolean> downloadPhotosForBlogForPost(final String blog, final String postId) {
+        final String imageDirectory = mdController.getMetadataForBlog(blog).getBaseMediaPath();
+        if (imageDirectory == null || imageDirectory.equals(StringUtils.EMPTY)) {
+            return CompletableFuture.completedFuture(false);
         }
 
+        final Path imagePath = Paths.get(imageDirectory);
         final List<Photo> photos = photoRepo.findByPostIdOrderByOffset(postId);
-        boolean response = true;
-
+        final List<CompletableFuture<Path>> downloads = new ArrayList<CompletableFuture<Path>>();
         for (int i = 0; i < photos.size(); i++) {
             final Photo photo = photos.get(i);
-            final String url = photo.getUrl1280();
-            final String ext = url.substring(url.lastIndexOf('.'));
-            try {
-                final BufferedInputStream in = new BufferedInputStream(new URL(url).openStream());
-                final FileOutputStream out =
-                        new FileOutputStream(String.format("%s%s_%d%s", imageDirectory, photo.getPostId(), i, ext));
-                final byte[] dataBuffer = new byte[BYTE_BUFFER_LENGTH];
-                int bytesRead;
-                while ((bytesRead = in.read(dataBuffer, 0, BYTE_BUFFER_LENGTH)) != -1) {
-                    out.write(dataBuffer, 0, bytesRead);
-                }
-                out.close();
-            } catch (IOException e) {
-                response = false;
-            }
+            downloads.add(mediaFetcher.fetch(photo.getUrl1280(), imagePath.resolve(getPhotoFileName(photo, i))));
         }
-        return response;
+
+        return CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[downloads.size()]))
+                .handle((done, error) -> error == null);
+    }
+
+    /**
+     * Returns the name under which a photo is stored in a media directory, following Tumblr's
+     * convention: <code>{postId}_{index}.{ext}</code>, with the extension taken from the photo's
+     * URL
+     *
+     * @param photo The photo
+     * @param index Index of the photo within its post, in offset order
+     * @return The file name
+     */
+    public static String getPhotoFileName(final Photo photo, final int index) {
+        final String url = photo.getUrl1280();
+        return String.format("%s_%d%s", photo.getPostId(), index, url.substring(url.lastIndexOf('.')));
     }
 
     /**
@@ -153,7 +188,10 @@ public class TEVPhotoController {
         } else {
             assert blog.equals(post.get().getTumblelog());
         }
-        return photoRepo.save(photo);
+        final Photo savedPhoto = photoRepo.save(photo);
+        statsController.markStale(blog);
+
+        return savedPhoto;
     }
 
     /**
@@ -169,6 +207,25 @@ public class TEVPhotoController {
         return photoRepo.findByPostId(postId);
     }
 
+    /**
+     * Returns the photos for a set of posts in a single query, for bulk operations such as exports.
+     * Not exposed as a REST API.
+     *
+     * @param blog    Not used
+     * @param postIds IDs of the posts for which photos should be returned
+     * @return Map of post ID to that post's photos, in offset order (so their indexes match
+     *         {@link #getPhotoFileName(Photo, int)}); posts without photos are not included
+     */
+    public Map<String, List<Photo>> getPhotosForBlogByIds(final String blog, final Collection<String> postIds) {
+        final Map<String, List<Photo>> photos = new HashMap<String, List<Photo>>();
+
+        for (Photo photo : photoRepo.findByPostIdInOrderByPostIdAscOffsetAscIdAsc(postIds)) {
+            photos.computeIfAbsent(photo.getPostId(), k -> new ArrayList<Photo>()).add(photo);
+        }
+
+        return photos;
+    }
+
     /**
      * PUT to update a Photo
      *
@@ -203,6 +260,7 @@ public class TEVPhotoController {
         for (Photo p : photos) {
             photoRepo.delete(p);
         }
+        statsController.markStale(blog);
 
         return ResponseEntity.ok().build();
     }
@@ -223,6 +281,7 @@ public class TEVPhotoController {
                 photoRepo.findById(photoID).orElseThrow(() -> new ResourceNotFoundException("Photo", "id", photoID));
 
         photoRepo.delete(photo);
+        statsController.markStale(blog);
 
         return ResponseEntity.ok().build();
     }
@@ -1,12 +1,24 @@
 package com.tiyb.tev.controller;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
+import javax.annotation.PostConstruct;
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -16,12 +28,28 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.tiyb.tev.controller.helper.DataVersions;
+import com.tiyb.tev.controller.helper.PostChangeLog;
+import com.tiyb.tev.controller.helper.PostFlagBuffer;
+import com.tiyb.tev.controller.helper.PostTimelineMerger;
+import com.tiyb.tev.datamodel.Answer;
+import com.tiyb.tev.datamodel.Link;
+import com.tiyb.tev.datamodel.Metadata;
+import com.tiyb.tev.datamodel.Photo;
 import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.datamodel.Regular;
+import com.tiyb.tev.datamodel.Video;
+import com.tiyb.tev.datamodel.helpers.PostChanges;
+import com.tiyb.tev.datamodel.helpers.PostTimelinePage;
+import com.tiyb.tev.datamodel.helpers.PostViewerData;
 import com.tiyb.tev.exception.BlogPostMismatchException;
+import com.tiyb.tev.exception.InvalidTypeException;
 import com.tiyb.tev.exception.ResourceNotFoundException;
 import com.tiyb.tev.repository.PostRepository;
+import com.tiyb.tev.xml.helper.ExportFilter;
 
 /**
  * <p>
@@ -42,6 +70,51 @@ import com.tiyb.tev.repository.PostRepository;
 @RequestMapping("/api")
 public class TEVPostRestController {
 
+    /**
+     * Column in the results of {@link PostRepository#findPostWithContent(String)} holding the Post
+     */
+    private static final int VIEWER_COL_POST = 0;
+
+    /**
+     * Column in the results of {@link PostRepository#findPostWithContent(String)} holding the
+     * Regular content
+     */
+    private static final int VIEWER_COL_REGULAR = 1;
+
+    /**
+     * Column in the results of {@link PostRepository#findPostWithContent(String)} holding the
+     * Answer content
+     */
+    private static final int VIEWER_COL_ANSWER = 2;
+
+    /**
+     * Column in the results of {@link PostRepository#findPostWithContent(String)} holding the Link
+     * content
+     */
+    private static final int VIEWER_COL_LINK = 3;
+
+    /**
+     * Column in the results of {@link PostRepository#findPostWithContent(String)} holding the
+     * Video content
+     */
+    private static final int VIEWER_COL_VIDEO = 4;
+
+    /**
+     * Column in the results of {@link PostRepository#findPostWithContent(String)} holding a Photo
+     */
+    private static final int VIEWER_COL_PHOTO = 5;
+
+    /**
+     * Most post IDs passed to a single statement; larger lists are split, to keep the
+     * <code>IN</code> lists a reasonable size
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 1000;
+
+    /**
+     * Largest number of posts returned in a single page of the unified timeline or a date range
+     */
+    private static final int MAX_TIMELINE_PAGE_SIZE = 500;
+
     private Logger logger = LoggerFactory.getLogger(TEVPostRestController.class);
 
     /**
@@ -92,6 +165,37 @@ public class TEVPostRestController {
     @Autowired
     private TEVHashtagController hashtagController;
 
+    /**
+     * REST controller for the per-blog statistics snapshot
+     */
+    @Autowired
+    private TEVBlogStatsController statsController;
+
+    /**
+     * Versions of each blog's data, for cached API responses
+     */
+    @Autowired
+    private DataVersions dataVersions;
+
+    /**
+     * Feed of changes to each blog's posts, for clients updating the posts they're showing
+     */
+    private final PostChangeLog changeLog = new PostChangeLog();
+
+    /**
+     * Write-behind buffer for the read and favourite flags
+     */
+    @Autowired
+    private PostFlagBuffer flagBuffer;
+
+    /**
+     * Registers this controller as the writer for the flag buffer's batches
+     */
+    @PostConstruct
+    public void registerFlagWriter() {
+        flagBuffer.setWriter(this::writeFlags);
+    }
+
     /**
      * GET request for listing all posts for a given blog
      *
@@ -100,7 +204,190 @@ public class TEVPostRestController {
      */
     @GetMapping("/posts/{blog}")
     public List<Post> getAllPostsForBlog(@PathVariable("blog") final String blog) {
-        return postRepo.findByTumblelog(blog);
+        return flagBuffer.apply(postRepo.findByTumblelog(blog));
+    }
+
+    /**
+     * GET request for the posts in a blog that have changed since a given version, so that a
+     * client can update the posts it's showing instead of reloading all of them. Without a
+     * <code>since</code> version, only the current version is returned; clients should get it
+     * <i>before</i> loading the blog's posts.
+     *
+     * @param blog  Blog for which changes should be retrieved
+     * @param since Version returned by the client's previous call
+     * @return The posts that were created or updated, and the IDs of those that were deleted, or
+     *         an indication that the client has to reload everything
+     */
+    @GetMapping("/posts/{blog}/changes")
+    public PostChanges getPostChangesForBlog(@PathVariable("blog") final String blog,
+            @RequestParam(name = "since", required = false) final Long since) {
+        final PostChangeLog.Changes changes = changeLog.changesSince(blog, since);
+        final PostChanges response = new PostChanges();
+        response.setVersion(changes.getVersion());
+        response.setFullReload(changes.isFullReload());
+        response.getDeletedIds().addAll(changes.getDeletedIds());
+
+        if (!changes.getChangedIds().isEmpty()) {
+            final Set<String> missingIds = new HashSet<String>(changes.getChangedIds());
+            for (List<String> ids : chunksOf(changes.getChangedIds())) {
+                for (Post post : flagBuffer.apply(postRepo.findByTumblelogAndIdIn(blog, ids))) {
+                    response.getPosts().add(post);
+                    missingIds.remove(post.getId());
+                }
+            }
+            // deleted since the changes were collected
+            response.getDeletedIds().addAll(missingIds);
+        }
+
+        return response;
+    }
+
+    /**
+     * Splits a list of post IDs into lists of at most {@link #MAX_IDS_PER_STATEMENT} IDs
+     *
+     * @param postIds The IDs to be split
+     * @return Views onto the original list
+     */
+    static List<List<String>> chunksOf(final List<String> postIds) {
+        final List<List<String>> chunks = new ArrayList<List<String>>();
+        for (int start = 0; start < postIds.size(); start += MAX_IDS_PER_STATEMENT) {
+            chunks.add(postIds.subList(start, Math.min(postIds.size(), start + MAX_IDS_PER_STATEMENT)));
+        }
+
+        return chunks;
+    }
+
+    /**
+     * <p>
+     * GET request for one page of a unified timeline of several blogs' posts, newest first, so
+     * that posts from all of a user's blogs can be read together without loading every blog's
+     * posts. The blogs are merged by {@link PostTimelineMerger}, which only reads as many of each
+     * blog's posts as are needed to fill the page.
+     * </p>
+     *
+     * <p>
+     * The next page is requested by passing the timestamp and ID of the last post of the previous
+     * page as <code>beforeTimestamp</code> and <code>beforeId</code>. A <code>beforeTimestamp</code>
+     * on its own starts the timeline just before that time, and <code>sinceTimestamp</code> ends
+     * it, so a range of time (e.g. a month) can be read a page at a time. Posts without a
+     * timestamp aren't included.
+     * </p>
+     *
+     * @param blogs           Blogs to include; all blogs if not specified
+     * @param beforeTimestamp Timestamp of the last post of the previous page, or the Unix time
+     *                        before which the timeline starts
+     * @param beforeId        ID of the last post of the previous page
+     * @param sinceTimestamp  Earliest Unix time to include
+     * @param size            Number of posts in the page
+     * @return The page of posts, newest first
+     */
+    @GetMapping("/timeline")
+    public PostTimelinePage getTimeline(@RequestParam(name = "blogs", required = false) final List<String> blogs,
+            @RequestParam(name = "beforeTimestamp", required = false) final Long beforeTimestamp,
+            @RequestParam(name = "beforeId", required = false) final String beforeId,
+            @RequestParam(name = "sinceTimestamp", required = false) final Long sinceTimestamp,
+            @RequestParam(name = "size", defaultValue = "100") final int size) {
+        final int pageSize = Math.min(Math.max(size, 1), MAX_TIMELINE_PAGE_SIZE);
+        final Set<String> timelineBlogs = new LinkedHashSet<String>();
+        if (blogs == null || blogs.isEmpty()) {
+            for (Metadata md : mdController.getAllMetadata()) {
+                timelineBlogs.add(md.getBlog());
+            }
+        } else {
+            timelineBlogs.addAll(blogs);
+        }
+
+        final long since = sinceTimestamp == null ? Long.MIN_VALUE : sinceTimestamp;
+        final PostTimelineMerger merger = new PostTimelineMerger(
+                (blog, timestamp, id, fetchSize) -> postRepo.findTimelinePage(blog, since, timestamp, id,
+                        PageRequest.of(0, fetchSize)));
+        final List<Post> posts = merger.merge(timelineBlogs, beforeTimestamp == null ? Long.MAX_VALUE : beforeTimestamp,
+                beforeId == null ? "" : beforeId, pageSize + 1);
+
+        final PostTimelinePage page = new PostTimelinePage();
+        page.setHasMore(posts.size() > pageSize);
+        page.setPosts(flagBuffer.apply(new ArrayList<Post>(posts.subList(0, Math.min(pageSize, posts.size())))));
+
+        return page;
+    }
+
+    /**
+     * <p>
+     * GET request for one page of a blog's posts within a range of time, newest first, optionally
+     * restricted to a post type, a read status, and a hashtag, so that a large archive can be
+     * navigated by date without loading all of it. The type, read status and date criteria are
+     * applied by the DB, using the index on (blog, timestamp, ID); hashtags are stored as a
+     * comma-separated LOB, so (as with exports) they're checked once the posts are loaded.
+     * </p>
+     *
+     * <p>
+     * The next page is requested by passing the timestamp and ID of the last post of the previous
+     * page as <code>beforeTimestamp</code> and <code>beforeId</code>. Posts without a timestamp
+     * aren't included.
+     * </p>
+     *
+     * @param blog            Blog for which posts should be returned
+     * @param from            Earliest Unix timestamp to include
+     * @param to              Latest Unix timestamp to include
+     * @param type            Post type to include
+     * @param isRead          Read status to include
+     * @param tag             Hashtag the posts must have (case-insensitive)
+     * @param beforeTimestamp Timestamp of the last post of the previous page
+     * @param beforeId        ID of the last post of the previous page
+     * @param size            Number of posts in the page
+     * @return The page of posts, newest first
+     */
+    @GetMapping("/posts/{blog}/range")
+    public PostTimelinePage getPostsForBlogInRange(@PathVariable("blog") final String blog,
+            @RequestParam(name = "from", required = false) final Long from,
+            @RequestParam(name = "to", required = false) final Long to,
+            @RequestParam(name = "type", required = false) final String type,
+            @RequestParam(name = "isRead", required = false) final Boolean isRead,
+            @RequestParam(name = "tag", required = false) final String tag,
+            @RequestParam(name = "beforeTimestamp", required = false) final Long beforeTimestamp,
+            @RequestParam(name = "beforeId", required = false) final String beforeId,
+            @RequestParam(name = "size", defaultValue = "100") final int size) {
+        final List<String> allTypeNames = mdController.getAllTypes();
+        if (type != null && !TEVMetadataRestController.isValidType(type, allTypeNames)) {
+            logger.error("Invalid type name: {}", type);
+            throw new InvalidTypeException();
+        }
+        final List<String> types = type == null ? allTypeNames : Collections.singletonList(type);
+        final List<Boolean> readStates =
+                isRead == null ? Arrays.asList(true, false) : Collections.singletonList(isRead);
+        if (isRead != null) {
+            flagBuffer.flush();
+        }
+
+        final int pageSize = Math.min(Math.max(size, 1), MAX_TIMELINE_PAGE_SIZE);
+        final ExportFilter tagFilter = new ExportFilter(Optional.empty(), Optional.ofNullable(tag), Optional.empty(),
+                Optional.empty());
+        final List<Post> posts = new ArrayList<Post>();
+        final long earliest = from == null ? Long.MIN_VALUE : from;
+        final long latest = to == null ? Long.MAX_VALUE : to;
+        long timestamp = beforeTimestamp == null ? Long.MAX_VALUE : beforeTimestamp;
+        String id = beforeId == null ? "" : beforeId;
+        while (posts.size() <= pageSize) {
+            final List<Post> candidates = postRepo.findRangePage(blog, earliest, latest, types, readStates, timestamp,
+                    id, PageRequest.of(0, pageSize + 1));
+            for (Post post : candidates) {
+                if (tagFilter.matchesTag(post)) {
+                    posts.add(post);
+                }
+            }
+            if (candidates.size() <= pageSize) {
+                break;
+            }
+            final Post last = candidates.get(candidates.size() - 1);
+            timestamp = last.getUnixtimestamp();
+            id = last.getId();
+        }
+
+        final PostTimelinePage page = new PostTimelinePage();
+        page.setHasMore(posts.size() > pageSize);
+        page.setPosts(flagBuffer.apply(new ArrayList<Post>(posts.subList(0, Math.min(pageSize, posts.size())))));
+
+        return page;
     }
 
     /**
@@ -117,7 +404,13 @@ public class TEVPostRestController {
             logger.error("Post blog and API blog don't match; post blog={}, API blog={}", post.getTumblelog(), blog);
             throw new BlogPostMismatchException();
         }
-        return postRepo.save(post);
+        flagBuffer.discard(post.getId());
+        final Post savedPost = postRepo.save(post);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
+        changeLog.postChanged(blog, savedPost.getId());
+
+        return savedPost;
     }
 
     /**
@@ -129,7 +422,89 @@ public class TEVPostRestController {
      */
     @GetMapping("/posts/{blog}/{id}")
     public Post getPostForBlogById(@PathVariable("blog") final String blog, @PathVariable("id") final String postId) {
-        return postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post", "id", postId));
+        final Post post =
+                postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post", "id", postId));
+
+        return flagBuffer.apply(post);
+    }
+
+    /**
+     * Returns the posts for a set of IDs in a single query, for bulk operations such as exports. Not
+     * exposed as a REST API.
+     *
+     * @param blog    Name of the blog for the posts (not used)
+     * @param postIds IDs of the posts to be returned
+     * @return Map of post ID to {@link com.tiyb.tev.datamodel.Post Post}; IDs that don't exist in
+     *         the DB are not included
+     */
+    public Map<String, Post> getPostsForBlogByIds(final String blog, final Collection<String> postIds) {
+        final Map<String, Post> posts = new HashMap<String, Post>();
+
+        for (Post post : postRepo.findAllById(postIds)) {
+            posts.put(post.getId(), flagBuffer.apply(post));
+        }
+
+        return posts;
+    }
+
+    /**
+     * Returns the IDs of the posts in a blog matching the type and date criteria of an export
+     * filter, newest first. (The tag criterion is applied by the export itself.) Not exposed as a
+     * REST API.
+     *
+     * @param blog   Blog for which post IDs should be returned
+     * @param filter Criteria for the export
+     * @return List of post IDs
+     */
+    public List<String> getPostIdsForBlogExport(final String blog, final ExportFilter filter) {
+        final List<String> types = filter.getType().isPresent() ? Collections.singletonList(filter.getType().get())
+                : mdController.getAllTypes();
+
+        return postRepo.findIdsForExport(blog, types, filter.getFrom().orElse(Long.MIN_VALUE),
+                filter.getTo().orElse(Long.MAX_VALUE), !filter.hasDateRange());
+    }
+
+    /**
+     * GET to return everything the post viewer needs for a single post: the post, its
+     * type-specific content, and (for photo posts) the photos and the names of the image files on
+     * disk. All of the data is retrieved in a single query, rather than one for the post and
+     * another for the content.
+     *
+     * @param blog   Name of the blog for the post (not used)
+     * @param postId The Post ID
+     * @return The {@link com.tiyb.tev.datamodel.helpers.PostViewerData PostViewerData} for the post
+     */
+    @GetMapping("/posts/{blog}/{id}/viewerData")
+    public PostViewerData getViewerDataForBlogById(@PathVariable("blog") final String blog,
+            @PathVariable("id") final String postId) {
+        final List<Object[]> rows = postRepo.findPostWithContent(postId);
+        if (rows.isEmpty()) {
+            throw new ResourceNotFoundException("Post", "id", postId);
+        }
+
+        final Object[] firstRow = rows.get(0);
+        final PostViewerData data = new PostViewerData();
+        data.setPost(flagBuffer.apply((Post) firstRow[VIEWER_COL_POST]));
+        data.setRegular((Regular) firstRow[VIEWER_COL_REGULAR]);
+        data.setAnswer((Answer) firstRow[VIEWER_COL_ANSWER]);
+        data.setLink((Link) firstRow[VIEWER_COL_LINK]);
+        data.setVideo((Video) firstRow[VIEWER_COL_VIDEO]);
+
+        for (Object[] row : rows) {
+            final Photo photo = (Photo) row[VIEWER_COL_PHOTO];
+            if (photo == null) {
+                continue;
+            }
+            final String url = photo.getUrl1280();
+            final String ext = url.substring(url.lastIndexOf('.'));
+            data.getMediaNames().add(String.format("%s_%d%s", postId, data.getPhotos().size(), ext));
+            data.getPhotos().add(photo);
+        }
+        if (!data.getPhotos().isEmpty()) {
+            data.setCaption(data.getPhotos().get(0).getCaption());
+        }
+
+        return data;
     }
 
     /**
@@ -151,13 +526,26 @@ public class TEVPostRestController {
 
         post.updateData(postDetails);
 
+        flagBuffer.discard(postId);
         final Post updatedPost = postRepo.save(post);
+        statsController.markStale(updatedPost.getTumblelog());
+        dataVersions.dataChanged(updatedPost.getTumblelog());
+        changeLog.postChanged(updatedPost.getTumblelog(), updatedPost.getId());
 
         return updatedPost;
     }
 
     /**
+     * <p>
      * PUT API for marking a post read for a given blog
+     * </p>
+     *
+     * <p>
+     * This is the most frequent write in the application, so the new value goes through the
+     * {@link PostFlagBuffer write-behind buffer} (if it's turned on), and is eventually written by
+     * updating just the flag's column, rather than saving the whole entity (which would rewrite the
+     * post's LOB columns too). The same goes for the unread and favourite APIs.
+     * </p>
      *
      * @param blog   Blog for which this post should be marked read (must be consistent with the
      *               post from the DB)
@@ -166,15 +554,7 @@ public class TEVPostRestController {
      */
     @GetMapping("/posts/{blog}/{id}/markRead")
     public Post markPostReadForBlog(@PathVariable("blog") final String blog, @PathVariable("id") final String postId) {
-        Post post = postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post", "id", postId));
-
-        assert blog.equals(post.getTumblelog());
-
-        post.setIsRead(true);
-
-        post = postRepo.save(post);
-
-        return post;
+        return setFlag(blog, postId, PostFlagBuffer.Flag.READ, true);
     }
 
     /**
@@ -187,15 +567,7 @@ public class TEVPostRestController {
     @GetMapping("/posts/{blog}/{id}/markFavourite")
     public Post markPostFavouriteForBlog(@PathVariable("blog") final String blog,
             @PathVariable("id") final String postId) {
-        Post post = postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post", "id", postId));
-
-        assert blog.equals(post.getTumblelog());
-
-        post.setIsFavourite(true);
-
-        post = postRepo.save(post);
-
-        return post;
+        return setFlag(blog, postId, PostFlagBuffer.Flag.FAVOURITE, true);
     }
 
     /**
@@ -208,15 +580,7 @@ public class TEVPostRestController {
     @GetMapping("/posts/{blog}/{id}/markUnread")
     public Post markPostUnreadForBlog(@PathVariable("blog") final String blog,
             @PathVariable("id") final String postId) {
-        Post post = postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post", "id", postId));
-
-        assert blog.equals(post.getTumblelog());
-
-        post.setIsRead(false);
-
-        post = postRepo.save(post);
-
-        return post;
+        return setFlag(blog, postId, PostFlagBuffer.Flag.READ, false);
     }
 
     /**
@@ -229,15 +593,157 @@ public class TEVPostRestController {
     @GetMapping("/posts/{blog}/{id}/markNonFavourite")
     public Post markPostNonFavouriteForBlog(@PathVariable("blog") final String blog,
             @PathVariable("id") final String postId) {
-        Post post = postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post", "id", postId));
+        return setFlag(blog, postId, PostFlagBuffer.Flag.FAVOURITE, false);
+    }
+
+    /**
+     * POST API for retrieving a set of posts for a given blog in a single request, instead of one
+     * request per post
+     *
+     * @param blog    Blog to which the posts belong
+     * @param postIds IDs of the posts to be retrieved
+     * @return The posts; IDs that don't exist for the blog are ignored
+     */
+    @PostMapping("/posts/{blog}/batch")
+    public List<Post> getPostsForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIds) {
+        final List<Post> posts = new ArrayList<Post>(postIds.size());
+        for (List<String> ids : chunksOf(postIds)) {
+            posts.addAll(flagBuffer.apply(postRepo.findByTumblelogAndIdIn(blog, ids)));
+        }
+
+        return posts;
+    }
+
+    /**
+     * PUT API for marking a set of posts read for a given blog, with a single update per
+     * {@link #MAX_IDS_PER_STATEMENT} posts
+     *
+     * @param blog    Blog to which the posts belong; IDs for other blogs are ignored
+     * @param postIds IDs of the posts to be marked read
+     * @return Number of posts that weren't already read
+     */
+    @Transactional
+    @PutMapping("/posts/{blog}/batch/markRead")
+    public Integer markPostsReadForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIds) {
+        flagBuffer.flush();
+
+        return writeFlags(blog, postIds, PostFlagBuffer.Flag.READ, true);
+    }
+
+    /**
+     * PUT API for marking a set of posts unread for a given blog, with a single update per
+     * {@link #MAX_IDS_PER_STATEMENT} posts
+     *
+     * @param blog    Blog to which the posts belong; IDs for other blogs are ignored
+     * @param postIds IDs of the posts to be marked unread
+     * @return Number of posts that weren't already unread
+     */
+    @Transactional
+    @PutMapping("/posts/{blog}/batch/markUnread")
+    public Integer markPostsUnreadForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIds) {
+        flagBuffer.flush();
+
+        return writeFlags(blog, postIds, PostFlagBuffer.Flag.READ, false);
+    }
+
+    /**
+     * PUT API for marking a set of posts as favourites for a given blog, with a single update per
+     * {@link #MAX_IDS_PER_STATEMENT} posts
+     *
+     * @param blog    Blog to which the posts belong; IDs for other blogs are ignored
+     * @param postIds IDs of the posts to be marked as favourites
+     * @return Number of posts that weren't already favourites
+     */
+    @Transactional
+    @PutMapping("/posts/{blog}/batch/markFavourite")
+    public Integer markPostsFavouriteForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIds) {
+        flagBuffer.flush();
+
+        return writeFlags(blog, postIds, PostFlagBuffer.Flag.FAVOURITE, true);
+    }
+
+    /**
+     * PUT API for marking a set of posts as not favourites for a given blog, with a single update
+     * per {@link #MAX_IDS_PER_STATEMENT} posts
+     *
+     * @param blog    Blog to which the posts belong; IDs for other blogs are ignored
+     * @param postIds IDs of the posts to be marked as not favourites
+     * @return Number of posts that were favourites
+     */
+    @Transactional
+    @PutMapping("/posts/{blog}/batch/markNonFavourite")
+    public Integer markPostsNonFavouriteForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIds) {
+        flagBuffer.flush();
+
+        return writeFlags(blog, postIds, PostFlagBuffer.Flag.FAVOURITE, false);
+    }
+
+    /**
+     * Sets one of a post's flags. If the flag buffer is turned on the value is only buffered, and
+     * applied to the post that's returned; otherwise it's written straight away.
+     *
+     * @param blog   Blog to which the post belongs
+     * @param postId ID of the post
+     * @param flag   The flag to be set
+     * @param value  The new value
+     * @return The modified Post
+     */
+    private Post setFlag(final String blog, final String postId, final PostFlagBuffer.Flag flag,
+            final boolean value) {
+        if (!flagBuffer.isEnabled()) {
+            writeFlags(blog, Collections.singletonList(postId), flag, value);
+            return getPostForBlogById(blog, postId);
+        }
+
+        final Post post = getPostForBlogById(blog, postId);
 
         assert blog.equals(post.getTumblelog());
 
-        post.setIsFavourite(false);
+        flagBuffer.set(blog, postId, flag, value);
+        dataVersions.dataChanged(blog);
+        changeLog.postChanged(blog, postId);
+
+        return flagBuffer.apply(post);
+    }
 
-        post = postRepo.save(post);
+    /**
+     * Writes one of the flags for a set of a blog's posts, with a single update per
+     * {@link #MAX_IDS_PER_STATEMENT} posts that only touches the flag's column (rather than saving
+     * whole entities, which would rewrite the posts' LOB columns too), and updates the stats
+     * accordingly. The updates don't say which posts they changed, so all of the requested posts go
+     * into the change log; clients are sent posts they already had, which is harmless.
+     *
+     * @param blog    Blog to which the posts belong; IDs for other blogs are ignored
+     * @param postIds IDs of the posts
+     * @param flag    The flag to be written
+     * @param value   The new value
+     * @return Number of posts whose flag changed
+     */
+    private int writeFlags(final String blog, final List<String> postIds, final PostFlagBuffer.Flag flag,
+            final boolean value) {
+        int changed = 0;
+        for (List<String> ids : chunksOf(postIds)) {
+            changed += flag == PostFlagBuffer.Flag.READ ? postRepo.updateReadStatus(blog, ids, value)
+                    : postRepo.updateFavouriteStatus(blog, ids, value);
+        }
+
+        final int delta = value ? changed : -changed;
+        if (flag == PostFlagBuffer.Flag.READ) {
+            statsController.adjustReadPosts(blog, delta);
+        } else {
+            statsController.adjustFavouritePosts(blog, delta);
+        }
+        if (changed > 0) {
+            dataVersions.dataChanged(blog);
+            changeLog.postsChanged(blog, postIds);
+        }
 
-        return post;
+        return changed;
     }
 
     /**
@@ -256,7 +762,11 @@ public class TEVPostRestController {
 
         assert blog.equals(post.getTumblelog());
 
+        flagBuffer.discard(postId);
         postRepo.delete(post);
+        statsController.markStale(post.getTumblelog());
+        dataVersions.dataChanged(post.getTumblelog());
+        changeLog.postDeleted(post.getTumblelog(), post.getId());
 
         return ResponseEntity.ok().build();
     }
@@ -271,7 +781,11 @@ public class TEVPostRestController {
     @Transactional
     @DeleteMapping("/posts/{blog}")
     public ResponseEntity<?> deleteAllPostsForBlog(@PathVariable("blog") final String blog) {
+        flagBuffer.discardBlog(blog);
         postRepo.deleteByTumblelog(blog);
+        statsController.markStale(blog);
+        dataVersions.dataChanged(blog);
+        changeLog.allPostsChanged(blog);
 
         return ResponseEntity.ok().build();
     }
@@ -1,6 +1,8 @@
 package com.tiyb.tev.controller;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.validation.Valid;
@@ -98,6 +100,18 @@ public class TEVRegularController {
         return repoAbstractor.getItemById(postId);
     }
 
+    /**
+     * Returns the Regular content for a set of posts in a single query, for bulk operations such as
+     * exports. Not exposed as a REST API.
+     *
+     * @param blog    Not used
+     * @param postIds IDs of the posts for which content should be returned
+     * @return Map of post ID to {@link com.tiyb.tev.datamodel.Regular Regular}
+     */
+    public Map<String, Regular> getRegularsForBlogByIds(final String blog, final Collection<String> postIds) {
+        return repoAbstractor.getItemsByIds(postIds);
+    }
+
     /**
      * PUT to update a "Regular"
      *
@@ -1,11 +1,11 @@
 package com.tiyb.tev.controller;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,6 +27,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.tiyb.tev.datamodel.staging.StagingPost;
 import com.tiyb.tev.exception.InvalidConvoParentException;
 import com.tiyb.tev.exception.ResourceNotFoundException;
+import com.tiyb.tev.media.MediaIndex;
 import com.tiyb.tev.repository.staging.StagingPostRepository;
 
 /**
@@ -60,6 +61,12 @@ public class TEVStagingController {
     @Autowired
     private TEVMetadataRestController mdController;
 
+    /**
+     * Index of the files in media directories
+     */
+    @Autowired
+    private MediaIndex mediaIndex;
+
     /**
      * Message used for an invalid target directory for image export
      */
@@ -91,6 +98,20 @@ public class TEVStagingController {
         return listOfIDs;
     }
 
+    /**
+     * Determines whether a single post has been staged for a given blog, without retrieving the
+     * whole list of staged posts
+     *
+     * @param blog   Blog for which to check
+     * @param postID ID of the post to check
+     * @return Whether the post is in the staging area
+     */
+    @GetMapping("/posts/{blog}/{id}")
+    public Boolean isPostStagedForBlog(@PathVariable("blog") final String blog,
+            @PathVariable("id") final String postID) {
+        return stagingRepo.existsByIdAndBlog(postID, blog);
+    }
+
     /**
      * Adds a "staged post" to the staging area for a given blog
      *
@@ -130,6 +151,46 @@ public class TEVStagingController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Adds a set of posts to the staging area for a given blog, with a single insert per thousand
+     * posts. Posts that don't exist for the blog, or are already staged, are skipped.
+     *
+     * @param blog    The blog for which the posts should be staged
+     * @param postIDs IDs of the posts to be staged
+     * @return Number of posts that were added to the staging area
+     */
+    @Transactional
+    @PostMapping("/posts/{blog}/batch")
+    public Integer createStagedPostsForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIDs) {
+        int staged = 0;
+        for (List<String> ids : TEVPostRestController.chunksOf(postIDs)) {
+            staged += stagingRepo.stagePosts(blog, ids);
+        }
+
+        return staged;
+    }
+
+    /**
+     * Removes a set of posts from the staging area for a given blog, with a single delete per
+     * thousand posts. IDs that aren't staged for the blog are ignored.
+     *
+     * @param blog    Blog for which the posts were staged
+     * @param postIDs IDs of the posts to be removed
+     * @return Number of posts that were removed from the staging area
+     */
+    @Transactional
+    @PostMapping("/posts/{blog}/batch/delete")
+    public Integer deleteStagedPostsForBlog(@PathVariable("blog") final String blog,
+            @RequestBody final List<String> postIDs) {
+        int removed = 0;
+        for (List<String> ids : TEVPostRestController.chunksOf(postIDs)) {
+            removed += stagingRepo.deleteByBlogAndIdIn(blog, ids);
+        }
+
+        return removed;
+    }
+
     /**
      * Removes all "staged posts" from the staging area for a given blog
      *
@@ -151,11 +212,11 @@ public class TEVStagingController {
      *
      * <p>
      * First calls
-     * {@link com.tiyb.tev.controller.TEVPhotoController#fixPhotosForBlogForPost(String, String)
-     * fixPhotosForBlog()} to ensure that the photos for the given post are already on disk, then
-     * copies them to the target directory. Because of this call to <code>fixPhotosForPost()</code>,
-     * there is no sanity check to ensure that the metadata's images directory is correct; that
-     * check is already done by the other method.
+     * {@link com.tiyb.tev.controller.TEVPhotoController#downloadPhotosForBlogForPost(String, String)
+     * downloadPhotosForBlogForPost()}, and waits for it, to ensure that the photos for the given post
+     * are already on disk, then copies them to the target directory. Because of this call to
+     * <code>downloadPhotosForBlogForPost()</code>, there is no sanity check to ensure that the
+     * metadata's images directory is correct; that check is already done by the other method.
      * </p>
      *
      * <p>
@@ -171,7 +232,7 @@ public class TEVStagingController {
     @PostMapping("/posts/{blog}/{id}/exportImages")
     public ResponseEntity<?> exportImagesForBlogForPost(@PathVariable("blog") final String blog,
             @PathVariable("id") final String postID, @RequestBody final String pathForDestination) {
-        if (!postController.getPhotoController().fixPhotosForBlogForPost(blog, postID)) {
+        if (!postController.getPhotoController().downloadPhotosForBlogForPost(blog, postID).join()) {
             return new ResponseEntity<String>("Error getting images for post", null, HttpStatus.FAILED_DEPENDENCY);
         }
 
@@ -180,7 +241,7 @@ public class TEVStagingController {
             imageDirectory = imageDirectory.concat("/");
         }
 
-        final File sourceDirectory = new File(imageDirectory);
+        final Path sourceDirectory = Paths.get(imageDirectory);
 
         final File targetFolder = new File(pathForDestination);
         if (!targetFolder.isDirectory()) {
@@ -189,22 +250,23 @@ public class TEVStagingController {
         }
         final Path destinationPath = targetFolder.toPath();
 
-        final File[] imagesForExport = sourceDirectory.listFiles(new FilenameFilter() {
-
-            @Override
-            public boolean accept(final File dir, final String name) {
-                return name.startsWith(String.valueOf(postID));
-            }
-        });
+        final List<String> imagesForExport;
+        try {
+            imagesForExport = mediaIndex.getFilesForPost(sourceDirectory, postID);
+        } catch (IOException e) {
+            logger.error("Error reading images directory: {}", imageDirectory);
+            logger.debug("Exception for directory error: ", e);
+            return new ResponseEntity<String>(errorCopyingFile, null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
 
-        for (File sourceFile : imagesForExport) {
-            final Path sourcePath = sourceFile.toPath();
+        for (String fileName : imagesForExport) {
+            final Path sourcePath = sourceDirectory.resolve(fileName);
             try {
-                Files.copy(sourcePath, destinationPath.resolve(sourcePath.getFileName()));
+                Files.copy(sourcePath, destinationPath.resolve(fileName));
             } catch (FileAlreadyExistsException e) {
-                logger.warn("File already exists: {}", sourceFile.getName());
+                logger.warn("File already exists: {}", fileName);
             } catch (IOException e) {
-                logger.error("Error copying file to destination: {}", sourceFile.getName());
+                logger.error("Error copying file to destination: {}", fileName);
                 logger.debug("Exception for file error: ", e);
                 return new ResponseEntity<String>(errorCopyingFile, null, HttpStatus.INTERNAL_SERVER_ERROR);
             }
@@ -1,19 +1,21 @@
 package com.tiyb.tev.controller;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
@@ -33,25 +35,28 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import com.tiyb.tev.datamodel.Answer;
+import com.tiyb.tev.controller.helper.ExportRenderPool;
+import com.tiyb.tev.controller.helper.MediaStreamer;
 import com.tiyb.tev.datamodel.Conversation;
-import com.tiyb.tev.datamodel.ConversationMessage;
 import com.tiyb.tev.datamodel.Hashtag;
-import com.tiyb.tev.datamodel.Link;
 import com.tiyb.tev.datamodel.Metadata;
-import com.tiyb.tev.datamodel.Photo;
 import com.tiyb.tev.datamodel.Post;
-import com.tiyb.tev.datamodel.Regular;
-import com.tiyb.tev.datamodel.Video;
+import com.tiyb.tev.datamodel.helpers.ConversationMessagePage;
+import com.tiyb.tev.datamodel.helpers.PostViewerData;
 import com.tiyb.tev.exception.BlogMismatchParsingException;
+import com.tiyb.tev.exception.ExportStreamingException;
 import com.tiyb.tev.exception.InvalidTypeException;
 import com.tiyb.tev.exception.NoMetadataFoundException;
 import com.tiyb.tev.exception.NoStagedPostsException;
 import com.tiyb.tev.exception.ResourceNotFoundException;
 import com.tiyb.tev.exception.XMLParsingException;
+import com.tiyb.tev.media.MediaStore;
+import com.tiyb.tev.media.ThumbnailService;
+import com.tiyb.tev.xml.BlogExportWriter;
 import com.tiyb.tev.xml.BlogXmlReader;
 import com.tiyb.tev.xml.BlogXmlWriter;
 import com.tiyb.tev.xml.ConversationXmlReader;
+import com.tiyb.tev.xml.helper.ExportFilter;
 
 /**
  * Controller for all UI (HTML pages / jQuery-enabled) for the TEV application.
@@ -81,15 +86,20 @@ public class TEVUIController {
      */
     private static final String MODEL_ATTRIBUTE_MESSAGES = "messages";
 
+    /**
+     * Attribute indicating whether a conversation has more messages than were rendered
+     */
+    private static final String MODEL_ATTRIBUTE_HASNEWERMESSAGES = "hasNewerMessages";
+
     /**
      * Standard attribute used for the model
      */
     private static final String MODEL_ATTRIBUTE_CONVERSATION = "conversation";
 
     /**
-     * Number of bytes to use for buffering operations
+     * Number of bytes to buffer when gzipping streamed output
      */
-    private static final int BYTE_BUFFER_LENGTH = 1024;
+    private static final int GZIP_BUFFER_LENGTH = 8192;
 
     /**
      * Standard attribute used for the model
@@ -111,6 +121,11 @@ public class TEVUIController {
      */
     private static final String MODEL_ATTRIBUTE_PHOTOS = "photos";
 
+    /**
+     * Standard attribute used for the model
+     */
+    private static final String MODEL_ATTRIBUTE_THUMBNAILSIZE = "thumbnailSize";
+
     /**
      * Standard attribute used for the model
      */
@@ -146,6 +161,11 @@ public class TEVUIController {
      */
     private static final String MODEL_ATTRIBUTE_POSTIDJS = "postIDJS";
 
+    /**
+     * Standard attribute used for the model
+     */
+    private static final String MODEL_ATTRIBUTE_POSTSTATEJS = "postStateJS";
+
     /**
      * Standard attribute used for the model
      */
@@ -164,16 +184,16 @@ public class TEVUIController {
     private Logger logger = LoggerFactory.getLogger(TEVUIController.class);
 
     /**
-     * REST controller for working with posts
+     * Application version shown in the footer; read from the POM on first use, since it can't
+     * change while the application is running
      */
-    @Autowired
-    private TEVPostRestController postController;
+    private volatile String applicationVersion;
 
     /**
-     * REST controller for working with Regulars
+     * REST controller for working with posts
      */
     @Autowired
-    private TEVRegularController regController;
+    private TEVPostRestController postController;
 
     /**
      * REST controller for working with conversations
@@ -193,6 +213,24 @@ public class TEVUIController {
     @Autowired
     private TEVStagingController stagingController;
 
+    /**
+     * Service used for generating thumbnails of images
+     */
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    /**
+     * Content-addressed media store, through which media is resolved when it's enabled
+     */
+    @Autowired
+    private MediaStore mediaStore;
+
+    /**
+     * Pool on which blog exports are rendered
+     */
+    @Autowired
+    private ExportRenderPool exportRenderPool;
+
     /**
      * Returns the main (or index) page, at either / or /index. Checks first to see whether any
      * metadata has been created; if not, redirects to the settings page.
@@ -375,10 +413,18 @@ public class TEVUIController {
 
     /**
      * <p>
-     * This request is used to populate the viewer. It first determines the correct viewer to show
-     * (Regular, Photo, etc.), populates the {@link org.springframework.ui.Model Model} (since the
-     * pages are rendered by Thymeleaf on the server rather than jQuery on the client), then returns
-     * the correct template to show that type of post.
+     * This request is used to populate the viewer. The post and its type-specific content are
+     * retrieved in a single query (see
+     * {@link com.tiyb.tev.controller.TEVPostRestController#getViewerDataForBlogById(String, String)
+     * getViewerDataForBlogById()}), the {@link org.springframework.ui.Model Model} is populated
+     * (since the pages are rendered by Thymeleaf on the server rather than jQuery on the client),
+     * and then the correct template to show that type of post is returned.
+     * </p>
+     *
+     * <p>
+     * The viewer buttons are rendered as part of the same page, and the state of the post (read,
+     * favourite, staged) is passed to the client as JS, so opening a post doesn't require any
+     * further requests to the server.
      * </p>
      *
      * <p>
@@ -395,60 +441,45 @@ public class TEVUIController {
     @RequestMapping(value = { "/postViewer/{blog}" }, method = RequestMethod.GET)
     public String showViewer(@PathVariable("blog") final String blog, @RequestParam("id") final String postID,
             final Model model) {
-        final Post post = postController.getPostForBlogById(blog, postID);
+        final PostViewerData data = postController.getViewerDataForBlogById(blog, postID);
+        final Post post = data.getPost();
         model.addAttribute(MODEL_ATTRIBUTE_POST, post);
         addBlogNameJSToModel(model, blog);
         addPostIdJSToModel(model, postID);
         model.addAttribute(MODEL_ATTRIBUTE_TAGS, pullOutTagValues(post.getTags()));
-        final List<String> availableTypes = mdController.getAllTypes();
-        String postType = StringUtils.EMPTY;
-
-        for (String type : availableTypes) {
-            if (type.equals(post.getType())) {
-                postType = type;
-                break;
-            }
-        }
+        final boolean isStaged = stagingController.isPostStagedForBlog(blog, postID);
+        model.addAttribute(MODEL_ATTRIBUTE_POSTSTATEJS,
+                String.format("var postState = {isRead: %b, isFavourite: %b, isStaged: %b, type: \"%s\"};",
+                        Boolean.TRUE.equals(post.getIsRead()), Boolean.TRUE.equals(post.getIsFavourite()), isStaged,
+                        post.getType()));
 
-        if (postType == StringUtils.EMPTY) {
+        if (post.getType() == null) {
             logger.error("Post found in DB with an invalid type");
             throw new InvalidTypeException();
         }
 
-        switch (postType) {
+        switch (post.getType()) {
         case Post.POST_TYPE_REGULAR:
-            final Regular reg = regController.getRegularForBlogById(post.getTumblelog(), postID);
-            model.addAttribute(MODEL_ATTRIBUTE_REGULAR, reg);
+            model.addAttribute(MODEL_ATTRIBUTE_REGULAR, data.getRegular());
             return "viewers/regular";
         case Post.POST_TYPE_LINK:
-            final Link ln = postController.getLinkController().getLinkForBlogById(blog, postID);
-            model.addAttribute(MODEL_ATTRIBUTE_LINK, ln);
+            model.addAttribute(MODEL_ATTRIBUTE_LINK, data.getLink());
             return "viewers/link";
         case Post.POST_TYPE_ANSWER:
-            final Answer ans = postController.getAnswerController().getAnswerForBlogById(blog, postID);
-            model.addAttribute(MODEL_ATTRIBUTE_ANSWER, ans);
+            model.addAttribute(MODEL_ATTRIBUTE_ANSWER, data.getAnswer());
             return "viewers/answer";
         case Post.POST_TYPE_PHOTO:
-            final List<String> images = new ArrayList<String>();
-            final List<Photo> photos =
-                    postController.getPhotoController().getPhotoForBlogById(post.getTumblelog(), postID);
-            for (int i = 0; i < photos.size(); i++) {
-                final Photo photo = photos.get(i);
-                final String ext = photo.getUrl1280().substring(photo.getUrl1280().lastIndexOf('.'));
-                images.add(String.format("%s_%d%s", postID, i, ext));
-            }
-            model.addAttribute(MODEL_ATTRIBUTE_PHOTOS, images);
-            model.addAttribute(MODEL_ATTRIBUTE_CAPTION, photos.get(0).getCaption());
+            model.addAttribute(MODEL_ATTRIBUTE_PHOTOS, data.getMediaNames());
+            model.addAttribute(MODEL_ATTRIBUTE_CAPTION, data.getCaption());
+            model.addAttribute(MODEL_ATTRIBUTE_THUMBNAILSIZE, thumbnailService.getViewerSize());
             return "viewers/photo";
         case Post.POST_TYPE_VIDEO:
-            final Video vid = postController.getVideoController().getVideoForBlogById(post.getTumblelog(), postID);
-            model.addAttribute(MODEL_ATTRIBUTE_VIDEO, vid);
+            model.addAttribute(MODEL_ATTRIBUTE_VIDEO, data.getVideo());
             return "viewers/video";
         default:
-            // should never reach here
+            logger.error("Post found in DB with an invalid type");
+            throw new InvalidTypeException();
         }
-
-        return "viewers/".concat(postType);
     }
 
     /**
@@ -511,7 +542,9 @@ public class TEVUIController {
     }
 
     /**
-     * Request used to populate conversation viewer
+     * Request used to populate conversation viewer. Only the first page of messages is rendered;
+     * the rest are loaded by the page as the user scrolls (or jumps to a date), so the viewer opens
+     * just as quickly for a conversation of any length.
      *
      * @param blog            Name of the blog
      * @param participantName Name of the conversation
@@ -526,9 +559,10 @@ public class TEVUIController {
         addBlogNameJSToModel(model, blog);
         final Conversation convo = convoController.getConversationForBlogByParticipant(md.getBlog(), participantName);
         model.addAttribute(MODEL_ATTRIBUTE_CONVERSATION, convo);
-        final List<ConversationMessage> messages =
-                convoController.getConvoMsgForBlogByConvoID(convo.getBlog(), convo.getId());
-        model.addAttribute(MODEL_ATTRIBUTE_MESSAGES, messages);
+        final ConversationMessagePage firstPage = convoController.getConvoMsgPageForBlogByConvoID(convo.getBlog(),
+                convo.getId(), null, null, null, null, null, TEVConvoRestController.DEFAULT_MESSAGE_PAGE_SIZE);
+        model.addAttribute(MODEL_ATTRIBUTE_MESSAGES, firstPage.getMessages());
+        model.addAttribute(MODEL_ATTRIBUTE_HASNEWERMESSAGES, firstPage.getHasNewer());
 
         model.addAttribute(MODEL_ATTRIBUTE_BLOGNAME, blog);
         updateModelWithTheme(model);
@@ -538,59 +572,105 @@ public class TEVUIController {
 
     /**
      * Returns a binary image, for use in the viewer. HTML pages can't directly access local images
-     * or videos, so this has to be done via the "server."
+     * or videos, so this has to be done via the "server." The file is streamed rather than loaded
+     * into memory (see {@link com.tiyb.tev.controller.helper.MediaStreamer MediaStreamer}), and
+     * since images never change once downloaded the browser is told to cache them indefinitely.
+     * Images are resolved through the content-addressed media store, when it's enabled.
      *
      * @param imageName Name of the image to be retrieved
-     * @param model     not used
-     * @return Byte stream of the file, as loaded from the file system
+     * @param request   HTTP Request object
+     * @param response  HTTP Response object, to which the image is written
      */
     @RequestMapping(value = { "/viewerMedia/{imageName}" }, method = RequestMethod.GET, produces = {
             MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_GIF_VALUE, MediaType.IMAGE_PNG_VALUE })
-    public @ResponseBody byte[] getMedia(@PathVariable(MODEL_ATTRIBUTE_IMAGENAME) final String imageName,
-            final Model model) {
-        final String fullName = String.format("%s/%s", mdController.getDefaultMetadata().getBaseMediaPath(), imageName);
+    public void getMedia(@PathVariable(MODEL_ATTRIBUTE_IMAGENAME) final String imageName,
+            final HttpServletRequest request, final HttpServletResponse response) {
+        final Path file = resolveMediaFile(imageName);
+        if (!Files.isRegularFile(file)) {
+            logger.warn("File {} not found.", imageName);
+            throw new ResourceNotFoundException("Image", "name", imageName);
+        }
 
-        final File file = new File(fullName);
         try {
-            return Files.readAllBytes(file.toPath());
+            MediaStreamer.streamFile(file, MediaStreamer.CACHE_CONTROL_IMMUTABLE, request, response);
         } catch (IOException e) {
-            logger.warn("File {} not found.", imageName);
-            throw new ResourceNotFoundException(fullName, fullName, e);
+            logger.debug("Error sending image {}", imageName, e);
+        }
+    }
+
+    /**
+     * Returns a downscaled version of an image, for pages that don't need the full-sized image
+     * (see {@link com.tiyb.tev.media.ThumbnailService ThumbnailService}). Thumbnails are generated
+     * the first time they're requested, and then cached; like full-sized images, they're served
+     * with immutable caching.
+     *
+     * @param size      Maximum width/height of the thumbnail; must be one of the configured sizes
+     * @param imageName Name of the full-sized image
+     * @param request   HTTP Request object
+     * @param response  HTTP Response object, to which the thumbnail is written
+     */
+    @RequestMapping(value = { "/viewerThumbnail/{size}/{imageName}" }, method = RequestMethod.GET)
+    public void getThumbnail(@PathVariable("size") final int size,
+            @PathVariable(MODEL_ATTRIBUTE_IMAGENAME) final String imageName, final HttpServletRequest request,
+            final HttpServletResponse response) {
+        final Path file = resolveMediaFile(imageName);
+        if (!thumbnailService.isSupportedSize(size) || !Files.isRegularFile(file)) {
+            logger.warn("Thumbnail {} of file {} not found.", size, imageName);
+            throw new ResourceNotFoundException("Thumbnail", "name", imageName);
+        }
+
+        try {
+            MediaStreamer.streamFile(thumbnailService.getThumbnail(file, size), MediaStreamer.CACHE_CONTROL_IMMUTABLE,
+                    request, response);
+        } catch (IOException e) {
+            logger.debug("Error sending thumbnail of image {}", imageName, e);
         }
     }
 
     /**
      * Returns a binary video, for use in the viewer. HTML pages can't directly access local images
-     * or videos, so this has to be done via the "server."
+     * or videos, so this has to be done via the "server." Range requests are honoured (see
+     * {@link com.tiyb.tev.controller.helper.MediaStreamer MediaStreamer}), so the browser can seek
+     * within a video without downloading it from the start.
      *
-     * @param response HTTP Response object
-     * @param request  HTTP Request object
+     * @param videoName Name of the video to be retrieved
+     * @param request   HTTP Request object
+     * @param response  HTTP Response object, to which the video is written
      */
     @RequestMapping(value = { "/viewerVideo/{videoName}" }, method = RequestMethod.GET, produces = { "video/mp4" })
-    public void getVideo(final HttpServletResponse response, final HttpServletRequest request) {
-        final String fullName = String.format("%s/%s", mdController.getDefaultMetadata().getBaseMediaPath(),
-                request.getRequestURI().substring(request.getRequestURI().lastIndexOf('/')));
-
-        response.setContentType("video/mp4");
-        response.setHeader("Pragma", "no-cache");
-        response.setHeader("Cache-Control", "no-cache");
+    public void getVideo(@PathVariable("videoName") final String videoName, final HttpServletRequest request,
+            final HttpServletResponse response) {
+        final Path file = resolveMediaFile(videoName);
+        if (!Files.isRegularFile(file)) {
+            logger.warn("File {} not found.", videoName);
+            throw new ResourceNotFoundException("Video", "name", videoName);
+        }
 
-        final File file = new File(fullName);
         try {
-            final FileInputStream in = new FileInputStream(file);
-            final OutputStream out = response.getOutputStream();
-            final byte[] buf = new byte[BYTE_BUFFER_LENGTH];
-            while (in.read(buf) >= 0) {
-                out.write(buf);
-            }
-            in.close();
-            out.close();
+            MediaStreamer.streamFile(file, MediaStreamer.CACHE_CONTROL_ONE_DAY, request, response);
         } catch (IOException e) {
-            logger.error("IO exception reading video file", e);
-            throw new ResourceNotFoundException(fullName, fullName, e);
+            // usually just the browser abandoning one range request in favour of another
+            logger.debug("Error sending video {}", videoName, e);
         }
     }
 
+    /**
+     * Resolves the name of a media file to the file to be served: the copy in the content-addressed
+     * {@link com.tiyb.tev.media.MediaStore MediaStore}, if the store is enabled and the file has
+     * been added to it, otherwise the file in the default blog's media directory
+     *
+     * @param fileName Name of the media file
+     * @return The file (which may not exist)
+     */
+    private Path resolveMediaFile(final String fileName) {
+        final Path stored = mediaStore.resolve(fileName);
+        if (stored != null) {
+            return stored;
+        }
+
+        return Paths.get(String.format("%s/%s", mdController.getDefaultMetadata().getBaseMediaPath(), fileName));
+    }
+
     /**
      * Used to request the XML export, for any posts that have been "staged" for export. Returns the
      * data as a string, with the intent that it is displayed in the browser.
@@ -613,24 +693,137 @@ public class TEVUIController {
             throw new NoStagedPostsException();
         }
 
-        final List<Post> posts = new ArrayList<Post>();
-        for (String id : postIDs) {
-            final Post post = postController.getPostForBlogById(blog, id);
-            posts.add(post);
+        return BlogXmlWriter.getStagedPostXMLForBlog(postIDs, postController, blog);
+    }
+
+    /**
+     * <p>
+     * Used to download the XML export for any posts that have been "staged" for export. Unlike
+     * {@link #getStagedPostsFileForBlog(String, HttpServletResponse, HttpServletRequest)
+     * getStagedPostsFileForBlog()}, the document is never held in memory: it is written straight to
+     * the response as posts are loaded, so the download starts immediately regardless of the size
+     * of the export.
+     * </p>
+     *
+     * <p>
+     * If requested, the document is gzipped on the fly (as a <code>.xml.gz</code> file, rather than
+     * via <code>Content-Encoding</code>, so that the browser saves it compressed). If the export
+     * fails part of the way through, the download fails too (see {@link ExportStreamingException}).
+     * </p>
+     *
+     * @param blog     The blog for which staged posts should be exported
+     * @param gzip     Whether the output should be gzipped
+     * @param response The HTTP Response object, to which the document is written
+     */
+    @RequestMapping(value = { "/stagedPostsExport/{blog}" }, method = RequestMethod.GET)
+    public void streamStagedPostsFileForBlog(@PathVariable("blog") final String blog,
+            @RequestParam(value = "gzip", defaultValue = "false") final boolean gzip,
+            final HttpServletResponse response) {
+        final List<String> postIDs = stagingController.getAllPostsForBlog(blog);
+
+        if (postIDs.size() < 1) {
+            logger.warn("No posts staged for download");
+            throw new NoStagedPostsException();
         }
 
-        return BlogXmlWriter.getStagedPostXMLForBlog(postIDs, postController, blog);
+        response.setHeader("Pragma", "no-cache");
+        response.setHeader("Cache-Control", "no-cache");
+        if (gzip) {
+            response.setContentType("application/gzip");
+            response.setHeader("Content-Disposition", String.format("attachment; filename=\"%s.xml.gz\"", blog));
+        } else {
+            response.setContentType("application/xml");
+            response.setHeader("Content-Disposition", String.format("attachment; filename=\"%s.xml\"", blog));
+        }
+
+        try {
+            final OutputStream out = response.getOutputStream();
+            if (gzip) {
+                final GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_LENGTH);
+                BlogXmlWriter.writeStagedPostXMLForBlog(postIDs, postController, blog, gzipOut);
+                gzipOut.finish();
+            } else {
+                BlogXmlWriter.writeStagedPostXMLForBlog(postIDs, postController, blog, out);
+            }
+            out.flush();
+        } catch (IOException | XMLStreamException e) {
+            logger.error("Error streaming staged posts export", e);
+            throw new ExportStreamingException(e);
+        }
+    }
+
+    /**
+     * Used to download an XML export of an entire blog, or of the posts in it matching the given
+     * criteria, in the same format as the staged export. Post fragments are rendered in parallel
+     * (see {@link com.tiyb.tev.xml.BlogExportWriter BlogExportWriter}), and the document is written
+     * straight to the response. If the export fails part of the way through, the download fails too
+     * (see {@link ExportStreamingException}).
+     *
+     * @param blog     The blog to be exported
+     * @param type     Only export posts of this type
+     * @param tag      Only export posts with this hashtag
+     * @param from     Only export posts at or after this Unix timestamp
+     * @param to       Only export posts at or before this Unix timestamp
+     * @param gzip     Whether the output should be gzipped
+     * @param response The HTTP Response object, to which the document is written
+     */
+    @RequestMapping(value = { "/blogExport/{blog}" }, method = RequestMethod.GET)
+    public void streamBlogExport(@PathVariable("blog") final String blog,
+            @RequestParam("type") final Optional<String> type, @RequestParam("tag") final Optional<String> tag,
+            @RequestParam("from") final Optional<Long> from, @RequestParam("to") final Optional<Long> to,
+            @RequestParam(value = "gzip", defaultValue = "false") final boolean gzip,
+            final HttpServletResponse response) {
+        final ExportFilter filter = new ExportFilter(type, tag, from, to);
+
+        response.setHeader("Pragma", "no-cache");
+        response.setHeader("Cache-Control", "no-cache");
+        if (gzip) {
+            response.setContentType("application/gzip");
+            response.setHeader("Content-Disposition", String.format("attachment; filename=\"%s.xml.gz\"", blog));
+        } else {
+            response.setContentType("application/xml");
+            response.setHeader("Content-Disposition", String.format("attachment; filename=\"%s.xml\"", blog));
+        }
+
+        try {
+            final OutputStream out = response.getOutputStream();
+            if (gzip) {
+                final GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_LENGTH);
+                BlogExportWriter.writeBlogExport(filter, postController, blog, gzipOut, exportRenderPool.getPool());
+                gzipOut.finish();
+            } else {
+                BlogExportWriter.writeBlogExport(filter, postController, blog, out, exportRenderPool.getPool());
+            }
+            out.flush();
+        } catch (IOException | XMLStreamException e) {
+            logger.error("Error streaming blog export", e);
+            throw new ExportStreamingException(e);
+        }
     }
 
     /**
-     * Retrieves the application version number from the application's POM, adds it to the model,
-     * then returns the "footer" page.
+     * Adds the application version number to the model, then returns the "footer" page. The version
+     * is only read from the application's POM the first time the footer is requested.
      *
      * @param model For setting the application version, used by Thymeleaf
      * @return name of the template to be used to render the page
      */
     @RequestMapping(value = { "/footer" }, method = RequestMethod.GET)
     public String footer(final Model model) {
+        if (applicationVersion == null) {
+            applicationVersion = readApplicationVersion();
+        }
+
+        model.addAttribute("applicationVersion", applicationVersion);
+        return "footer";
+    }
+
+    /**
+     * Retrieves the application version number from the application's POM
+     *
+     * @return The version, or an empty string if the POM couldn't be read
+     */
+    private String readApplicationVersion() {
         final MavenXpp3Reader mavenReader = new MavenXpp3Reader();
         String version = "";
         try {
@@ -646,8 +839,7 @@ public class TEVUIController {
             logger.error("Error getting version from POM", e);
         }
 
-        model.addAttribute("applicationVersion", version);
-        return "footer";
+        return version;
     }
 
     /**
@@ -662,7 +854,8 @@ public class TEVUIController {
     }
 
     /**
-     * Returns the viewer buttons used in all post viewer pages
+     * Returns the viewer buttons used in all post viewer pages. (The post viewers include the
+     * buttons directly, as a fragment; this is kept for any other pages wanting them.)
      *
      * @return name of the template to be used to render the page
      */
@@ -0,0 +1,279 @@
+package com.tiyb.tev.controller.helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * <p>
+ * Caches the serialized JSON returned by read-heavy API endpoints whose data only changes on
+ * import or when the user edits something:
+ * </p>
+ *
+ * <ul>
+ * <li><code>/api/posts/{blog}</code></li>
+ * <li><code>/api/hashtags</code> and <code>/api/hashtags/{blog}</code></li>
+ * <li><code>/api/conversations/{blog}/unhidden</code></li>
+ * <li><code>/api/metadata/staticListData</code></li>
+ * </ul>
+ *
+ * <p>
+ * Each response is tagged with the {@link DataVersions version} of the data it was built from (the
+ * blog's version, the global version for data across all blogs, or nothing for static data), and
+ * given a matching ETag. A request whose <code>If-None-Match</code> header has the current ETag
+ * gets a 304; otherwise, if the cached bytes are for the current version they're written straight
+ * back, without querying the DB or running Jackson. Older versions are replaced the next time
+ * they're requested, and the cache is limited in size (<code>tev.api.responseCache.maxBytes</code>)
+ * by evicting the least recently used responses.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Component
+public class ApiResponseCacheFilter extends OncePerRequestFilter {
+
+    /**
+     * Endpoints holding the data for a single blog, which is the first group in the pattern
+     */
+    private static final Pattern[] BLOG_ENDPOINTS = { Pattern.compile("^/api/posts/([^/]+)$"),
+        Pattern.compile("^/api/hashtags/([^/]+)$"), Pattern.compile("^/api/conversations/([^/]+)/unhidden$") };
+
+    /**
+     * Endpoint holding data for all blogs
+     */
+    private static final String ALL_BLOGS_ENDPOINT = "/api/hashtags";
+
+    /**
+     * Endpoint holding data that never changes
+     */
+    private static final String STATIC_ENDPOINT = "/api/metadata/staticListData";
+
+    /**
+     * Version used for static data
+     */
+    private static final String STATIC_VERSION = "static";
+
+    /**
+     * Per-blog data versions
+     */
+    @Autowired
+    private DataVersions dataVersions;
+
+    /**
+     * Whether responses should be cached
+     */
+    @Value("${tev.api.responseCache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Largest total size of the cached responses
+     */
+    @Value("${tev.api.responseCache.maxBytes:67108864}")
+    private long maxCacheBytes;
+
+    /**
+     * Cached responses, keyed by request URI (and query string), in least- to most-recently used
+     * order. Guarded by <code>this</code>.
+     */
+    private final LinkedHashMap<String, CachedResponse> cache =
+            new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+
+    /**
+     * Total size of all cached responses. Guarded by <code>this</code>.
+     */
+    private long cachedBytes;
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !enabled || !"GET".equals(request.getMethod()) || etagFor(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain filterChain) throws ServletException, IOException {
+        final String etag = etagFor(request.getRequestURI());
+        if (etag == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final String key = request.getQueryString() == null ? request.getRequestURI()
+                : request.getRequestURI() + "?" + request.getQueryString();
+        final CachedResponse cached = get(key);
+        if (cached != null && cached.etag.equals(etag)) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setContentType(cached.contentType);
+            response.setContentLength(cached.body.length);
+            response.getOutputStream().write(cached.body);
+            return;
+        }
+
+        final ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, wrapper);
+
+        final String contentType = wrapper.getContentType();
+        if (wrapper.getStatus() == HttpServletResponse.SC_OK && contentType != null
+                && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            wrapper.setHeader(HttpHeaders.ETAG, etag);
+            put(key, new CachedResponse(etag, contentType, wrapper.getContentAsByteArray()));
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    /**
+     * Returns the ETag for the current version of the data behind a request URI
+     *
+     * @param uri The request URI
+     * @return The ETag, or null if responses for the URI aren't cached
+     */
+    private String etagFor(final String uri) {
+        final String version;
+        if (STATIC_ENDPOINT.equals(uri)) {
+            version = STATIC_VERSION;
+        } else if (ALL_BLOGS_ENDPOINT.equals(uri)) {
+            version = "all-" + dataVersions.getGlobalVersion();
+        } else {
+            version = blogVersionFor(uri);
+            if (version == null) {
+                return null;
+            }
+        }
+
+        return String.format("\"%s-%s\"", dataVersions.getEpoch(), version);
+    }
+
+    /**
+     * Returns the version of the blog data behind a request URI
+     *
+     * @param uri The request URI
+     * @return The version of the blog's data, or null if the URI isn't for a cached blog endpoint
+     */
+    private String blogVersionFor(final String uri) {
+        for (Pattern endpoint : BLOG_ENDPOINTS) {
+            final Matcher matcher = endpoint.matcher(uri);
+            if (matcher.matches()) {
+                final String blog = UriUtils.decode(matcher.group(1), StandardCharsets.UTF_8);
+                return "blog-" + dataVersions.getVersion(blog);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Indicates whether an <code>If-None-Match</code> header includes a given ETag
+     *
+     * @param ifNoneMatch The header (may be null)
+     * @param etag        The current ETag
+     * @return True if the client already has the current version
+     */
+    private static boolean matches(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || "*".equals(tag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a cached response
+     *
+     * @param key Request URI and query string
+     * @return The cached response, which may be for an older version of the data, or null
+     */
+    private synchronized CachedResponse get(final String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches a response, replacing any older version, and evicts the least recently used responses
+     * if the cache is too large
+     *
+     * @param key      Request URI and query string
+     * @param response The response to be cached
+     */
+    private synchronized void put(final String key, final CachedResponse response) {
+        if (response.body.length > maxCacheBytes) {
+            return;
+        }
+
+        final CachedResponse previous = cache.put(key, response);
+        cachedBytes += response.body.length - (previous == null ? 0 : previous.body.length);
+
+        final Iterator<Map.Entry<String, CachedResponse>> eldest = cache.entrySet().iterator();
+        while (cachedBytes > maxCacheBytes && eldest.hasNext()) {
+            final Map.Entry<String, CachedResponse> entry = eldest.next();
+            cachedBytes -= entry.getValue().body.length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Immutable holder for the serialized body of a response, and the ETag of the data version it
+     * was built from
+     */
+    private static final class CachedResponse {
+
+        /**
+         * ETag of the data version the response was built from
+         */
+        private final String etag;
+
+        /**
+         * Content type of the response
+         */
+        private final String contentType;
+
+        /**
+         * Serialized body of the response
+         */
+        private final byte[] body;
+
+        /**
+         * Constructor
+         *
+         * @param etag        ETag of the data version the response was built from
+         * @param contentType Content type of the response
+         * @param body        Serialized body of the response
+         */
+        private CachedResponse(final String etag, final String contentType, final byte[] body) {
+            this.etag = etag;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
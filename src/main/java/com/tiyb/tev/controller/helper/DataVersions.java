@@ -0,0 +1,136 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <p>
+ * Keeps a version number for each blog's data, which is incremented every time any of the blog's
+ * posts, hashtags or conversations change, plus a global version that's incremented whenever any
+ * blog's data changes. Cached results built from a blog's data can compare versions to tell when
+ * they're stale, without going back to the DB.
+ * </p>
+ *
+ * <p>
+ * Versions are only meaningful for the lifetime of the application; {@link #getEpoch()} identifies
+ * that lifetime, for anything (like an ETag) that outlives it.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Component
+public class DataVersions {
+
+    /**
+     * Version of each blog's data, by blog name
+     */
+    private final Map<String, AtomicLong> blogVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Incremented whenever any blog's data changes
+     */
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    /**
+     * Incremented when data for all blogs changes at once; part of every blog's version
+     */
+    private final AtomicLong allBlogsVersion = new AtomicLong();
+
+    /**
+     * Identifies this run of the application
+     */
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    /**
+     * <p>
+     * Records that a blog's data has changed. Should be called <i>after</i> the change has been
+     * written.
+     * </p>
+     *
+     * <p>
+     * If the change is part of a transaction that hasn't been committed yet, the version is
+     * incremented again once it completes; otherwise a result built from the old data between the
+     * two events could be cached under the new version.
+     * </p>
+     *
+     * @param blog Blog whose data has changed
+     */
+    public void dataChanged(final String blog) {
+        increment(blog);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(final int status) {
+                    increment(blog);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records that data for all blogs has changed (e.g. everything of one kind has been deleted).
+     * Should be called <i>after</i> the change has been written.
+     */
+    public void allDataChanged() {
+        allBlogsVersion.incrementAndGet();
+        globalVersion.incrementAndGet();
+    }
+
+    /**
+     * Returns the current version of a blog's data
+     *
+     * @param blog Name of the blog
+     * @return The blog's data version
+     */
+    public long getVersion(final String blog) {
+        final AtomicLong version = blogVersions.get(keyFor(blog));
+
+        return allBlogsVersion.get() + (version == null ? 0 : version.get());
+    }
+
+    /**
+     * Returns the current version of the data for all blogs combined
+     *
+     * @return Global data version
+     */
+    public long getGlobalVersion() {
+        return globalVersion.get();
+    }
+
+    /**
+     * Returns an identifier for this run of the application, since versions start again from zero
+     * every time it starts
+     *
+     * @return Identifier unique to this run
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Increments the version of a blog's data, and the global version
+     *
+     * @param blog Name of the blog
+     */
+    private void increment(final String blog) {
+        blogVersions.computeIfAbsent(keyFor(blog), b -> new AtomicLong()).incrementAndGet();
+        globalVersion.incrementAndGet();
+    }
+
+    /**
+     * Returns the key under which a blog's version is kept; hashtags can be created with no blog
+     *
+     * @param blog Name of the blog (may be null)
+     * @return Key for the blog
+     */
+    private static String keyFor(final String blog) {
+        return blog == null ? "" : blog;
+    }
+}
@@ -0,0 +1,64 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fork-join pool on which {@link com.tiyb.tev.xml.BlogExportWriter BlogExportWriter} renders post
+ * fragments. A single pool is shared by every export, so the number of rendering threads stays the
+ * same however many exports are running at once; concurrent exports take turns on it.
+ *
+ * @author tiyb
+ *
+ */
+@Component
+public class ExportRenderPool {
+
+    /**
+     * Number of threads used for rendering; 0 uses one per available processor
+     */
+    @Value("${tev.export.renderThreads:0}")
+    private int renderThreads;
+
+    /**
+     * The pool
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Creates the pool
+     */
+    @PostConstruct
+    public void init() {
+        final int parallelism = renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            final ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("tev-export-render-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Stops the pool; any export still running fails
+     */
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Returns the pool
+     *
+     * @return The pool
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+}
@@ -0,0 +1,215 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+import com.tiyb.tev.datamodel.Hashtag;
+
+/**
+ * <p>
+ * In-memory index used for hashtag autocomplete. For each blog (plus one combined index across all
+ * blogs) the tags are held in a sorted map, keyed by their lower-cased text, so that all tags
+ * starting with a given prefix form a single contiguous range; the highest-count tags in that range
+ * are returned as suggestions.
+ * </p>
+ *
+ * <p>
+ * Indexes are loaded from the DB the first time a blog is queried, and from then on are kept
+ * current incrementally as tags are added and removed (e.g. during an import), rather than being
+ * rebuilt.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class HashtagSuggestionIndex {
+
+    /**
+     * Separates the lower-cased sort key from the original text of the tag
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * Upper bound used when selecting all keys that start with a given prefix
+     */
+    private static final char MAX_CHAR = '\uffff';
+
+    /**
+     * Orders candidate suggestions by count (highest first), then alphabetically
+     */
+    private static final Comparator<Map.Entry<String, Integer>> BY_COUNT_DESC = Comparator
+            .comparing((Map.Entry<String, Integer> e) -> e.getValue()).reversed()
+            .thenComparing(Map.Entry::getKey);
+
+    /**
+     * Per-blog indexes
+     */
+    private final Map<String, NavigableMap<String, Integer>> blogIndexes =
+            new ConcurrentHashMap<String, NavigableMap<String, Integer>>();
+
+    /**
+     * Combined index across all blogs; null when it needs to be (re)loaded
+     */
+    private volatile NavigableMap<String, Integer> allBlogsIndex;
+
+    /**
+     * Returns the highest-count tags for a given blog that start with a given prefix (ignoring
+     * case)
+     *
+     * @param blog   Blog for which tags should be suggested
+     * @param prefix Text the user has typed so far
+     * @param limit  Maximum number of suggestions to return
+     * @param loader Used to load the blog's hashtags if they haven't been indexed yet
+     * @return Suggested tags, most-used first
+     */
+    public List<String> suggestForBlog(final String blog, final String prefix, final int limit,
+            final Supplier<List<Hashtag>> loader) {
+        final NavigableMap<String, Integer> index = blogIndexes.computeIfAbsent(blog, b -> buildIndex(loader.get()));
+        return topMatches(index, prefix, limit);
+    }
+
+    /**
+     * Returns the highest-count tags across all blogs that start with a given prefix (ignoring case)
+     *
+     * @param prefix Text the user has typed so far
+     * @param limit  Maximum number of suggestions to return
+     * @param loader Used to load the combined hashtags if they haven't been indexed yet
+     * @return Suggested tags, most-used first
+     */
+    public List<String> suggestForAllBlogs(final String prefix, final int limit,
+            final Supplier<List<Hashtag>> loader) {
+        NavigableMap<String, Integer> index = allBlogsIndex;
+        if (index == null) {
+            index = buildIndex(loader.get());
+            allBlogsIndex = index;
+        }
+        return topMatches(index, prefix, limit);
+    }
+
+    /**
+     * Records a single new usage of a tag for a given blog
+     *
+     * @param blog Blog for which the tag was used
+     * @param tag  The tag
+     */
+    public void tagAdded(final String blog, final String tag) {
+        final String key = toKey(tag);
+        final NavigableMap<String, Integer> blogIndex = blogIndexes.get(blog);
+        if (blogIndex != null) {
+            blogIndex.merge(key, 1, Integer::sum);
+        }
+        final NavigableMap<String, Integer> combinedIndex = allBlogsIndex;
+        if (combinedIndex != null) {
+            combinedIndex.merge(key, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Records that a tag has been removed from a given blog
+     *
+     * @param blog  Blog from which the tag was removed
+     * @param tag   The tag
+     * @param count The number of usages the tag had for that blog
+     */
+    public void tagRemoved(final String blog, final String tag, final int count) {
+        final String key = toKey(tag);
+        final NavigableMap<String, Integer> blogIndex = blogIndexes.get(blog);
+        if (blogIndex != null) {
+            blogIndex.remove(key);
+        }
+        final NavigableMap<String, Integer> combinedIndex = allBlogsIndex;
+        if (combinedIndex != null) {
+            combinedIndex.computeIfPresent(key, (k, v) -> v - count > 0 ? v - count : null);
+        }
+    }
+
+    /**
+     * Discards the index for a given blog (and the combined index, which includes it); they'll be
+     * reloaded the next time they're queried
+     *
+     * @param blog Blog whose tags have all been removed
+     */
+    public void clearBlog(final String blog) {
+        blogIndexes.remove(blog);
+        allBlogsIndex = null;
+    }
+
+    /**
+     * Discards all indexes
+     */
+    public void clearAll() {
+        blogIndexes.clear();
+        allBlogsIndex = null;
+    }
+
+    /**
+     * Builds an index from a list of hashtags
+     *
+     * @param tags The hashtags to be indexed
+     * @return The new index
+     */
+    private static NavigableMap<String, Integer> buildIndex(final List<Hashtag> tags) {
+        final NavigableMap<String, Integer> index = new ConcurrentSkipListMap<String, Integer>();
+        for (Hashtag ht : tags) {
+            index.merge(toKey(ht.getTag()), ht.getCount(), Integer::sum);
+        }
+        return index;
+    }
+
+    /**
+     * Selects the highest-count entries in the range of keys starting with the prefix, using a
+     * bounded min-heap so that only <code>limit</code> candidates are ever held
+     *
+     * @param index  Index to be searched
+     * @param prefix Prefix to search for
+     * @param limit  Maximum number of results
+     * @return Tags, most-used first
+     */
+    private static List<String> topMatches(final NavigableMap<String, Integer> index, final String prefix,
+            final int limit) {
+        if (limit < 1) {
+            return Collections.emptyList();
+        }
+
+        final String lowerPrefix = prefix == null ? "" : prefix.toLowerCase(Locale.ROOT);
+        final PriorityQueue<Map.Entry<String, Integer>> best =
+                new PriorityQueue<Map.Entry<String, Integer>>(limit + 1, BY_COUNT_DESC.reversed());
+
+        for (Map.Entry<String, Integer> entry : index.subMap(lowerPrefix, true, lowerPrefix + MAX_CHAR, false)
+                .entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        final List<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(best);
+        sorted.sort(BY_COUNT_DESC);
+
+        final List<String> results = new ArrayList<String>(sorted.size());
+        for (Map.Entry<String, Integer> entry : sorted) {
+            results.add(entry.getKey().substring(entry.getKey().indexOf(KEY_SEPARATOR) + 1));
+        }
+        return results;
+    }
+
+    /**
+     * Builds the index key for a tag: the lower-cased text (for case-insensitive prefix matching)
+     * followed by the original text
+     *
+     * @param tag The tag
+     * @return Key for the index
+     */
+    private static String toKey(final String tag) {
+        return tag.toLowerCase(Locale.ROOT) + KEY_SEPARATOR + tag;
+    }
+}
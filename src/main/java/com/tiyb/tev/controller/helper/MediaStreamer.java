@@ -0,0 +1,224 @@
+package com.tiyb.tev.controller.helper;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * <p>
+ * Helper for serving media files (images, videos) from the local file system to the browser,
+ * without ever holding a file's contents in memory.
+ * </p>
+ *
+ * <p>
+ * Each response carries an <code>ETag</code> and <code>Last-Modified</code> header derived from
+ * the file's size and modification time, so that conditional requests are answered with
+ * <code>304 Not Modified</code> and no body. Single byte ranges are honoured with <code>206 Partial
+ * Content</code> (subject to <code>If-Range</code>, so that a client resuming a download of a
+ * file that has since changed gets the new file rather than a mix of the two); requests for
+ * multiple ranges are answered with the whole file, which HTTP allows.
+ * </p>
+ *
+ * <p>
+ * The body is sent with Tomcat's <code>sendfile</code> support when the connector offers it (the
+ * kernel copies the file straight to the socket once the servlet returns), and otherwise with
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)
+ * FileChannel.transferTo()}. Either way, heap use doesn't depend on the size of the file.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public final class MediaStreamer {
+
+    /**
+     * Cache-Control value for media that never changes once it's been written (e.g. images, which
+     * are named after the post they belong to)
+     */
+    public static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+
+    /**
+     * Cache-Control value for media that can be cached for a day before being revalidated (e.g.
+     * videos, which can be replaced by re-importing a blog)
+     */
+    public static final String CACHE_CONTROL_ONE_DAY = "public, max-age=86400";
+
+    /**
+     * Request attribute set by Tomcat when the connector supports <code>sendfile</code>
+     */
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+    /**
+     * Request attribute used to pass Tomcat the file to be sent
+     */
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+
+    /**
+     * Request attribute used to pass Tomcat the first byte to be sent
+     */
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+
+    /**
+     * Request attribute used to pass Tomcat the position after the last byte to be sent
+     */
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Unit used in <code>Accept-Ranges</code> and <code>Content-Range</code> headers
+     */
+    private static final String BYTES_UNIT = "bytes";
+
+    /**
+     * HTTP dates only have a resolution of seconds
+     */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /**
+     * Ensures that the class is never instantiated as an object
+     */
+    private MediaStreamer() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Writes a file to the HTTP response, honouring conditional and range requests
+     *
+     * @param file         The file to be sent; must exist
+     * @param cacheControl Value for the <code>Cache-Control</code> header
+     * @param request      The HTTP Request object
+     * @param response     The HTTP Response object
+     * @throws IOException if the file can't be read, or the response can't be written (e.g. because
+     *                     the client has gone away)
+     */
+    public static void streamFile(final Path file, final String cacheControl, final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final long length = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final String eTag = String.format("\"%x-%x\"", length, lastModified);
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return;
+        }
+
+        response.setContentType(
+                MediaTypeFactory.getMediaType(file.getFileName().toString())
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long start = 0;
+        long end = length - 1;
+        final String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && length > 0 && isIfRangeSatisfied(request, eTag, lastModified)) {
+            final List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                sendRangeNotSatisfiable(length, response);
+                return;
+            }
+            if (ranges.size() == 1) {
+                final HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    sendRangeNotSatisfiable(length, response);
+                    return;
+                }
+                if (start >= length || start > end) {
+                    sendRangeNotSatisfiable(length, response);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        String.format("%s %d-%d/%d", BYTES_UNIT, start, end, length));
+            }
+        }
+
+        final long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (count <= 0 || HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                final long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Checks the <code>If-Range</code> header, if any: a range should only be sent if the client's
+     * copy of the file is still current, otherwise the whole file is sent instead. The header can
+     * contain either a (strong) ETag or a date.
+     *
+     * @param request      The HTTP Request object
+     * @param eTag         Current ETag of the file
+     * @param lastModified Current modification time of the file, in milliseconds
+     * @return True if there is no <code>If-Range</code> header, or it matches the file
+     */
+    private static boolean isIfRangeSatisfied(final HttpServletRequest request, final String eTag,
+            final long lastModified) {
+        final String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+
+        try {
+            final long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return ifRangeDate == (lastModified / MILLIS_PER_SECOND) * MILLIS_PER_SECOND;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Responds to a range request that can't be satisfied (or can't be parsed) with a
+     * <code>416</code>, including the actual length of the file as HTTP requires
+     *
+     * @param length   Length of the file
+     * @param response The HTTP Response object
+     */
+    private static void sendRangeNotSatisfiable(final long length, final HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("%s */%d", BYTES_UNIT, length));
+        response.setContentLength(0);
+    }
+}
@@ -0,0 +1,110 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Helper class for breaking conversation message text into the normalized terms stored in the
+ * full-text search index. The same logic is used for indexing messages and for parsing search
+ * queries, so that both sides always agree on what a "term" is.
+ *
+ * @author tiyb
+ *
+ */
+public final class MessageTokenizer {
+
+    /**
+     * Terms shorter than this aren't indexed (or searched)
+     */
+    public static final int MIN_TERM_LENGTH = 2;
+
+    /**
+     * Terms longer than this (typically URLs or base64 junk) aren't indexed (or searched)
+     */
+    public static final int MAX_TERM_LENGTH = 64;
+
+    /**
+     * Number of characters to include on either side of the first match, when building a snippet
+     */
+    private static final int SNIPPET_CONTEXT = 60;
+
+    /**
+     * Ellipsis used to indicate that a snippet has been cut
+     */
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * A term is any run of letters or digits
+     */
+    private static final Pattern TERM_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    private MessageTokenizer() {
+    }
+
+    /**
+     * Breaks text into normalized terms, along with the number of times each term appears
+     *
+     * @param text Text to be tokenized
+     * @return Map of term to frequency, in the order the terms first appear
+     */
+    public static Map<String, Integer> tokenize(final String text) {
+        final Map<String, Integer> terms = new LinkedHashMap<String, Integer>();
+
+        if (StringUtils.isBlank(text)) {
+            return terms;
+        }
+
+        final Matcher matcher = TERM_PATTERN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            final String term = matcher.group();
+            if (term.length() < MIN_TERM_LENGTH || term.length() > MAX_TERM_LENGTH) {
+                continue;
+            }
+            terms.merge(term, 1, Integer::sum);
+        }
+
+        return terms;
+    }
+
+    /**
+     * Builds a short snippet of a message, centred around the first occurrence of any of the given
+     * terms. If none of the terms can be found the start of the message is used.
+     *
+     * @param text  Full text of the message
+     * @param terms Normalized terms that were searched for
+     * @return Snippet of the message
+     */
+    public static String buildSnippet(final String text, final Iterable<String> terms) {
+        if (text == null) {
+            return StringUtils.EMPTY;
+        }
+
+        final String lowerText = text.toLowerCase(Locale.ROOT);
+        int firstMatch = -1;
+        for (String term : terms) {
+            final int index = lowerText.indexOf(term);
+            if (index >= 0 && (firstMatch < 0 || index < firstMatch)) {
+                firstMatch = index;
+            }
+        }
+
+        final int start = Math.max(0, firstMatch - SNIPPET_CONTEXT);
+        final int end = Math.min(text.length(), Math.max(firstMatch, 0) + SNIPPET_CONTEXT);
+
+        final StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append(ELLIPSIS);
+        }
+        snippet.append(text, start, end);
+        if (end < text.length()) {
+            snippet.append(ELLIPSIS);
+        }
+
+        return snippet.toString();
+    }
+}
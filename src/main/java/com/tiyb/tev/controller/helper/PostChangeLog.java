@@ -0,0 +1,327 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <p>
+ * In-memory feed of changes to each blog's posts, so that a client showing a blog's posts can
+ * fetch just the posts that changed since it last looked, instead of re-downloading all of them.
+ * Every change to a post is given the next value of a per-blog version, which only ever increases;
+ * the feed holds the latest version at which each post was changed or deleted.
+ * </p>
+ *
+ * <p>
+ * Clients that are too far behind are told to reload everything instead. That happens when all of
+ * a blog's posts have been replaced at once, when more than {@link #MAX_CHANGES_PER_BLOG} posts
+ * have changed since the client last looked, or when the application has been restarted (versions
+ * are seeded from the clock, so any version handed out before a restart is lower than every
+ * version handed out after it).
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class PostChangeLog {
+
+    /**
+     * Most changes kept for a single blog; older changes are dropped, and clients that haven't seen
+     * them have to reload everything
+     */
+    private static final int MAX_CHANGES_PER_BLOG = 10000;
+
+    /**
+     * Multiplier applied to the clock to seed versions
+     */
+    private static final long VERSIONS_PER_MILLISECOND = 1000;
+
+    /**
+     * Version from which every blog's versions start
+     */
+    private final long initialVersion = System.currentTimeMillis() * VERSIONS_PER_MILLISECOND;
+
+    /**
+     * Change feeds, by blog
+     */
+    private final Map<String, BlogChanges> blogs = new ConcurrentHashMap<String, BlogChanges>();
+
+    /**
+     * Records that a post was created or updated. Should be called <i>after</i> the change has been
+     * written.
+     *
+     * @param blog   Blog to which the post belongs
+     * @param postId ID of the post
+     */
+    public void postChanged(final String blog, final String postId) {
+        afterWrite(() -> changesFor(blog).record(postId, false));
+    }
+
+    /**
+     * Records that a set of posts were updated at once. Should be called <i>after</i> the change
+     * has been written.
+     *
+     * @param blog    Blog to which the posts belong
+     * @param postIds IDs of the posts
+     */
+    public void postsChanged(final String blog, final Collection<String> postIds) {
+        afterWrite(() -> {
+            final BlogChanges changes = changesFor(blog);
+            for (String postId : postIds) {
+                changes.record(postId, false);
+            }
+        });
+    }
+
+    /**
+     * Records that a post was deleted. Should be called <i>after</i> the post has been deleted.
+     *
+     * @param blog   Blog to which the post belonged
+     * @param postId ID of the post
+     */
+    public void postDeleted(final String blog, final String postId) {
+        afterWrite(() -> changesFor(blog).record(postId, true));
+    }
+
+    /**
+     * Records that all of a blog's posts were replaced or deleted at once, so any client showing
+     * them has to reload everything
+     *
+     * @param blog The blog
+     */
+    public void allPostsChanged(final String blog) {
+        afterWrite(() -> changesFor(blog).reset());
+    }
+
+    /**
+     * Returns the posts that have changed since a given version
+     *
+     * @param blog  The blog
+     * @param since Version the client already has; null if the client only wants the current
+     *              version
+     * @return The changes
+     */
+    public Changes changesSince(final String blog, final Long since) {
+        return changesFor(blog).since(since);
+    }
+
+    /**
+     * Runs a change, and runs it again once the current transaction (if any) completes; otherwise
+     * a client asking for changes before the transaction commits would be given the old data
+     * under the new version
+     *
+     * @param change The change to be recorded
+     */
+    private static void afterWrite(final Runnable change) {
+        change.run();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(final int status) {
+                    change.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the change feed for a blog, creating it if needed
+     *
+     * @param blog The blog
+     * @return The blog's change feed
+     */
+    private BlogChanges changesFor(final String blog) {
+        return blogs.computeIfAbsent(blog, b -> new BlogChanges(initialVersion));
+    }
+
+    /**
+     * Posts that have changed since a given version
+     */
+    public static final class Changes {
+
+        /**
+         * Version the client has once it has applied these changes
+         */
+        private final long version;
+
+        /**
+         * Whether the client is too far behind, and has to reload everything
+         */
+        private final boolean fullReload;
+
+        /**
+         * IDs of the posts that were created or updated
+         */
+        private final List<String> changedIds;
+
+        /**
+         * IDs of the posts that were deleted
+         */
+        private final List<String> deletedIds;
+
+        /**
+         * Constructor
+         *
+         * @param version    Version the client has once it has applied these changes
+         * @param fullReload Whether the client has to reload everything
+         * @param changedIds IDs of the posts that were created or updated
+         * @param deletedIds IDs of the posts that were deleted
+         */
+        private Changes(final long version, final boolean fullReload, final List<String> changedIds,
+                final List<String> deletedIds) {
+            this.version = version;
+            this.fullReload = fullReload;
+            this.changedIds = changedIds;
+            this.deletedIds = deletedIds;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isFullReload() {
+            return fullReload;
+        }
+
+        public List<String> getChangedIds() {
+            return changedIds;
+        }
+
+        public List<String> getDeletedIds() {
+            return deletedIds;
+        }
+    }
+
+    /**
+     * The change feed for a single blog. All access is synchronized, so that a version is never
+     * visible before the change it belongs to.
+     */
+    private static final class BlogChanges {
+
+        /**
+         * Latest version handed out
+         */
+        private long version;
+
+        /**
+         * Clients with a version older than this have to reload everything
+         */
+        private long floor;
+
+        /**
+         * Latest change for each post, by version
+         */
+        private final TreeMap<Long, Change> changesByVersion = new TreeMap<Long, Change>();
+
+        /**
+         * Version of the latest change for each post, by post ID
+         */
+        private final Map<String, Long> versionsByPost = new HashMap<String, Long>();
+
+        /**
+         * Constructor
+         *
+         * @param initialVersion Version from which this blog's versions start
+         */
+        private BlogChanges(final long initialVersion) {
+            this.version = initialVersion;
+            this.floor = initialVersion;
+        }
+
+        /**
+         * Records a change to a post, replacing any earlier change to the same post
+         *
+         * @param postId  ID of the post
+         * @param deleted Whether the post was deleted
+         */
+        private synchronized void record(final String postId, final boolean deleted) {
+            version++;
+            final Long previous = versionsByPost.put(postId, version);
+            if (previous != null) {
+                changesByVersion.remove(previous);
+            }
+            changesByVersion.put(version, new Change(postId, deleted));
+
+            while (changesByVersion.size() > MAX_CHANGES_PER_BLOG) {
+                final Map.Entry<Long, Change> oldest = changesByVersion.pollFirstEntry();
+                versionsByPost.remove(oldest.getValue().postId);
+                floor = oldest.getKey();
+            }
+        }
+
+        /**
+         * Forgets all changes, so that every client has to reload everything
+         */
+        private synchronized void reset() {
+            version++;
+            floor = version;
+            changesByVersion.clear();
+            versionsByPost.clear();
+        }
+
+        /**
+         * Returns the changes since a given version
+         *
+         * @param since Version the client already has, or null
+         * @return The changes
+         */
+        private synchronized Changes since(final Long since) {
+            final List<String> changedIds = new ArrayList<String>();
+            final List<String> deletedIds = new ArrayList<String>();
+            if (since == null) {
+                return new Changes(version, false, changedIds, deletedIds);
+            }
+            if (since < floor || since > version) {
+                return new Changes(version, true, changedIds, deletedIds);
+            }
+
+            final Iterator<Change> changes = changesByVersion.tailMap(since, false).values().iterator();
+            while (changes.hasNext()) {
+                final Change change = changes.next();
+                if (change.deleted) {
+                    deletedIds.add(change.postId);
+                } else {
+                    changedIds.add(change.postId);
+                }
+            }
+
+            return new Changes(version, false, changedIds, deletedIds);
+        }
+    }
+
+    /**
+     * Immutable record of a single change to a post
+     */
+    private static final class Change {
+
+        /**
+         * ID of the post
+         */
+        private final String postId;
+
+        /**
+         * Whether the post was deleted
+         */
+        private final boolean deleted;
+
+        /**
+         * Constructor
+         *
+         * @param postId  ID of the post
+         * @param deleted Whether the post was deleted
+         */
+        private Change(final String postId, final boolean deleted) {
+            this.postId = postId;
+            this.deleted = deleted;
+        }
+    }
+}
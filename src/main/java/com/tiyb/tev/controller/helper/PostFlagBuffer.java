@@ -0,0 +1,471 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tiyb.tev.datamodel.Post;
+
+/**
+ * <p>
+ * Write-behind buffer for the read and favourite flags of posts. While reading through a blog,
+ * every post opened is marked read; rather than a transaction per post, the new values are held in
+ * memory and written in batches, either every <code>tev.posts.flagBuffer.flushMillis</code>
+ * milliseconds or as soon as <code>tev.posts.flagBuffer.maxPending</code> posts are waiting.
+ * Repeated toggles of the same post are coalesced, so only the last value is ever written.
+ * </p>
+ *
+ * <p>
+ * Until they're written, pending values are {@link #apply(Post) applied} to posts read from the
+ * DB, so that clients never see the old values. The buffer is flushed when the application shuts
+ * down, and can be {@link #flush() flushed} on demand by anything that reads the flags straight
+ * from the DB (e.g. the stats). Setting <code>flushMillis</code> to 0 turns the buffer off, and
+ * flags are written immediately.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Component
+public class PostFlagBuffer {
+
+    private Logger logger = LoggerFactory.getLogger(PostFlagBuffer.class);
+
+    /**
+     * Flags held by the buffer
+     */
+    public enum Flag {
+        /**
+         * The post's read flag
+         */
+        READ,
+
+        /**
+         * The post's favourite flag
+         */
+        FAVOURITE
+    }
+
+    /**
+     * Writes a batch of flag values to the DB
+     */
+    @FunctionalInterface
+    public interface FlagWriter {
+
+        /**
+         * Sets a flag to the same value for a set of a blog's posts
+         *
+         * @param blog    Blog to which the posts belong
+         * @param postIds IDs of the posts
+         * @param flag    The flag to be set
+         * @param value   The new value
+         */
+        void write(String blog, List<String> postIds, Flag flag, boolean value);
+    }
+
+    /**
+     * How often pending values are written, in milliseconds; 0 turns the buffer off
+     */
+    @Value("${tev.posts.flagBuffer.flushMillis:1000}")
+    private long flushMillis;
+
+    /**
+     * Number of pending posts at which a write is started without waiting for the next interval
+     */
+    @Value("${tev.posts.flagBuffer.maxPending:500}")
+    private int maxPending;
+
+    /**
+     * Used to write each batch in a single transaction
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Writes the batches; registered by the post controller
+     */
+    private volatile FlagWriter writer;
+
+    /**
+     * Values waiting to be written, by post ID. Guarded by <code>this</code>.
+     */
+    private Map<String, PendingFlags> pending = new LinkedHashMap<String, PendingFlags>();
+
+    /**
+     * Values currently being written, by post ID; still applied to posts read from the DB until
+     * the write has been committed. Guarded by <code>this</code>.
+     */
+    private Map<String, PendingFlags> flushing = Collections.emptyMap();
+
+    /**
+     * Ensures only one batch is written at a time
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Runs the periodic writes
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Starts the periodic writes, if the buffer is turned on
+     */
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "tev-flag-buffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic writes, and writes anything still pending
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Indicates whether flags should go through the buffer, rather than being written immediately
+     *
+     * @return True if the buffer is turned on
+     */
+    public boolean isEnabled() {
+        return flushMillis > 0;
+    }
+
+    /**
+     * Registers the object that writes batches to the DB
+     *
+     * @param writer Writes the batches
+     */
+    public void setWriter(final FlagWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Records a new value for one of a post's flags, replacing any value still waiting to be written
+     *
+     * @param blog   Blog to which the post belongs
+     * @param postId ID of the post
+     * @param flag   The flag being set
+     * @param value  The new value
+     */
+    public void set(final String blog, final String postId, final Flag flag, final boolean value) {
+        final boolean full;
+        synchronized (this) {
+            PendingFlags flags = pending.get(postId);
+            if (flags == null) {
+                flags = new PendingFlags(blog);
+                pending.put(postId, flags);
+            }
+            flags.set(flag, value);
+            full = pending.size() >= maxPending;
+        }
+
+        if (full && scheduler != null) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Applies any values waiting to be written to a post read from the DB. The post itself is
+     * never changed (it may be managed by the persistence context, which would write it back); a
+     * copy is returned instead.
+     *
+     * @param post The post as read from the DB (may be null)
+     * @return The post, or a copy of it with the pending values
+     */
+    public synchronized Post apply(final Post post) {
+        if (post == null || (pending.isEmpty() && flushing.isEmpty())) {
+            return post;
+        }
+
+        final Boolean isRead = valueFor(post.getId(), Flag.READ);
+        final Boolean isFavourite = valueFor(post.getId(), Flag.FAVOURITE);
+        if ((isRead == null || isRead.equals(post.getIsRead()))
+                && (isFavourite == null || isFavourite.equals(post.getIsFavourite()))) {
+            return post;
+        }
+
+        final Post copy = new Post();
+        copy.setId(post.getId());
+        copy.setType(post.getType());
+        copy.updateData(post);
+        if (isRead != null) {
+            copy.setIsRead(isRead);
+        }
+        if (isFavourite != null) {
+            copy.setIsFavourite(isFavourite);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Applies any values waiting to be written to a list of posts read from the DB
+     *
+     * @param posts The posts as read from the DB
+     * @return The posts, with the pending values
+     */
+    public List<Post> apply(final List<Post> posts) {
+        synchronized (this) {
+            if (pending.isEmpty() && flushing.isEmpty()) {
+                return posts;
+            }
+        }
+
+        final List<Post> applied = new ArrayList<Post>(posts.size());
+        for (Post post : posts) {
+            applied.add(apply(post));
+        }
+
+        return applied;
+    }
+
+    /**
+     * Forgets any values waiting to be written for a post, because the whole post is being
+     * replaced or deleted. Values in a batch that's already being written are skipped if they
+     * haven't been written yet, so that they can't overwrite the post's new values.
+     *
+     * @param postId ID of the post
+     */
+    public synchronized void discard(final String postId) {
+        pending.remove(postId);
+        final PendingFlags inFlight = flushing.get(postId);
+        if (inFlight != null) {
+            inFlight.discarded = true;
+        }
+    }
+
+    /**
+     * Forgets any values waiting to be written for a blog's posts, because they're all being
+     * replaced or deleted; as with {@link #discard(String)}, this includes values in a batch that's
+     * already being written
+     *
+     * @param blog The blog
+     */
+    public synchronized void discardBlog(final String blog) {
+        final Iterator<PendingFlags> flags = pending.values().iterator();
+        while (flags.hasNext()) {
+            if (flags.next().blog.equals(blog)) {
+                flags.remove();
+            }
+        }
+        for (PendingFlags inFlight : flushing.values()) {
+            if (inFlight.blog.equals(blog)) {
+                inFlight.discarded = true;
+            }
+        }
+    }
+
+    /**
+     * Writes all pending values to the DB, in a single transaction, and returns once they've been
+     * committed. If the write fails the values are kept, unless they've been superseded or
+     * discarded in the meantime.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final Map<String, PendingFlags> batch;
+            synchronized (this) {
+                if (pending.isEmpty() || writer == null) {
+                    return;
+                }
+                batch = pending;
+                flushing = batch;
+                pending = new LinkedHashMap<String, PendingFlags>();
+            }
+
+            try {
+                new TransactionTemplate(transactionManager).execute(status -> {
+                    write(batch);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    for (Map.Entry<String, PendingFlags> entry : batch.entrySet()) {
+                        if (!entry.getValue().discarded) {
+                            pending.putIfAbsent(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    flushing = Collections.emptyMap();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch, with a single statement per blog, flag and value. Posts discarded since the
+     * batch was taken are left out of each statement, as of the moment it's issued.
+     *
+     * @param batch Values to be written, by post ID
+     */
+    private void write(final Map<String, PendingFlags> batch) {
+        final Map<String, Map<Flag, Map<Boolean, List<String>>>> idsByBlog =
+                new HashMap<String, Map<Flag, Map<Boolean, List<String>>>>();
+        for (Map.Entry<String, PendingFlags> entry : batch.entrySet()) {
+            final PendingFlags flags = entry.getValue();
+            final Map<Flag, Map<Boolean, List<String>>> idsByFlag = idsByBlog.computeIfAbsent(flags.blog,
+                    b -> new EnumMap<Flag, Map<Boolean, List<String>>>(Flag.class));
+            for (Flag flag : Flag.values()) {
+                final Boolean value = flags.get(flag);
+                if (value != null) {
+                    idsByFlag.computeIfAbsent(flag, f -> new HashMap<Boolean, List<String>>())
+                            .computeIfAbsent(value, v -> new ArrayList<String>()).add(entry.getKey());
+                }
+            }
+        }
+
+        for (Map.Entry<String, Map<Flag, Map<Boolean, List<String>>>> blog : idsByBlog.entrySet()) {
+            for (Map.Entry<Flag, Map<Boolean, List<String>>> flag : blog.getValue().entrySet()) {
+                for (Map.Entry<Boolean, List<String>> ids : flag.getValue().entrySet()) {
+                    final List<String> current = notDiscarded(batch, ids.getValue());
+                    if (!current.isEmpty()) {
+                        writer.write(blog.getKey(), current, flag.getKey(), ids.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs from a batch whose values haven't been discarded
+     *
+     * @param batch   The batch
+     * @param postIds IDs of posts in the batch
+     * @return The IDs that haven't been discarded
+     */
+    private synchronized List<String> notDiscarded(final Map<String, PendingFlags> batch,
+            final List<String> postIds) {
+        final List<String> current = new ArrayList<String>(postIds.size());
+        for (String postId : postIds) {
+            if (!batch.get(postId).discarded) {
+                current.add(postId);
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Writes all pending values, logging (rather than throwing) any error; used from the
+     * background thread and at shutdown
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Error writing read/favourite flags: ", e);
+        }
+    }
+
+    /**
+     * Returns the value waiting to be written for one of a post's flags. Caller must hold the lock
+     * on <code>this</code>.
+     *
+     * @param postId ID of the post
+     * @param flag   The flag
+     * @return The pending value, or null if there isn't one
+     */
+    private Boolean valueFor(final String postId, final Flag flag) {
+        final PendingFlags waiting = pending.get(postId);
+        if (waiting != null && waiting.get(flag) != null) {
+            return waiting.get(flag);
+        }
+        final PendingFlags inFlight = flushing.get(postId);
+
+        return inFlight == null || inFlight.discarded ? null : inFlight.get(flag);
+    }
+
+    /**
+     * Values waiting to be written for a single post
+     */
+    private static final class PendingFlags {
+
+        /**
+         * Blog to which the post belongs
+         */
+        private final String blog;
+
+        /**
+         * New read flag, or null if it hasn't changed
+         */
+        private Boolean isRead;
+
+        /**
+         * New favourite flag, or null if it hasn't changed
+         */
+        private Boolean isFavourite;
+
+        /**
+         * Whether the values were discarded while being written. Guarded by the buffer.
+         */
+        private boolean discarded;
+
+        /**
+         * Constructor
+         *
+         * @param blog Blog to which the post belongs
+         */
+        private PendingFlags(final String blog) {
+            this.blog = blog;
+        }
+
+        /**
+         * Returns the new value of a flag
+         *
+         * @param flag The flag
+         * @return The new value, or null if it hasn't changed
+         */
+        private Boolean get(final Flag flag) {
+            return flag == Flag.READ ? isRead : isFavourite;
+        }
+
+        /**
+         * Sets the new value of a flag
+         *
+         * @param flag  The flag
+         * @param value The new value
+         */
+        private void set(final Flag flag, final boolean value) {
+            if (flag == Flag.READ) {
+                isRead = value;
+            } else {
+                isFavourite = value;
+            }
+        }
+    }
+}
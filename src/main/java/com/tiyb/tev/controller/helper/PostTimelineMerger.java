@@ -0,0 +1,196 @@
+package com.tiyb.tev.controller.helper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.tiyb.tev.datamodel.Post;
+
+/**
+ * <p>
+ * Merges the posts of several blogs into a single timeline, newest first, ordered by Unix timestamp
+ * and then by post ID. Each blog is read through its own cursor, which fetches the blog's posts a
+ * page at a time from an index on (blog, timestamp, ID); a priority queue holding the next post
+ * from each cursor picks the newest post across all blogs (a k-way merge). Only as many posts are
+ * read as are needed to fill the page, so the cost of a page depends on the page size and the
+ * number of blogs, not on how many posts the blogs have.
+ * </p>
+ *
+ * <p>
+ * Pages are keyed on the (timestamp, ID) of the last post of the previous page, rather than an
+ * offset, so every page costs the same and posts imported in the meantime don't shift the pages.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class PostTimelineMerger {
+
+    /**
+     * Reads a page of a single blog's posts
+     */
+    @FunctionalInterface
+    public interface PageFetcher {
+
+        /**
+         * Returns a blog's posts that come after a given key in the timeline, i.e. posts that are
+         * older than the key, or the same age with a lower ID
+         *
+         * @param blog            The blog
+         * @param beforeTimestamp Timestamp of the key
+         * @param beforeId        Post ID of the key
+         * @param size            Most posts to return
+         * @return The posts, newest first
+         */
+        List<Post> fetch(String blog, long beforeTimestamp, String beforeId, int size);
+    }
+
+    /**
+     * Orders posts newest first, and then by descending ID
+     */
+    private static final Comparator<Post> TIMELINE_ORDER = Comparator.comparing(Post::getUnixtimestamp)
+            .thenComparing(Post::getId).reversed();
+
+    /**
+     * Reads each blog's posts
+     */
+    private final PageFetcher fetcher;
+
+    /**
+     * Constructor
+     *
+     * @param fetcher Reads each blog's posts
+     */
+    public PostTimelineMerger(final PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Returns the next posts in the timeline for a set of blogs
+     *
+     * @param blogs           The blogs to be merged
+     * @param beforeTimestamp Timestamp of the last post already returned (or the time before which
+     *                        the timeline starts)
+     * @param beforeId        ID of the last post already returned (or an empty string)
+     * @param limit           Most posts to return
+     * @return The posts, newest first
+     */
+    public List<Post> merge(final Collection<String> blogs, final long beforeTimestamp, final String beforeId,
+            final int limit) {
+        final List<Post> merged = new ArrayList<Post>(limit);
+        if (blogs.isEmpty() || limit < 1) {
+            return merged;
+        }
+
+        final PriorityQueue<BlogCursor> heads =
+                new PriorityQueue<BlogCursor>(blogs.size(), (a, b) -> TIMELINE_ORDER.compare(a.peek(), b.peek()));
+        final int firstFetchSize = limit / blogs.size() + 1;
+        for (String blog : blogs) {
+            final BlogCursor cursor = new BlogCursor(blog, beforeTimestamp, beforeId);
+            if (cursor.fill(firstFetchSize)) {
+                heads.add(cursor);
+            }
+        }
+
+        while (merged.size() < limit && !heads.isEmpty()) {
+            final BlogCursor cursor = heads.poll();
+            merged.add(cursor.next());
+            if (cursor.peek() != null || cursor.fill(limit - merged.size())) {
+                heads.add(cursor);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Cursor over a single blog's posts, holding the posts fetched but not yet merged
+     */
+    private final class BlogCursor {
+
+        /**
+         * The blog
+         */
+        private final String blog;
+
+        /**
+         * Posts fetched but not yet merged, newest first
+         */
+        private final Deque<Post> buffer = new ArrayDeque<Post>();
+
+        /**
+         * Timestamp of the last post fetched
+         */
+        private long lastTimestamp;
+
+        /**
+         * ID of the last post fetched
+         */
+        private String lastId;
+
+        /**
+         * Whether the blog has no more posts to fetch
+         */
+        private boolean exhausted;
+
+        /**
+         * Constructor
+         *
+         * @param blog      The blog
+         * @param timestamp Timestamp of the key after which the cursor starts
+         * @param id        Post ID of the key after which the cursor starts
+         */
+        private BlogCursor(final String blog, final long timestamp, final String id) {
+            this.blog = blog;
+            this.lastTimestamp = timestamp;
+            this.lastId = id;
+        }
+
+        /**
+         * Returns the next post, without moving past it
+         *
+         * @return The next post, or null if none have been fetched
+         */
+        private Post peek() {
+            return buffer.peekFirst();
+        }
+
+        /**
+         * Returns the next post, and moves past it
+         *
+         * @return The next post
+         */
+        private Post next() {
+            return buffer.pollFirst();
+        }
+
+        /**
+         * Fetches the next page of the blog's posts, unless the blog has none left
+         *
+         * @param size Most posts to fetch
+         * @return True if any posts were fetched
+         */
+        private boolean fill(final int size) {
+            if (exhausted || size < 1) {
+                return false;
+            }
+
+            final List<Post> posts = fetcher.fetch(blog, lastTimestamp, lastId, size);
+            exhausted = posts.size() < size;
+            if (posts.isEmpty()) {
+                return false;
+            }
+
+            buffer.addAll(posts);
+            final Post last = posts.get(posts.size() - 1);
+            lastTimestamp = last.getUnixtimestamp();
+            lastId = last.getId();
+
+            return true;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.tiyb.tev.controller.helper;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.slf4j.Logger;
@@ -114,6 +117,24 @@ public class RepoAbstractor<T extends TEVCommonItems<T>> {
         throw new ResourceNotFoundException(this.typeName, "id", id);
     }
 
+    /**
+     * Returns the T items for a set of post IDs, using a single query rather than one per post.
+     * Callers are expected to keep the number of IDs reasonable (e.g. a few hundred), since they are
+     * all passed to the DB in one IN-list.
+     *
+     * @param ids IDs of the items to be returned
+     * @return Map of post ID to T item; IDs that don't exist in the DB are not included
+     */
+    public Map<String, T> getItemsByIds(final Collection<String> ids) {
+        final Map<String, T> items = new HashMap<String, T>();
+
+        for (T item : typeRepo.findAllById(ids)) {
+            items.put(item.getPostId(), item);
+        }
+
+        return items;
+    }
+
     /**
      * Updates a T item in the DB
      *
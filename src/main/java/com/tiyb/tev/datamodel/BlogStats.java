@@ -0,0 +1,290 @@
+package com.tiyb.tev.datamodel;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * <p>
+ * Materialized snapshot of the statistics for a single blog (number of posts of each type, how
+ * many have been read/favourited, number of photos, conversations, messages, and distinct
+ * hashtags), so that they can be retrieved without scanning the underlying tables.
+ * </p>
+ *
+ * <p>
+ * Frequent state changes (marking posts read/unread or favourite/non-favourite) are applied to the
+ * snapshot as deltas; bulk changes (imports, deletes) flag the snapshot as stale, and it's
+ * recalculated with a handful of aggregate queries the next time it's requested.
+ * </p>
+ *
+ * @author tiyb
+ */
+@Entity
+@Table(name = "blog_stats")
+public class BlogStats implements Serializable {
+
+    private static final long serialVersionUID = 6617338573209517290L;
+
+    /**
+     * Blog to which these stats apply
+     */
+    @Id
+    private String blog;
+
+    /**
+     * Total number of posts
+     */
+    private Long totalPosts = 0L;
+
+    /**
+     * Number of answer posts
+     */
+    private Long answerPosts = 0L;
+
+    /**
+     * Number of link posts
+     */
+    private Long linkPosts = 0L;
+
+    /**
+     * Number of photo posts
+     */
+    private Long photoPosts = 0L;
+
+    /**
+     * Number of regular (text) posts
+     */
+    private Long regularPosts = 0L;
+
+    /**
+     * Number of video posts
+     */
+    private Long videoPosts = 0L;
+
+    /**
+     * Number of posts that have been read
+     */
+    private Long readPosts = 0L;
+
+    /**
+     * Number of posts marked as favourites
+     */
+    private Long favouritePosts = 0L;
+
+    /**
+     * Number of individual photos (a single photo post can contain several)
+     */
+    private Long photos = 0L;
+
+    /**
+     * Number of conversations
+     */
+    private Long conversations = 0L;
+
+    /**
+     * Number of conversation messages
+     */
+    private Long messages = 0L;
+
+    /**
+     * Number of distinct hashtags
+     */
+    private Long distinctTags = 0L;
+
+    /**
+     * Indicates that the underlying data has changed in a way that hasn't been applied to the
+     * snapshot, so it needs to be recalculated
+     */
+    private Boolean stale = false;
+
+    /**
+     * Time (in milliseconds since the epoch) at which the snapshot was last recalculated
+     */
+    private Long lastCalculated;
+
+    /**
+     * Constructor for a new (empty) snapshot for a blog
+     *
+     * @param blog Blog to which the stats apply
+     */
+    public BlogStats(final String blog) {
+        this.blog = blog;
+    }
+
+    /**
+     * Default/empty constructor
+     */
+    public BlogStats() {
+
+    }
+
+    /**
+     * Number of posts that haven't been read; derived, rather than stored
+     *
+     * @return Total posts less read posts
+     */
+    public Long getUnreadPosts() {
+        return totalPosts - readPosts;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("BlogStats [");
+        if (blog != null) {
+            builder.append("blog=");
+            builder.append(blog);
+            builder.append(", ");
+        }
+        builder.append("totalPosts=");
+        builder.append(totalPosts);
+        builder.append(", answerPosts=");
+        builder.append(answerPosts);
+        builder.append(", linkPosts=");
+        builder.append(linkPosts);
+        builder.append(", photoPosts=");
+        builder.append(photoPosts);
+        builder.append(", regularPosts=");
+        builder.append(regularPosts);
+        builder.append(", videoPosts=");
+        builder.append(videoPosts);
+        builder.append(", readPosts=");
+        builder.append(readPosts);
+        builder.append(", favouritePosts=");
+        builder.append(favouritePosts);
+        builder.append(", photos=");
+        builder.append(photos);
+        builder.append(", conversations=");
+        builder.append(conversations);
+        builder.append(", messages=");
+        builder.append(messages);
+        builder.append(", distinctTags=");
+        builder.append(distinctTags);
+        builder.append(", stale=");
+        builder.append(stale);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    public String getBlog() {
+        return blog;
+    }
+
+    public void setBlog(final String blog) {
+        this.blog = blog;
+    }
+
+    public Long getTotalPosts() {
+        return totalPosts;
+    }
+
+    public void setTotalPosts(final Long totalPosts) {
+        this.totalPosts = totalPosts;
+    }
+
+    public Long getAnswerPosts() {
+        return answerPosts;
+    }
+
+    public void setAnswerPosts(final Long answerPosts) {
+        this.answerPosts = answerPosts;
+    }
+
+    public Long getLinkPosts() {
+        return linkPosts;
+    }
+
+    public void setLinkPosts(final Long linkPosts) {
+        this.linkPosts = linkPosts;
+    }
+
+    public Long getPhotoPosts() {
+        return photoPosts;
+    }
+
+    public void setPhotoPosts(final Long photoPosts) {
+        this.photoPosts = photoPosts;
+    }
+
+    public Long getRegularPosts() {
+        return regularPosts;
+    }
+
+    public void setRegularPosts(final Long regularPosts) {
+        this.regularPosts = regularPosts;
+    }
+
+    public Long getVideoPosts() {
+        return videoPosts;
+    }
+
+    public void setVideoPosts(final Long videoPosts) {
+        this.videoPosts = videoPosts;
+    }
+
+    public Long getReadPosts() {
+        return readPosts;
+    }
+
+    public void setReadPosts(final Long readPosts) {
+        this.readPosts = readPosts;
+    }
+
+    public Long getFavouritePosts() {
+        return favouritePosts;
+    }
+
+    public void setFavouritePosts(final Long favouritePosts) {
+        this.favouritePosts = favouritePosts;
+    }
+
+    public Long getPhotos() {
+        return photos;
+    }
+
+    public void setPhotos(final Long photos) {
+        this.photos = photos;
+    }
+
+    public Long getConversations() {
+        return conversations;
+    }
+
+    public void setConversations(final Long conversations) {
+        this.conversations = conversations;
+    }
+
+    public Long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(final Long messages) {
+        this.messages = messages;
+    }
+
+    public Long getDistinctTags() {
+        return distinctTags;
+    }
+
+    public void setDistinctTags(final Long distinctTags) {
+        this.distinctTags = distinctTags;
+    }
+
+    public Boolean getStale() {
+        return stale;
+    }
+
+    public void setStale(final Boolean stale) {
+        this.stale = stale;
+    }
+
+    public Long getLastCalculated() {
+        return lastCalculated;
+    }
+
+    public void setLastCalculated(final Long lastCalculated) {
+        this.lastCalculated = lastCalculated;
+    }
+}
@@ -7,17 +7,19 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 
 /**
  * Entity containing a message from a conversation, from Tumblr's messaging
- * system.
+ * system. Indexed on (conversation, timestamp, ID), which is the order in which
+ * a conversation's messages are paged through.
  *
  * @author tiyb
  */
 @Entity
-@Table(name = "conversation_message")
+@Table(name = "conversation_message", indexes = { @Index(columnList = "conversationId,timestamp,id") })
 public class ConversationMessage implements Serializable {
 
     private static final long serialVersionUID = -319566740443708571L;
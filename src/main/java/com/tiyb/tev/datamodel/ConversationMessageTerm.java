@@ -0,0 +1,167 @@
+package com.tiyb.tev.datamodel;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Entry in the full-text search index for conversation messages. Each row records that a given
+ * (normalized) term appears in a given message, along with how many times it appears; searches are
+ * performed against this table rather than scanning the message text itself.
+ *
+ * @author tiyb
+ */
+@Entity
+@Table(name = "conversation_message_term", indexes = { @Index(columnList = "blog,term"),
+        @Index(columnList = "messageId") })
+public class ConversationMessageTerm implements Serializable {
+
+    private static final long serialVersionUID = -2466123185517372961L;
+
+    /**
+     * Unique ID of the index entry
+     */
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id
+    private Long id;
+
+    /**
+     * The normalized (lower-case) term
+     */
+    private String term;
+
+    /**
+     * ID of the message in which the term appears
+     */
+    private Long messageId;
+
+    /**
+     * ID of the conversation to which the message belongs
+     */
+    private Long conversationId;
+
+    /**
+     * Blog for which the message was imported
+     */
+    private String blog;
+
+    /**
+     * Number of times the term appears in the message
+     */
+    private Integer frequency;
+
+    /**
+     * Constructor to initialize an index entry
+     *
+     * @param term           The normalized term
+     * @param messageId      ID of the message containing the term
+     * @param conversationId ID of the conversation containing the message
+     * @param blog           Blog to which the conversation belongs
+     * @param frequency      Number of times the term appears in the message
+     */
+    public ConversationMessageTerm(final String term, final Long messageId, final Long conversationId,
+            final String blog, final Integer frequency) {
+        this.term = term;
+        this.messageId = messageId;
+        this.conversationId = conversationId;
+        this.blog = blog;
+        this.frequency = frequency;
+    }
+
+    /**
+     * Default/empty constructor
+     */
+    public ConversationMessageTerm() {
+
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("ConversationMessageTerm [");
+        if (id != null) {
+            builder.append("id=");
+            builder.append(id);
+            builder.append(", ");
+        }
+        if (term != null) {
+            builder.append("term=");
+            builder.append(term);
+            builder.append(", ");
+        }
+        if (messageId != null) {
+            builder.append("messageId=");
+            builder.append(messageId);
+            builder.append(", ");
+        }
+        if (conversationId != null) {
+            builder.append("conversationId=");
+            builder.append(conversationId);
+            builder.append(", ");
+        }
+        if (blog != null) {
+            builder.append("blog=");
+            builder.append(blog);
+            builder.append(", ");
+        }
+        if (frequency != null) {
+            builder.append("frequency=");
+            builder.append(frequency);
+        }
+        builder.append("]");
+        return builder.toString();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(final Long id) {
+        this.id = id;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public void setTerm(final String term) {
+        this.term = term;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(final Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(final Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getBlog() {
+        return blog;
+    }
+
+    public void setBlog(final String blog) {
+        this.blog = blog;
+    }
+
+    public Integer getFrequency() {
+        return frequency;
+    }
+
+    public void setFrequency(final Integer frequency) {
+        this.frequency = frequency;
+    }
+}
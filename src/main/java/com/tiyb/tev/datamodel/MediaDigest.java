@@ -0,0 +1,103 @@
+package com.tiyb.tev.datamodel;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Maps a media file, by the name Tumblr gives it (<code>{postId}_{offset}.{ext}</code> for photos,
+ * <code>{postId}.{ext}</code> for videos), to the SHA-256 digest of its contents, under which it's
+ * kept in the content-addressed {@link com.tiyb.tev.media.MediaStore MediaStore}. Since post IDs
+ * are unique across blogs, the file name alone identifies the media.
+ *
+ * @author tiyb
+ */
+@Entity
+@Table(name = "media_digest", indexes = { @Index(columnList = "digest"), @Index(columnList = "postId") })
+public class MediaDigest implements Serializable {
+
+    private static final long serialVersionUID = -2214836329846528318L;
+
+    /**
+     * Name of the media file
+     */
+    @Id
+    private String fileName;
+
+    /**
+     * ID of the post to which the file belongs
+     */
+    private String postId;
+
+    /**
+     * Hex-encoded SHA-256 digest of the file's contents
+     */
+    private String digest;
+
+    /**
+     * Size of the file, in bytes
+     */
+    private Long size;
+
+    /**
+     * Constructor
+     *
+     * @param fileName Name of the media file
+     * @param postId   ID of the post to which the file belongs
+     * @param digest   Hex-encoded SHA-256 digest of the file's contents
+     * @param size     Size of the file, in bytes
+     */
+    public MediaDigest(final String fileName, final String postId, final String digest, final Long size) {
+        this.fileName = fileName;
+        this.postId = postId;
+        this.digest = digest;
+        this.size = size;
+    }
+
+    /**
+     * Default constructor
+     */
+    public MediaDigest() {
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MediaDigest [fileName=%s, postId=%s, digest=%s, size=%d]", fileName, postId, digest,
+                size);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(final String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(final String postId) {
+        this.postId = postId;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(final String digest) {
+        this.digest = digest;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(final Long size) {
+        this.size = size;
+    }
+}
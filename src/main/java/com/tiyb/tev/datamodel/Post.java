@@ -5,6 +5,7 @@ import java.io.Serializable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 
@@ -23,10 +24,15 @@ import org.apache.commons.lang3.StringUtils;
  * XML, rather than being set by TEV itself.
  * </p>
  *
+ * <p>
+ * Indexed on (blog, timestamp, ID), which is the order in which the unified
+ * timeline pages through each blog's posts.
+ * </p>
+ *
  * @author tiyb
  */
 @Entity
-@Table(name = "post")
+@Table(name = "post", indexes = { @Index(columnList = "tumblelog,unixtimestamp,id") })
 public class Post implements Serializable {
 
     /**
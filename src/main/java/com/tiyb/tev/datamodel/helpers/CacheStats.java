@@ -0,0 +1,72 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+
+/**
+ * Helper class reporting how effective an in-memory cache has been
+ *
+ * @author tiyb
+ *
+ */
+public class CacheStats implements Serializable {
+
+    private static final long serialVersionUID = -6093451785012646257L;
+
+    /**
+     * Number of reads answered from the cache
+     */
+    private Long hits;
+
+    /**
+     * Number of reads for which the cache had to be loaded from the DB
+     */
+    private Long misses;
+
+    /**
+     * Number of entries currently in the cache
+     */
+    private Integer entries;
+
+    /**
+     * Constructor
+     *
+     * @param hits    Number of reads answered from the cache
+     * @param misses  Number of reads for which the cache had to be loaded from the DB
+     * @param entries Number of entries currently in the cache
+     */
+    public CacheStats(final Long hits, final Long misses, final Integer entries) {
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = entries;
+    }
+
+    /**
+     * Default constructor
+     */
+    public CacheStats() {
+    }
+
+    public Long getHits() {
+        return hits;
+    }
+
+    public void setHits(final Long hits) {
+        this.hits = hits;
+    }
+
+    public Long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(final Long misses) {
+        this.misses = misses;
+    }
+
+    public Integer getEntries() {
+        return entries;
+    }
+
+    public void setEntries(final Integer entries) {
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,59 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tiyb.tev.datamodel.ConversationMessage;
+
+/**
+ * Helper class holding one page of a conversation's messages, in (timestamp, ID) order, for
+ * viewers that load a long conversation a page at a time. The first and last messages of the page
+ * are the keys for the pages either side of it.
+ *
+ * @author tiyb
+ *
+ */
+public class ConversationMessagePage implements Serializable {
+
+    private static final long serialVersionUID = 8093325906617104412L;
+
+    /**
+     * Messages in this page, oldest first
+     */
+    private List<ConversationMessage> messages = new ArrayList<ConversationMessage>();
+
+    /**
+     * Whether the conversation has messages older than the ones in this page
+     */
+    private Boolean hasOlder;
+
+    /**
+     * Whether the conversation has messages newer than the ones in this page
+     */
+    private Boolean hasNewer;
+
+    public List<ConversationMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(final List<ConversationMessage> messages) {
+        this.messages = messages;
+    }
+
+    public Boolean getHasOlder() {
+        return hasOlder;
+    }
+
+    public void setHasOlder(final Boolean hasOlder) {
+        this.hasOlder = hasOlder;
+    }
+
+    public Boolean getHasNewer() {
+        return hasNewer;
+    }
+
+    public void setHasNewer(final Boolean hasNewer) {
+        this.hasNewer = hasNewer;
+    }
+}
@@ -0,0 +1,118 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+
+/**
+ * Helper class representing a single hit from a full-text search of conversation messages
+ *
+ * @author tiyb
+ *
+ */
+public class MessageSearchResult implements Serializable {
+
+    private static final long serialVersionUID = 3150214735432861029L;
+
+    /**
+     * ID of the conversation containing the message
+     */
+    private Long conversationId;
+
+    /**
+     * Name of the participant in the conversation
+     */
+    private String participant;
+
+    /**
+     * ID of the matching message
+     */
+    private Long messageId;
+
+    /**
+     * Timestamp of the matching message
+     */
+    private Long timestamp;
+
+    /**
+     * Whether the message was received (true) or sent (false)
+     */
+    private Boolean received;
+
+    /**
+     * Portion of the message surrounding the first match
+     */
+    private String snippet;
+
+    /**
+     * Number of distinct search terms found in the message
+     */
+    private Long matchedTerms;
+
+    /**
+     * Total number of occurrences of the search terms in the message
+     */
+    private Long occurrences;
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(final Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getParticipant() {
+        return participant;
+    }
+
+    public void setParticipant(final String participant) {
+        this.participant = participant;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(final Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(final Long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public Boolean getReceived() {
+        return received;
+    }
+
+    public void setReceived(final Boolean received) {
+        this.received = received;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(final String snippet) {
+        this.snippet = snippet;
+    }
+
+    public Long getMatchedTerms() {
+        return matchedTerms;
+    }
+
+    public void setMatchedTerms(final Long matchedTerms) {
+        this.matchedTerms = matchedTerms;
+    }
+
+    public Long getOccurrences() {
+        return occurrences;
+    }
+
+    public void setOccurrences(final Long occurrences) {
+        this.occurrences = occurrences;
+    }
+}
@@ -0,0 +1,73 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tiyb.tev.datamodel.Post;
+
+/**
+ * Helper class holding the posts for a blog that have changed since a given version, for clients
+ * that want to update the posts they're showing without reloading all of them
+ *
+ * @author tiyb
+ *
+ */
+public class PostChanges implements Serializable {
+
+    private static final long serialVersionUID = 4715083215944170236L;
+
+    /**
+     * Version of the blog's posts once these changes have been applied; passed back the next time
+     * changes are requested
+     */
+    private Long version;
+
+    /**
+     * Whether the client is too far behind to be given individual changes, and has to reload all
+     * of the blog's posts
+     */
+    private Boolean fullReload;
+
+    /**
+     * Posts that have been created or updated
+     */
+    private List<Post> posts = new ArrayList<Post>();
+
+    /**
+     * IDs of posts that have been deleted
+     */
+    private List<String> deletedIds = new ArrayList<String>();
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(final Long version) {
+        this.version = version;
+    }
+
+    public Boolean getFullReload() {
+        return fullReload;
+    }
+
+    public void setFullReload(final Boolean fullReload) {
+        this.fullReload = fullReload;
+    }
+
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    public void setPosts(final List<Post> posts) {
+        this.posts = posts;
+    }
+
+    public List<String> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public void setDeletedIds(final List<String> deletedIds) {
+        this.deletedIds = deletedIds;
+    }
+}
@@ -0,0 +1,41 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+
+/**
+ * Helper class holding the number of posts in a blog during a single day, week, or month, for
+ * drawing an activity histogram
+ *
+ * @author tiyb
+ *
+ */
+public class PostHistogramBucket implements Serializable {
+
+    private static final long serialVersionUID = 2846105923394188217L;
+
+    /**
+     * Unix timestamp of the start of the day, week, or month (UTC)
+     */
+    private Long start;
+
+    /**
+     * Number of posts during the day, week, or month
+     */
+    private Long count;
+
+    public Long getStart() {
+        return start;
+    }
+
+    public void setStart(final Long start) {
+        this.start = start;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(final Long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,46 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tiyb.tev.datamodel.Post;
+
+/**
+ * Helper class holding one page of posts in (timestamp, ID) order, newest first, either from several
+ * blogs merged into a single timeline or from a single blog's date range. The last post of the page
+ * is the key for the next page.
+ *
+ * @author tiyb
+ *
+ */
+public class PostTimelinePage implements Serializable {
+
+    private static final long serialVersionUID = -3317419873201577642L;
+
+    /**
+     * Posts in this page, newest first
+     */
+    private List<Post> posts = new ArrayList<Post>();
+
+    /**
+     * Whether there are posts older than the ones in this page
+     */
+    private Boolean hasMore;
+
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    public void setPosts(final List<Post> posts) {
+        this.posts = posts;
+    }
+
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(final Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
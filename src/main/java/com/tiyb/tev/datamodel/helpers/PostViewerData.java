@@ -0,0 +1,130 @@
+package com.tiyb.tev.datamodel.helpers;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tiyb.tev.datamodel.Answer;
+import com.tiyb.tev.datamodel.Link;
+import com.tiyb.tev.datamodel.Photo;
+import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.datamodel.Regular;
+import com.tiyb.tev.datamodel.Video;
+
+/**
+ * Helper class containing everything the post viewer needs in order to render a post: the post
+ * itself, its type-specific content, and (for photo posts) the photos along with the names of the
+ * media files on disk. Only the content matching the post's type will be populated.
+ *
+ * @author tiyb
+ *
+ */
+public class PostViewerData implements Serializable {
+
+    private static final long serialVersionUID = -2385116042873954311L;
+
+    /**
+     * The post being viewed
+     */
+    private Post post;
+
+    /**
+     * Content for Regular posts
+     */
+    private Regular regular;
+
+    /**
+     * Content for Answer posts
+     */
+    private Answer answer;
+
+    /**
+     * Content for Link posts
+     */
+    private Link link;
+
+    /**
+     * Content for Video posts
+     */
+    private Video video;
+
+    /**
+     * Photos for Photo posts, in order
+     */
+    private List<Photo> photos = new ArrayList<Photo>();
+
+    /**
+     * Names of the image files on disk for Photo posts, in the same order as the photos
+     */
+    private List<String> mediaNames = new ArrayList<String>();
+
+    /**
+     * Caption for Photo posts (the same caption is copied across all photos)
+     */
+    private String caption;
+
+    public Post getPost() {
+        return post;
+    }
+
+    public void setPost(final Post post) {
+        this.post = post;
+    }
+
+    public Regular getRegular() {
+        return regular;
+    }
+
+    public void setRegular(final Regular regular) {
+        this.regular = regular;
+    }
+
+    public Answer getAnswer() {
+        return answer;
+    }
+
+    public void setAnswer(final Answer answer) {
+        this.answer = answer;
+    }
+
+    public Link getLink() {
+        return link;
+    }
+
+    public void setLink(final Link link) {
+        this.link = link;
+    }
+
+    public Video getVideo() {
+        return video;
+    }
+
+    public void setVideo(final Video video) {
+        this.video = video;
+    }
+
+    public List<Photo> getPhotos() {
+        return photos;
+    }
+
+    public void setPhotos(final List<Photo> photos) {
+        this.photos = photos;
+    }
+
+    public List<String> getMediaNames() {
+        return mediaNames;
+    }
+
+    public void setMediaNames(final List<String> mediaNames) {
+        this.mediaNames = mediaNames;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public void setCaption(final String caption) {
+        this.caption = caption;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.tiyb.tev.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception raised when an XML export fails while it's being streamed to the client. If nothing has
+ * been sent yet the client gets a 500; otherwise the connection is aborted, so that a truncated
+ * document is never mistaken for a complete download.
+ *
+ * @author tiyb
+ */
+@ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+public class ExportStreamingException extends RuntimeException {
+
+    private static final long serialVersionUID = -4061933297519548270L;
+
+    /**
+     * Constructor
+     *
+     * @param cause The error encountered while rendering or writing the export
+     */
+    public ExportStreamingException(final Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,174 @@
+package com.tiyb.tev.media;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Progress of a batch of downloads queued with the {@link MediaFetcher}, such as fetching all of
+ * the photos missing from a blog's media directory. Downloads are added to the job with
+ * {@link #track(CompletableFuture, String) track()} as they're queued, and the job is complete once
+ * {@link #allQueued()} has been called and every tracked download has finished.
+ * </p>
+ *
+ * <p>
+ * As with {@link MediaImportJob}, a failed download doesn't stop the job; it's counted, and
+ * details are kept for the first {@link MediaImportJob#MAX_RECORDED_FAILURES} failures.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class MediaFetchJob {
+
+    /**
+     * Unique ID of the job, used for retrieving its progress
+     */
+    private final String id = UUID.randomUUID().toString();
+
+    /**
+     * Description of what's being fetched, for display
+     */
+    private final String description;
+
+    /**
+     * Time the job was created, in milliseconds
+     */
+    private final long createdTime = System.currentTimeMillis();
+
+    /**
+     * Time the job finished, in milliseconds; 0 if it hasn't yet
+     */
+    private volatile long finishedTime;
+
+    /**
+     * Number of downloads queued so far
+     */
+    private final AtomicInteger totalFiles = new AtomicInteger();
+
+    /**
+     * Number of files downloaded successfully
+     */
+    private final AtomicInteger fetchedFiles = new AtomicInteger();
+
+    /**
+     * Number of files that couldn't be downloaded
+     */
+    private final AtomicInteger failedFiles = new AtomicInteger();
+
+    /**
+     * Number of tracked downloads that haven't finished yet
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Set once no more downloads will be added to the job
+     */
+    private final AtomicBoolean queueingComplete = new AtomicBoolean();
+
+    /**
+     * Set once the job has finished, so that it's only marked as done once
+     */
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    /**
+     * Details of the files that couldn't be downloaded, in the form <code>name: error</code>
+     */
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Constructor
+     *
+     * @param description Description of what's being fetched
+     */
+    public MediaFetchJob(final String description) {
+        this.description = description;
+    }
+
+    /**
+     * Adds a queued download to the job
+     *
+     * @param download Future for the download, as returned by
+     *                 {@link MediaFetcher#fetch(String, Path) MediaFetcher.fetch()}
+     * @param fileName Name of the file being downloaded, for reporting failures
+     */
+    public void track(final CompletableFuture<Path> download, final String fileName) {
+        totalFiles.incrementAndGet();
+        outstanding.incrementAndGet();
+        download.whenComplete((path, error) -> {
+            if (error == null) {
+                fetchedFiles.incrementAndGet();
+            } else if (failedFiles.incrementAndGet() <= MediaImportJob.MAX_RECORDED_FAILURES) {
+                final Throwable cause = error.getCause() == null ? error : error.getCause();
+                failures.add(String.format("%s: %s", fileName, cause.getMessage()));
+            }
+            if (outstanding.decrementAndGet() == 0 && queueingComplete.get()) {
+                markDone();
+            }
+        });
+    }
+
+    /**
+     * Indicates that no more downloads will be added to the job, so it's complete as soon as those
+     * already tracked have finished
+     */
+    public void allQueued() {
+        queueingComplete.set(true);
+        if (outstanding.get() == 0) {
+            markDone();
+        }
+    }
+
+    /**
+     * Marks the job as finished, if it hasn't been already
+     */
+    private void markDone() {
+        if (done.compareAndSet(false, true)) {
+            finishedTime = System.currentTimeMillis();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public long getFinishedTime() {
+        return finishedTime;
+    }
+
+    public boolean isDone() {
+        return done.get();
+    }
+
+    public int getTotalFiles() {
+        return totalFiles.get();
+    }
+
+    public int getFetchedFiles() {
+        return fetchedFiles.get();
+    }
+
+    public int getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    public List<String> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<String>(failures);
+        }
+    }
+}
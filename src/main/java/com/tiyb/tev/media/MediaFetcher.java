@@ -0,0 +1,548 @@
+package com.tiyb.tev.media;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * Queue for downloading media files (e.g. photos missing from a Tumblr export, which are often
+ * still on Tumblr's servers) into a media directory in the background.
+ * </p>
+ *
+ * <p>
+ * Downloads run on a small pool of threads, with a limit on the number of simultaneous connections
+ * to any one host; a download whose host is busy waits in that host's queue, without holding a
+ * thread, and is started as soon as one of the host's downloads finishes. Failures
+ * that might be temporary (connection errors, timeouts, <code>429</code> and <code>5xx</code>
+ * responses) are retried with exponential backoff; other HTTP errors fail the download
+ * immediately.
+ * </p>
+ *
+ * <p>
+ * Data is written to a temporary <code>.part</code> file alongside the target, which is renamed
+ * to the target once the download is complete, so that a partially-downloaded file is never
+ * mistaken for the real thing. If a download is interrupted, the next attempt (or the next request
+ * for the same file, even after a restart) asks the server for just the rest of the file with a
+ * <code>Range</code> header, and starts again from scratch if the server doesn't support that.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Service
+public class MediaFetcher {
+
+    /**
+     * Suffix given to files while they're being downloaded
+     */
+    private static final String PART_SUFFIX = ".part";
+
+    /**
+     * Longest delay between attempts to download a file
+     */
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /**
+     * Size of the buffer used for copying downloaded data to disk
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * HTTP status returned by servers that are rate-limiting requests
+     */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * HTTP status returned when a requested range isn't part of the file
+     */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Number of finished jobs whose progress is kept for retrieval
+     */
+    private static final int MAX_RETAINED_JOBS = 50;
+
+    private Logger logger = LoggerFactory.getLogger(MediaFetcher.class);
+
+    /**
+     * Index of media directories, which is updated as files are downloaded
+     */
+    @Autowired
+    private MediaIndex mediaIndex;
+
+    /**
+     * Content-addressed store to which downloaded files are added, if it's enabled
+     */
+    @Autowired
+    private MediaStore mediaStore;
+
+    /**
+     * Number of threads used for downloading
+     */
+    @Value("${tev.media.fetch.threads:4}")
+    private int fetchThreads;
+
+    /**
+     * Maximum number of simultaneous downloads from any one host
+     */
+    @Value("${tev.media.fetch.connectionsPerHost:2}")
+    private int connectionsPerHost;
+
+    /**
+     * Maximum number of attempts made to download a file
+     */
+    @Value("${tev.media.fetch.maxAttempts:4}")
+    private int maxAttempts;
+
+    /**
+     * Delay before the first retry of a failed download; doubled for each subsequent retry
+     */
+    @Value("${tev.media.fetch.initialBackoffMillis:1000}")
+    private long initialBackoffMillis;
+
+    /**
+     * Connect and read timeout for downloads
+     */
+    @Value("${tev.media.fetch.timeoutMillis:30000}")
+    private int timeoutMillis;
+
+    /**
+     * Runs downloads, and schedules retries
+     */
+    private ScheduledThreadPoolExecutor pool;
+
+    /**
+     * Running and waiting downloads for each host
+     */
+    private final Map<String, HostQueue> hostQueues = new ConcurrentHashMap<String, HostQueue>();
+
+    /**
+     * Downloads that are queued or running, keyed by target file, so that a file requested twice is
+     * only downloaded once
+     */
+    private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<Path, CompletableFuture<Path>>();
+
+    /**
+     * Jobs that have been started, keyed by ID
+     */
+    private final Map<String, MediaFetchJob> jobs = new ConcurrentHashMap<String, MediaFetchJob>();
+
+    /**
+     * Creates the thread pool
+     */
+    @PostConstruct
+    public void init() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        pool = new ScheduledThreadPoolExecutor(fetchThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "tev-media-fetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Stops all downloads; partial downloads are left in place to be resumed later
+     */
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Queues a file to be downloaded. If the same target is already queued, the existing download
+     * is returned rather than starting another.
+     *
+     * @param url    URL of the file
+     * @param target Where the file should be saved, replacing any existing file
+     * @return Future completed with the target once the file has been saved, or completed
+     *         exceptionally if it couldn't be downloaded
+     */
+    public CompletableFuture<Path> fetch(final String url, final Path target) {
+        final Path key = target.toAbsolutePath().normalize();
+        final CompletableFuture<Path> download = new CompletableFuture<Path>();
+        final CompletableFuture<Path> existing = inFlight.putIfAbsent(key, download);
+        if (existing != null) {
+            return existing;
+        }
+
+        download.whenComplete((path, error) -> inFlight.remove(key, download));
+        final URL parsedUrl;
+        try {
+            parsedUrl = new URL(url);
+        } catch (IOException e) {
+            download.completeExceptionally(e);
+            return download;
+        }
+        if (!parsedUrl.getProtocol().startsWith("http")) {
+            download.completeExceptionally(new PermanentFetchException("Unsupported URL: " + url));
+            return download;
+        }
+        hostQueue(parsedUrl.getHost()).submit(new FetchTask(parsedUrl, key, download));
+
+        return download;
+    }
+
+    /**
+     * Creates a job for tracking a batch of downloads
+     *
+     * @param description Description of what's being fetched
+     * @return The job
+     */
+    public MediaFetchJob startJob(final String description) {
+        pruneFinishedJobs();
+        final MediaFetchJob job = new MediaFetchJob(description);
+        jobs.put(job.getId(), job);
+
+        return job;
+    }
+
+    /**
+     * Retrieves a job created by {@link #startJob(String) startJob()}
+     *
+     * @param id ID of the job
+     * @return The job, or null if there is no such job (or it finished long enough ago to have been
+     *         discarded)
+     */
+    public MediaFetchJob getJob(final String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Retrieves the queue for a host, creating it if necessary
+     *
+     * @param host The host
+     * @return The host's queue
+     */
+    private HostQueue hostQueue(final String host) {
+        return hostQueues.computeIfAbsent(host, h -> new HostQueue());
+    }
+
+    /**
+     * Queues a task for another attempt after a delay, failing its download if the pool has been
+     * shut down
+     *
+     * @param task        The task
+     * @param delayMillis Delay in milliseconds
+     */
+    private void retry(final FetchTask task, final long delayMillis) {
+        try {
+            pool.schedule(() -> hostQueue(task.url.getHost()).submit(task), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            task.download.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Calculates the delay before the next attempt at a download: doubles with each attempt, up to
+     * a maximum, with some random jitter so that many failed downloads aren't all retried at once
+     *
+     * @param attempt Number of attempts made so far
+     * @return Delay in milliseconds
+     */
+    private long backoffMillis(final int attempt) {
+        final long base = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return base + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    /**
+     * Downloads a file to its <code>.part</code> file, resuming from the end of any data already
+     * there, and then renames it into place
+     *
+     * @param url    URL of the file
+     * @param target Where the file should be saved
+     * @throws IOException if the download fails; {@link PermanentFetchException} if there's no
+     *                     point in retrying
+     */
+    private void download(final URL url, final Path target) throws IOException {
+        final Path part = target.resolveSibling("." + target.getFileName() + PART_SUFFIX);
+        final long existingBytes = Files.exists(part) ? Files.size(part) : 0;
+
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        if (existingBytes > 0) {
+            connection.setRequestProperty(HttpHeaders.RANGE, String.format("bytes=%d-", existingBytes));
+        }
+
+        final int status = connection.getResponseCode();
+        final String contentRange = connection.getHeaderField(HttpHeaders.CONTENT_RANGE);
+        final boolean append;
+        if (status == HttpURLConnection.HTTP_PARTIAL && existingBytes > 0 && contentRange != null
+                && contentRange.startsWith(String.format("bytes %d-", existingBytes))) {
+            append = true;
+        } else if (status == HttpURLConnection.HTTP_OK) {
+            append = false;
+        } else {
+            closeQuietly(connection.getErrorStream());
+            if (status == HTTP_RANGE_NOT_SATISFIABLE || status == HttpURLConnection.HTTP_PARTIAL) {
+                Files.deleteIfExists(part);
+                throw new IOException(String.format("Unable to resume download; status %d", status));
+            }
+            final String message = String.format("HTTP status %d", status);
+            if (status == HTTP_TOO_MANY_REQUESTS || status == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                    || status >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new IOException(message);
+            }
+            throw new PermanentFetchException(message);
+        }
+
+        final long expectedBytes = connection.getContentLengthLong();
+        long written = 0;
+        try (InputStream in = connection.getInputStream();
+                OutputStream out = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                written += read;
+            }
+        }
+        if (expectedBytes >= 0 && written != expectedBytes) {
+            throw new IOException(String.format("Connection closed after %d of %d bytes", written, expectedBytes));
+        }
+
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Adds a downloaded file to the content-addressed media store, if it's enabled. The file has
+     * been downloaded either way, so failures are only logged.
+     *
+     * @param file The downloaded file
+     */
+    private void addToStore(final Path file) {
+        if (!mediaStore.isEnabled()) {
+            return;
+        }
+        try {
+            mediaStore.store(file);
+        } catch (IOException e) {
+            logger.warn("Unable to add {} to the media store", file, e);
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring any errors
+     *
+     * @param stream The stream; may be null
+     */
+    private void closeQuietly(final InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            logger.debug("Error closing stream", e);
+        }
+    }
+
+    /**
+     * Discards the oldest finished jobs, once more than {@link #MAX_RETAINED_JOBS} have finished
+     */
+    private void pruneFinishedJobs() {
+        final List<MediaFetchJob> finished = new ArrayList<MediaFetchJob>();
+        for (MediaFetchJob job : jobs.values()) {
+            if (job.isDone()) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() <= MAX_RETAINED_JOBS) {
+            return;
+        }
+
+        finished.sort((a, b) -> Long.compare(a.getCreatedTime(), b.getCreatedTime()));
+        for (MediaFetchJob job : finished.subList(0, finished.size() - MAX_RETAINED_JOBS)) {
+            jobs.remove(job.getId());
+        }
+    }
+
+    /**
+     * Downloads for a single host: at most {@link MediaFetcher#connectionsPerHost connectionsPerHost}
+     * run at once, and the rest wait, first come first served, for one of them to finish
+     *
+     * @author tiyb
+     *
+     */
+    private final class HostQueue {
+
+        /**
+         * Downloads waiting for a connection
+         */
+        private final ArrayDeque<FetchTask> waiting = new ArrayDeque<FetchTask>();
+
+        /**
+         * Number of downloads running (or handed to the pool to be run)
+         */
+        private int running;
+
+        /**
+         * Starts a download if the host has a connection free, or queues it until one is
+         *
+         * @param task The download
+         */
+        void submit(final FetchTask task) {
+            synchronized (this) {
+                if (running >= connectionsPerHost) {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            start(task);
+        }
+
+        /**
+         * Called when a download has finished with its connection; hands the connection to the next
+         * waiting download, if there is one
+         */
+        void finished() {
+            final FetchTask next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            start(next);
+        }
+
+        /**
+         * Hands a download to the pool. If the pool has been shut down the download fails, and its
+         * connection is passed on so that every waiting download is failed in turn.
+         *
+         * @param task The download, which has already been counted as running
+         */
+        private void start(final FetchTask task) {
+            try {
+                pool.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.download.completeExceptionally(e);
+                finished();
+            }
+        }
+    }
+
+    /**
+     * A single download, which queues itself for another attempt after failures that might be
+     * temporary
+     *
+     * @author tiyb
+     *
+     */
+    private final class FetchTask implements Runnable {
+
+        /**
+         * URL of the file
+         */
+        private final URL url;
+
+        /**
+         * Where the file should be saved
+         */
+        private final Path target;
+
+        /**
+         * Completed when the download succeeds or finally fails
+         */
+        private final CompletableFuture<Path> download;
+
+        /**
+         * Number of attempts made so far
+         */
+        private int attempts;
+
+        /**
+         * Constructor
+         *
+         * @param url      URL of the file
+         * @param target   Where the file should be saved
+         * @param download Completed when the download succeeds or finally fails
+         */
+        FetchTask(final URL url, final Path target, final CompletableFuture<Path> download) {
+            this.url = url;
+            this.target = target;
+            this.download = download;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+            try {
+                download(url, target);
+                mediaIndex.fileAdded(target.getParent(), target.getFileName().toString());
+                addToStore(target);
+                download.complete(target);
+            } catch (PermanentFetchException | RuntimeException e) {
+                logger.warn("Unable to download {}: {}", url, e.getMessage());
+                download.completeExceptionally(e);
+            } catch (IOException e) {
+                if (attempts < maxAttempts) {
+                    logger.debug("Attempt {} to download {} failed; retrying", attempts, url, e);
+                    retry(this, backoffMillis(attempts));
+                } else {
+                    logger.warn("Unable to download {} after {} attempts", url, attempts, e);
+                    download.completeExceptionally(e);
+                }
+            } finally {
+                hostQueue(url.getHost()).finished();
+            }
+        }
+    }
+
+    /**
+     * Indicates a download failure that retrying won't fix, such as a <code>404</code>
+     *
+     * @author tiyb
+     *
+     */
+    private static final class PermanentFetchException extends IOException {
+
+        private static final long serialVersionUID = 3408361552961475325L;
+
+        /**
+         * Constructor
+         *
+         * @param message Description of the failure
+         */
+        PermanentFetchException(final String message) {
+            super(message);
+        }
+    }
+}
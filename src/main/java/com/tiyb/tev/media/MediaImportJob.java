@@ -0,0 +1,292 @@
+package com.tiyb.tev.media;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Progress of a bulk import of media files, started by {@link MediaImporter}. All of the counters
+ * are updated by the import's worker threads as they go, so the object can be returned (as JSON) to
+ * a client polling for progress at any time.
+ * </p>
+ *
+ * <p>
+ * A failure to import an individual file doesn't stop the import; it's counted, and the name of the
+ * file and the error are recorded (up to {@link #MAX_RECORDED_FAILURES}, so that importing from a
+ * directory that can't be read at all doesn't use unbounded memory).
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class MediaImportJob {
+
+    /**
+     * States an import job can be in
+     *
+     * @author tiyb
+     *
+     */
+    public enum Status {
+        /**
+         * Waiting for an earlier import to finish
+         */
+        QUEUED,
+        /**
+         * Files are being imported
+         */
+        RUNNING,
+        /**
+         * All files have been processed (some may have failed)
+         */
+        COMPLETED,
+        /**
+         * The import couldn't be carried out at all (e.g. the source directory couldn't be read)
+         */
+        FAILED
+    }
+
+    /**
+     * Maximum number of individual file failures whose details are kept
+     */
+    public static final int MAX_RECORDED_FAILURES = 1000;
+
+    /**
+     * Unique ID of the job, used for retrieving its progress
+     */
+    private final String id = UUID.randomUUID().toString();
+
+    /**
+     * Directory from which files are being imported
+     */
+    private final String sourceDirectory;
+
+    /**
+     * Directory into which files are being imported
+     */
+    private final String destinationDirectory;
+
+    /**
+     * Whether files are hard-linked into the destination, rather than copied, where possible
+     */
+    private final boolean linkRequested;
+
+    /**
+     * Time the job was created, in milliseconds
+     */
+    private final long createdTime = System.currentTimeMillis();
+
+    /**
+     * Current state of the job
+     */
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * Time the job finished, in milliseconds; 0 if it hasn't yet
+     */
+    private volatile long finishedTime;
+
+    /**
+     * Total number of files to be processed; only known once the source directory has been listed
+     */
+    private volatile int totalFiles;
+
+    /**
+     * Number of files copied into the destination
+     */
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+
+    /**
+     * Number of files hard-linked into the destination
+     */
+    private final AtomicInteger linkedFiles = new AtomicInteger();
+
+    /**
+     * Number of files skipped because an identical (same size and modification time) file was
+     * already in the destination
+     */
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+
+    /**
+     * Number of files that couldn't be imported
+     */
+    private final AtomicInteger failedFiles = new AtomicInteger();
+
+    /**
+     * Details of the files that couldn't be imported, in the form <code>name: error</code>
+     */
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Error that stopped the whole job, if any
+     */
+    private volatile String error;
+
+    /**
+     * Released when the job has finished, one way or another
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Constructor
+     *
+     * @param sourceDirectory      Directory from which files are being imported
+     * @param destinationDirectory Directory into which files are being imported
+     * @param linkRequested        Whether files should be hard-linked rather than copied, where
+     *                             possible
+     */
+    public MediaImportJob(final String sourceDirectory, final String destinationDirectory,
+            final boolean linkRequested) {
+        this.sourceDirectory = sourceDirectory;
+        this.destinationDirectory = destinationDirectory;
+        this.linkRequested = linkRequested;
+    }
+
+    /**
+     * Waits for the job to finish
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of the timeout
+     * @return True if the job finished within the timeout
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean awaitCompletion(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * Indicates whether the job has finished, one way or another
+     *
+     * @return True if the job is no longer queued or running
+     */
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * Number of files processed so far, whatever the outcome
+     *
+     * @return Copied, linked, skipped and failed files
+     */
+    public int getProcessedFiles() {
+        return copiedFiles.get() + linkedFiles.get() + skippedFiles.get() + failedFiles.get();
+    }
+
+    /**
+     * Marks the job as running, once the source directory has been listed
+     *
+     * @param total Number of files to be processed
+     */
+    void start(final int total) {
+        totalFiles = total;
+        status = Status.RUNNING;
+    }
+
+    /**
+     * Marks the job as having finished, successfully or otherwise
+     *
+     * @param errorMessage Error that stopped the job, or null if it ran to completion
+     */
+    void finish(final String errorMessage) {
+        error = errorMessage;
+        finishedTime = System.currentTimeMillis();
+        status = errorMessage == null ? Status.COMPLETED : Status.FAILED;
+        finished.countDown();
+    }
+
+    /**
+     * Records that a file was copied
+     */
+    void fileCopied() {
+        copiedFiles.incrementAndGet();
+    }
+
+    /**
+     * Records that a file was hard-linked
+     */
+    void fileLinked() {
+        linkedFiles.incrementAndGet();
+    }
+
+    /**
+     * Records that a file was skipped because it was already present
+     */
+    void fileSkipped() {
+        skippedFiles.incrementAndGet();
+    }
+
+    /**
+     * Records that a file couldn't be imported
+     *
+     * @param fileName Name of the file
+     * @param message  Description of the error
+     */
+    void fileFailed(final String fileName, final String message) {
+        if (failedFiles.incrementAndGet() <= MAX_RECORDED_FAILURES) {
+            failures.add(String.format("%s: %s", fileName, message));
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSourceDirectory() {
+        return sourceDirectory;
+    }
+
+    public String getDestinationDirectory() {
+        return destinationDirectory;
+    }
+
+    public boolean isLinkRequested() {
+        return linkRequested;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getFinishedTime() {
+        return finishedTime;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public int getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    public int getLinkedFiles() {
+        return linkedFiles.get();
+    }
+
+    public int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    public int getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    public List<String> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<String>(failures);
+        }
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,399 @@
+package com.tiyb.tev.media;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * Imports media files in bulk from one directory into another (typically, from the folder of an
+ * unzipped Tumblr export into a blog's media directory), as a background job whose progress can be
+ * polled.
+ * </p>
+ *
+ * <p>
+ * Files are copied on a small, bounded pool of threads; the queue in front of the pool is bounded
+ * too, so listing a directory of hundreds of thousands of files doesn't queue hundreds of thousands
+ * of tasks. Each file is copied to a temporary name in the destination directory and then moved
+ * into place, so a file that's visible under its real name is always complete, and its
+ * modification time is preserved, so that a file that's already been imported (same name, size
+ * and modification time) can be skipped when the import is repeated. A failure to import one file
+ * is recorded against the job and doesn't stop the others.
+ * </p>
+ *
+ * <p>
+ * When the source and destination are on the same file store, files can optionally be hard-linked
+ * rather than copied, which takes no time or extra disk space regardless of the size of the file.
+ * The source and destination then share the same data, which is only appropriate when the source
+ * files won't be edited afterwards; if the file system refuses to create a link, the job falls back
+ * to copying.
+ * </p>
+ *
+ * <p>
+ * Jobs run one at a time, in the order in which they were started.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Service
+public class MediaImporter {
+
+    /**
+     * Suffix given to files while they're being imported
+     */
+    private static final String PART_SUFFIX = ".part";
+
+    /**
+     * Number of tasks that can be queued per import thread, before the thread listing the source
+     * directory has to copy files itself
+     */
+    private static final int QUEUED_TASKS_PER_THREAD = 4;
+
+    /**
+     * Number of finished jobs whose progress is kept for retrieval
+     */
+    private static final int MAX_RETAINED_JOBS = 50;
+
+    private Logger logger = LoggerFactory.getLogger(MediaImporter.class);
+
+    /**
+     * Index of media directories, which is updated as files are imported
+     */
+    @Autowired
+    private MediaIndex mediaIndex;
+
+    /**
+     * Content-addressed store to which imported files are added, if it's enabled
+     */
+    @Autowired
+    private MediaStore mediaStore;
+
+    /**
+     * Number of threads used for copying files
+     */
+    @Value("${tev.media.importThreads:4}")
+    private int importThreads;
+
+    /**
+     * Jobs that have been started, keyed by ID
+     */
+    private final Map<String, MediaImportJob> jobs = new ConcurrentHashMap<String, MediaImportJob>();
+
+    /**
+     * Runs jobs, one at a time
+     */
+    private ExecutorService jobPool;
+
+    /**
+     * Copies individual files
+     */
+    private ThreadPoolExecutor filePool;
+
+    /**
+     * Creates the thread pools
+     */
+    @PostConstruct
+    public void init() {
+        jobPool = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "tev-media-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        filePool = new ThreadPoolExecutor(importThreads, importThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(importThreads * QUEUED_TASKS_PER_THREAD), runnable -> {
+                    final Thread thread = new Thread(runnable, "tev-media-import-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Stops any running job
+     */
+    @PreDestroy
+    public void shutdown() {
+        jobPool.shutdownNow();
+        filePool.shutdownNow();
+    }
+
+    /**
+     * Starts importing all of the files in a directory (not including sub-directories) into another
+     * directory, and returns immediately
+     *
+     * @param source      Directory from which files should be imported
+     * @param destination Directory into which files should be imported
+     * @param link        Whether files should be hard-linked rather than copied, when the
+     *                    directories are on the same file store
+     * @param onComplete  Called (on the job's thread) once all files have been processed, before the
+     *                    job is marked as completed; may be null
+     * @return The job, for tracking progress
+     */
+    public MediaImportJob startImport(final Path source, final Path destination, final boolean link,
+            final Consumer<MediaImportJob> onComplete) {
+        final MediaImportJob job = new MediaImportJob(source.toString(), destination.toString(), link);
+        pruneFinishedJobs();
+        jobs.put(job.getId(), job);
+        jobPool.execute(() -> runJob(job, source, destination, onComplete));
+
+        return job;
+    }
+
+    /**
+     * Retrieves a job that has been started
+     *
+     * @param id ID of the job
+     * @return The job, or null if there is no such job (or it finished long enough ago to have been
+     *         discarded)
+     */
+    public MediaImportJob getJob(final String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Body of a job: lists the source directory, imports each file on the file pool, and waits for
+     * them all to finish
+     *
+     * @param job         The job
+     * @param source      Directory from which files should be imported
+     * @param destination Directory into which files should be imported
+     * @param onComplete  Called once all files have been processed; may be null
+     */
+    private void runJob(final MediaImportJob job, final Path source, final Path destination,
+            final Consumer<MediaImportJob> onComplete) {
+        final List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(source)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+            mediaIndex.rescan(destination);
+        } catch (IOException e) {
+            logger.error("Unable to import media from {} to {}", source, destination, e);
+            job.finish(e.toString());
+            return;
+        }
+
+        job.start(files.size());
+        final AtomicBoolean linkEnabled =
+                new AtomicBoolean(job.isLinkRequested() && isSameFileStore(source, destination));
+        final CountDownLatch remaining = new CountDownLatch(files.size());
+        try {
+            for (Path file : files) {
+                filePool.execute(() -> {
+                    try {
+                        importFile(job, file, destination, linkEnabled);
+                    } finally {
+                        remaining.countDown();
+                    }
+                });
+            }
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.finish("Import interrupted");
+            return;
+        }
+
+        logger.info("Imported media from {}: {} copied, {} linked, {} skipped, {} failed", source,
+                job.getCopiedFiles(), job.getLinkedFiles(), job.getSkippedFiles(), job.getFailedFiles());
+        if (onComplete != null) {
+            try {
+                onComplete.accept(job);
+            } catch (RuntimeException e) {
+                logger.error("Error completing media import from {}", source, e);
+            }
+        }
+        job.finish(null);
+    }
+
+    /**
+     * Imports a single file, unless an identical file is already present, recording the outcome
+     * against the job
+     *
+     * @param job         The job
+     * @param file        The file to be imported
+     * @param destination Directory into which the file should be imported
+     * @param linkEnabled Whether files should still be hard-linked; cleared if linking fails
+     */
+    private void importFile(final MediaImportJob job, final Path file, final Path destination,
+            final AtomicBoolean linkEnabled) {
+        final String fileName = file.getFileName().toString();
+        final Path target = destination.resolve(fileName);
+        final Path temp = destination.resolve("." + fileName + PART_SUFFIX);
+        try {
+            final BasicFileAttributes sourceAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (mediaIndex.isPresent(destination, fileName) && isUnchanged(sourceAttributes, target)) {
+                job.fileSkipped();
+                return;
+            }
+
+            Files.deleteIfExists(temp);
+            if (linkEnabled.get() && createLink(temp, file, linkEnabled)) {
+                moveIntoPlace(temp, target);
+                job.fileLinked();
+            } else {
+                Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                moveIntoPlace(temp, target);
+                job.fileCopied();
+            }
+            mediaIndex.fileAdded(destination, fileName);
+            addToStore(target);
+        } catch (IOException e) {
+            logger.warn("Unable to import media file {}", file, e);
+            job.fileFailed(fileName, e.toString());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException deleteException) {
+                logger.debug("Unable to delete partial file {}", temp, deleteException);
+            }
+        }
+    }
+
+    /**
+     * Adds an imported file to the content-addressed media store, if it's enabled. The file has
+     * been imported either way, so failures are only logged.
+     *
+     * @param file The imported file
+     */
+    private void addToStore(final Path file) {
+        if (!mediaStore.isEnabled()) {
+            return;
+        }
+        try {
+            mediaStore.store(file);
+        } catch (IOException e) {
+            logger.warn("Unable to add {} to the media store", file, e);
+        }
+    }
+
+    /**
+     * Indicates whether a file already in the destination is the same as the source file, judging
+     * by size and modification time (to the second, since not all file systems store more)
+     *
+     * @param sourceAttributes Attributes of the source file
+     * @param target           The file in the destination
+     * @return True if the target exists and matches the source
+     * @throws IOException if the target's attributes can't be read
+     */
+    private static boolean isUnchanged(final BasicFileAttributes sourceAttributes, final Path target)
+            throws IOException {
+        final BasicFileAttributes targetAttributes;
+        try {
+            targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        return targetAttributes.size() == sourceAttributes.size()
+                && targetAttributes.lastModifiedTime().to(TimeUnit.SECONDS) == sourceAttributes.lastModifiedTime()
+                        .to(TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tries to hard-link a file into the destination. If the file system won't create the link,
+     * linking is disabled for the rest of the job.
+     *
+     * @param link        Path of the link to be created
+     * @param file        The existing file
+     * @param linkEnabled Cleared if the link can't be created
+     * @return True if the link was created
+     * @throws NoSuchFileException if the existing file has disappeared
+     */
+    private boolean createLink(final Path link, final Path file, final AtomicBoolean linkEnabled)
+            throws NoSuchFileException {
+        try {
+            Files.createLink(link, file);
+            return true;
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | IOException e) {
+            if (linkEnabled.getAndSet(false)) {
+                logger.info("Unable to hard-link media files; copying instead", e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Moves a fully-written temporary file to its final name, replacing any existing file
+     *
+     * @param temp   The temporary file
+     * @param target The final name of the file
+     * @throws IOException if the file can't be moved
+     */
+    private static void moveIntoPlace(final Path temp, final Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Indicates whether two directories are on the same file store, and therefore whether files can
+     * be hard-linked from one to the other
+     *
+     * @param source      The source directory
+     * @param destination The destination directory
+     * @return True if both are on the same file store
+     */
+    private boolean isSameFileStore(final Path source, final Path destination) {
+        try {
+            return Files.getFileStore(source).equals(Files.getFileStore(destination));
+        } catch (IOException e) {
+            logger.debug("Unable to determine file stores of {} and {}", source, destination, e);
+            return false;
+        }
+    }
+
+    /**
+     * Discards the oldest finished jobs, once more than {@link #MAX_RETAINED_JOBS} have finished
+     */
+    private void pruneFinishedJobs() {
+        final List<MediaImportJob> finished = new ArrayList<MediaImportJob>();
+        for (MediaImportJob job : jobs.values()) {
+            if (job.isDone()) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() <= MAX_RETAINED_JOBS) {
+            return;
+        }
+
+        finished.sort((a, b) -> Long.compare(a.getCreatedTime(), b.getCreatedTime()));
+        for (MediaImportJob job : finished.subList(0, finished.size() - MAX_RETAINED_JOBS)) {
+            jobs.remove(job.getId());
+        }
+    }
+}
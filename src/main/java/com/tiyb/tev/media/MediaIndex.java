@@ -0,0 +1,388 @@
+package com.tiyb.tev.media;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * In-memory index of the files in media directories, grouped by the ID of the post they belong to.
+ * Media files are named after their post (<code>{postId}_{n}.{ext}</code> for photos,
+ * <code>{postId}.{ext}</code> for videos), so finding a post's files, or checking whether a file is
+ * present, is a hash lookup rather than a scan of the directory.
+ * </p>
+ *
+ * <p>
+ * A directory is scanned once, the first time it's used, and from then on is kept current by a
+ * {@link java.nio.file.WatchService WatchService}. Since watch events are delivered asynchronously
+ * (and, on some platforms, only every few seconds), operations that delete files based on the
+ * index should call {@link #rescan(Path) rescan()} first, which is a single pass over the
+ * directory.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Service
+public class MediaIndex {
+
+    private Logger logger = LoggerFactory.getLogger(MediaIndex.class);
+
+    /**
+     * Index for each directory that has been used, keyed by its absolute, normalized path
+     */
+    private final Map<Path, DirectoryIndex> directories = new ConcurrentHashMap<Path, DirectoryIndex>();
+
+    /**
+     * Watches the indexed directories for changes; null if the file system doesn't support it
+     */
+    private WatchService watchService;
+
+    /**
+     * Starts the thread that keeps indexes current as directories change
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Unable to watch media directories; indexes will only be updated by TEV itself", e);
+            return;
+        }
+
+        final Thread watcher = new Thread(this::processWatchEvents, "tev-media-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching directories
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("Error closing watch service", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the files belonging to a post, in name order
+     *
+     * @param directory The media directory
+     * @param postId    The post ID
+     * @return File names (possibly empty)
+     * @throws IOException if the directory can't be read
+     */
+    public List<String> getFilesForPost(final Path directory, final String postId) throws IOException {
+        final NavigableSet<String> files = getIndex(directory).filesByPost.get(postId);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        return new ArrayList<String>(files);
+    }
+
+    /**
+     * Indicates whether a file is present in a media directory
+     *
+     * @param directory The media directory
+     * @param fileName  Name of the file
+     * @return True if the file is present
+     * @throws IOException if the directory can't be read
+     */
+    public boolean isPresent(final Path directory, final String fileName) throws IOException {
+        final NavigableSet<String> files = getIndex(directory).filesByPost.get(postIdOf(fileName));
+
+        return files != null && files.contains(fileName);
+    }
+
+    /**
+     * Re-scans a media directory, and returns a snapshot of all of its files grouped by post ID, in
+     * name order
+     *
+     * @param directory The media directory
+     * @return File names, keyed by post ID
+     * @throws IOException if the directory can't be read
+     */
+    public Map<String, List<String>> rescan(final Path directory) throws IOException {
+        final DirectoryIndex index = getIndex(directory);
+        final Map<String, List<String>> snapshot = new HashMap<String, List<String>>();
+        synchronized (index) {
+            index.scan();
+            for (Map.Entry<String, NavigableSet<String>> entry : index.filesByPost.entrySet()) {
+                snapshot.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Records that TEV has added a file to a media directory, so that the index reflects it
+     * immediately rather than when the watch event arrives
+     *
+     * @param directory The media directory
+     * @param fileName  Name of the file
+     */
+    public void fileAdded(final Path directory, final String fileName) {
+        final DirectoryIndex index = directories.get(normalize(directory));
+        if (index != null) {
+            index.add(fileName);
+        }
+    }
+
+    /**
+     * Records that TEV has deleted a file from a media directory, so that the index reflects it
+     * immediately rather than when the watch event arrives
+     *
+     * @param directory The media directory
+     * @param fileName  Name of the file
+     */
+    public void fileRemoved(final Path directory, final String fileName) {
+        final DirectoryIndex index = directories.get(normalize(directory));
+        if (index != null) {
+            index.remove(fileName);
+        }
+    }
+
+    /**
+     * Derives the ID of the post a media file belongs to from its name: everything before the first
+     * underscore or, failing that, the first period
+     *
+     * @param fileName Name of the file
+     * @return The post ID (or, for files not named after a post, some other key)
+     */
+    static String postIdOf(final String fileName) {
+        int end = fileName.indexOf('_');
+        if (end < 0) {
+            end = fileName.indexOf('.');
+        }
+
+        return end < 0 ? fileName : fileName.substring(0, end);
+    }
+
+    /**
+     * Returns the index for a directory, scanning it (and starting to watch it) the first time
+     *
+     * @param directory The media directory
+     * @return The index
+     * @throws IOException if the directory can't be read
+     */
+    private DirectoryIndex getIndex(final Path directory) throws IOException {
+        final Path key = normalize(directory);
+        DirectoryIndex index = directories.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (directories) {
+            index = directories.get(key);
+            if (index == null) {
+                index = new DirectoryIndex(key);
+                if (watchService != null) {
+                    try {
+                        index.watchKey = key.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        logger.warn("Unable to watch media directory {}", key, e);
+                    }
+                }
+                synchronized (index) {
+                    index.scan();
+                }
+                directories.put(key, index);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Converts a directory to the form used as a key
+     *
+     * @param directory The directory
+     * @return Absolute, normalized path
+     */
+    private static Path normalize(final Path directory) {
+        return directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Body of the watcher thread: applies file creations and deletions to the affected index, and
+     * re-scans the directory if events have been lost
+     */
+    private void processWatchEvents() {
+        while (true) {
+            final WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            final DirectoryIndex index = findIndex(watchKey);
+            if (index != null) {
+                synchronized (index) {
+                    for (WatchEvent<?> event : watchKey.pollEvents()) {
+                        applyEvent(index, event);
+                    }
+                }
+            } else {
+                watchKey.pollEvents();
+            }
+
+            if (!watchKey.reset() && index != null) {
+                directories.remove(index.directory);
+            }
+        }
+    }
+
+    /**
+     * Applies a single watch event to an index
+     *
+     * @param index The index for the watched directory
+     * @param event The event
+     */
+    private void applyEvent(final DirectoryIndex index, final WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            try {
+                index.scan();
+            } catch (IOException e) {
+                logger.error("Error re-scanning media directory {}", index.directory, e);
+            }
+            return;
+        }
+
+        final String fileName = ((Path) event.context()).getFileName().toString();
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            if (Files.isRegularFile(index.directory.resolve(fileName))) {
+                index.add(fileName);
+            }
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            index.remove(fileName);
+        }
+    }
+
+    /**
+     * Finds the index to which a watch key belongs
+     *
+     * @param watchKey The watch key
+     * @return The index, or null if the directory is no longer indexed
+     */
+    private DirectoryIndex findIndex(final WatchKey watchKey) {
+        for (DirectoryIndex index : directories.values()) {
+            if (watchKey.equals(index.watchKey)) {
+                return index;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The index for a single directory. Scans, and the application of watch events, synchronize on
+     * the index, so that events arriving during a scan are applied after it.
+     *
+     * @author tiyb
+     *
+     */
+    private static final class DirectoryIndex {
+
+        /**
+         * The directory being indexed
+         */
+        private final Path directory;
+
+        /**
+         * Names of the files in the directory, keyed by post ID
+         */
+        private final Map<String, NavigableSet<String>> filesByPost =
+                new ConcurrentHashMap<String, NavigableSet<String>>();
+
+        /**
+         * Key with which the directory is registered with the watch service, if any
+         */
+        private volatile WatchKey watchKey;
+
+        /**
+         * Constructor
+         *
+         * @param directory The directory to be indexed
+         */
+        DirectoryIndex(final Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Rebuilds the index with a single pass over the directory
+         *
+         * @throws IOException if the directory can't be read
+         */
+        void scan() throws IOException {
+            final Map<String, NavigableSet<String>> scanned = new HashMap<String, NavigableSet<String>>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) {
+                        final String fileName = file.getFileName().toString();
+                        scanned.computeIfAbsent(postIdOf(fileName), k -> new ConcurrentSkipListSet<String>())
+                                .add(fileName);
+                    }
+                }
+            }
+
+            filesByPost.keySet().retainAll(scanned.keySet());
+            filesByPost.putAll(scanned);
+        }
+
+        /**
+         * Adds a file to the index
+         *
+         * @param fileName Name of the file
+         */
+        void add(final String fileName) {
+            filesByPost.compute(postIdOf(fileName), (k, files) -> {
+                final NavigableSet<String> updated = files == null ? new ConcurrentSkipListSet<String>() : files;
+                updated.add(fileName);
+                return updated;
+            });
+        }
+
+        /**
+         * Removes a file from the index
+         *
+         * @param fileName Name of the file
+         */
+        void remove(final String fileName) {
+            filesByPost.computeIfPresent(postIdOf(fileName), (k, files) -> {
+                files.remove(fileName);
+                return files.isEmpty() ? null : files;
+            });
+        }
+    }
+}
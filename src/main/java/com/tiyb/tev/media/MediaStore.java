@@ -0,0 +1,377 @@
+package com.tiyb.tev.media;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.tiyb.tev.datamodel.MediaDigest;
+import com.tiyb.tev.repository.MediaDigestRepository;
+
+/**
+ * <p>
+ * Optional content-addressed store for media files. Reblogged images often appear in many posts,
+ * and in more than one blog, each time under a different name; when the store is enabled
+ * (<code>tev.media.store.enabled</code>), each file that's imported or downloaded is hashed, its
+ * contents are kept once in the store under their SHA-256 digest, and the file's name is mapped to
+ * the digest in the {@link MediaDigest} table, through which the viewer resolves media.
+ * </p>
+ *
+ * <p>
+ * The files in blogs' media directories are replaced with hard links to the stored copy, so that
+ * everything else that works with those directories (cleaning up images, exporting them,
+ * generating thumbnails) is unaffected, while the data is only on disk once. Where the store and a
+ * media directory are on different file systems, hard links aren't possible, and the media
+ * directory keeps its own copy. Media files are never modified once written, so sharing their
+ * data is safe.
+ * </p>
+ *
+ * <p>
+ * Stored files are named <code>{digest}{ext}</code>, in a sub-directory named after the first two
+ * characters of the digest so that no one directory gets too large. The extension is part of the
+ * name because content types (and thumbnails) are derived from it, so the same contents imported
+ * under two extensions are stored once per extension, and each stored file is only deleted once no
+ * file with its digest <i>and</i> extension is left.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Service
+public class MediaStore {
+
+    /**
+     * Hash algorithm used for content addresses
+     */
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Number of leading digest characters used to name the sub-directory for a stored file
+     */
+    private static final int SHARD_LENGTH = 2;
+
+    /**
+     * Size of the buffer used when hashing files
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Suffix given to files while they're being copied into the store
+     */
+    private static final String PART_SUFFIX = ".part";
+
+    private Logger logger = LoggerFactory.getLogger(MediaStore.class);
+
+    /**
+     * Repo for the mapping of file names to digests
+     */
+    @Autowired
+    private MediaDigestRepository digestRepo;
+
+    /**
+     * Whether the store is in use
+     */
+    @Value("${tev.media.store.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Directory in which stored files are kept, as configured
+     */
+    @Value("${tev.media.store.directory:mediastore}")
+    private String storeDirectoryName;
+
+    /**
+     * Absolute path of the store directory
+     */
+    private Path storeDirectory;
+
+    /**
+     * Used for adding existing media directories to the store
+     */
+    private ExecutorService backgroundPool;
+
+    /**
+     * Creates the store directory, if the store is enabled
+     *
+     * @throws IOException if the directory can't be created
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        storeDirectory = Paths.get(storeDirectoryName).toAbsolutePath();
+        Files.createDirectories(storeDirectory);
+        backgroundPool = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "tev-media-store");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops adding media directories to the store
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (backgroundPool != null) {
+            backgroundPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Indicates whether the store is in use
+     *
+     * @return True if media files should be added to the store
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a file from a media directory to the store (if its contents aren't already there),
+     * replaces the file with a link to the stored copy where possible, and maps the file's name to
+     * its digest
+     *
+     * @param file The media file
+     * @return Hex-encoded digest of the file's contents
+     * @throws IOException if the file can't be read, or the store can't be written
+     */
+    public String store(final Path file) throws IOException {
+        final String fileName = file.getFileName().toString();
+        final String digest = digest(file);
+        final Path stored = storedPath(digest, fileName);
+
+        if (!Files.exists(stored)) {
+            Files.createDirectories(stored.getParent());
+            try {
+                Files.createLink(stored, file);
+            } catch (FileAlreadyExistsException e) {
+                logger.debug("{} stored concurrently", digest);
+            } catch (UnsupportedOperationException | IOException e) {
+                copyIntoStore(file, stored);
+            }
+        }
+        if (!Files.isSameFile(file, stored)) {
+            replaceWithLink(file, stored);
+        }
+
+        digestRepo.save(new MediaDigest(fileName, MediaIndex.postIdOf(fileName), digest, Files.size(stored)));
+
+        return digest;
+    }
+
+    /**
+     * Resolves a media file, by name, to its stored copy
+     *
+     * @param fileName Name of the media file
+     * @return The stored copy, or null if the store isn't enabled or the file isn't in it
+     */
+    public Path resolve(final String fileName) {
+        if (!enabled) {
+            return null;
+        }
+
+        final Optional<MediaDigest> mapping = digestRepo.findById(fileName);
+        if (!mapping.isPresent()) {
+            return null;
+        }
+        final Path stored = storedPath(mapping.get().getDigest(), fileName);
+
+        return Files.isRegularFile(stored) ? stored : null;
+    }
+
+    /**
+     * Removes the mapping for a media file that has been deleted, and deletes the stored copy if
+     * no other file with the same extension maps to it
+     *
+     * @param fileName Name of the media file
+     */
+    public void remove(final String fileName) {
+        if (!enabled) {
+            return;
+        }
+
+        final Optional<MediaDigest> mapping = digestRepo.findById(fileName);
+        if (!mapping.isPresent()) {
+            return;
+        }
+        digestRepo.delete(mapping.get());
+        final String digest = mapping.get().getDigest();
+        final String extension = extensionOf(fileName);
+        for (MediaDigest other : digestRepo.findByDigest(digest)) {
+            if (extensionOf(other.getFileName()).equals(extension)) {
+                return;
+            }
+        }
+        try {
+            Files.deleteIfExists(storedPath(digest, fileName));
+        } catch (IOException e) {
+            logger.warn("Unable to delete stored media {}", digest, e);
+        }
+    }
+
+    /**
+     * Adds all of the files in a media directory to the store, in the background
+     *
+     * @param mediaDirectory The media directory
+     */
+    public void storeInBackground(final Path mediaDirectory) {
+        if (!enabled) {
+            return;
+        }
+
+        backgroundPool.execute(() -> {
+            int stored = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(mediaDirectory)) {
+                for (Path file : stream) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    if (Files.isRegularFile(file) && !file.getFileName().toString().startsWith(".")) {
+                        try {
+                            store(file);
+                            stored++;
+                        } catch (IOException e) {
+                            logger.warn("Unable to add {} to the media store", file, e);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Unable to add media directory {} to the media store", mediaDirectory, e);
+            }
+            logger.info("Added {} files from {} to the media store", stored, mediaDirectory);
+        });
+    }
+
+    /**
+     * Copies a file into the store, when it can't be linked
+     *
+     * @param file   The media file
+     * @param stored Where the stored copy belongs
+     * @throws IOException if the file can't be copied
+     */
+    private void copyIntoStore(final Path file, final Path stored) throws IOException {
+        final Path temp = Files.createTempFile(stored.getParent(), stored.getFileName().toString(), PART_SUFFIX);
+        try {
+            Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            moveIntoPlace(temp, stored);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Replaces a media file with a hard link to the stored copy of the same contents, if the file
+     * system allows; otherwise the file is left as it is
+     *
+     * @param file   The media file
+     * @param stored The stored copy
+     * @throws IOException if the link was created but couldn't be moved into place
+     */
+    private void replaceWithLink(final Path file, final Path stored) throws IOException {
+        final Path temp = file.resolveSibling("." + file.getFileName() + PART_SUFFIX);
+        try {
+            Files.deleteIfExists(temp);
+            Files.createLink(temp, stored);
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("Unable to link {} to the media store; keeping a separate copy", file, e);
+            return;
+        }
+        try {
+            moveIntoPlace(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Moves a file to its final name, replacing any existing file
+     *
+     * @param temp   The file to be moved
+     * @param target The final name of the file
+     * @throws IOException if the file can't be moved
+     */
+    private static void moveIntoPlace(final Path temp, final Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the path of the stored copy of a file. The file's extension is kept, so that the
+     * content type can still be derived from the name when it's served.
+     *
+     * @param digest   Hex-encoded digest of the file's contents
+     * @param fileName Name of the media file
+     * @return Path within the store
+     */
+    private Path storedPath(final String digest, final String fileName) {
+        return storeDirectory.resolve(digest.substring(0, SHARD_LENGTH)).resolve(digest + extensionOf(fileName));
+    }
+
+    /**
+     * Returns the extension of a media file's name, which is also the extension of its stored copy
+     *
+     * @param fileName Name of the media file
+     * @return The extension, including the dot, or an empty string if there isn't one
+     */
+    private static String extensionOf(final String fileName) {
+        final int extensionStart = fileName.lastIndexOf('.');
+
+        return extensionStart < 0 ? "" : fileName.substring(extensionStart);
+    }
+
+    /**
+     * Calculates the digest of a file's contents
+     *
+     * @param file The file
+     * @return Hex-encoded SHA-256 digest
+     * @throws IOException if the file can't be read
+     */
+    private static String digest(final Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+}
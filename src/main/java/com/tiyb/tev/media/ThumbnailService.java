@@ -0,0 +1,516 @@
+package com.tiyb.tev.media;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * Generates downscaled versions of the images in a blog's media directory, for pages that don't
+ * need the full-sized image (e.g. the photo viewer, which links to the original). Thumbnails are
+ * generated with <code>javax.imageio</code>, either lazily the first time they're requested or
+ * eagerly on a background pool (e.g. after images have been imported).
+ * </p>
+ *
+ * <p>
+ * Thumbnails are stored in an on-disk cache, named by a hash of the source file's path, length and
+ * modification time plus the thumbnail size, so a thumbnail is never served for a different version
+ * of an image. The cache is bounded in size; when it grows too large, the least recently used
+ * thumbnails are evicted. Recency is tracked in memory (after a restart, thumbnails start out in
+ * the order they were generated); a thumbnail's file is never touched once written, so its
+ * validators stay the same and clients can revalidate it with a <code>304</code>.
+ * </p>
+ *
+ * <p>
+ * GIFs are never downscaled, since only their first frame would survive, and neither are images
+ * already within the requested size, or images <code>javax.imageio</code> can't decode (e.g. CMYK
+ * JPEGs); for these the original file is returned.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Service
+public class ThumbnailService {
+
+    /**
+     * Algorithm used to derive cache file names
+     */
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Format (and extension) used for thumbnails of opaque images
+     */
+    private static final String JPEG_FORMAT = "jpg";
+
+    /**
+     * Format (and extension) used for thumbnails of images with transparency
+     */
+    private static final String PNG_FORMAT = "png";
+
+    /**
+     * Extensions of images that can be downscaled
+     */
+    private static final List<String> SCALABLE_EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "bmp");
+
+    /**
+     * Suffix for thumbnails that are still being written
+     */
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+    /**
+     * Directory in which thumbnails are cached
+     */
+    @Value("${tev.thumbnails.directory:thumbnails}")
+    private String cacheDirectoryName;
+
+    /**
+     * Comma-separated list of the thumbnail sizes (maximum width/height, in pixels) that can be
+     * requested
+     */
+    @Value("${tev.thumbnails.sizes:160,640}")
+    private String sizesProperty;
+
+    /**
+     * Thumbnail size used by the photo viewer; must be one of the configured sizes
+     */
+    @Value("${tev.thumbnails.viewerSize:640}")
+    private int viewerSize;
+
+    /**
+     * Maximum total size of the thumbnail cache, in bytes
+     */
+    @Value("${tev.thumbnails.maxCacheBytes:536870912}")
+    private long maxCacheBytes;
+
+    /**
+     * Number of threads used for generating thumbnails in the background
+     */
+    @Value("${tev.thumbnails.backgroundThreads:2}")
+    private int backgroundThreads;
+
+    /**
+     * The configured thumbnail sizes
+     */
+    private List<Integer> sizes;
+
+    /**
+     * The directory in which thumbnails are cached
+     */
+    private Path cacheDirectory;
+
+    /**
+     * Size (in bytes) of each cached thumbnail, keyed by file name, in least- to most-recently used
+     * order. Guarded by <code>this</code>.
+     */
+    private final LinkedHashMap<String, Long> cacheEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Total size of all cached thumbnails. Guarded by <code>this</code>.
+     */
+    private long cachedBytes;
+
+    /**
+     * One lock per thumbnail currently being generated, so that simultaneous requests for the same
+     * thumbnail only generate it once
+     */
+    private final Map<String, Object> generationLocks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Cache keys of images that couldn't be decoded, so that they aren't read again on every request
+     */
+    private final Set<String> undecodable = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Pool used for generating thumbnails in the background
+     */
+    private ExecutorService backgroundPool;
+
+    /**
+     * Parses the configuration, creates the cache directory if needed, and loads the entries
+     * already in the cache
+     *
+     * @throws IOException if the cache directory can't be created or read
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        final List<Integer> parsedSizes = new ArrayList<Integer>();
+        for (String size : sizesProperty.split(",")) {
+            parsedSizes.add(Integer.valueOf(size.trim()));
+        }
+        sizes = Collections.unmodifiableList(parsedSizes);
+        if (!sizes.contains(viewerSize)) {
+            throw new IllegalStateException(
+                    String.format("Thumbnail viewer size %d isn't one of the sizes %s", viewerSize, sizes));
+        }
+
+        cacheDirectory = Paths.get(cacheDirectoryName).toAbsolutePath();
+        Files.createDirectories(cacheDirectory);
+        loadCacheEntries();
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        backgroundPool = Executors.newFixedThreadPool(backgroundThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "tev-thumbnails-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops any background generation still in progress
+     */
+    @PreDestroy
+    public void shutdown() {
+        backgroundPool.shutdownNow();
+    }
+
+    /**
+     * Indicates whether thumbnails of a given size can be requested
+     *
+     * @param size The size, in pixels
+     * @return True if the size is one of the configured sizes
+     */
+    public boolean isSupportedSize(final int size) {
+        return sizes.contains(size);
+    }
+
+    /**
+     * Returns the thumbnail for an image at a given size, generating it if it isn't already cached.
+     * If the image can't (or needn't) be downscaled, the image itself is returned.
+     *
+     * @param source The full-sized image
+     * @param size   Maximum width/height of the thumbnail; must be one of the configured sizes
+     * @return The file to be served
+     * @throws IOException if the image can't be read, or the thumbnail can't be written
+     */
+    public Path getThumbnail(final Path source, final int size) throws IOException {
+        if (!isScalable(source)) {
+            return source;
+        }
+
+        final String key = cacheKey(source, size);
+        if (undecodable.contains(key)) {
+            return source;
+        }
+        Path thumbnail = findCached(key);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+
+        final Object lock = generationLocks.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                thumbnail = findCached(key);
+                if (thumbnail == null) {
+                    thumbnail = generate(source, size, key);
+                }
+            }
+        } finally {
+            generationLocks.remove(key);
+        }
+
+        return thumbnail;
+    }
+
+    /**
+     * Generates (in the background) any missing thumbnails, at every configured size, for all of the
+     * images in a directory. Returns immediately.
+     *
+     * @param mediaDirectory The directory containing the images
+     */
+    public void generateInBackground(final Path mediaDirectory) {
+        backgroundPool.submit(() -> {
+            int numImages = 0;
+            try (DirectoryStream<Path> images = Files.newDirectoryStream(mediaDirectory, this::isScalable)) {
+                for (Path image : images) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    for (Integer size : sizes) {
+                        try {
+                            getThumbnail(image, size);
+                        } catch (IOException | RuntimeException e) {
+                            logger.debug("Unable to generate thumbnail for {}", image, e);
+                        }
+                    }
+                    numImages++;
+                }
+            } catch (IOException e) {
+                logger.error("Error reading media directory {}", mediaDirectory, e);
+            }
+            logger.info("Thumbnails generated for {} images in {}", numImages, mediaDirectory);
+        });
+    }
+
+    /**
+     * Indicates whether a file is an image that can be downscaled
+     *
+     * @param file The file
+     * @return True for regular files with a supported extension
+     */
+    private boolean isScalable(final Path file) {
+        final String name = file.getFileName().toString();
+        final int extensionStart = name.lastIndexOf('.');
+        if (extensionStart < 0) {
+            return false;
+        }
+
+        return SCALABLE_EXTENSIONS.contains(name.substring(extensionStart + 1).toLowerCase(Locale.ROOT))
+                && Files.isRegularFile(file);
+    }
+
+    /**
+     * Derives the cache key for a thumbnail from the source image's path, length and modification
+     * time, and the thumbnail size
+     *
+     * @param source The full-sized image
+     * @param size   The thumbnail size
+     * @return Hex-encoded hash
+     * @throws IOException if the source's attributes can't be read
+     */
+    private static String cacheKey(final Path source, final int size) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        final String identity = String.format("%s|%d|%d|%d", source.toAbsolutePath(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), size);
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(identity.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Looks for a cached thumbnail (in either output format), marking it as recently used if found
+     * (looking it up in the access-ordered index is enough to do that)
+     *
+     * @param key The cache key
+     * @return The thumbnail, or null if it isn't cached
+     */
+    private synchronized Path findCached(final String key) {
+        for (String format : new String[] { JPEG_FORMAT, PNG_FORMAT }) {
+            final String fileName = key + "." + format;
+            if (cacheEntries.get(fileName) != null) {
+                final Path thumbnail = cacheDirectory.resolve(fileName);
+                if (Files.isRegularFile(thumbnail)) {
+                    return thumbnail;
+                }
+                // deleted from under us; forget it and regenerate
+                cachedBytes -= cacheEntries.remove(fileName);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Generates a thumbnail and adds it to the cache
+     *
+     * @param source The full-sized image
+     * @param size   The thumbnail size
+     * @param key    The cache key
+     * @return The thumbnail, or the source if it doesn't need to (or can't) be downscaled
+     * @throws IOException if the image can't be read, or the thumbnail can't be written
+     */
+    private Path generate(final Path source, final int size, final String key) throws IOException {
+        final BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            final Iterator<ImageReader> readers =
+                    in == null ? Collections.<ImageReader>emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return undecodable(source, key, null);
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                if (reader.getWidth(0) <= size && reader.getHeight(0) <= size) {
+                    return source;
+                }
+                image = reader.read(0);
+            } catch (IIOException e) {
+                return undecodable(source, key, e);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        final boolean hasAlpha = image.getColorModel().hasAlpha();
+        final String format = hasAlpha ? PNG_FORMAT : JPEG_FORMAT;
+        final BufferedImage thumbnailImage = downscale(image, size, hasAlpha);
+
+        final String fileName = key + "." + format;
+        final Path tempFile = Files.createTempFile(cacheDirectory, key, TEMP_FILE_SUFFIX);
+        try {
+            if (!ImageIO.write(thumbnailImage, format, tempFile.toFile())) {
+                throw new IOException("No writer for format " + format);
+            }
+            final Path thumbnail = Files.move(tempFile, cacheDirectory.resolve(fileName),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            addCacheEntry(fileName, Files.size(thumbnail));
+            return thumbnail;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Records that an image can't be decoded, so that the original is served in place of its
+     * thumbnails
+     *
+     * @param source The full-sized image
+     * @param key    The cache key
+     * @param cause  The decoding error, if there was one
+     * @return The source
+     */
+    private Path undecodable(final Path source, final String key, final IIOException cause) {
+        logger.info("Unable to decode {}; serving the original instead of a thumbnail", source);
+        logger.debug("Decoding error: ", cause);
+        undecodable.add(key);
+
+        return source;
+    }
+
+    /**
+     * Downscales an image so that neither dimension exceeds the given size, preserving the aspect
+     * ratio. The image is halved repeatedly before the final step, since a single bilinear step
+     * from a much larger image gives poor results.
+     *
+     * @param image    The image to be downscaled
+     * @param size     Maximum width/height
+     * @param hasAlpha Whether the image has transparency
+     * @return The downscaled image
+     */
+    private static BufferedImage downscale(final BufferedImage image, final int size, final boolean hasAlpha) {
+        final double scale = Math.min((double) size / image.getWidth(), (double) size / image.getHeight());
+        final int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        final int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        final int type = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(width / 2, targetWidth);
+            height = Math.max(height / 2, targetHeight);
+            final BufferedImage next = new BufferedImage(width, height, type);
+            final Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, width, height, null);
+            graphics.dispose();
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    /**
+     * Loads the thumbnails already on disk into the cache index, oldest first, and evicts any over
+     * the size limit (e.g. if the limit has been lowered). Left-over temporary files are deleted.
+     *
+     * @throws IOException if the cache directory can't be read
+     */
+    private synchronized void loadCacheEntries() throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+
+        final Map<Path, BasicFileAttributes> attributes = new HashMap<Path, BasicFileAttributes>();
+        for (Path file : files) {
+            attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+        }
+        files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+
+        cacheEntries.clear();
+        cachedBytes = 0;
+        for (Path file : files) {
+            addCacheEntry(file.getFileName().toString(), attributes.get(file).size());
+        }
+        logger.info("Thumbnail cache contains {} files, {} bytes", cacheEntries.size(), cachedBytes);
+    }
+
+    /**
+     * Adds a thumbnail to the cache index as the most recently used entry, and then evicts the
+     * least recently used thumbnails until the cache is back within its size limit
+     *
+     * @param fileName Name of the thumbnail file
+     * @param bytes    Size of the thumbnail file
+     */
+    private synchronized void addCacheEntry(final String fileName, final long bytes) {
+        final Long previous = cacheEntries.put(fileName, bytes);
+        cachedBytes += bytes - (previous == null ? 0 : previous);
+
+        final Iterator<Map.Entry<String, Long>> eldest = cacheEntries.entrySet().iterator();
+        while (cachedBytes > maxCacheBytes && eldest.hasNext()) {
+            final Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(fileName)) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(cacheDirectory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Unable to evict thumbnail {}", entry.getKey(), e);
+            }
+            cachedBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    public int getViewerSize() {
+        return viewerSize;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains services for working with the media files (images, videos) that accompany a
+ * blog on the local file system, such as generating and caching thumbnails.
+ *
+ * @author tiyb
+ *
+ */
+package com.tiyb.tev.media;
@@ -0,0 +1,67 @@
+package com.tiyb.tev.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tiyb.tev.datamodel.BlogStats;
+
+/**
+ * Repo for the per-blog statistics snapshots
+ *
+ * @author tiyb
+ *
+ */
+@Repository
+public interface BlogStatsRepository extends JpaRepository<BlogStats, String> {
+
+    /**
+     * Applies a change to the number of read posts for a blog, if the blog's snapshot is current
+     *
+     * @param blog  Blog to be updated
+     * @param delta Number of posts newly read (negative for posts newly unread)
+     * @return Number of snapshots updated (0 or 1)
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BlogStats s SET s.readPosts = s.readPosts + :delta WHERE s.blog = :blog AND s.stale = false")
+    public int adjustReadPosts(@Param("blog") String blog, @Param("delta") long delta);
+
+    /**
+     * Applies a change to the number of favourite posts for a blog, if the blog's snapshot is
+     * current
+     *
+     * @param blog  Blog to be updated
+     * @param delta Number of posts newly favourited (negative for posts no longer favourites)
+     * @return Number of snapshots updated (0 or 1)
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BlogStats s SET s.favouritePosts = s.favouritePosts + :delta "
+            + "WHERE s.blog = :blog AND s.stale = false")
+    public int adjustFavouritePosts(@Param("blog") String blog, @Param("delta") long delta);
+
+    /**
+     * Flags a blog's snapshot as needing to be recalculated
+     *
+     * @param blog Blog whose data has changed
+     * @return Number of snapshots updated (0 or 1)
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BlogStats s SET s.stale = true WHERE s.blog = :blog")
+    public int markStale(@Param("blog") String blog);
+
+    /**
+     * Flags every blog's snapshot as needing to be recalculated
+     *
+     * @return Number of snapshots updated
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BlogStats s SET s.stale = true")
+    public int markAllStale();
+}
@@ -2,7 +2,10 @@ package com.tiyb.tev.repository;
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.tiyb.tev.datamodel.ConversationMessage;
@@ -24,4 +27,47 @@ public interface ConversationMessageRepository extends JpaRepository<Conversatio
      * @return List of messages
      */
     public List<ConversationMessage> findByConversationIdOrderByTimestamp(Long conversationId);
+
+    /**
+     * Returns the messages of a conversation that come after a given message, in (timestamp, ID)
+     * order. The comparison is on both columns, so that messages with the same timestamp are never
+     * skipped or repeated from one page to the next.
+     *
+     * @param conversationId ID of the conversation
+     * @param timestamp      Timestamp of the message after which to start
+     * @param id             ID of the message after which to start
+     * @param pageable       Used to limit the number of messages returned
+     * @return The messages, oldest first
+     */
+    @Query("SELECT m FROM ConversationMessage m WHERE m.conversationId = :conversationId "
+            + "AND (m.timestamp > :timestamp OR (m.timestamp = :timestamp AND m.id > :id)) "
+            + "ORDER BY m.timestamp, m.id")
+    public List<ConversationMessage> findPageAfter(@Param("conversationId") Long conversationId,
+            @Param("timestamp") Long timestamp, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Returns the messages of a conversation that come before a given message, in reverse
+     * (timestamp, ID) order
+     *
+     * @param conversationId ID of the conversation
+     * @param timestamp      Timestamp of the message before which to start
+     * @param id             ID of the message before which to start
+     * @param pageable       Used to limit the number of messages returned
+     * @return The messages, newest first
+     */
+    @Query("SELECT m FROM ConversationMessage m WHERE m.conversationId = :conversationId "
+            + "AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id < :id)) "
+            + "ORDER BY m.timestamp DESC, m.id DESC")
+    public List<ConversationMessage> findPageBefore(@Param("conversationId") Long conversationId,
+            @Param("timestamp") Long timestamp, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Counts all messages belonging to conversations for a given blog
+     *
+     * @param blog Blog to search
+     * @return Number of messages
+     */
+    @Query("SELECT COUNT(m) FROM ConversationMessage m, Conversation c WHERE m.conversationId = c.id "
+            + "AND c.blog = :blog")
+    public long countForBlog(@Param("blog") String blog);
 }
@@ -0,0 +1,63 @@
+package com.tiyb.tev.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tiyb.tev.datamodel.ConversationMessageTerm;
+
+/**
+ * Repo for the full-text search index over conversation messages
+ *
+ * @author tiyb
+ *
+ */
+@Repository
+public interface ConversationMessageTermRepository extends JpaRepository<ConversationMessageTerm, Long> {
+
+    /**
+     * Ranked search of the index. Each row returned is an array of [message ID, number of distinct
+     * query terms matched, total occurrences of matched terms]; messages matching more of the query
+     * terms are ranked first, with ties broken by how often the terms occur, and then by most
+     * recently imported message.
+     *
+     * @param blog     Blog to be searched
+     * @param terms    Normalized terms to search for
+     * @param pageable The page of results to be returned
+     * @return Page of ranked message IDs
+     */
+    @Query(value = "SELECT t.messageId, COUNT(t), SUM(t.frequency) FROM ConversationMessageTerm t "
+            + "WHERE t.blog = :blog AND t.term IN :terms GROUP BY t.messageId "
+            + "ORDER BY COUNT(t) DESC, SUM(t.frequency) DESC, t.messageId DESC",
+            countQuery = "SELECT COUNT(DISTINCT t.messageId) FROM ConversationMessageTerm t "
+                    + "WHERE t.blog = :blog AND t.term IN :terms")
+    public Page<Object[]> findRankedMessageIds(@Param("blog") String blog, @Param("terms") Collection<String> terms,
+            Pageable pageable);
+
+    /**
+     * Removes all index entries for a given message
+     *
+     * @param messageId ID of the message
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ConversationMessageTerm t WHERE t.messageId = :messageId")
+    public void deleteByMessageId(@Param("messageId") Long messageId);
+
+    /**
+     * Removes all index entries for a given blog
+     *
+     * @param blog Blog for which the index should be cleared
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ConversationMessageTerm t WHERE t.blog = :blog")
+    public void deleteByBlog(@Param("blog") String blog);
+}
@@ -65,4 +65,12 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
      * @return Return code
      */
     Long deleteByBlog(String blog);
+
+    /**
+     * Counts the conversations for a given blog
+     *
+     * @param blog Blog to search
+     * @return Number of conversations
+     */
+    long countByBlog(String blog);
 }
@@ -3,6 +3,7 @@ package com.tiyb.tev.repository;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.tiyb.tev.datamodel.Hashtag;
@@ -41,6 +42,16 @@ public interface HashtagRepository extends JpaRepository<Hashtag, Long> {
      */
     public List<Hashtag> findByTag(String tag);
 
+    /**
+     * Aggregates hashtags across all blogs in the DB, rather than in memory. Each row returned is an
+     * array of [lowest hashtag ID, tag, total count across blogs, comma-separated list of blogs].
+     *
+     * @return One row per distinct tag
+     */
+    @Query(value = "SELECT MIN(h.id), h.tag, SUM(h.count), GROUP_CONCAT(h.blog ORDER BY h.blog SEPARATOR ', ') "
+            + "FROM hashtag h GROUP BY h.tag", nativeQuery = true)
+    public List<Object[]> aggregateAcrossBlogs();
+
     /**
      * Delete all hashtags for a given blog
      *
@@ -48,4 +59,12 @@ public interface HashtagRepository extends JpaRepository<Hashtag, Long> {
      * @return Return code
      */
     Long deleteByBlog(String blog);
+
+    /**
+     * Counts the (distinct) hashtags for a given blog
+     *
+     * @param blog Blog to search
+     * @return Number of hashtags
+     */
+    long countByBlog(String blog);
 }
@@ -0,0 +1,27 @@
+package com.tiyb.tev.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.tiyb.tev.datamodel.MediaDigest;
+
+/**
+ * Repo for the mapping of media files to the digests under which they're kept in the
+ * content-addressed media store
+ *
+ * @author tiyb
+ *
+ */
+@Repository
+public interface MediaDigestRepository extends JpaRepository<MediaDigest, String> {
+
+    /**
+     * Gets the media files with a given digest
+     *
+     * @param digest Hex-encoded SHA-256 digest
+     * @return 0 or more mappings to the digest
+     */
+    public List<MediaDigest> findByDigest(String digest);
+}
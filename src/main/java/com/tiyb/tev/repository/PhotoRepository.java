@@ -1,8 +1,11 @@
 package com.tiyb.tev.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.tiyb.tev.datamodel.Photo;
@@ -31,4 +34,23 @@ public interface PhotoRepository extends JpaRepository<Photo, Long> {
      * @return 0 or more Photos
      */
     List<Photo> findByPostId(String postId);
+
+    /**
+     * Get all photos for a set of posts, in a single query. Photos are returned grouped by post, and
+     * in order of the offset attribute within each post (as with
+     * {@link #findByPostIdOrderByOffset(String)}).
+     *
+     * @param postIds Post IDs to search
+     * @return 0 or more Photos
+     */
+    List<Photo> findByPostIdInOrderByPostIdAscOffsetAscIdAsc(Collection<String> postIds);
+
+    /**
+     * Counts all photos belonging to posts for a given blog
+     *
+     * @param blog Blog to search
+     * @return Number of photos
+     */
+    @Query("SELECT COUNT(ph) FROM Photo ph, Post p WHERE ph.postId = p.id AND p.tumblelog = :blog")
+    long countForBlog(@Param("blog") String blog);
 }
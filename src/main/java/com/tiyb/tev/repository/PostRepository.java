@@ -1,9 +1,15 @@
 package com.tiyb.tev.repository;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.tiyb.tev.datamodel.Post;
 
@@ -33,6 +39,169 @@ public interface PostRepository extends JpaRepository<Post, String> {
      */
     public List<Post> findByTumblelog(String tumblelog);
 
+    /**
+     * Counts the posts of each type for a given blog. Each row returned is an array of [type,
+     * count].
+     *
+     * @param blog Blog to search
+     * @return One row per post type that has at least one post
+     */
+    @Query("SELECT p.type, COUNT(p) FROM Post p WHERE p.tumblelog = :blog GROUP BY p.type")
+    public List<Object[]> countByTypeForBlog(@Param("blog") String blog);
+
+    /**
+     * Counts the posts that have been read for a given blog
+     *
+     * @param blog Blog to search
+     * @return Number of read posts
+     */
+    @Query("SELECT COUNT(p) FROM Post p WHERE p.tumblelog = :blog AND p.isRead = true")
+    public long countReadForBlog(@Param("blog") String blog);
+
+    /**
+     * Counts the posts that have been marked as favourites for a given blog
+     *
+     * @param blog Blog to search
+     * @return Number of favourite posts
+     */
+    @Query("SELECT COUNT(p) FROM Post p WHERE p.tumblelog = :blog AND p.isFavourite = true")
+    public long countFavouritesForBlog(@Param("blog") String blog);
+
+    /**
+     * Retrieves a post together with its type-specific content in a single round trip, for use by
+     * the post viewer. Each row returned is an array of [Post, Regular, Answer, Link, Video, Photo];
+     * only the content matching the post's type will be non-null, and a photo post will return one
+     * row per photo (ordered by photo ID).
+     *
+     * @param id ID of the post to retrieve
+     * @return One row per photo for photo posts, otherwise a single row (or none, if the post
+     *         doesn't exist)
+     */
+    @Query("SELECT p, r, a, l, v, ph FROM Post p LEFT JOIN Regular r ON r.postId = p.id "
+            + "LEFT JOIN Answer a ON a.postId = p.id LEFT JOIN Link l ON l.postId = p.id "
+            + "LEFT JOIN Video v ON v.postId = p.id LEFT JOIN Photo ph ON ph.postId = p.id "
+            + "WHERE p.id = :id ORDER BY ph.id")
+    public List<Object[]> findPostWithContent(@Param("id") String id);
+
+    /**
+     * Returns the IDs of the posts to be included in a full-blog export, newest first. Posts without
+     * a timestamp are only included if <code>includeUndated</code> is true.
+     *
+     * @param blog           Blog to search
+     * @param types          Post types to include
+     * @param from           Earliest Unix timestamp to include
+     * @param to             Latest Unix timestamp to include
+     * @param includeUndated Whether posts without a timestamp should be included
+     * @return List of post IDs
+     */
+    @Query("SELECT p.id FROM Post p WHERE p.tumblelog = :blog AND p.type IN :types AND "
+            + "(p.unixtimestamp BETWEEN :from AND :to OR (:includeUndated = true AND p.unixtimestamp IS NULL)) "
+            + "ORDER BY p.unixtimestamp DESC, p.id DESC")
+    public List<String> findIdsForExport(@Param("blog") String blog, @Param("types") Collection<String> types,
+            @Param("from") long from, @Param("to") long to, @Param("includeUndated") boolean includeUndated);
+
+    /**
+     * Returns a page of a blog's posts for the unified timeline: the posts that come after a given
+     * key in (timestamp, ID) order, newest first. The comparison is on both columns, so that posts
+     * with the same timestamp are never skipped or repeated from one page to the next. Posts
+     * without a timestamp aren't included.
+     *
+     * @param blog      Blog to search
+     * @param since     Earliest Unix timestamp to include
+     * @param timestamp Timestamp of the key after which to start
+     * @param id        Post ID of the key after which to start
+     * @param pageable  Used to limit the number of posts returned
+     * @return List of posts, newest first
+     */
+    @Query("SELECT p FROM Post p WHERE p.tumblelog = :blog AND p.unixtimestamp >= :since "
+            + "AND (p.unixtimestamp < :timestamp OR (p.unixtimestamp = :timestamp AND p.id < :id)) "
+            + "ORDER BY p.unixtimestamp DESC, p.id DESC")
+    public List<Post> findTimelinePage(@Param("blog") String blog, @Param("since") long since,
+            @Param("timestamp") long timestamp, @Param("id") String id, Pageable pageable);
+
+    /**
+     * Returns a page of a blog's posts within a range of time, matching type and read status
+     * criteria: the posts that come after a given key in (timestamp, ID) order, newest first. Posts
+     * without a timestamp aren't included.
+     *
+     * @param blog       Blog to search
+     * @param from       Earliest Unix timestamp to include
+     * @param to         Latest Unix timestamp to include
+     * @param types      Post types to include
+     * @param readStates Read statuses to include (with no status counting as unread)
+     * @param timestamp  Timestamp of the key after which to start
+     * @param id         Post ID of the key after which to start
+     * @param pageable   Used to limit the number of posts returned
+     * @return List of posts, newest first
+     */
+    @Query("SELECT p FROM Post p WHERE p.tumblelog = :blog AND p.unixtimestamp BETWEEN :from AND :to "
+            + "AND p.type IN :types AND COALESCE(p.isRead, false) IN :readStates "
+            + "AND (p.unixtimestamp < :timestamp OR (p.unixtimestamp = :timestamp AND p.id < :id)) "
+            + "ORDER BY p.unixtimestamp DESC, p.id DESC")
+    public List<Post> findRangePage(@Param("blog") String blog, @Param("from") long from, @Param("to") long to,
+            @Param("types") Collection<String> types, @Param("readStates") Collection<Boolean> readStates,
+            @Param("timestamp") long timestamp, @Param("id") String id, Pageable pageable);
+
+    /**
+     * Counts a blog's posts per day (UTC) within a range of time. Each row returned is an array of
+     * [day, count], where the day is the number of days since 1970-01-01 (i.e. the Unix timestamp
+     * divided by 86,400 seconds), in ascending order; days without posts aren't returned.
+     *
+     * @param blog  Blog to search
+     * @param types Post types to include
+     * @param from  Earliest Unix timestamp to include
+     * @param to    Latest Unix timestamp to include
+     * @return One row per day that has at least one post
+     */
+    @Query("SELECT p.unixtimestamp / 86400, COUNT(p) FROM Post p WHERE p.tumblelog = :blog AND p.type IN :types "
+            + "AND p.unixtimestamp BETWEEN :from AND :to GROUP BY p.unixtimestamp / 86400 "
+            + "ORDER BY p.unixtimestamp / 86400")
+    public List<Object[]> countByDayForBlog(@Param("blog") String blog, @Param("types") Collection<String> types,
+            @Param("from") long from, @Param("to") long to);
+
+    /**
+     * Sets the read status of a set of posts for a given blog, in a single statement that only
+     * writes the one column. Posts that already have the status (with no status counting as
+     * unread) aren't touched.
+     *
+     * @param blog   Blog to which the posts belong
+     * @param ids    IDs of the posts
+     * @param isRead The new read status
+     * @return Number of posts that were changed
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Post p SET p.isRead = :isRead WHERE p.tumblelog = :blog AND p.id IN :ids "
+            + "AND COALESCE(p.isRead, false) <> :isRead")
+    public int updateReadStatus(@Param("blog") String blog, @Param("ids") Collection<String> ids,
+            @Param("isRead") boolean isRead);
+
+    /**
+     * Sets the favourite status of a set of posts for a given blog, in a single statement that only
+     * writes the one column. Posts that already have the status (with no status counting as not a
+     * favourite) aren't touched.
+     *
+     * @param blog        Blog to which the posts belong
+     * @param ids         IDs of the posts
+     * @param isFavourite The new favourite status
+     * @return Number of posts that were changed
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Post p SET p.isFavourite = :isFavourite WHERE p.tumblelog = :blog AND p.id IN :ids "
+            + "AND COALESCE(p.isFavourite, false) <> :isFavourite")
+    public int updateFavouriteStatus(@Param("blog") String blog, @Param("ids") Collection<String> ids,
+            @Param("isFavourite") boolean isFavourite);
+
+    /**
+     * Returns a set of posts for a given blog
+     *
+     * @param blog Blog to which the posts belong
+     * @param ids  IDs of the posts
+     * @return The posts; IDs that don't exist for the blog are ignored
+     */
+    public List<Post> findByTumblelogAndIdIn(String blog, Collection<String> ids);
+
     /**
      * Delete all posts for a given Blog
      *
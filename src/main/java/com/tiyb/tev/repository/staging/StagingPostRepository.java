@@ -1,9 +1,14 @@
 package com.tiyb.tev.repository.staging;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.tiyb.tev.datamodel.staging.StagingPost;
 
@@ -24,6 +29,41 @@ public interface StagingPostRepository extends JpaRepository<StagingPost, String
      */
     List<StagingPost> findByBlog(String blog);
 
+    /**
+     * Determines whether a given post has been staged for a given blog
+     *
+     * @param id   ID of the post
+     * @param blog Blog for which the post would have been staged
+     * @return Whether the post is staged
+     */
+    boolean existsByIdAndBlog(String id, String blog);
+
+    /**
+     * Stages a set of posts for a given blog, in a single statement. Posts that don't exist for the
+     * blog, or are already staged, are skipped.
+     *
+     * @param blog Blog for which the posts should be staged
+     * @param ids  IDs of the posts
+     * @return Number of posts that were staged
+     */
+    @Transactional
+    @Modifying
+    @Query("INSERT INTO StagingPost (id, blog) SELECT p.id, p.tumblelog FROM Post p WHERE p.tumblelog = :blog "
+            + "AND p.id IN :ids AND p.id NOT IN (SELECT s.id FROM StagingPost s)")
+    int stagePosts(@Param("blog") String blog, @Param("ids") Collection<String> ids);
+
+    /**
+     * Removes a set of staged posts for a given blog, in a single statement
+     *
+     * @param blog Blog for which the posts were staged
+     * @param ids  IDs of the posts
+     * @return Number of posts that were removed
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StagingPost s WHERE s.blog = :blog AND s.id IN :ids")
+    int deleteByBlogAndIdIn(@Param("blog") String blog, @Param("ids") Collection<String> ids);
+
     /**
      * Delete all staged posts for a given blog
      *
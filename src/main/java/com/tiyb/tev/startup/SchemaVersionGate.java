@@ -0,0 +1,225 @@
+package com.tiyb.tev.startup;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+
+import org.hibernate.Version;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * <p>
+ * Skips Hibernate's schema update at startup when the data model hasn't changed since the last time
+ * it ran. The update (<code>ddl-auto=update</code>) reads the metadata of every table in the DB
+ * before deciding there's nothing to do, which is a large part of the startup time for a big
+ * database.
+ * </p>
+ *
+ * <p>
+ * The schema's version is a hash of the entity classes (their table, column and index mappings)
+ * and the Hibernate version, stored in the <code>tev_schema_version</code> table once an update has
+ * completed. At startup the update only runs if the stored version doesn't match the current one,
+ * i.e. on the first start after the data model (or Hibernate) has changed. Hibernate normally logs
+ * errors in the update and carries on, which would record a partly-applied update as done; when
+ * the gate runs the update it makes those errors fail startup instead, so the version is only
+ * recorded once the update has succeeded, and the update is retried next time. Only active when
+ * <code>tev.schema.skipUnchanged</code> is true; otherwise the update runs on every start, as
+ * before.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+@Component
+public class SchemaVersionGate implements HibernatePropertiesCustomizer {
+
+    /**
+     * Table holding the version of the schema
+     */
+    private static final String VERSION_TABLE = "tev_schema_version";
+
+    /**
+     * Package (and sub-packages) holding the entity classes
+     */
+    private static final String ENTITY_PACKAGE = "com.tiyb.tev.datamodel";
+
+    /**
+     * Algorithm used to hash the data model
+     */
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private Logger logger = LoggerFactory.getLogger(SchemaVersionGate.class);
+
+    /**
+     * Whether the schema update should be skipped when the data model hasn't changed
+     */
+    @Value("${tev.schema.skipUnchanged:false}")
+    private boolean skipUnchanged;
+
+    /**
+     * Used to read and write the schema version
+     */
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Version to be recorded once the schema update has completed; null if no update was needed
+     */
+    private volatile String pendingVersion;
+
+    /**
+     * Turns the schema update off if the stored schema version matches the current data model, and
+     * otherwise makes any error in the update fail startup
+     */
+    @Override
+    public void customize(final Map<String, Object> hibernateProperties) {
+        if (!skipUnchanged) {
+            return;
+        }
+
+        final String version = currentVersion();
+        if (version.equals(storedVersion())) {
+            hibernateProperties.put(AvailableSettings.HBM2DDL_AUTO, "none");
+            logger.info("Data model unchanged since the last schema update; skipping schema update");
+        } else {
+            hibernateProperties.put(AvailableSettings.HBM2DDL_AUTO, "update");
+            hibernateProperties.put(AvailableSettings.HBM2DDL_HALT_ON_ERROR, "true");
+            pendingVersion = version;
+            logger.info("Data model has changed since the last schema update; updating schema");
+        }
+    }
+
+    /**
+     * Records the new schema version once the application has started, which means the schema
+     * update has completed without errors (any error would have halted startup)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recordSchemaVersion() {
+        final String version = pendingVersion;
+        if (version == null) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE
+                    + " (schema_version VARCHAR(64) NOT NULL, updated BIGINT NOT NULL)");
+            jdbcTemplate.update("DELETE FROM " + VERSION_TABLE);
+            jdbcTemplate.update("INSERT INTO " + VERSION_TABLE + " (schema_version, updated) VALUES (?, ?)",
+                    version, System.currentTimeMillis());
+            pendingVersion = null;
+        } catch (DataAccessException e) {
+            logger.error("Unable to record schema version; the schema will be updated again next time: ", e);
+        }
+    }
+
+    /**
+     * Returns the version recorded the last time the schema was updated
+     *
+     * @return The stored version, or null if there isn't one
+     */
+    private String storedVersion() {
+        try {
+            final List<String> versions =
+                    jdbcTemplate.queryForList("SELECT schema_version FROM " + VERSION_TABLE, String.class);
+            return versions.isEmpty() ? null : versions.get(0);
+        } catch (DataAccessException e) {
+            logger.debug("No schema version recorded: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Computes the version of the current data model: a hash of the Hibernate version, and every
+     * entity class's name, annotations, and persistent fields (with their types and annotations)
+     *
+     * @return Hex-encoded hash
+     */
+    private String currentVersion() {
+        final StringBuilder model = new StringBuilder(Version.getVersionString()).append('\n');
+        for (Class<?> entity : entityClasses()) {
+            model.append(entity.getName()).append(annotationsOf(entity.getAnnotations())).append('\n');
+            for (Class<?> type = entity; type != null && type != Object.class; type = type.getSuperclass()) {
+                final Field[] fields = type.getDeclaredFields();
+                Arrays.sort(fields, Comparator.comparing(Field::getName));
+                for (Field field : fields) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                        model.append(' ').append(field.getName()).append(':').append(field.getType().getName())
+                                .append(annotationsOf(field.getAnnotations())).append('\n');
+                    }
+                }
+            }
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(model.toString().getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Finds the entity classes, in name order
+     *
+     * @return The entity classes
+     */
+    private List<Class<?>> entityClasses() {
+        final ClassPathScanningCandidateComponentProvider scanner =
+                new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Entity.class));
+
+        final List<Class<?>> entities = new ArrayList<Class<?>>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(ENTITY_PACKAGE)) {
+            entities.add(ClassUtils.resolveClassName(candidate.getBeanClassName(), getClass().getClassLoader()));
+        }
+        entities.sort(Comparator.comparing(Class::getName));
+
+        return entities;
+    }
+
+    /**
+     * Describes a set of annotations, in a consistent order
+     *
+     * @param annotations The annotations
+     * @return Description of the annotations
+     */
+    private static String annotationsOf(final Annotation[] annotations) {
+        final List<String> descriptions = new ArrayList<String>();
+        for (Annotation annotation : annotations) {
+            descriptions.add(annotation.toString());
+        }
+        descriptions.sort(null);
+
+        return descriptions.toString();
+    }
+}
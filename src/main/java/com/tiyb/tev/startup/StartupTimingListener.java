@@ -0,0 +1,106 @@
+package com.tiyb.tev.startup;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+
+/**
+ * <p>
+ * Logs how long each phase of startup took, measured from the time the JVM started, once the
+ * application is ready, and then how long it took until the first request was handled. Registered
+ * with the application in {@link com.tiyb.tev.TevApplication#main(String[]) main()}, rather than as
+ * a bean, so that it sees the phases before the application context exists.
+ * </p>
+ *
+ * <p>
+ * If <code>tev.startup.exitAfterStartup</code> is true the application exits as soon as it's ready;
+ * this is used for the training run that builds the class data sharing archive (see the
+ * <code>cds</code> Maven profile).
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class StartupTimingListener implements ApplicationListener<ApplicationEvent> {
+
+    private Logger logger = LoggerFactory.getLogger(StartupTimingListener.class);
+
+    /**
+     * Time at which the JVM started, in milliseconds
+     */
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    /**
+     * Time at which each phase of startup finished, in order
+     */
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    /**
+     * Whether the first request has been handled yet
+     */
+    private final AtomicBoolean firstRequestHandled = new AtomicBoolean();
+
+    @Override
+    public void onApplicationEvent(final ApplicationEvent event) {
+        if (event instanceof ApplicationStartingEvent) {
+            phases.put("JVM and launcher", event.getTimestamp());
+        } else if (event instanceof ApplicationEnvironmentPreparedEvent) {
+            phases.put("Environment and logging", event.getTimestamp());
+        } else if (event instanceof ApplicationPreparedEvent) {
+            phases.put("Context preparation", event.getTimestamp());
+        } else if (event instanceof ContextRefreshedEvent) {
+            phases.put("Beans, schema and repositories", event.getTimestamp());
+        } else if (event instanceof WebServerInitializedEvent) {
+            phases.put("Web server", event.getTimestamp());
+        } else if (event instanceof ApplicationStartedEvent) {
+            phases.put("Startup runners", event.getTimestamp());
+        } else if (event instanceof ApplicationReadyEvent) {
+            phases.put("Ready", event.getTimestamp());
+            logPhases();
+            exitIfTrainingRun(((ApplicationReadyEvent) event).getApplicationContext());
+        } else if (event instanceof ServletRequestHandledEvent && firstRequestHandled.compareAndSet(false, true)) {
+            logger.info("First request ({}) handled {} ms after the JVM started",
+                    ((ServletRequestHandledEvent) event).getRequestUrl(), event.getTimestamp() - jvmStart);
+        }
+    }
+
+    /**
+     * Logs the time taken by each phase of startup, and the total
+     */
+    private void logPhases() {
+        long previous = jvmStart;
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            logger.info("Startup phase '{}' took {} ms", phase.getKey(), phase.getValue() - previous);
+            previous = phase.getValue();
+        }
+        logger.info("Application ready {} ms after the JVM started", previous - jvmStart);
+    }
+
+    /**
+     * Exits the application if it was only started as a training run
+     *
+     * @param context The application context
+     */
+    private void exitIfTrainingRun(final ConfigurableApplicationContext context) {
+        if (context.getEnvironment().getProperty("tev.startup.exitAfterStartup", Boolean.class, false)) {
+            logger.info("Training run complete; exiting");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
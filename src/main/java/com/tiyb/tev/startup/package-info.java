@@ -0,0 +1,8 @@
+/**
+ * This package contains classes that affect how quickly the application starts: skipping the schema
+ * update when the data model hasn't changed, and logging how long each phase of startup takes.
+ *
+ * @author tiyb
+ *
+ */
+package com.tiyb.tev.startup;
@@ -0,0 +1,213 @@
+package com.tiyb.tev.xml;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tiyb.tev.controller.TEVPostRestController;
+import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.xml.helper.ExportFilter;
+import com.tiyb.tev.xml.helper.IndentingXMLStreamWriter;
+import com.tiyb.tev.xml.helper.PostContentBatch;
+
+/**
+ * <p>
+ * Helper class used for exporting an entire blog (or the subset of it matching an
+ * {@link com.tiyb.tev.xml.helper.ExportFilter ExportFilter}) to XML, in the same format as the
+ * Tumblr export, e.g. for backing up an archive or moving it to another TEV instance.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link com.tiyb.tev.xml.BlogXmlWriter BlogXmlWriter}, which writes one post after another
+ * through a single StAX writer, each post is rendered to its own XML fragment, and the fragments
+ * for a batch of posts are rendered in parallel on a fork-join pool. Fragments are collected in the
+ * order of the posts, so the output is identical to a sequential export. While one batch is being
+ * rendered, the next is loaded from the DB; the outer shell of the document is written by hand
+ * around the fragments.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public final class BlogExportWriter {
+
+    /**
+     * Depth at which each post element sits within the document (<code>tumblr/posts/post</code>)
+     */
+    private static final int POST_DEPTH = 2;
+
+    /**
+     * XML declaration at the start of the document; matches what StAX writes for the staged export
+     */
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    /**
+     * Buffer size for the writer wrapped around the output stream
+     */
+    private static final int OUTPUT_BUFFER_LENGTH = 65536;
+
+    /**
+     * StAX output factories are expensive to look up, and not guaranteed to be thread-safe, so each
+     * rendering thread keeps its own
+     */
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY =
+            ThreadLocal.withInitial(XMLOutputFactory::newInstance);
+
+    private static Logger logger = LoggerFactory.getLogger(BlogExportWriter.class);
+
+    /**
+     * Ensures that the class is never instantiated as an object
+     */
+    private BlogExportWriter() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Writes the XML export for all posts in a blog matching a filter to an output stream (e.g. a
+     * file, or an HTTP response), in UTF-8. The stream is flushed but not closed.
+     *
+     * @param filter         Criteria for the posts to be included
+     * @param postController The REST controller for working with Posts
+     * @param blogName       Blog to be exported
+     * @param out            The stream to which the document should be written
+     * @param pool           The pool on which post fragments should be rendered
+     * @return The number of posts written
+     * @throws IOException        if any errors are encountered writing to the stream
+     * @throws XMLStreamException if any errors are encountered rendering a post
+     */
+    public static int writeBlogExport(final ExportFilter filter, final TEVPostRestController postController,
+            final String blogName, final OutputStream out, final ForkJoinPool pool)
+            throws IOException, XMLStreamException {
+        final List<String> postIDs = postController.getPostIdsForBlogExport(blogName, filter);
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                OUTPUT_BUFFER_LENGTH);
+
+        writer.write(XML_DECLARATION);
+        writer.write(IndentingXMLStreamWriter.indentation(0));
+        writer.write("<tumblr version=\"1.0\">");
+        writer.write(IndentingXMLStreamWriter.indentation(1));
+        writer.write("<posts>");
+
+        int postsWritten = 0;
+        ForkJoinTask<List<String>> pending = null;
+        for (int i = 0; i < postIDs.size(); i += PostContentBatch.DEFAULT_BATCH_SIZE) {
+            final List<String> batchIDs =
+                    postIDs.subList(i, Math.min(i + PostContentBatch.DEFAULT_BATCH_SIZE, postIDs.size()));
+            final PostContentBatch batch = PostContentBatch.load(batchIDs, postController, blogName);
+            if (pending != null) {
+                postsWritten += writeFragments(pending, writer);
+            }
+            pending = pool.submit(() -> batch.getPosts().parallelStream().filter(filter::matchesTag)
+                    .map(post -> renderFragment(post, batch)).collect(Collectors.toList()));
+        }
+        if (pending != null) {
+            postsWritten += writeFragments(pending, writer);
+        }
+
+        writer.write(IndentingXMLStreamWriter.indentation(1));
+        writer.write("</posts>");
+        writer.write(IndentingXMLStreamWriter.indentation(0));
+        writer.write("</tumblr>");
+        writer.flush();
+
+        logger.info("Exported {} posts for blog {}", postsWritten, blogName);
+        return postsWritten;
+    }
+
+    /**
+     * Waits for a batch of fragments to finish rendering, and then writes them out in order
+     *
+     * @param fragments The task rendering the fragments
+     * @param writer    The writer to which the fragments should be written
+     * @return The number of fragments written
+     * @throws IOException        if any errors are encountered writing to the stream
+     * @throws XMLStreamException if any errors were encountered rendering a post
+     */
+    private static int writeFragments(final ForkJoinTask<List<String>> fragments, final Writer writer)
+            throws IOException, XMLStreamException {
+        final List<String> rendered;
+        try {
+            rendered = fragments.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering posts", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FragmentRenderingException) {
+                throw ((FragmentRenderingException) e.getCause()).getCause();
+            }
+            throw new IOException("Error rendering posts", e.getCause());
+        }
+
+        for (String fragment : rendered) {
+            writer.write(fragment);
+        }
+        writer.flush();
+
+        return rendered.size();
+    }
+
+    /**
+     * Renders a single post to an XML fragment, indented as it will appear within the document
+     *
+     * @param post  The post to render
+     * @param batch The batch containing the post's content
+     * @return The XML fragment for the post
+     * @throws FragmentRenderingException wrapping any error from the StAX writer
+     */
+    private static String renderFragment(final Post post, final PostContentBatch batch)
+            throws FragmentRenderingException {
+        final StringWriter fragment = new StringWriter();
+        try {
+            final XMLStreamWriter writer = new IndentingXMLStreamWriter(
+                    OUTPUT_FACTORY.get().createXMLStreamWriter(fragment), POST_DEPTH);
+            BlogXmlWriter.addPost(post, writer, batch);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new FragmentRenderingException(e);
+        }
+
+        return fragment.toString();
+    }
+
+    /**
+     * Unchecked wrapper for errors encountered while rendering fragments on the pool, so that they
+     * can be re-thrown as the original checked exception once the batch is collected
+     *
+     * @author tiyb
+     *
+     */
+    private static final class FragmentRenderingException extends RuntimeException {
+
+        private static final long serialVersionUID = 3619526153843862914L;
+
+        /**
+         * Constructor
+         *
+         * @param cause The underlying StAX error
+         */
+        FragmentRenderingException(final XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
+        }
+    }
+}
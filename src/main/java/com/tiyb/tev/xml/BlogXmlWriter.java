@@ -1,8 +1,8 @@
 package com.tiyb.tev.xml;
 
+import java.io.OutputStream;
 import java.io.StringWriter;
-import java.lang.reflect.Proxy;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import javax.xml.stream.XMLOutputFactory;
@@ -20,7 +20,8 @@ import com.tiyb.tev.datamodel.Photo;
 import com.tiyb.tev.datamodel.Post;
 import com.tiyb.tev.datamodel.Regular;
 import com.tiyb.tev.datamodel.Video;
-import com.tiyb.tev.xml.helper.PrettyPrintHandler;
+import com.tiyb.tev.xml.helper.IndentingXMLStreamWriter;
+import com.tiyb.tev.xml.helper.PostContentBatch;
 
 /**
  * <p>
@@ -61,9 +62,10 @@ public final class BlogXmlWriter {
      * </p>
      *
      * <p>
-     * This method doesn't do much, other than retrieve the Post data from the REST controller for
-     * each post. The {@link #getDocument(List, TEVPostRestController, String) getDocument()} method
-     * (and subsequent, type-specific methods) do most of the work.
+     * This method holds the entire document in memory; for large exports
+     * {@link #writeStagedPostXMLForBlog(List, TEVPostRestController, String, OutputStream)
+     * writeStagedPostXMLForBlog()} should be used instead, to stream the document out as it is
+     * generated. If any errors are encountered they are logged, and NULL is returned.
      * </p>
      *
      * @param postIDs        List of Post IDs to include in the export, regardless of type (photo,
@@ -74,103 +76,117 @@ public final class BlogXmlWriter {
      */
     public static String getStagedPostXMLForBlog(final List<String> postIDs, final TEVPostRestController postController,
             final String blogName) {
-        final List<Post> posts = new ArrayList<Post>();
+        try {
+            final StringWriter stringWriter = new StringWriter();
+            final XMLStreamWriter writer =
+                    new IndentingXMLStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(stringWriter));
+
+            writeDocument(postIDs, postController, blogName, writer);
 
-        for (String id : postIDs) {
-            final Post post = postController.getPostForBlogById(blogName, id);
-            posts.add(post);
+            return stringWriter.toString();
+        } catch (XMLStreamException e) {
+            logger.error("Error creating XML document", e);
+            return null;
         }
+    }
 
-        return getDocument(posts, postController, blogName);
+    /**
+     * Writes an XML document containing the data for the given posts directly to an output stream
+     * (e.g. an HTTP response), in UTF-8. Posts are written as they are loaded, so memory use is
+     * bounded by the batch size rather than the size of the export. The stream is flushed but not
+     * closed.
+     *
+     * @param postIDs        List of Post IDs to include in the export, regardless of type (photo,
+     *                       video, answer, link, regular)
+     * @param postController The REST controller for working with Posts
+     * @param blogName       Blog for which posts should be retrieved
+     * @param out            The stream to which the document should be written
+     * @throws XMLStreamException if any errors are encountered writing the document
+     */
+    public static void writeStagedPostXMLForBlog(final List<String> postIDs,
+            final TEVPostRestController postController, final String blogName, final OutputStream out)
+            throws XMLStreamException {
+        final XMLStreamWriter writer = new IndentingXMLStreamWriter(
+                XMLOutputFactory.newInstance().createXMLStreamWriter(out, StandardCharsets.UTF_8.name()));
+
+        writeDocument(postIDs, postController, blogName, writer);
     }
 
     /**
      * <p>
-     * This method starts the work of creating the outer shell of the document. The
-     * {@link #addPost(Post, XMLStreamWriter, TEVPostRestController, String) addPost()} method
-     * starts adding in the detailed data, post-by-post. The
-     * {@link com.tiyb.tev.xml.helper.PrettyPrintHandler PrettyPrintHandler} helper class is used to
-     * create a more readable version of the XML output.
+     * This method creates the outer shell of the document. The
+     * {@link #addPost(Post, XMLStreamWriter, PostContentBatch) addPost()} method starts adding in
+     * the detailed data, post-by-post. Callers are expected to wrap the writer in an
+     * {@link com.tiyb.tev.xml.helper.IndentingXMLStreamWriter IndentingXMLStreamWriter}, to create
+     * a more readable version of the XML output.
      * </p>
      *
      * <p>
-     * This method also handles any exceptions that might have been raised by sub-methods; when an
-     * exception is encountered, it is logged, and NULL is returned for the response.
+     * Posts are loaded from the DB in batches of {@link PostContentBatch#DEFAULT_BATCH_SIZE}, with
+     * each batch retrieving the posts and their content in a handful of queries (see
+     * {@link com.tiyb.tev.xml.helper.PostContentBatch PostContentBatch}), rather than querying for
+     * each post individually. The writer is flushed after each batch.
      * </p>
      *
-     * @param posts          The list of posts to be included in the export.
-     * @param postController The REST controller, to be used for getting additional data
+     * @param postIDs        IDs of the posts to be included in the export, in order
+     * @param postController The REST controller, to be used for getting the data
      * @param blogName       Name of the blog for which the document is being returned
-     * @return String containing the XML document
+     * @param writer         The StAX XML writer to which the document should be written
+     * @throws XMLStreamException if any errors are encountered by the StAX writer
      */
-    private static String getDocument(final List<Post> posts, final TEVPostRestController postController,
-            final String blogName) {
-        String xmlString = StringUtils.EMPTY;
-
-        try {
-            final StringWriter stringWriter = new StringWriter();
-
-            final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(stringWriter);
-            final PrettyPrintHandler handler = new PrettyPrintHandler(writer);
-            final XMLStreamWriter prettyPrintWriter =
-                    (XMLStreamWriter) Proxy.newProxyInstance(XMLStreamWriter.class.getClassLoader(),
-                            new Class[] { XMLStreamWriter.class }, handler);
-            writer = prettyPrintWriter;
-
-            writer.writeStartDocument("UTF-8", "1.0");
-            writer.writeStartElement("tumblr");
-            writer.writeAttribute("version", "1.0");
-
-            writer.writeStartElement("posts");
-
-            for (Post post : posts) {
-                addPost(post, writer, postController, blogName);
+    private static void writeDocument(final List<String> postIDs, final TEVPostRestController postController,
+            final String blogName, final XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("tumblr");
+        writer.writeAttribute("version", "1.0");
+
+        writer.writeStartElement("posts");
+
+        for (int i = 0; i < postIDs.size(); i += PostContentBatch.DEFAULT_BATCH_SIZE) {
+            final List<String> batchIDs =
+                    postIDs.subList(i, Math.min(i + PostContentBatch.DEFAULT_BATCH_SIZE, postIDs.size()));
+            final PostContentBatch batch = PostContentBatch.load(batchIDs, postController, blogName);
+            for (Post post : batch.getPosts()) {
+                addPost(post, writer, batch);
             }
-
-            writer.writeEndElement();
-            writer.writeEndElement();
-            writer.writeEndDocument();
-
-            xmlString = stringWriter.toString();
-        } catch (XMLStreamException e) {
-            logger.error("Error creating XML document", e);
-            return null;
+            writer.flush();
         }
 
-        return xmlString;
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
     }
 
     /**
      * Creates the wrapper XML for each post -- including attributes -- and then calls sub-methods
      * for each individual type of post (regular, photo, answer, etc.).
      *
-     * @param post           The post to be written to XML
-     * @param writer         The StAX XML writer to which the data should be written
-     * @param postController The REST controller for getting additional post information from the DB
-     * @param blogName       Blog for which the post is being added
+     * @param post   The post to be written to XML
+     * @param writer The StAX XML writer to which the data should be written
+     * @param batch  The batch containing the post's type-specific content
      * @throws XMLStreamException if any errors are encountered by the StAX parser.
      */
-    private static void addPost(final Post post, final XMLStreamWriter writer,
-            final TEVPostRestController postController, final String blogName) throws XMLStreamException {
+    static void addPost(final Post post, final XMLStreamWriter writer, final PostContentBatch batch)
+            throws XMLStreamException {
         writer.writeStartElement(BlogXmlReader.POST_TAG_NAME);
         addPostAttributes(post, writer);
 
         switch (post.getType()) {
         case Post.POST_TYPE_ANSWER:
-            addAnswerBody(post, writer, postController);
+            addAnswerBody(batch.getAnswer(post.getId()), writer);
             break;
         case Post.POST_TYPE_LINK:
-            addLinkBody(post, writer, postController);
+            addLinkBody(batch.getLink(post.getId()), writer);
             break;
         case Post.POST_TYPE_PHOTO:
-            addPhotoBody(post, writer, postController, blogName);
+            addPhotoBody(batch.getPhotos(post.getId()), writer);
             break;
         case Post.POST_TYPE_REGULAR:
-            addRegularBody(post, writer, postController);
+            addRegularBody(batch.getRegular(post.getId()), writer);
             break;
         case Post.POST_TYPE_VIDEO:
-            addVideoBody(post, writer, postController);
+            addVideoBody(batch.getVideo(post.getId()), writer);
             break;
         default:
             logger.error("Invalid post type");
@@ -197,15 +213,12 @@ public final class BlogXmlWriter {
      * addPhotoWithSizes()} helper method is used to insert the XML tags for different sizes of
      * photo.
      *
-     * @param post           The post being added, with one or more photos
-     * @param writer         The StAX XML writer
-     * @param postController The REST controller for retrieving additional data
-     * @param blogName       Blog for which the photo si being added
+     * @param photos The photos for the post being added (one or more)
+     * @param writer The StAX XML writer
      * @throws XMLStreamException if any errors are encountered by the underlying StAX classes
      */
-    private static void addPhotoBody(final Post post, final XMLStreamWriter writer,
-            final TEVPostRestController postController, final String blogName) throws XMLStreamException {
-        final List<Photo> photos = postController.getPhotoController().getPhotoForBlogById(blogName, post.getId());
+    private static void addPhotoBody(final List<Photo> photos, final XMLStreamWriter writer)
+            throws XMLStreamException {
 
         writer.writeStartElement(BlogXmlReader.PHOTO_TAG_CAPTION);
         writer.writeCharacters(photos.get(0).getCaption());
@@ -281,14 +294,11 @@ public final class BlogXmlWriter {
      * database;</b> for this reason, the UI is currently blocking users from adding video posts to
      * the staging area.
      *
-     * @param post           The post to be written to the XML
-     * @param writer         The StAX XML writer
-     * @param postController The REST controller for getting additional data
+     * @param video  The video content of the post to be written to the XML
+     * @param writer The StAX XML writer
      * @throws XMLStreamException if any errors are encountered by the underlying StAX objects
      */
-    private static void addVideoBody(final Post post, final XMLStreamWriter writer,
-            final TEVPostRestController postController) throws XMLStreamException {
-        final Video video = postController.getVideoController().getVideoForBlogById(post.getTumblelog(), post.getId());
+    private static void addVideoBody(final Video video, final XMLStreamWriter writer) throws XMLStreamException {
 
         writer.writeStartElement(VIDEO_TAG_SOURCE);
 
@@ -326,15 +336,11 @@ public final class BlogXmlWriter {
     /**
      * Writes the XML for an answer post to the XML response.
      *
-     * @param post           The post being written
-     * @param writer         The StAX XML writer
-     * @param postController The REST controller for getting additional data
+     * @param answer The answer content of the post being written
+     * @param writer The StAX XML writer
      * @throws XMLStreamException if any errors are encountered by the underlying StAX objects
      */
-    private static void addAnswerBody(final Post post, final XMLStreamWriter writer,
-            final TEVPostRestController postController) throws XMLStreamException {
-        final Answer answer =
-                postController.getAnswerController().getAnswerForBlogById(post.getTumblelog(), post.getId());
+    private static void addAnswerBody(final Answer answer, final XMLStreamWriter writer) throws XMLStreamException {
 
         writer.writeStartElement(BlogXmlReader.ANSWER_QUESTION_TAG);
         writer.writeCharacters(answer.getQuestion());
@@ -349,14 +355,11 @@ public final class BlogXmlWriter {
     /**
      * Writes the XML for a link post to the XML response
      *
-     * @param post           The Post being written
-     * @param writer         The StAX XML writer
-     * @param postController The REST controller for getting additional data
+     * @param link   The link content of the Post being written
+     * @param writer The StAX XML writer
      * @throws XMLStreamException if any errors are encountered by the underlying StAX objects
      */
-    private static void addLinkBody(final Post post, final XMLStreamWriter writer,
-            final TEVPostRestController postController) throws XMLStreamException {
-        final Link link = postController.getLinkController().getLinkForBlogById(post.getTumblelog(), post.getId());
+    private static void addLinkBody(final Link link, final XMLStreamWriter writer) throws XMLStreamException {
 
         writer.writeStartElement(BlogXmlReader.LINK_TAG_TEXT);
         writer.writeCharacters(link.getText());
@@ -375,15 +378,12 @@ public final class BlogXmlWriter {
     /**
      * Writes the XML for a regular post
      *
-     * @param post           The post being written
-     * @param writer         The StAX XML writer
-     * @param postController The REST controller for getting additional data about the post
+     * @param regular The regular content of the post being written
+     * @param writer  The StAX XML writer
      * @throws XMLStreamException if any errors are encountered by the underlying StAX objects
      */
-    private static void addRegularBody(final Post post, final XMLStreamWriter writer,
-            final TEVPostRestController postController) throws XMLStreamException {
-        final Regular regular =
-                postController.getRegController().getRegularForBlogById(post.getTumblelog(), post.getId());
+    private static void addRegularBody(final Regular regular, final XMLStreamWriter writer)
+            throws XMLStreamException {
 
         if (regular.getTitle() != null && regular.getTitle().length() > 0) {
             writer.writeStartElement(BlogXmlReader.REGULAR_TAG_TITLE);
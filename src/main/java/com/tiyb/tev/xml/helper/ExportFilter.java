@@ -0,0 +1,123 @@
+package com.tiyb.tev.xml.helper;
+
+import java.util.Optional;
+
+import com.tiyb.tev.datamodel.Post;
+
+/**
+ * Criteria for selecting which posts are included in a full-blog export. Any criterion left empty
+ * doesn't restrict the export, so an empty filter exports every post in the blog.
+ *
+ * @author tiyb
+ *
+ */
+public class ExportFilter {
+
+    /**
+     * Only export posts of this type (regular, photo, etc.)
+     */
+    private Optional<String> type = Optional.empty();
+
+    /**
+     * Only export posts with this hashtag (case-insensitive)
+     */
+    private Optional<String> tag = Optional.empty();
+
+    /**
+     * Only export posts at or after this Unix timestamp
+     */
+    private Optional<Long> from = Optional.empty();
+
+    /**
+     * Only export posts at or before this Unix timestamp
+     */
+    private Optional<Long> to = Optional.empty();
+
+    /**
+     * Constructor for a filter that doesn't restrict the export
+     */
+    public ExportFilter() {
+    }
+
+    /**
+     * Constructor setting all criteria at once
+     *
+     * @param type Post type to export, if any
+     * @param tag  Hashtag to export, if any
+     * @param from Earliest Unix timestamp to export, if any
+     * @param to   Latest Unix timestamp to export, if any
+     */
+    public ExportFilter(final Optional<String> type, final Optional<String> tag, final Optional<Long> from,
+            final Optional<Long> to) {
+        this.type = type;
+        this.tag = tag;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Whether the filter restricts posts by date
+     *
+     * @return True if a from or to date has been set
+     */
+    public boolean hasDateRange() {
+        return from.isPresent() || to.isPresent();
+    }
+
+    /**
+     * Checks a post against the tag criterion. (Type and date are applied when querying the DB;
+     * tags are stored as a comma-separated LOB, so they are checked once the post is loaded.)
+     *
+     * @param post The post to check
+     * @return True if no tag was specified, or if the post has the tag
+     */
+    public boolean matchesTag(final Post post) {
+        if (!tag.isPresent()) {
+            return true;
+        }
+        if (post.getTags() == null) {
+            return false;
+        }
+
+        for (String postTag : post.getTags().split(",")) {
+            if (postTag.trim().equalsIgnoreCase(tag.get().trim())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public Optional<String> getType() {
+        return type;
+    }
+
+    public void setType(final Optional<String> type) {
+        this.type = type;
+    }
+
+    public Optional<String> getTag() {
+        return tag;
+    }
+
+    public void setTag(final Optional<String> tag) {
+        this.tag = tag;
+    }
+
+    public Optional<Long> getFrom() {
+        return from;
+    }
+
+    public void setFrom(final Optional<Long> from) {
+        this.from = from;
+    }
+
+    public Optional<Long> getTo() {
+        return to;
+    }
+
+    public void setTo(final Optional<Long> to) {
+        this.to = to;
+    }
+
+}
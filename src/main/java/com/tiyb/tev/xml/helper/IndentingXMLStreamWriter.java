@@ -0,0 +1,323 @@
+package com.tiyb.tev.xml.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * <p>
+ * Wrapper around a StAX {@link javax.xml.stream.XMLStreamWriter XMLStreamWriter}, for creating a
+ * more readable version of the XML output by inserting newlines and indentation before start, empty
+ * and end elements. All other calls are passed straight through to the underlying writer.
+ * </p>
+ *
+ * <p>
+ * Because this is a plain decorator (rather than a reflective proxy), there is no per-call
+ * overhead beyond the indentation itself, and indentation strings are built once per depth and
+ * re-used.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public class IndentingXMLStreamWriter implements XMLStreamWriter {
+
+    /**
+     * The sequence of characters used to insert indentation into the output. Currently using two
+     * spaces.
+     */
+    private static final String INDENT_SEQUENCE = "  ";
+
+    /**
+     * The string to be used for line separators. Using {@link java.lang.System#lineSeparator()
+     * System.lineSeparator()} for cross-platform use.
+     */
+    private static final String LINEFEED_STRING = System.lineSeparator();
+
+    /**
+     * Initial capacity for the per-depth tracking of child elements; grown as needed
+     */
+    private static final int INITIAL_DEPTH_CAPACITY = 16;
+
+    /**
+     * The actual {@link javax.xml.stream.XMLStreamWriter XMLStreamWriter} object being wrapped
+     */
+    private final XMLStreamWriter target;
+
+    /**
+     * Current depth of nesting
+     */
+    private int depth;
+
+    /**
+     * For each open depth, whether the element at that depth has had a child element written
+     */
+    private boolean[] hasChildElement;
+
+    /**
+     * Cache of newline + indentation strings, indexed by depth
+     */
+    private final List<String> indents = new ArrayList<String>();
+
+    /**
+     * Constructor, which is used to set the <code>target</code> member
+     *
+     * @param target The {@link javax.xml.stream.XMLStreamWriter XMLStreamWriter} object to be
+     *               wrapped
+     */
+    public IndentingXMLStreamWriter(final XMLStreamWriter target) {
+        this(target, 0);
+    }
+
+    /**
+     * Constructor for writing a fragment of a larger document, where the first element written will
+     * already be nested at a given depth (e.g. a single post, within <code>tumblr/posts</code>)
+     *
+     * @param target       The {@link javax.xml.stream.XMLStreamWriter XMLStreamWriter} object to
+     *                     be wrapped
+     * @param initialDepth The depth at which the first element should be indented
+     */
+    public IndentingXMLStreamWriter(final XMLStreamWriter target, final int initialDepth) {
+        this.target = target;
+        this.depth = initialDepth;
+        this.hasChildElement = new boolean[Math.max(INITIAL_DEPTH_CAPACITY, initialDepth + 1)];
+        indents.add(LINEFEED_STRING);
+    }
+
+    /**
+     * Returns the newline + indentation string that this writer would use before an element at a
+     * given depth, for callers writing parts of a document by hand
+     *
+     * @param forDepth The depth
+     * @return Line separator followed by the indentation for that depth
+     */
+    public static String indentation(final int forDepth) {
+        final StringBuilder builder = new StringBuilder(LINEFEED_STRING);
+        for (int i = 0; i < forDepth; i++) {
+            builder.append(INDENT_SEQUENCE);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Writes a newline and indentation for the current depth, and records that the parent element
+     * (if any) has a child. Called before any start or empty element.
+     *
+     * @throws XMLStreamException if any errors are encountered by the underlying writer
+     */
+    private void beforeElement() throws XMLStreamException {
+        if (depth > 0) {
+            hasChildElement[depth - 1] = true;
+        }
+        target.writeCharacters(indentFor(depth));
+    }
+
+    /**
+     * Called before a start element; indents, and then opens a new level of nesting
+     *
+     * @throws XMLStreamException if any errors are encountered by the underlying writer
+     */
+    private void beforeStartElement() throws XMLStreamException {
+        beforeElement();
+        if (depth == hasChildElement.length) {
+            hasChildElement = Arrays.copyOf(hasChildElement, depth * 2);
+        }
+        hasChildElement[depth] = false;
+        ++depth;
+    }
+
+    /**
+     * Returns the newline + indentation string for a given depth, building (and caching) it if
+     * needed
+     *
+     * @param forDepth The depth
+     * @return The string to write
+     */
+    private String indentFor(final int forDepth) {
+        while (indents.size() <= forDepth) {
+            indents.add(indents.get(indents.size() - 1) + INDENT_SEQUENCE);
+        }
+
+        return indents.get(forDepth);
+    }
+
+    @Override
+    public void writeStartElement(final String localName) throws XMLStreamException {
+        beforeStartElement();
+        target.writeStartElement(localName);
+    }
+
+    @Override
+    public void writeStartElement(final String namespaceURI, final String localName) throws XMLStreamException {
+        beforeStartElement();
+        target.writeStartElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeStartElement(final String prefix, final String localName, final String namespaceURI)
+            throws XMLStreamException {
+        beforeStartElement();
+        target.writeStartElement(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(final String namespaceURI, final String localName) throws XMLStreamException {
+        beforeElement();
+        target.writeEmptyElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeEmptyElement(final String prefix, final String localName, final String namespaceURI)
+            throws XMLStreamException {
+        beforeElement();
+        target.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(final String localName) throws XMLStreamException {
+        beforeElement();
+        target.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        --depth;
+        if (hasChildElement[depth]) {
+            target.writeCharacters(indentFor(depth));
+        }
+        target.writeEndElement();
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        target.writeEndDocument();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        target.close();
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        target.flush();
+    }
+
+    @Override
+    public void writeAttribute(final String localName, final String value) throws XMLStreamException {
+        target.writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(final String prefix, final String namespaceURI, final String localName,
+            final String value) throws XMLStreamException {
+        target.writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeAttribute(final String namespaceURI, final String localName, final String value)
+            throws XMLStreamException {
+        target.writeAttribute(namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeNamespace(final String prefix, final String namespaceURI) throws XMLStreamException {
+        target.writeNamespace(prefix, namespaceURI);
+    }
+
+    @Override
+    public void writeDefaultNamespace(final String namespaceURI) throws XMLStreamException {
+        target.writeDefaultNamespace(namespaceURI);
+    }
+
+    @Override
+    public void writeComment(final String data) throws XMLStreamException {
+        target.writeComment(data);
+    }
+
+    @Override
+    public void writeProcessingInstruction(final String piTarget) throws XMLStreamException {
+        target.writeProcessingInstruction(piTarget);
+    }
+
+    @Override
+    public void writeProcessingInstruction(final String piTarget, final String data) throws XMLStreamException {
+        target.writeProcessingInstruction(piTarget, data);
+    }
+
+    @Override
+    public void writeCData(final String data) throws XMLStreamException {
+        target.writeCData(data);
+    }
+
+    @Override
+    public void writeDTD(final String dtd) throws XMLStreamException {
+        target.writeDTD(dtd);
+    }
+
+    @Override
+    public void writeEntityRef(final String name) throws XMLStreamException {
+        target.writeEntityRef(name);
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        target.writeStartDocument();
+    }
+
+    @Override
+    public void writeStartDocument(final String version) throws XMLStreamException {
+        target.writeStartDocument(version);
+    }
+
+    @Override
+    public void writeStartDocument(final String encoding, final String version) throws XMLStreamException {
+        target.writeStartDocument(encoding, version);
+    }
+
+    @Override
+    public void writeCharacters(final String text) throws XMLStreamException {
+        target.writeCharacters(text);
+    }
+
+    @Override
+    public void writeCharacters(final char[] text, final int start, final int len) throws XMLStreamException {
+        target.writeCharacters(text, start, len);
+    }
+
+    @Override
+    public String getPrefix(final String uri) throws XMLStreamException {
+        return target.getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(final String prefix, final String uri) throws XMLStreamException {
+        target.setPrefix(prefix, uri);
+    }
+
+    @Override
+    public void setDefaultNamespace(final String uri) throws XMLStreamException {
+        target.setDefaultNamespace(uri);
+    }
+
+    @Override
+    public void setNamespaceContext(final NamespaceContext context) throws XMLStreamException {
+        target.setNamespaceContext(context);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return target.getNamespaceContext();
+    }
+
+    @Override
+    public Object getProperty(final String name) {
+        return target.getProperty(name);
+    }
+
+}
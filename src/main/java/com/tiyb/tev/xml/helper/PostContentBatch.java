@@ -0,0 +1,179 @@
+package com.tiyb.tev.xml.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tiyb.tev.controller.TEVPostRestController;
+import com.tiyb.tev.datamodel.Answer;
+import com.tiyb.tev.datamodel.Link;
+import com.tiyb.tev.datamodel.Photo;
+import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.datamodel.Regular;
+import com.tiyb.tev.datamodel.Video;
+import com.tiyb.tev.exception.ResourceNotFoundException;
+
+/**
+ * <p>
+ * Holds a batch of posts, along with their type-specific content (regular, answer, link, photo,
+ * video), for writing out to XML. Everything is retrieved up front with one query for the posts
+ * plus one query per post type present in the batch, rather than one query per post.
+ * </p>
+ *
+ * <p>
+ * Posts are kept in the order in which their IDs were passed in. Callers should keep each batch to
+ * no more than {@link #DEFAULT_BATCH_SIZE} posts, since the IDs are sent to the DB in IN-lists.
+ * </p>
+ *
+ * @author tiyb
+ *
+ */
+public final class PostContentBatch {
+
+    /**
+     * Default number of posts to load in a single batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * The posts in the batch, in the requested order
+     */
+    private final List<Post> posts;
+
+    /**
+     * Regular content, by post ID
+     */
+    private Map<String, Regular> regulars = Collections.emptyMap();
+
+    /**
+     * Answer content, by post ID
+     */
+    private Map<String, Answer> answers = Collections.emptyMap();
+
+    /**
+     * Link content, by post ID
+     */
+    private Map<String, Link> links = Collections.emptyMap();
+
+    /**
+     * Video content, by post ID
+     */
+    private Map<String, Video> videos = Collections.emptyMap();
+
+    /**
+     * Photos, by post ID
+     */
+    private Map<String, List<Photo>> photos = Collections.emptyMap();
+
+    /**
+     * Constructor; use {@link #load(List, TEVPostRestController, String) load()} to create an
+     * instance
+     *
+     * @param thePosts The posts in the batch, in order
+     */
+    private PostContentBatch(final List<Post> thePosts) {
+        this.posts = thePosts;
+    }
+
+    /**
+     * Loads a batch of posts and all of their content
+     *
+     * @param postIDs        IDs of the posts to load, in the order in which they should be returned
+     * @param postController The REST controller for working with Posts
+     * @param blogName       Blog to which the posts belong
+     * @return The loaded batch
+     * @throws ResourceNotFoundException if any of the posts don't exist
+     */
+    public static PostContentBatch load(final List<String> postIDs, final TEVPostRestController postController,
+            final String blogName) throws ResourceNotFoundException {
+        final Map<String, Post> postsById = postController.getPostsForBlogByIds(blogName, postIDs);
+        final List<Post> orderedPosts = new ArrayList<Post>(postIDs.size());
+        final Map<String, List<String>> idsByType = new HashMap<String, List<String>>();
+
+        for (String id : postIDs) {
+            final Post post = postsById.get(id);
+            if (post == null) {
+                throw new ResourceNotFoundException("Post", "id", id);
+            }
+            orderedPosts.add(post);
+            idsByType.computeIfAbsent(post.getType(), k -> new ArrayList<String>()).add(id);
+        }
+
+        final PostContentBatch batch = new PostContentBatch(orderedPosts);
+
+        for (Map.Entry<String, List<String>> entry : idsByType.entrySet()) {
+            if (entry.getKey() == null) {
+                continue;
+            }
+            final List<String> ids = entry.getValue();
+            switch (entry.getKey()) {
+            case Post.POST_TYPE_REGULAR:
+                batch.regulars = postController.getRegController().getRegularsForBlogByIds(blogName, ids);
+                break;
+            case Post.POST_TYPE_ANSWER:
+                batch.answers = postController.getAnswerController().getAnswersForBlogByIds(blogName, ids);
+                break;
+            case Post.POST_TYPE_LINK:
+                batch.links = postController.getLinkController().getLinksForBlogByIds(blogName, ids);
+                break;
+            case Post.POST_TYPE_VIDEO:
+                batch.videos = postController.getVideoController().getVideosForBlogByIds(blogName, ids);
+                break;
+            case Post.POST_TYPE_PHOTO:
+                batch.photos = postController.getPhotoController().getPhotosForBlogByIds(blogName, ids);
+                break;
+            default:
+                // invalid types are reported when the post is written
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Helper for retrieving a content item from one of the maps, raising the same error as the
+     * individual REST APIs would if the item doesn't exist
+     *
+     * @param <T>      Type of content
+     * @param items    Map from which the item should be retrieved
+     * @param typeName Name of the type, for error reporting
+     * @param postId   ID of the post
+     * @return The content item
+     * @throws ResourceNotFoundException if there is no content for the post
+     */
+    private static <T> T getItem(final Map<String, T> items, final String typeName, final String postId)
+            throws ResourceNotFoundException {
+        final T item = items.get(postId);
+        if (item == null) {
+            throw new ResourceNotFoundException(typeName, "id", postId);
+        }
+
+        return item;
+    }
+
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    public Regular getRegular(final String postId) {
+        return getItem(regulars, Post.POST_TYPE_REGULAR, postId);
+    }
+
+    public Answer getAnswer(final String postId) {
+        return getItem(answers, Post.POST_TYPE_ANSWER, postId);
+    }
+
+    public Link getLink(final String postId) {
+        return getItem(links, Post.POST_TYPE_LINK, postId);
+    }
+
+    public Video getVideo(final String postId) {
+        return getItem(videos, Post.POST_TYPE_VIDEO, postId);
+    }
+
+    public List<Photo> getPhotos(final String postId) {
+        return photos.getOrDefault(postId, Collections.emptyList());
+    }
+}
@@ -4,11 +4,15 @@
  * handled for Photo posts (which have anchors to open images in the single
  * image viewer), but initial testing shows that the conflict works out ok in
  * that the image is only opened once, so being left as-is for now.
+ * 
+ * Images shown as thumbnails carry the URL of the full-sized image in a
+ * data-full-src attribute, which is opened instead of the thumbnail.
  */
 $(document).ready(function() {
 	$('img').addClass('clickableImage');
 	
 	$('img').click(function() {
-		window.open($(this).attr("src"), '_singlephotoviewer');
+		var fullSrc = $(this).attr("data-full-src");
+		window.open(fullSrc ? fullSrc : $(this).attr("src"), '_singlephotoviewer');
 	});
 });
\ No newline at end of file
@@ -4,7 +4,129 @@ $.i18n.properties({
 	mode: 'both'
 });
 
+/**
+ * Only the first page of messages is rendered by the server; the rest are
+ * fetched a page at a time, keyed on the (timestamp, ID) of the first or last
+ * message showing, as the user scrolls towards either end of the list.
+ */
+var MESSAGE_PAGE_SIZE = 100;
+var SCROLL_LOAD_MARGIN = 400;
+var MONTH_NAMES = ["Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"];
+
+var hasOlderMessages = false;
+var loadingMessages = false;
+
+function twoDigits(value) {
+	return (value < 10 ? "0" : "") + value;
+}
+
+function formatMessageTimestamp(timestamp) {
+	var date = new Date(timestamp * 1000);
+	return MONTH_NAMES[date.getMonth()] + " " + twoDigits(date.getDate()) + ", " + date.getFullYear() + ", "
+		+ twoDigits(date.getHours()) + ":" + twoDigits(date.getMinutes());
+}
+
+/**
+ * Builds the same markup for a message as the server-side template
+ */
+function buildMessageDiv(message) {
+	var div = $("<div>").addClass("messageDiv").addClass(message.received ? "message-received" : "message-sent");
+	div.attr("data-timestamp", message.timestamp).attr("data-id", message.id);
+	if(message.received) {
+		div.append($("<span class='avatarSpan participantAvatarSpan'>").append($("<img>").attr("src", participantAvatarUrl)));
+	} else {
+		div.append($("<span class='avatarSpan tumblrUserAvatarSpan'>").append($("<img>").attr("src", tumblrUserAvatarUrl)));
+	}
+	div.append($("<span class='messageTimestampSpan'>").text(formatMessageTimestamp(message.timestamp))).append("<br/>");
+	if(message.type === "POSTREF") {
+		div.append($("<span class='messageBodySpan'>").append($("<a>").attr("href", message.message).text(message.message)));
+	}
+	if(message.type === "IMAGE") {
+		div.append($("<span class='messageBodySpan'>").append($("<img>").attr("src", message.message)));
+	} else {
+		div.append($("<span class='messageBodySpan'>").text(message.message));
+	}
+	return div;
+}
+
+function loadMessagePage(params, callback) {
+	loadingMessages = true;
+	params.size = MESSAGE_PAGE_SIZE;
+	$.ajax({
+		url: "/api/conversations/" + blogName + "/messagesForConvoId/" + conversationId + "/page",
+		data: params,
+		dataSrc: ""
+	}).then(function(page) {
+		callback(page);
+		loadingMessages = false;
+	}, function() {
+		loadingMessages = false;
+	});
+}
+
+function loadNewerMessages() {
+	var last = $('#messageList .messageDiv').last();
+	if(last.length === 0) {
+		return;
+	}
+	loadMessagePage({afterTimestamp: last.attr("data-timestamp"), afterId: last.attr("data-id")}, function(page) {
+		page.messages.forEach(function(message) {
+			$('#messageList').append(buildMessageDiv(message));
+		});
+		hasNewerMessages = page.hasNewer;
+	});
+}
+
+function loadOlderMessages() {
+	var first = $('#messageList .messageDiv').first();
+	if(first.length === 0) {
+		return;
+	}
+	loadMessagePage({beforeTimestamp: first.attr("data-timestamp"), beforeId: first.attr("data-id")}, function(page) {
+		var heightBefore = $(document).height();
+		var divs = page.messages.map(buildMessageDiv);
+		$('#messageList').prepend(divs);
+		// keep the messages that were already showing where they were
+		$(window).scrollTop($(window).scrollTop() + $(document).height() - heightBefore);
+		hasOlderMessages = page.hasOlder;
+	});
+}
+
+function jumpToDate(dateString) {
+	var timestamp = Math.floor(new Date(dateString + "T00:00:00").getTime() / 1000);
+	if(isNaN(timestamp)) {
+		return;
+	}
+	loadMessagePage({fromTimestamp: timestamp}, function(page) {
+		$('#messageList').empty().append(page.messages.map(buildMessageDiv));
+		hasOlderMessages = page.hasOlder;
+		hasNewerMessages = page.hasNewer;
+		$(window).scrollTop($('#messageList').offset().top - 1);
+	});
+}
+
 $(document).ready(function() {
+	$(window).scroll(function() {
+		if(loadingMessages) {
+			return;
+		}
+		var scrollTop = $(window).scrollTop();
+		if(hasNewerMessages && scrollTop + $(window).height() > $(document).height() - SCROLL_LOAD_MARGIN) {
+			loadNewerMessages();
+		} else if(hasOlderMessages && scrollTop < $('#messageList').offset().top + SCROLL_LOAD_MARGIN) {
+			loadOlderMessages();
+		}
+	});
+
+	$('#jumpToDateBtn').click(function() {
+		jumpToDate($('#jumpToDateInput').val());
+	});
+
+	// fill the window, for pages short enough that there's nothing to scroll
+	if(hasNewerMessages && $(document).height() <= $(window).height()) {
+		loadNewerMessages();
+	}
+
 	$('#hideConvoBtn').click(function() {
 		$.ajax({
 			url: "/api/conversations/" + blogName + "/byParticipant/" + participant + "/ignoreConvo",
@@ -12,11 +12,6 @@ $.i18n.properties({
  */
 var metadata;
 
-/**
- * Holds the list of hashtags (names only), for use in autocomplete
- */
-var htData;
-
 /**
  * Holds the list of hashtag objects
  */
@@ -187,18 +182,34 @@ function setupUIWidgets() {
 }
 
 /**
- * Sets up the autocomplete field for new hashtags, first to initialize it with
- * data and then to set up the onChange event to post the new hashtag to the
- * server. Pre-populating the list is only a convenience function, so that the
- * user can see that the HT already exists; choosing an existing item won't
- * change anything.
+ * Sets up the autocomplete field for new hashtags, first to fetch suggestions
+ * from the server as the user types and then to set up the onChange event to
+ * post the new hashtag to the server. Suggestions are only a convenience, so
+ * that the user can see that the HT already exists; choosing an existing item
+ * won't change anything.
  */
 function setupAutoComplete() {
     $('#newTagTextBox').autocomplete({
-        source: htData,
+        source: function(request, response) {
+            $.ajax({
+                url: '/api/hashtags/' + getCurrentBlogName() + '/suggest',
+                data: {
+                    prefix: request.term,
+                    allBlogs: metadata.showHashtagsForAllBlogs === true
+                },
+                error: function(xhr, textStatus, errorThrown) {
+                    response([]);
+                }
+            }).then(function(suggestions) {
+                response(suggestions);
+            });
+        },
         change: function(event, ui) {
             var newHT = $('#newTagTextBox').val();
-            if(htData.includes(newHT)) {
+            var tagExists = htObjects.some(function(ht) {
+                return ht.tag === newHT;
+            });
+            if(tagExists) {
                 createAnInfoMessage($.i18n.prop('htviewer_newht_exists', newHT));
                 return;
             }
@@ -256,9 +267,6 @@ $(document).ready(function() {
             dataSrc: ""
         }).then(function (htResponseData) {
             htObjects = htResponseData;
-            htData = htResponseData.map(function(val) {
-                return val.tag;
-            });
             
             var tagsTable = initializeTableUI();
             loadDataIntoTable(htResponseData, tagsTable);
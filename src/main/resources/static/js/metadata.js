@@ -13,6 +13,8 @@ var mdReadyExecuted = false;
 
 var FILE_UPLOADING_INTERVAL = 4500;
 
+var IMPORT_POLLING_INTERVAL = 1000;
+
 /**
  * Sends an AJAX request to the server with the updated metadata
  */
@@ -397,6 +399,38 @@ function uploadFile(fileType, postUploadForm) {
 
 }
 
+/**
+ * Checks the progress of a background image import. While the import is still
+ * running, a progress message is displayed and setTimeout() is used to check
+ * again in a few seconds (controlled by IMPORT_POLLING_INTERVAL); once it has
+ * finished, the outcome is displayed.
+ * 
+ * @param jobId
+ *            ID of the import job, returned when it was started
+ */
+function pollImageImport(jobId) {
+    $.ajax({
+        url: '/admintools/importJobs/' + jobId,
+        type: 'GET',
+        success: function(job, textStatus, xhr) {
+            if (!job.done) {
+                createAnInfoMessage($.i18n.prop('md_admintools_importImagesInProgress',
+                        job.processedFiles, job.totalFiles));
+                setTimeout(function() {
+                    pollImageImport(jobId);
+                }, IMPORT_POLLING_INTERVAL);
+            } else if (job.status === 'COMPLETED' && job.failedFiles === 0) {
+                createAnInfoMessage($.i18n.prop('md_admintools_importImagesSuccess'));
+            } else {
+                createAnErrorMessage($.i18n.prop('md_admintools_importImagesFailure'));
+            }
+        },
+        error: function(xhr, textStatus, errorThrown) {
+            createAnErrorMessage($.i18n.prop('md_admintools_importImagesFailure'));
+        }
+    });
+}
+
 /**
  * Download the static data to populate drop-downs; download metadata to
  * populate the form, set up event handlers
@@ -539,13 +573,12 @@ $(document).ready(function () {
         }
         
         $.ajax({
-            url: '/admintools/posts/' + metadataObject.blog + '/importImages',
+            url: '/admintools/posts/' + metadataObject.blog + '/importImagesJob',
             type: 'POST',
             data: $('#importImagesPath').val(),
-            async: false,
             contentType: 'text/plain',
             success: function(data, textStatus, xhr) {
-                createAnInfoMessage($.i18n.prop('md_admintools_importImagesSuccess'));
+                pollImageImport(data);
             },
             error: function(xhr, textStatus, errorThrown) {
                 createAnErrorMessage($.i18n.prop('md_admintools_importImagesFailure'));
@@ -27,6 +27,73 @@ function updateMDAPI() {
     }); 
 }
 
+/**
+ * Version of the post data shown in the table, as returned by the server's
+ * change feed; used to fetch just the posts that have changed since
+ */
+var postDataVersion = null;
+
+/**
+ * Loads all posts for the blog into the table. The current version is fetched
+ * first, so that anything that changes while the posts are loading is picked
+ * up by the next sync.
+ * 
+ * @param callback DataTables callback, to be given the posts
+ */
+function loadAllPosts(callback) {
+    $.getJSON('/api/posts/' + metadata.blog + '/changes', function(changes) {
+        postDataVersion = changes.version;
+        $.getJSON('/api/posts/' + metadata.blog, function(posts) {
+            callback({ data: posts });
+        });
+    });
+}
+
+/**
+ * Brings the table up to date with the server by fetching only the posts that
+ * have changed since the table was loaded (or last synced), and patching them
+ * in place. Falls back to reloading everything if the server can't say what
+ * changed. Does nothing if the table hasn't been set up yet, since it will
+ * load everything when it is.
+ */
+function syncPostTable() {
+    if(!$.fn.dataTable.isDataTable('#postTable')) {
+        return;
+    }
+    var table = $('#postTable').DataTable();
+    if(postDataVersion === null) {
+        table.ajax.reload(null, false);
+        return;
+    }
+    $.ajax({
+        url: '/api/posts/' + metadata.blog + '/changes',
+        data: { since: postDataVersion },
+        dataType: 'json',
+        success: function(changes) {
+            if(changes.fullReload) {
+                table.ajax.reload(null, false);
+                return;
+            }
+            changes.deletedIds.forEach(function(id) {
+                table.row('#' + id).remove();
+            });
+            changes.posts.forEach(function(post) {
+                if(table.rows('#' + post.id).count() > 0) {
+                    table.row('#' + post.id).data(post);
+                } else {
+                    table.row.add(post);
+                }
+            });
+            postDataVersion = changes.version;
+            $('#displayPaneIFrame').height($('#contentDisplayTable').height());
+            table.draw(false);
+        },
+        error: function() {
+            table.ajax.reload(null, false);
+        }
+    });
+}
+
 /**
  * Indicator as to whether the "additional options" are showing
  */
@@ -321,10 +388,10 @@ $(document).ready(function() {
             "autoWidth": false,
             "lengthMenu": [[10, 25, 50, 100, -1], [$.i18n.prop('md_pagelengths_10'), $.i18n.prop('md_pagelengths_25'), $.i18n.prop('md_pagelengths_50'), $.i18n.prop('md_pagelengths_100'), $.i18n.prop('md_pagelengths_all')]],
             "orderCellsTop": true,
-            "ajax": {
-                "url": "api/posts/" + metadata.blog,
-                "dataSrc": ""
+            "ajax": function(data, callback, settings) {
+                loadAllPosts(callback);
             },
+            "rowId": "id",
             "columns": [
                 {
                     "data": "id",
@@ -390,7 +457,8 @@ $(document).ready(function() {
                     postTable.draw();
                     $.ajax({
                         url: "/api/posts/" + metadata.blog + "/" + postID + "/markRead",
-                        type: "GET"
+                        type: "GET",
+                        success: syncPostTable
                     });
                     if(metadata.showReadingPane) {
                         $('#contentDisplayReadingPane').show();
@@ -419,7 +487,8 @@ $(document).ready(function() {
             var postID = data.id;
             $.ajax({
                 url: "/api/posts/" + metadata.blog + "/" + postID + "/markUnread",
-                type: "GET"
+                type: "GET",
+                success: syncPostTable
             });
             $(this).parent().parent('tr').children('td:last-child').html($.i18n.prop('index_posttable_isNotreadIndicator'));
             $('#displayPaneIFrame').height($('#contentDisplayTable').height());
@@ -432,7 +501,8 @@ $(document).ready(function() {
             var postID = data.id;
             $.ajax({
                 url: "/api/posts/" + metadata.blog + "/" + postID + "/markFavourite",
-                type: "GET"
+                type: "GET",
+                success: syncPostTable
             });
             $(this).parents('tr').children('td:nth-child(' + (FAV_COLUMN_NO + 1) + ')').html($.i18n.prop('index_posttable_isFavourite'));
             $('#displayPaneIFrame').height($('#contentDisplayTable').height());
@@ -445,7 +515,8 @@ $(document).ready(function() {
             var postID = data.id;
             $.ajax({
                 url: "/api/posts/" + metadata.blog + "/" + postID + "/markNonFavourite",
-                type: "GET"
+                type: "GET",
+                success: syncPostTable
             });
             $(this).parents('tr').children('td:nth-child(' + (FAV_COLUMN_NO + 1) + ')').html($.i18n.prop('index_posttable_isNotFavourite'));
             $('#displayPaneIFrame').height($('#contentDisplayTable').height());
@@ -491,7 +562,7 @@ $(document).ready(function() {
             metadata.filter = "Do not Filter";
         }
         
-        postTable.ajax.reload();
+        syncPostTable();
         $('#displayPaneIFrame').height($('#contentDisplayTable').height());
         postTable.draw();
         updateMDAPI();
@@ -506,7 +577,7 @@ $(document).ready(function() {
             metadata.favFilter = "Show Everything";
         }
         
-        postTable.ajax.reload();
+        syncPostTable();
         $('#displayPaneIFrame').height($('#contentDisplayTable').height());
         postTable.draw();
         updateMDAPI();
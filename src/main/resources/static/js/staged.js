@@ -51,19 +51,23 @@ $(document).ready(function() {
 				$('#downloadButton').attr('disabled', true).addClass('disabled');
 				$('#removeAllButton').attr('disabled', true).addClass('disabled');
 			}
-			data.forEach(function(element) {
-				$.ajax({
-					url: "/api/posts/" + metadataObject.blog + "/" + element,
-					dataSrc: ""
-				}).then(function(postData) {
+			$.ajax({
+				url: "/api/posts/" + metadataObject.blog + "/batch",
+				type: "POST",
+				data: JSON.stringify(data),
+				contentType: "application/json",
+				dataSrc: ""
+			}).then(function(posts) {
+				posts.forEach(function(postData) {
 					var downloadImageButton;
 					if(postData.type === "photo") {
 						downloadImageButton = "<button class='downloadImagesButton ui-button ui-widget ui-corner-all'>" + $.i18n.prop('staging_downloadImagesButtonText') + "</button>";
 					} else {
 						downloadImageButton = "";
 					}
-					stagedPostTable.row.add([buildClickableItem(postData.id), buildClickableItem(postData.type), buildClickableItem(postData.slug), downloadImageButton, "<button class='removeBtn ui-button ui-widget ui-corner-all'>" + $.i18n.prop('staging_removeButtonText') + "</button>"]).draw();
+					stagedPostTable.row.add([buildClickableItem(postData.id), buildClickableItem(postData.type), buildClickableItem(postData.slug), downloadImageButton, "<button class='removeBtn ui-button ui-widget ui-corner-all'>" + $.i18n.prop('staging_removeButtonText') + "</button>"]);
 				});
+				stagedPostTable.draw();
 			});
 			
 			$('#stagedPostsTable tbody').on('click', 'div[class=clickableTableValue]', function () {
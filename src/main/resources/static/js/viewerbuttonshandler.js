@@ -4,100 +4,85 @@ $.i18n.properties({
 	mode: 'both'
 });
 
+/**
+ * The buttons are rendered as part of the viewer page, and the state of the
+ * post (read/favourite/staged/type) is provided by the server in the postState
+ * variable, so no further requests are needed before the buttons can be used.
+ */
 $(document).ready(function() {
-	$('#buttonsDiv').load("/viewerbuttons");
-	
-	$.ajax({
-		url: "/api/posts/" + blogName + "/" + postId,
-		dataSrc: "",
-		type: "GET"
-	}).then(function(postData) {
-		if(postData.isFavourite === true) {
-			$("#favouriteButton").text($.i18n.prop("viewer_buttons_unfavourite"));
+	if(postState.isFavourite === true) {
+		$("#favouriteButton").text($.i18n.prop("viewer_buttons_unfavourite"));
+	} else {
+		$("#favouriteButton").text($.i18n.prop("viewer_buttons_favourite"));
+	}
+
+	if(postState.isRead) {
+		$('#markReadButton').text($.i18n.prop("viewer_buttons_unread"));
+	} else {
+		$('#markReadButton').text($.i18n.prop("viewer_buttons_read"));
+	}
+
+	$('#markReadButton').click(function() {
+		var url;
+		if(postState.isRead) {
+			url = "/api/posts/" + blogName + "/" + postId + "/markUnread";
 		} else {
-			$("#favouriteButton").text($.i18n.prop("viewer_buttons_favourite"));
+			url = "/api/posts/" + blogName + "/" + postId + "/markread";
 		}
-		
-		if(postData.isRead) {
-			$('#markReadButton').text($.i18n.prop("viewer_buttons_unread"));
+		$.ajax({
+			url: url,
+			dataSrc: "",
+			type: "GET"
+		}).then(function(data) {
+			opener.location.reload();
+			window.close();
+		});
+	});
+
+	$('#favouriteButton').click(function() {
+		var url;
+		if(postState.isFavourite) {
+			url = "/api/posts/" + blogName + "/" + postId + "/markNonFavourite";
 		} else {
-			$('#markReadButton').text($.i18n.prop("viewer_buttons_read"));
+			url = "/api/posts/" + blogName + "/" + postId + "/markFavourite";
 		}
-		
-		$('#markReadButton').click(function() {
-			var url;
-			if(postData.isRead) {
-				url = "/api/posts/" + blogName + "/" + postId + "/markUnread";
-			} else {
-				url = "/api/posts/" + blogName + "/" + postId + "/markread";
-			}
-			$.ajax({
-				url: url,
-				dataSrc: "",
-				type: "GET"
-			}).then(function(data) {
-				opener.location.reload();
-				window.close();
-			});
+
+		$.ajax({
+			url: url,
+			dataSrc: "",
+			type: "GET"
+		}).then(function(data) {
+			location.reload();
 		});
-		
-		$('#favouriteButton').click(function() {
-			var url;
-			if(postData.isFavourite) {
-				url = "/api/posts/" + blogName + "/" + postId + "/markNonFavourite";
-			} else {
-				url = "/api/posts/" + blogName + "/" + postId + "/markFavourite";
-			}
-			
+	});
+
+	$('#closeButton').click(function() {
+		window.close();
+	});
+
+	$('#closeAndRefreshButton').click(function() {
+		opener.location.reload();
+		window.close();
+	});
+
+	if(postState.type === "video") {
+		$('#stageForDownloadButton').hide();
+	} else {
+		if(postState.isStaged) {
+			$('#stageForDownloadButton').text($.i18n.prop('viewer_buttons_unmarkfordownload'));
+		} else {
+			$('#stageForDownloadButton').text($.i18n.prop('viewer_buttons_markfordownload'));
+		}
+
+		$('#stageForDownloadButton').click(function() {
 			$.ajax({
-				url: url,
+				url: "/staging-api/posts/" + blogName + "/" + postId,
 				dataSrc: "",
-				type: "GET"
+				type: (postState.isStaged ? "DELETE" : "POST")
 			}).then(function(data) {
 				location.reload();
 			});
 		});
-		
-		$('#closeButton').click(function() {
-			window.close();
-		});
-		
-		$('#closeAndRefreshButton').click(function() {
-			opener.location.reload();
-			window.close();
-		});
-		
-		if(postData.type === "video") {
-			$('#stageForDownloadButton').hide();
-		} else {
-			$.ajax({
-				url: "/staging-api/posts/" + blogName,
-				dataSrc: ""
-			}).then(function(data) {
-				var stagedPost = false;
-				data.forEach(function(element) {
-					if(element === postId) {
-						stagedPost = true;
-					}
-				});
-				
-				if(stagedPost) {
-					$('#stageForDownloadButton').text($.i18n.prop('viewer_buttons_unmarkfordownload'));
-				} else {
-					$('#stageForDownloadButton').text($.i18n.prop('viewer_buttons_markfordownload'));
-				}
-				
-				$('#stageForDownloadButton').click(function() {
-					$.ajax({
-						url: "/staging-api/posts/" + blogName + "/" + postId,
-						dataSrc: "",
-						type: (stagedPost ? "DELETE" : "POST")
-					}).then(function(data) {
-						location.reload();
-					});
-				});
-			});
-		}
-	});
-	
-});
\ No newline at end of file
+	}
+
+});
@@ -2,10 +2,14 @@ package com.tiyb.tev.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -13,9 +17,13 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
 import com.tiyb.tev.datamodel.Post;
 import com.tiyb.tev.html.HtmlTestingClass;
+import com.tiyb.tev.media.MediaImportJob;
+import com.tiyb.tev.media.MediaImporter;
 
 /**
  * Unit test cases for testing admin functions of the application.
@@ -31,6 +39,8 @@ public class TevAdminToolsUnitTests extends HtmlTestingClass {
     private TEVPostRestController postController;
     @Autowired
     private TestRestTemplate restTemplate;
+    @Autowired
+    private MediaImporter mediaImporter;
 
     /**
      * Don't know what the Rule annotation does, but this is a temporary folder
@@ -162,6 +172,25 @@ public class TevAdminToolsUnitTests extends HtmlTestingClass {
         assertThat(tempMDImageFolder.getRoot().list().length).isEqualTo(3);
     }
 
+    /**
+     * Tests that files are matched to posts by their full ID, not just a common prefix: a file for a
+     * post whose ID merely starts with a photo post's ID isn't counted as one of its images
+     *
+     * @throws IOException
+     */
+    @Test
+    public void cleanImagesMatchesWholePostId() throws IOException {
+        tempMDImageFolder.newFile("180784644740_0.gif");
+        tempMDImageFolder.newFile("1807846447401_0.gif");
+        tempMDImageFolder.newFile("180254465582_0.gif");
+        tempMDImageFolder.newFile("180254465582_1.gif");
+
+        adminRestController.cleanImagesOnHDForBlog(MAIN_BLOG_NAME);
+
+        assertThat(tempMDImageFolder.getRoot().list()).containsExactlyInAnyOrder("180784644740_0.gif",
+                "180254465582_0.gif", "180254465582_1.gif");
+    }
+
     /**
      * Test importing images with non-post-related images
      *
@@ -303,6 +332,100 @@ public class TevAdminToolsUnitTests extends HtmlTestingClass {
         assertThat(tempMDImageFolder.getRoot().list().length).isEqualTo(3);
     }
 
+    /**
+     * Test a background import via the REST interface, polling the job until it's done
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void importImagesJobRest() throws IOException, InterruptedException {
+        tempInputImageFolder.newFile("180784644740_0.gif");
+        tempInputImageFolder.newFile("180254465582_0.gif");
+        tempInputImageFolder.newFile("180254465582_1.gif");
+        tempInputImageFolder.newFile("blah.txt");
+
+        ResponseEntity<String> startResponse = restTemplate.postForEntity(
+                String.format("%s/admintools/posts/%s/importImagesJob", baseUri(), MAIN_BLOG_NAME),
+                tempInputImageFolder.getRoot().getAbsolutePath(), String.class);
+        assertThat(startResponse.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+
+        String jobUrl = String.format("%s/admintools/importJobs/%s", baseUri(), startResponse.getBody());
+        Map<?, ?> job = restTemplate.getForObject(jobUrl, Map.class);
+        for (int i = 0; i < 100 && !Boolean.TRUE.equals(job.get("done")); i++) {
+            Thread.sleep(100);
+            job = restTemplate.getForObject(jobUrl, Map.class);
+        }
+
+        assertThat(job.get("status")).isEqualTo(MediaImportJob.Status.COMPLETED.name());
+        assertThat(job.get("totalFiles")).isEqualTo(4);
+        assertThat(job.get("copiedFiles")).isEqualTo(4);
+        assertThat(job.get("failedFiles")).isEqualTo(0);
+        assertThat(tempMDImageFolder.getRoot().list()).containsExactlyInAnyOrder("180784644740_0.gif",
+                "180254465582_0.gif", "180254465582_1.gif");
+    }
+
+    /**
+     * Progress can't be retrieved for a job that doesn't exist
+     */
+    @Test
+    public void importImagesJobNotFound() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                String.format("%s/admintools/importJobs/%s", baseUri(), "nosuchjob"), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Importing the same files twice should skip them the second time, but re-import any that have
+     * changed
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void importSkipsUnchangedImages() throws IOException, InterruptedException {
+        tempInputImageFolder.newFile("180784644740_0.gif");
+        File changed = tempInputImageFolder.newFile("180254465582_0.gif");
+
+        MediaImportJob job = importAndWait(false);
+        assertThat(job.getCopiedFiles()).isEqualTo(2);
+
+        Files.write(changed.toPath(), new byte[] { 1, 2, 3 });
+        job = importAndWait(false);
+        assertThat(job.getSkippedFiles()).isEqualTo(1);
+        assertThat(job.getCopiedFiles()).isEqualTo(1);
+        assertThat(new File(tempMDImageFolder.getRoot(), "180254465582_0.gif"))
+                .hasBinaryContent(new byte[] { 1, 2, 3 });
+    }
+
+    /**
+     * Linking, where the file system supports it, imports the same files as copying
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void importImagesLinked() throws IOException, InterruptedException {
+        tempInputImageFolder.newFile("180784644740_0.gif");
+        tempInputImageFolder.newFile("180254465582_0.gif");
+
+        MediaImportJob job = importAndWait(true);
+
+        assertThat(job.getStatus()).isEqualTo(MediaImportJob.Status.COMPLETED);
+        assertThat(job.getLinkedFiles() + job.getCopiedFiles()).isEqualTo(2);
+        assertThat(tempMDImageFolder.getRoot().list()).containsExactlyInAnyOrder("180784644740_0.gif",
+                "180254465582_0.gif");
+    }
+
+    private MediaImportJob importAndWait(boolean link) throws InterruptedException {
+        MediaImportJob job = mediaImporter.startImport(tempInputImageFolder.getRoot().toPath(),
+                tempMDImageFolder.getRoot().toPath(), link, null);
+        assertThat(job.awaitCompletion(10, TimeUnit.SECONDS)).isTrue();
+
+        return job;
+    }
+
     /**
      * Tests functionality for marking all posts read
      */
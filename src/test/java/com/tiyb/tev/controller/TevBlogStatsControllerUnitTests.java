@@ -0,0 +1,189 @@
+package com.tiyb.tev.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.FileNotFoundException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+
+import com.tiyb.tev.datamodel.BlogStats;
+import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.datamodel.helpers.PostHistogramBucket;
+import com.tiyb.tev.html.HtmlTestingClass;
+
+/**
+ * Unit tests for the per-blog statistics snapshot
+ *
+ * @author tiyb
+ */
+public class TevBlogStatsControllerUnitTests extends HtmlTestingClass {
+
+    @Autowired
+    private TEVBlogStatsController statsController;
+
+    @Autowired
+    private TEVPostRestController postController;
+
+    @Autowired
+    private TEVMetadataRestController mdController;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    /**
+     * Load the sample data before each test
+     *
+     * @throws FileNotFoundException If the sample XML file can't be read
+     */
+    @Before
+    public void setupData() throws FileNotFoundException {
+        initDataForMainBlog(mdController, postController, Optional.empty());
+    }
+
+    /**
+     * Verifies that the snapshot matches counts taken from the full lists of data
+     */
+    @Test
+    public void statsMatchData() {
+        BlogStats stats = statsController.getStatsForBlog(MAIN_BLOG_NAME);
+        List<Post> posts = postController.getAllPostsForBlog(MAIN_BLOG_NAME);
+
+        assertThat(stats.getTotalPosts()).isEqualTo(posts.size());
+        assertThat(stats.getPhotoPosts())
+                .isEqualTo(posts.stream().filter(p -> Post.POST_TYPE_PHOTO.equals(p.getType())).count());
+        assertThat(stats.getRegularPosts())
+                .isEqualTo(posts.stream().filter(p -> Post.POST_TYPE_REGULAR.equals(p.getType())).count());
+        assertThat(stats.getReadPosts()).isEqualTo(posts.stream().filter(p -> p.getIsRead()).count());
+        assertThat(stats.getFavouritePosts()).isEqualTo(posts.stream().filter(p -> p.getIsFavourite()).count());
+        assertThat(stats.getPhotos())
+                .isEqualTo(postController.getPhotoController().getAllPhotosForBlog(MAIN_BLOG_NAME).size());
+        assertThat(stats.getDistinctTags())
+                .isEqualTo(postController.getHashtagController().getAllHashtagsForBlog(MAIN_BLOG_NAME).size());
+        assertThat(stats.getStale()).isFalse();
+    }
+
+    /**
+     * Verifies that read/favourite changes are reflected in the snapshot, and that
+     * repeating a change doesn't count it twice
+     */
+    @Test
+    public void stateChangesUpdateStats() {
+        BlogStats before = statsController.getStatsForBlog(MAIN_BLOG_NAME);
+        String postId = postController.getAllPostsForBlog(MAIN_BLOG_NAME).get(0).getId();
+
+        postController.markPostUnreadForBlog(MAIN_BLOG_NAME, postId);
+        postController.markPostNonFavouriteForBlog(MAIN_BLOG_NAME, postId);
+        BlogStats stats = statsController.getStatsForBlog(MAIN_BLOG_NAME);
+        long unread = stats.getReadPosts();
+        long nonFav = stats.getFavouritePosts();
+        assertThat(stats.getTotalPosts()).isEqualTo(before.getTotalPosts());
+
+        postController.markPostReadForBlog(MAIN_BLOG_NAME, postId);
+        postController.markPostReadForBlog(MAIN_BLOG_NAME, postId);
+        postController.markPostFavouriteForBlog(MAIN_BLOG_NAME, postId);
+        stats = statsController.getStatsForBlog(MAIN_BLOG_NAME);
+        assertThat(stats.getReadPosts()).isEqualTo(unread + 1);
+        assertThat(stats.getUnreadPosts()).isEqualTo(stats.getTotalPosts() - unread - 1);
+        assertThat(stats.getFavouritePosts()).isEqualTo(nonFav + 1);
+
+        postController.markPostUnreadForBlog(MAIN_BLOG_NAME, postId);
+        stats = statsController.getStatsForBlog(MAIN_BLOG_NAME);
+        assertThat(stats.getReadPosts()).isEqualTo(unread);
+    }
+
+    /**
+     * Verifies that bulk changes cause the snapshot to be recalculated, via REST
+     */
+    @Test
+    public void bulkChangesRecalculateStatsRest() {
+        BlogStats before = restTemplate.getForObject(String.format("%s/api/stats/%s", baseUri(), MAIN_BLOG_NAME),
+                BlogStats.class);
+        assertThat(before.getTotalPosts()).isGreaterThan(0);
+
+        postController.getHashtagController().createHashtagForBlog(MAIN_BLOG_NAME, "a brand new tag");
+        BlogStats stats = restTemplate.getForObject(String.format("%s/api/stats/%s", baseUri(), MAIN_BLOG_NAME),
+                BlogStats.class);
+        assertThat(stats.getDistinctTags()).isEqualTo(before.getDistinctTags() + 1);
+
+        postController.deleteAllPostsForBlog(MAIN_BLOG_NAME);
+        stats = restTemplate.getForObject(String.format("%s/api/stats/%s", baseUri(), MAIN_BLOG_NAME),
+                BlogStats.class);
+        assertThat(stats.getTotalPosts()).isEqualTo(0);
+        assertThat(stats.getReadPosts()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that the histogram's buckets match counts taken from the full list of posts, and
+     * that the cached histogram is only rebuilt once the blog's data changes
+     */
+    @Test
+    public void histogramMatchesData() {
+        List<Post> posts = postController.getAllPostsForBlog(MAIN_BLOG_NAME);
+        Map<Long, Long> expected = new TreeMap<Long, Long>();
+        for (Post post : posts) {
+            if (post.getUnixtimestamp() != null) {
+                LocalDate month = Instant.ofEpochSecond(post.getUnixtimestamp()).atZone(ZoneOffset.UTC).toLocalDate()
+                        .withDayOfMonth(1);
+                expected.merge(month.atStartOfDay(ZoneOffset.UTC).toEpochSecond(), 1L, Long::sum);
+            }
+        }
+
+        List<PostHistogramBucket> months = statsController.getPostHistogramForBlog(MAIN_BLOG_NAME,
+                TEVBlogStatsController.HistogramInterval.MONTH, null, null, null);
+        assertThat(months).extracting(PostHistogramBucket::getStart).containsExactlyElementsOf(expected.keySet());
+        assertThat(months).extracting(PostHistogramBucket::getCount).containsExactlyElementsOf(expected.values());
+
+        List<PostHistogramBucket> days = statsController.getPostHistogramForBlog(MAIN_BLOG_NAME,
+                TEVBlogStatsController.HistogramInterval.DAY, null, null, null);
+        List<PostHistogramBucket> weeks = statsController.getPostHistogramForBlog(MAIN_BLOG_NAME,
+                TEVBlogStatsController.HistogramInterval.WEEK, null, null, null);
+        long total = expected.values().stream().mapToLong(Long::longValue).sum();
+        assertThat(days.stream().mapToLong(PostHistogramBucket::getCount).sum()).isEqualTo(total);
+        assertThat(weeks.stream().mapToLong(PostHistogramBucket::getCount).sum()).isEqualTo(total);
+        for (PostHistogramBucket week : weeks) {
+            assertThat(Instant.ofEpochSecond(week.getStart()).atZone(ZoneOffset.UTC).getDayOfWeek())
+                    .isEqualTo(DayOfWeek.MONDAY);
+        }
+
+        List<PostHistogramBucket> photos = statsController.getPostHistogramForBlog(MAIN_BLOG_NAME,
+                TEVBlogStatsController.HistogramInterval.MONTH, Post.POST_TYPE_PHOTO, null, null);
+        assertThat(photos.stream().mapToLong(PostHistogramBucket::getCount).sum()).isEqualTo(posts.stream()
+                .filter(p -> Post.POST_TYPE_PHOTO.equals(p.getType()) && p.getUnixtimestamp() != null).count());
+
+        assertThat(statsController.getPostHistogramForBlog(MAIN_BLOG_NAME,
+                TEVBlogStatsController.HistogramInterval.MONTH, null, null, null)).isSameAs(months);
+        if (posts.get(0).getIsRead()) {
+            postController.markPostUnreadForBlog(MAIN_BLOG_NAME, posts.get(0).getId());
+        } else {
+            postController.markPostReadForBlog(MAIN_BLOG_NAME, posts.get(0).getId());
+        }
+        assertThat(statsController.getPostHistogramForBlog(MAIN_BLOG_NAME,
+                TEVBlogStatsController.HistogramInterval.MONTH, null, null, null)).isNotSameAs(months);
+    }
+
+    /**
+     * Verifies that the histogram can be retrieved via the REST API
+     */
+    @Test
+    public void histogramRest() {
+        PostHistogramBucket[] months = restTemplate.getForObject(
+                String.format("%s/api/stats/%s/histogram?interval=MONTH", baseUri(), MAIN_BLOG_NAME),
+                PostHistogramBucket[].class);
+        assertThat(months).extracting(PostHistogramBucket::getStart).containsExactlyElementsOf(statsController
+                .getPostHistogramForBlog(MAIN_BLOG_NAME, TEVBlogStatsController.HistogramInterval.MONTH, null, null,
+                        null)
+                .stream().map(PostHistogramBucket::getStart).collect(Collectors.toList()));
+    }
+}
@@ -8,10 +8,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
 
 import com.tiyb.tev.datamodel.Conversation;
 import com.tiyb.tev.datamodel.ConversationMessage;
+import com.tiyb.tev.datamodel.helpers.ConversationMessagePage;
+import com.tiyb.tev.datamodel.helpers.MessageSearchResult;
 import com.tiyb.tev.html.HtmlTestingClass;
 
 /**
@@ -356,4 +359,107 @@ public class TevConvoRestControllerUnitTests extends HtmlTestingClass {
         assertThat(finalFromServer[0]).isEqualToComparingFieldByField(modified);
     }
 
+    /**
+     * Verifies that the full-text search of Conversation Messages returns ranked
+     * results, and that the index is kept up to date as messages are updated and
+     * deleted
+     */
+    @Test
+    public void searchConvoMsgs() {
+        Conversation convo = new Conversation();
+        convo.setBlog(MAIN_BLOG_NAME);
+        convo.setParticipant("participant1");
+        convo = restController.createConversationForBlog(MAIN_BLOG_NAME, convo);
+
+        ConversationMessage msg1 = new ConversationMessage(10L, true, "TEXT", "The quick brown fox");
+        msg1.setConversationId(convo.getId());
+        msg1 = restController.createConvoMessageForBlog(MAIN_BLOG_NAME, msg1);
+        ConversationMessage msg2 = new ConversationMessage(20L, false, "TEXT", "A quick brown dog, quick as can be");
+        msg2.setConversationId(convo.getId());
+        msg2 = restController.createConvoMessageForBlog(MAIN_BLOG_NAME, msg2);
+        ConversationMessage msg3 = new ConversationMessage(30L, true, "TEXT", "Nothing to see here");
+        msg3.setConversationId(convo.getId());
+        msg3 = restController.createConvoMessageForBlog(MAIN_BLOG_NAME, msg3);
+
+        Page<MessageSearchResult> results = restController.searchConvoMsgsForBlog(MAIN_BLOG_NAME, "QUICK fox", 0, 10);
+        assertThat(results.getTotalElements()).isEqualTo(2);
+        assertThat(results.getContent().get(0).getMessageId()).isEqualTo(msg1.getId());
+        assertThat(results.getContent().get(0).getParticipant()).isEqualTo("participant1");
+        assertThat(results.getContent().get(0).getTimestamp()).isEqualTo(10L);
+        assertThat(results.getContent().get(0).getSnippet()).contains("quick brown fox");
+        assertThat(results.getContent().get(1).getMessageId()).isEqualTo(msg2.getId());
+
+        results = restController.searchConvoMsgsForBlog(MAIN_BLOG_NAME, "quick", 1, 1);
+        assertThat(results.getTotalElements()).isEqualTo(2);
+        assertThat(results.getContent().size()).isEqualTo(1);
+
+        assertThat(restController.searchConvoMsgsForBlog(MAIN_BLOG_NAME, "zebra", 0, 10).getTotalElements())
+                .isEqualTo(0);
+        assertThat(restController.searchConvoMsgsForBlog(SECOND_BLOG_NAME, "quick", 0, 10).getTotalElements())
+                .isEqualTo(0);
+
+        msg3.setMessage("Another fox");
+        restController.updateConvoMsgForBlog(MAIN_BLOG_NAME, msg3.getId(), msg3);
+        assertThat(restController.searchConvoMsgsForBlog(MAIN_BLOG_NAME, "fox", 0, 10).getTotalElements())
+                .isEqualTo(2);
+        assertThat(restController.searchConvoMsgsForBlog(MAIN_BLOG_NAME, "nothing", 0, 10).getTotalElements())
+                .isEqualTo(0);
+
+        restController.deleteConversationMessageForBlog(MAIN_BLOG_NAME, msg1.getId());
+        results = restController.searchConvoMsgsForBlog(MAIN_BLOG_NAME, "fox", 0, 10);
+        assertThat(results.getTotalElements()).isEqualTo(1);
+        assertThat(results.getContent().get(0).getMessageId()).isEqualTo(msg3.getId());
+    }
+
+    /**
+     * Verifies that a conversation's messages can be paged through in both directions, including
+     * messages that share a timestamp, and that a page can be started from a given time
+     */
+    @Test
+    public void pageConvoMsgs() {
+        Conversation convo = new Conversation();
+        convo.setBlog(MAIN_BLOG_NAME);
+        convo.setParticipant("participant1");
+        convo = restController.createConversationForBlog(MAIN_BLOG_NAME, convo);
+
+        for (int i = 0; i < 5; i++) {
+            ConversationMessage msg = new ConversationMessage(10L * (i / 2), i % 2 == 0, "TEXT", "Message " + i);
+            msg.setConversationId(convo.getId());
+            restController.createConvoMessageForBlog(MAIN_BLOG_NAME, msg);
+        }
+
+        ConversationMessagePage first =
+                restController.getConvoMsgPageForBlogByConvoID(MAIN_BLOG_NAME, convo.getId(), null, null, null, null,
+                        null, 2);
+        assertThat(first.getMessages()).extracting("message").containsExactly("Message 0", "Message 1");
+        assertThat(first.getHasOlder()).isFalse();
+        assertThat(first.getHasNewer()).isTrue();
+
+        ConversationMessage last = first.getMessages().get(1);
+        ConversationMessagePage second = restController.getConvoMsgPageForBlogByConvoID(MAIN_BLOG_NAME,
+                convo.getId(), null, null, last.getTimestamp(), last.getId(), null, 2);
+        assertThat(second.getMessages()).extracting("message").containsExactly("Message 2", "Message 3");
+        assertThat(second.getHasOlder()).isTrue();
+        assertThat(second.getHasNewer()).isTrue();
+
+        ConversationMessage firstOfSecond = second.getMessages().get(0);
+        ConversationMessagePage before = restController.getConvoMsgPageForBlogByConvoID(MAIN_BLOG_NAME,
+                convo.getId(), firstOfSecond.getTimestamp(), firstOfSecond.getId(), null, null, null, 1);
+        assertThat(before.getMessages()).extracting("message").containsExactly("Message 1");
+        assertThat(before.getHasOlder()).isTrue();
+        assertThat(before.getHasNewer()).isTrue();
+
+        ConversationMessagePage from = restController.getConvoMsgPageForBlogByConvoID(MAIN_BLOG_NAME,
+                convo.getId(), null, null, null, null, 20L, 2);
+        assertThat(from.getMessages()).extracting("message").containsExactly("Message 4");
+        assertThat(from.getHasOlder()).isTrue();
+        assertThat(from.getHasNewer()).isFalse();
+
+        ConversationMessagePage pastEnd = restController.getConvoMsgPageForBlogByConvoID(MAIN_BLOG_NAME,
+                convo.getId(), null, null, null, null, 1000L, 2);
+        assertThat(pastEnd.getMessages()).extracting("message").containsExactly("Message 3", "Message 4");
+        assertThat(pastEnd.getHasOlder()).isTrue();
+        assertThat(pastEnd.getHasNewer()).isFalse();
+    }
+
 }
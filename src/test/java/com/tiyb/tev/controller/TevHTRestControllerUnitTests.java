@@ -581,4 +581,67 @@ public class TevHTRestControllerUnitTests extends HtmlTestingClass {
         ResponseEntity<String> responseEntity = restTemplate.exchange(requestEntity, String.class);
         assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
+
+    /**
+     * Verifies that the cached cross-blog list of hashtags is refreshed when tags
+     * are created or deleted, and that merged tags report the blogs in order
+     */
+    @Test
+    public void mergedListRefreshesAfterChanges() {
+        htController.createHashtagForBlog(SECOND_BLOG_NAME, FIRST_TAG_VALUE);
+        htController.createHashtagForBlog(MAIN_BLOG_NAME, FIRST_TAG_VALUE);
+
+        List<Hashtag> list = htController.getAllHashtags();
+        assertThat(list.size()).isEqualTo(1);
+        assertThat(list.get(0).getBlog()).isEqualTo(MAIN_BLOG_NAME + ", " + SECOND_BLOG_NAME);
+        assertThat(list.get(0).getCount()).isEqualTo(2);
+        assertThat(htController.getAllHashtags()).isSameAs(list);
+
+        htController.createHashtagForBlog(MAIN_BLOG_NAME, SECOND_TAG_VALUE);
+        list = htController.getAllHashtags();
+        assertThat(list.size()).isEqualTo(2);
+
+        htController.deleteAllHashtagsForBlog(MAIN_BLOG_NAME);
+        list = htController.getAllHashtags();
+        assertThat(list.size()).isEqualTo(1);
+        assertThat(list.get(0).getTag()).isEqualTo(FIRST_TAG_VALUE);
+        assertThat(list.get(0).getBlog()).isEqualTo(SECOND_BLOG_NAME);
+        assertThat(list.get(0).getCount()).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that autocomplete suggestions are matched by prefix (ignoring
+     * case), ranked by count, and kept up to date as tags are added and removed
+     */
+    @Test
+    public void suggestTags() {
+        htController.createHashtagForBlog(MAIN_BLOG_NAME, "Cats");
+        htController.createHashtagForBlog(MAIN_BLOG_NAME, "catalogue");
+        htController.createHashtagForBlog(MAIN_BLOG_NAME, "dogs");
+        htController.createHashtagForBlog(SECOND_BLOG_NAME, "cathedral");
+
+        List<String> suggestions = htController.suggestHashtagsForBlog(MAIN_BLOG_NAME, "cat", 10, false);
+        assertThat(suggestions).containsExactlyInAnyOrder("Cats", "catalogue");
+
+        htController.createHashtagForBlog(MAIN_BLOG_NAME, "catalogue");
+        suggestions = htController.suggestHashtagsForBlog(MAIN_BLOG_NAME, "CA", 1, false);
+        assertThat(suggestions).containsExactly("catalogue");
+
+        suggestions = htController.suggestHashtagsForBlog(MAIN_BLOG_NAME, "cat", 10, true);
+        assertThat(suggestions).containsExactly("catalogue", "cathedral", "Cats");
+
+        Hashtag catalogue = null;
+        for (Hashtag ht : htController.getAllHashtagsForBlog(MAIN_BLOG_NAME)) {
+            if ("catalogue".equals(ht.getTag())) {
+                catalogue = ht;
+            }
+        }
+        assertThat(catalogue).isNotNull();
+        htController.deleteHashTag(catalogue.getId());
+
+        suggestions = htController.suggestHashtagsForBlog(MAIN_BLOG_NAME, "cat", 10, false);
+        assertThat(suggestions).containsExactly("Cats");
+        suggestions = htController.suggestHashtagsForBlog(MAIN_BLOG_NAME, "cat", 10, true);
+        assertThat(suggestions).containsExactly("cathedral", "Cats");
+    }
 }
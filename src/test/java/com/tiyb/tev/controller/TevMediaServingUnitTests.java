@@ -0,0 +1,237 @@
+package com.tiyb.tev.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.tiyb.tev.controller.helper.MediaStreamer;
+import com.tiyb.tev.html.HtmlTestingClass;
+
+/**
+ * Unit tests for serving media files (images and videos) to the viewer, including conditional and
+ * range requests
+ *
+ * @author tiyb
+ *
+ */
+public class TevMediaServingUnitTests extends HtmlTestingClass {
+
+    private static final String IMAGE_NAME = "180784644740_0.jpg";
+    private static final String VIDEO_NAME = "180254465582.mp4";
+    private static final String LARGE_IMAGE_NAME = "180254465582_0.jpg";
+    private static final String GIF_NAME = "180254465582_1.gif";
+    private static final int FILE_LENGTH = 10000;
+
+    @Rule
+    public TemporaryFolder mediaFolder = new TemporaryFolder();
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private byte[] fileContents;
+
+    @Before
+    public void setupMedia() throws IOException {
+        restInitDataForMainBlog(Optional.of(mediaFolder.getRoot().getAbsolutePath()));
+
+        fileContents = new byte[FILE_LENGTH];
+        for (int i = 0; i < FILE_LENGTH; i++) {
+            fileContents[i] = (byte) (i % 251);
+        }
+        Files.write(new File(mediaFolder.getRoot(), IMAGE_NAME).toPath(), fileContents);
+        Files.write(new File(mediaFolder.getRoot(), VIDEO_NAME).toPath(), fileContents);
+    }
+
+    @Test
+    public void getImage() {
+        ResponseEntity<byte[]> response = getMedia(new HttpHeaders());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(fileContents);
+        assertThat(response.getHeaders().getETag()).isNotBlank();
+        assertThat(response.getHeaders().getLastModified()).isPositive();
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo(MediaStreamer.CACHE_CONTROL_IMMUTABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+    }
+
+    @Test
+    public void getImageNotModified() {
+        String eTag = getMedia(new HttpHeaders()).getHeaders().getETag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        ResponseEntity<byte[]> response = getMedia(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getBody()).isNull();
+    }
+
+    @Test
+    public void getImageRange() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=100-1099");
+        ResponseEntity<byte[]> response = getMedia(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE))
+                .isEqualTo(String.format("bytes 100-1099/%d", FILE_LENGTH));
+        assertThat(response.getBody()).isEqualTo(Arrays.copyOfRange(fileContents, 100, 1100));
+
+        headers.set(HttpHeaders.RANGE, "bytes=-500");
+        response = getMedia(headers);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getBody()).isEqualTo(Arrays.copyOfRange(fileContents, FILE_LENGTH - 500, FILE_LENGTH));
+    }
+
+    @Test
+    public void getImageBadRange() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, String.format("bytes=%d-", FILE_LENGTH * 2));
+        ResponseEntity<byte[]> response = getMedia(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE))
+                .isEqualTo(String.format("bytes */%d", FILE_LENGTH));
+    }
+
+    @Test
+    public void getMissingImage() {
+        ResponseEntity<byte[]> response = restTemplate.getForEntity(
+                String.format("%s/viewerMedia/%s", baseUri(), "nosuchimage.jpg"), byte[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * The full video should be returned intact, even though its length isn't a multiple of any
+     * buffer size
+     */
+    @Test
+    public void getVideo() {
+        ResponseEntity<byte[]> response = getVideo(new HttpHeaders());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType().toString()).isEqualTo("video/mp4");
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(FILE_LENGTH);
+        assertThat(response.getBody()).isEqualTo(fileContents);
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo(MediaStreamer.CACHE_CONTROL_ONE_DAY);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+    }
+
+    @Test
+    public void getVideoRange() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=9000-");
+        ResponseEntity<byte[]> response = getVideo(headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE))
+                .isEqualTo(String.format("bytes 9000-%d/%d", FILE_LENGTH - 1, FILE_LENGTH));
+        assertThat(response.getBody()).isEqualTo(Arrays.copyOfRange(fileContents, 9000, FILE_LENGTH));
+    }
+
+    /**
+     * A range should only be returned if the If-Range validator still matches the file; otherwise
+     * the whole file is returned
+     */
+    @Test
+    public void getVideoIfRange() {
+        String eTag = getVideo(new HttpHeaders()).getHeaders().getETag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-99");
+        headers.set(HttpHeaders.IF_RANGE, eTag);
+        ResponseEntity<byte[]> response = getVideo(headers);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getBody()).hasSize(100);
+
+        headers.set(HttpHeaders.IF_RANGE, "\"stale\"");
+        response = getVideo(headers);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(fileContents);
+    }
+
+    @Test
+    public void getThumbnail() throws IOException {
+        BufferedImage image = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB);
+        ImageIO.write(image, "jpg", new File(mediaFolder.getRoot(), LARGE_IMAGE_NAME));
+
+        ResponseEntity<byte[]> response = getThumbnail(160, LARGE_IMAGE_NAME);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo(MediaStreamer.CACHE_CONTROL_IMMUTABLE);
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(response.getBody()));
+        assertThat(thumbnail.getWidth()).isEqualTo(160);
+        assertThat(thumbnail.getHeight()).isEqualTo(80);
+
+        ResponseEntity<byte[]> cachedResponse = getThumbnail(160, LARGE_IMAGE_NAME);
+        assertThat(cachedResponse.getHeaders().getETag()).isEqualTo(response.getHeaders().getETag());
+        assertThat(cachedResponse.getBody()).isEqualTo(response.getBody());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(response.getHeaders().getETag());
+        ResponseEntity<byte[]> revalidated = restTemplate.exchange(
+                String.format("%s/viewerThumbnail/%d/%s", baseUri(), 160, LARGE_IMAGE_NAME), HttpMethod.GET,
+                new HttpEntity<Void>(headers), byte[].class);
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    /**
+     * Images that can't be decoded are served in full, rather than as an empty thumbnail
+     */
+    @Test
+    public void getThumbnailUndecodable() {
+        ResponseEntity<byte[]> response = getThumbnail(160, IMAGE_NAME);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(fileContents);
+    }
+
+    /**
+     * GIFs (which may be animated) aren't downscaled, and only configured sizes can be requested
+     */
+    @Test
+    public void getThumbnailNotScaled() throws IOException {
+        Files.write(new File(mediaFolder.getRoot(), GIF_NAME).toPath(), fileContents);
+
+        ResponseEntity<byte[]> response = getThumbnail(160, GIF_NAME);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(fileContents);
+
+        response = getThumbnail(161, GIF_NAME);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private ResponseEntity<byte[]> getThumbnail(int size, String imageName) {
+        return restTemplate.getForEntity(String.format("%s/viewerThumbnail/%d/%s", baseUri(), size, imageName),
+                byte[].class);
+    }
+
+    private ResponseEntity<byte[]> getMedia(HttpHeaders headers) {
+        return restTemplate.exchange(String.format("%s/viewerMedia/%s", baseUri(), IMAGE_NAME), HttpMethod.GET,
+                new HttpEntity<Void>(headers), byte[].class);
+    }
+
+    private ResponseEntity<byte[]> getVideo(HttpHeaders headers) {
+        return restTemplate.exchange(String.format("%s/viewerVideo/%s", baseUri(), VIDEO_NAME), HttpMethod.GET,
+                new HttpEntity<Void>(headers), byte[].class);
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import com.tiyb.tev.datamodel.Metadata;
+import com.tiyb.tev.datamodel.helpers.CacheStats;
 import com.tiyb.tev.exception.NoMetadataFoundException;
 import com.tiyb.tev.exception.UnableToDeleteMetadataException;
 import com.tiyb.tev.html.HtmlTestingClass;
@@ -205,6 +206,46 @@ public class TevMetadataRestControllerUnitTests extends HtmlTestingClass {
         assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
+    /**
+     * Tests that the Metadata cache is kept up to date as MD objects are changed,
+     * that callers can't modify the cached copies, and that reads after the first
+     * are answered from the cache
+     */
+    @Test
+    public void metadataCacheWriteThrough() {
+        cleanAllMDObjects();
+        Metadata md1 = mdController.getMetadataForBlogOrDefault("blog1");
+        Metadata md2 = mdController.getMetadataForBlogOrDefault("blog2");
+
+        md2.setTheme("dark-hive");
+        mdController.updateMetadata(md2.getId(), md2);
+        assertThat(mdController.getMetadataForBlog("blog2").getTheme()).isEqualTo("dark-hive");
+
+        md2.setBlog("blog2renamed");
+        mdController.updateMetadata(md2.getId(), md2);
+        assertThat(mdController.getMetadataForBlog("blog2")).isNull();
+        assertThat(mdController.getMetadataForBlog("blog2renamed").getId()).isEqualTo(md2.getId());
+
+        mdController.markBlogAsDefault(md2.getId());
+        assertThat(mdController.getDefaultBlogName()).isEqualTo("blog2renamed");
+        assertThat(mdController.getMetadataByID(md1.getId()).getIsDefault()).isFalse();
+
+        mdController.getMetadataForBlog("blog1").setTheme("cupertino");
+        assertThat(mdController.getMetadataForBlog("blog1").getTheme()).isEqualTo(Metadata.DEFAULT_THEME);
+
+        mdController.deleteMetadata(md2.getId());
+        assertThat(mdController.getMetadataForBlog("blog2renamed")).isNull();
+        assertThat(mdController.getDefaultBlogName()).isEqualTo("blog1");
+
+        CacheStats before = mdController.getCacheStats();
+        mdController.getMetadataForBlog("blog1");
+        CacheStats after = restTemplate.getForObject(String.format("%s/api/metadata/cacheStats", baseUri()),
+                CacheStats.class);
+        assertThat(after.getMisses()).isEqualTo(before.getMisses());
+        assertThat(after.getHits()).isGreaterThan(before.getHits());
+        assertThat(after.getEntries()).isEqualTo(1);
+    }
+
     /**
      * Helper function to delete all MD objects in the DB (if any)
      */
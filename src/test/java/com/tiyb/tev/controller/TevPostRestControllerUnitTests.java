@@ -2,14 +2,21 @@ package com.tiyb.tev.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import com.tiyb.tev.controller.helper.PostFlagBuffer;
 import com.tiyb.tev.datamodel.Answer;
 import com.tiyb.tev.datamodel.Link;
 import com.tiyb.tev.datamodel.Metadata;
@@ -17,7 +24,11 @@ import com.tiyb.tev.datamodel.Photo;
 import com.tiyb.tev.datamodel.Post;
 import com.tiyb.tev.datamodel.Regular;
 import com.tiyb.tev.datamodel.Video;
+import com.tiyb.tev.datamodel.helpers.PostChanges;
+import com.tiyb.tev.datamodel.helpers.PostTimelinePage;
+import com.tiyb.tev.datamodel.helpers.PostViewerData;
 import com.tiyb.tev.html.HtmlTestingClass;
+import com.tiyb.tev.repository.PostRepository;
 
 /**
  * <p>
@@ -53,6 +64,10 @@ public class TevPostRestControllerUnitTests extends HtmlTestingClass {
     private TEVMetadataRestController mdController;
     @Autowired
     private TestRestTemplate restTemplate;
+    @Autowired
+    private PostFlagBuffer flagBuffer;
+    @Autowired
+    private PostRepository postRepo;
 
     private static final String BLOG_NAME = "blog";
 
@@ -191,6 +206,303 @@ public class TevPostRestControllerUnitTests extends HtmlTestingClass {
         assertThat(finalPost.getIsRead()).isEqualTo(true);
     }
 
+    /**
+     * Verify that the list of posts is returned with an ETag, that a client with
+     * the current ETag gets a 304, and that changing a post changes the ETag (and
+     * the data)
+     */
+    @Test
+    public void postListEtagRest() {
+        Post originalPost = new Post();
+        originalPost.setId("1");
+        originalPost.setIsRead(false);
+        originalPost.setTumblelog(BLOG_NAME);
+        restTemplate.postForObject(String.format("%s/api/posts/%s", baseUri(), BLOG_NAME), originalPost, Post.class);
+
+        String listUrl = String.format("%s/api/posts/%s", baseUri(), BLOG_NAME);
+        ResponseEntity<Post[]> firstResponse = restTemplate.getForEntity(listUrl, Post[].class);
+        String firstEtag = firstResponse.getHeaders().getETag();
+        assertThat(firstEtag).isNotNull();
+        assertThat(firstResponse.getBody()[0].getIsRead()).isFalse();
+
+        ResponseEntity<Post[]> notModified = getWithEtag(listUrl, firstEtag);
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        restTemplate.getForObject(String.format("%s/api/posts/%s/%s/markRead", baseUri(), BLOG_NAME, "1"), Post.class);
+
+        ResponseEntity<Post[]> modified = getWithEtag(listUrl, firstEtag);
+        assertThat(modified.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(modified.getHeaders().getETag()).isNotEqualTo(firstEtag);
+        assertThat(modified.getBody()[0].getIsRead()).isTrue();
+
+        ResponseEntity<Post[]> cached = restTemplate.getForEntity(listUrl, Post[].class);
+        assertThat(cached.getHeaders().getETag()).isEqualTo(modified.getHeaders().getETag());
+        assertThat(cached.getBody()[0].getIsRead()).isTrue();
+    }
+
+    /**
+     * Verify that the change feed returns only the posts changed since a given
+     * version, reports deleted posts, and asks for a full reload once all posts
+     * have been deleted
+     */
+    @Test
+    public void postChangesRest() {
+        String changesUrl = String.format("%s/api/posts/%s/changes", baseUri(), BLOG_NAME);
+        PostChanges initial = restTemplate.getForObject(changesUrl, PostChanges.class);
+        assertThat(initial.getFullReload()).isFalse();
+        assertThat(initial.getPosts()).isEmpty();
+
+        for (String id : new String[] { "1", "2", "3" }) {
+            Post post = new Post();
+            post.setId(id);
+            post.setIsRead(false);
+            post.setTumblelog(BLOG_NAME);
+            restTemplate.postForObject(String.format("%s/api/posts/%s", baseUri(), BLOG_NAME), post, Post.class);
+        }
+        PostChanges afterCreate = restTemplate.getForObject(changesUrl + "?since=" + initial.getVersion(),
+                PostChanges.class);
+        assertThat(afterCreate.getFullReload()).isFalse();
+        assertThat(afterCreate.getPosts()).extracting(Post::getId).containsExactlyInAnyOrder("1", "2", "3");
+        assertThat(afterCreate.getVersion()).isGreaterThan(initial.getVersion());
+
+        restTemplate.getForObject(String.format("%s/api/posts/%s/%s/markRead", baseUri(), BLOG_NAME, "2"), Post.class);
+        restTemplate.delete(String.format("%s/api/posts/%s/%s", baseUri(), BLOG_NAME, "3"));
+        PostChanges afterMark = restTemplate.getForObject(changesUrl + "?since=" + afterCreate.getVersion(),
+                PostChanges.class);
+        assertThat(afterMark.getFullReload()).isFalse();
+        assertThat(afterMark.getPosts()).extracting(Post::getId).containsExactly("2");
+        assertThat(afterMark.getPosts().get(0).getIsRead()).isTrue();
+        assertThat(afterMark.getDeletedIds()).containsExactly("3");
+
+        PostChanges noChanges = restTemplate.getForObject(changesUrl + "?since=" + afterMark.getVersion(),
+                PostChanges.class);
+        assertThat(noChanges.getPosts()).isEmpty();
+        assertThat(noChanges.getDeletedIds()).isEmpty();
+
+        restTemplate.delete(String.format("%s/api/posts/%s", baseUri(), BLOG_NAME));
+        PostChanges afterDeleteAll = restTemplate.getForObject(changesUrl + "?since=" + afterMark.getVersion(),
+                PostChanges.class);
+        assertThat(afterDeleteAll.getFullReload()).isTrue();
+    }
+
+    /**
+     * Verify that toggling the read and favourite flags leaves the rest of the post alone, and that
+     * a post with no read status isn't counted as a change when it's marked unread
+     */
+    @Test
+    public void markFlagsKeepsContent() {
+        Post original = new Post();
+        original.setId("1");
+        original.setTumblelog(BLOG_NAME);
+        original.setSlug("slug");
+        original.setTags("hi, there");
+        original.setUrlWithSlug("URL with slug");
+        original.setIsRead(null);
+        original = postController.createPostForBlog(BLOG_NAME, original);
+
+        Integer unread = restTemplate.exchange(String.format("%s/api/posts/%s/batch/markUnread", baseUri(), BLOG_NAME),
+                HttpMethod.PUT, new HttpEntity<List<String>>(Arrays.asList("1")), Integer.class).getBody();
+        assertThat(unread).isEqualTo(0);
+
+        Post read = postController.markPostReadForBlog(BLOG_NAME, "1");
+        assertThat(read.getIsRead()).isTrue();
+        Post favourite = postController.markPostFavouriteForBlog(BLOG_NAME, "1");
+        assertThat(favourite.getIsFavourite()).isTrue();
+
+        original.setIsRead(true);
+        original.setIsFavourite(true);
+        assertThat(postController.getPostForBlogById(BLOG_NAME, "1")).isEqualToComparingFieldByField(original);
+    }
+
+    /**
+     * Verify that repeated toggles are coalesced by the flag buffer, that reads see the buffered
+     * value straight away, and that only the last value is written
+     */
+    @Test
+    public void bufferedFlagsCoalesce() {
+        Post post = new Post();
+        post.setId("1");
+        post.setIsRead(false);
+        post.setTumblelog(BLOG_NAME);
+        postController.createPostForBlog(BLOG_NAME, post);
+
+        postController.markPostReadForBlog(BLOG_NAME, "1");
+        postController.markPostUnreadForBlog(BLOG_NAME, "1");
+        Post marked = postController.markPostReadForBlog(BLOG_NAME, "1");
+        assertThat(marked.getIsRead()).isTrue();
+        assertThat(postController.getPostForBlogById(BLOG_NAME, "1").getIsRead()).isTrue();
+        assertThat(postController.getAllPostsForBlog(BLOG_NAME)).extracting(Post::getIsRead).containsExactly(true);
+
+        flagBuffer.flush();
+        assertThat(postRepo.findById("1").get().getIsRead()).isTrue();
+    }
+
+    /**
+     * Verify that values discarded while their batch is being written are skipped, so they can't
+     * overwrite the post's new values
+     */
+    @Test
+    public void bufferedFlagsDiscardedInFlight() {
+        for (String id : Arrays.asList("1", "2")) {
+            Post post = new Post();
+            post.setId(id);
+            post.setIsRead(false);
+            post.setIsFavourite(false);
+            post.setTumblelog(BLOG_NAME);
+            postController.createPostForBlog(BLOG_NAME, post);
+        }
+
+        List<String> written = new ArrayList<String>();
+        flagBuffer.setWriter((blog, postIds, flag, value) -> {
+            written.add(String.format("%s %s", flag, postIds));
+            flagBuffer.discard("2");
+        });
+        try {
+            postController.markPostReadForBlog(BLOG_NAME, "1");
+            postController.markPostFavouriteForBlog(BLOG_NAME, "2");
+            flagBuffer.flush();
+        } finally {
+            postController.registerFlagWriter();
+        }
+
+        assertThat(written).containsExactly("READ [1]");
+        assertThat(postController.getPostForBlogById(BLOG_NAME, "2").getIsFavourite()).isFalse();
+    }
+
+    /**
+     * Verify that the unified timeline merges posts from several blogs newest first, pages through
+     * them (including posts with the same timestamp), and honours the time range
+     */
+    @Test
+    public void timelineMergesBlogs() {
+        String otherBlog = "timelineblog";
+        postController.deleteAllPostsForBlog(otherBlog);
+        Object[][] postData = { { "t1", BLOG_NAME, 30L }, { "t2", BLOG_NAME, 10L }, { "t3", BLOG_NAME, 20L },
+            { "t4", otherBlog, 30L }, { "t5", otherBlog, 15L }, { "t6", otherBlog, null } };
+        for (Object[] data : postData) {
+            Post post = new Post();
+            post.setId((String) data[0]);
+            post.setTumblelog((String) data[1]);
+            post.setUnixtimestamp((Long) data[2]);
+            postController.createPostForBlog((String) data[1], post);
+        }
+        List<String> blogs = Arrays.asList(BLOG_NAME, otherBlog);
+
+        PostTimelinePage page = postController.getTimeline(blogs, null, null, null, 2);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("t4", "t1");
+        assertThat(page.getHasMore()).isTrue();
+        page = postController.getTimeline(blogs, 30L, "t1", null, 2);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("t3", "t5");
+        assertThat(page.getHasMore()).isTrue();
+        page = postController.getTimeline(blogs, 15L, "t5", null, 2);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("t2");
+        assertThat(page.getHasMore()).isFalse();
+
+        page = postController.getTimeline(blogs, null, null, 15L, 10);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("t4", "t1", "t3", "t5");
+        assertThat(page.getHasMore()).isFalse();
+        page = postController.getTimeline(Arrays.asList(BLOG_NAME), 30L, null, null, 10);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("t3", "t2");
+
+        page = restTemplate.getForObject(String.format("%s/api/timeline?blogs=%s&blogs=%s&size=3", baseUri(),
+                BLOG_NAME, otherBlog), PostTimelinePage.class);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("t4", "t1", "t3");
+        assertThat(page.getHasMore()).isTrue();
+
+        postController.deleteAllPostsForBlog(otherBlog);
+    }
+
+    /**
+     * Verify that a blog's posts can be queried by date range, filtered by type, read status, and
+     * hashtag, and paged through
+     */
+    @Test
+    public void rangeFiltersPosts() {
+        Object[][] postData = { { "r1", 10L, Post.POST_TYPE_REGULAR, true, "cats,dogs" },
+            { "r2", 20L, Post.POST_TYPE_PHOTO, false, "Cats" }, { "r3", 30L, Post.POST_TYPE_REGULAR, false, null },
+            { "r4", 40L, Post.POST_TYPE_REGULAR, false, "birds, cats" },
+            { "r5", 50L, Post.POST_TYPE_PHOTO, true, "dogs" } };
+        for (Object[] data : postData) {
+            Post post = new Post();
+            post.setId((String) data[0]);
+            post.setTumblelog(BLOG_NAME);
+            post.setUnixtimestamp((Long) data[1]);
+            post.setType((String) data[2]);
+            post.setIsRead((Boolean) data[3]);
+            post.setTags((String) data[4]);
+            postController.createPostForBlog(BLOG_NAME, post);
+        }
+
+        PostTimelinePage page = postController.getPostsForBlogInRange(BLOG_NAME, 20L, 40L, null, null, null, null,
+                null, 10);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r4", "r3", "r2");
+        assertThat(page.getHasMore()).isFalse();
+
+        page = postController.getPostsForBlogInRange(BLOG_NAME, null, null, Post.POST_TYPE_REGULAR, null, null, null,
+                null, 10);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r4", "r3", "r1");
+        page = postController.getPostsForBlogInRange(BLOG_NAME, null, null, null, true, null, null, null, 10);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r5", "r1");
+        page = postController.getPostsForBlogInRange(BLOG_NAME, null, null, null, false, "cats", null, null, 10);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r4", "r2");
+
+        page = postController.getPostsForBlogInRange(BLOG_NAME, null, null, null, null, "cats", null, null, 1);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r4");
+        assertThat(page.getHasMore()).isTrue();
+        page = postController.getPostsForBlogInRange(BLOG_NAME, null, null, null, null, "cats", 40L, "r4", 1);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r2");
+        assertThat(page.getHasMore()).isTrue();
+        page = postController.getPostsForBlogInRange(BLOG_NAME, null, null, null, null, "cats", 20L, "r2", 1);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r1");
+        assertThat(page.getHasMore()).isFalse();
+
+        page = restTemplate.getForObject(
+                String.format("%s/api/posts/%s/range?from=15&to=45&type=%s", baseUri(), BLOG_NAME,
+                        Post.POST_TYPE_REGULAR),
+                PostTimelinePage.class);
+        assertThat(page.getPosts()).extracting(Post::getId).containsExactly("r4", "r3");
+    }
+
+    /**
+     * Verify that lists of posts can be fetched and marked in single requests, and that only posts
+     * whose status actually changes are counted
+     */
+    @Test
+    public void batchMarkPostsRest() {
+        for (String id : new String[] { "1", "2", "3" }) {
+            Post post = new Post();
+            post.setId(id);
+            post.setIsRead("1".equals(id));
+            post.setIsFavourite(false);
+            post.setTumblelog(BLOG_NAME);
+            postController.createPostForBlog(BLOG_NAME, post);
+        }
+        List<String> ids = Arrays.asList("1", "2", "3", "4");
+
+        Integer read = restTemplate.exchange(String.format("%s/api/posts/%s/batch/markRead", baseUri(), BLOG_NAME),
+                HttpMethod.PUT, new HttpEntity<List<String>>(ids), Integer.class).getBody();
+        assertThat(read).isEqualTo(2);
+        Integer favourites = restTemplate.exchange(
+                String.format("%s/api/posts/%s/batch/markFavourite", baseUri(), BLOG_NAME), HttpMethod.PUT,
+                new HttpEntity<List<String>>(Arrays.asList("2", "3")), Integer.class).getBody();
+        assertThat(favourites).isEqualTo(2);
+        Integer unread = restTemplate.exchange(String.format("%s/api/posts/%s/batch/markUnread", baseUri(), BLOG_NAME),
+                HttpMethod.PUT, new HttpEntity<List<String>>(Arrays.asList("3")), Integer.class).getBody();
+        assertThat(unread).isEqualTo(1);
+        Integer nonFavourites = restTemplate.exchange(
+                String.format("%s/api/posts/%s/batch/markNonFavourite", baseUri(), BLOG_NAME), HttpMethod.PUT,
+                new HttpEntity<List<String>>(Arrays.asList("1", "2")), Integer.class).getBody();
+        assertThat(nonFavourites).isEqualTo(1);
+
+        Post[] posts = restTemplate.postForObject(String.format("%s/api/posts/%s/batch", baseUri(), BLOG_NAME), ids,
+                Post[].class);
+        assertThat(posts).extracting(Post::getId).containsExactlyInAnyOrder("1", "2", "3");
+        for (Post post : posts) {
+            assertThat(post.getIsRead()).isEqualTo(!"3".equals(post.getId()));
+            assertThat(post.getIsFavourite()).isEqualTo("3".equals(post.getId()));
+        }
+    }
+
     /**
      * Verify that marking a post "unread" in the DB really does mark it unread
      */
@@ -647,6 +959,56 @@ public class TevPostRestControllerUnitTests extends HtmlTestingClass {
         assertThat(finalFromServer).isEqualToComparingFieldByField(modified);
     }
 
+    /**
+     * Verifies that the viewer data for a post includes the type-specific content, and that the
+     * photos for a photo post come back in order with their media file names
+     */
+    @Test
+    public void getViewerData() {
+        Post regularPost = new Post();
+        regularPost.setId("101");
+        regularPost.setTumblelog(BLOG_NAME);
+        regularPost.setType(Post.POST_TYPE_REGULAR);
+        postController.createPostForBlog(BLOG_NAME, regularPost);
+        Regular regular = new Regular("101", "title", "body");
+        postController.getRegController().createRegularForBlog(BLOG_NAME, "101", regular);
+
+        PostViewerData data = postController.getViewerDataForBlogById(BLOG_NAME, "101");
+        assertThat(data.getPost().getType()).isEqualTo(Post.POST_TYPE_REGULAR);
+        assertThat(data.getRegular()).isEqualToComparingFieldByField(regular);
+        assertThat(data.getAnswer()).isNull();
+        assertThat(data.getLink()).isNull();
+        assertThat(data.getVideo()).isNull();
+        assertThat(data.getPhotos()).isEmpty();
+
+        Post photoPost = new Post();
+        photoPost.setId("102");
+        photoPost.setTumblelog(BLOG_NAME);
+        photoPost.setType(Post.POST_TYPE_PHOTO);
+        postController.createPostForBlog(BLOG_NAME, photoPost);
+        Photo firstPhoto = new Photo();
+        firstPhoto.setPostId("102");
+        firstPhoto.setCaption("caption");
+        firstPhoto.setUrl1280("http://photos/first.jpg");
+        postController.getPhotoController().createPhotoForBlog(BLOG_NAME, firstPhoto);
+        Photo secondPhoto = new Photo();
+        secondPhoto.setPostId("102");
+        secondPhoto.setCaption("caption");
+        secondPhoto.setUrl1280("http://photos/second.png");
+        postController.getPhotoController().createPhotoForBlog(BLOG_NAME, secondPhoto);
+
+        ResponseEntity<PostViewerData> response = restTemplate.getForEntity(
+                String.format("%s/api/posts/%s/%s/viewerData", baseUri(), BLOG_NAME, "102"), PostViewerData.class);
+        data = response.getBody();
+        assertThat(data).isNotNull();
+        assertThat(data.getPost().getId()).isEqualTo("102");
+        assertThat(data.getRegular()).isNull();
+        assertThat(data.getPhotos()).extracting(Photo::getUrl1280).containsExactly("http://photos/first.jpg",
+                "http://photos/second.png");
+        assertThat(data.getMediaNames()).containsExactly("102_0.jpg", "102_1.png");
+        assertThat(data.getCaption()).isEqualTo("caption");
+    }
+
     /**
      * Verifies that retrieving the list of Types from the system returns the proper
      * number of items
@@ -727,4 +1089,10 @@ public class TevPostRestControllerUnitTests extends HtmlTestingClass {
         assertThat(finalFromServer).isEqualToComparingFieldByField(md);
     }
 
+    private ResponseEntity<Post[]> getWithEtag(String url, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<Void>(headers), Post[].class);
+    }
+
 }
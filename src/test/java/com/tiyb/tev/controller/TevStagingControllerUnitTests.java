@@ -2,16 +2,25 @@ package com.tiyb.tev.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
 
 import com.tiyb.tev.datamodel.staging.StagingPost;
 import com.tiyb.tev.html.HtmlTestingClass;
+import com.tiyb.tev.xml.BlogXmlWriter;
 
 /**
  * Unit tests for the Staging Controller
@@ -27,6 +36,10 @@ public class TevStagingControllerUnitTests extends HtmlTestingClass {
     private TEVStagingController controller;
     @Autowired
     private TestRestTemplate restTemplate;
+    @Autowired
+    private TEVPostRestController postController;
+    @Autowired
+    private TEVMetadataRestController mdController;
 
     @Before
     public void setup() {
@@ -165,4 +178,55 @@ public class TevStagingControllerUnitTests extends HtmlTestingClass {
         assertThat(posts).isNotNull();
         assertThat(posts.length).isEqualTo(0);
     }
+
+    /**
+     * Tests staging and removing a list of posts in single requests, via REST
+     */
+    @Test
+    public void batchStagePostsRest() throws IOException {
+        initDataForMainBlog(mdController, postController, Optional.empty());
+        controller.deleteAllStagedPostsForBlog(MAIN_BLOG_NAME);
+        controller.createStagedPostForBlog(MAIN_BLOG_NAME, "180894436671");
+
+        Integer staged = restTemplate.postForObject(
+                String.format("%s/staging-api/posts/%s/batch", baseUri(), MAIN_BLOG_NAME),
+                Arrays.asList("180894436671", "180254465582", "1"), Integer.class);
+        assertThat(staged).isEqualTo(1);
+        assertThat(controller.getAllPostsForBlog(MAIN_BLOG_NAME)).containsExactlyInAnyOrder("180894436671",
+                "180254465582");
+
+        Integer removed = restTemplate.postForObject(
+                String.format("%s/staging-api/posts/%s/batch/delete", baseUri(), MAIN_BLOG_NAME),
+                Arrays.asList("180894436671", "1"), Integer.class);
+        assertThat(removed).isEqualTo(1);
+        assertThat(controller.getAllPostsForBlog(MAIN_BLOG_NAME)).containsExactly("180254465582");
+
+        controller.deleteAllStagedPostsForBlog(MAIN_BLOG_NAME);
+    }
+
+    /**
+     * Tests the streamed (gzipped) download of staged posts, which should match the non-streamed
+     * export
+     */
+    @Test
+    public void streamStagedPostsGzipped() throws IOException {
+        initDataForMainBlog(mdController, postController, Optional.empty());
+        controller.deleteAllStagedPostsForBlog(MAIN_BLOG_NAME);
+        controller.createStagedPostForBlog(MAIN_BLOG_NAME, "180894436671");
+        controller.createStagedPostForBlog(MAIN_BLOG_NAME, "180254465582");
+
+        ResponseEntity<byte[]> response = restTemplate.getForEntity(
+                String.format("%s/stagedPostsExport/%s?gzip=true", baseUri(), MAIN_BLOG_NAME), byte[].class);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION)).contains(".xml.gz");
+
+        String unzipped;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            unzipped = new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8);
+        }
+        String expected = BlogXmlWriter.getStagedPostXMLForBlog(
+                controller.getAllPostsForBlog(MAIN_BLOG_NAME), postController, MAIN_BLOG_NAME);
+        assertThat(unzipped).isEqualTo(expected);
+
+        controller.deleteAllStagedPostsForBlog(MAIN_BLOG_NAME);
+    }
 }
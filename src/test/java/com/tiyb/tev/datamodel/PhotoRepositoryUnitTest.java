@@ -2,6 +2,7 @@ package com.tiyb.tev.datamodel;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -53,4 +54,38 @@ public class PhotoRepositoryUnitTest {
 		assertThat(returnedPhotos.get(1).getPostId()).isEqualTo("1");
 	}
 
+	/**
+	 * Verifies that photos for several posts can be retrieved in one query,
+	 * grouped by post and in offset order within each post
+	 */
+	@Test
+	public void findByPostIDs() {
+		Photo photo1 = new Photo();
+		photo1.setPostId("2");
+		photo1.setCaption("Post 2 Photo 2");
+		photo1.setOffset("o2");
+		entityManager.persist(photo1);
+		Photo photo2 = new Photo();
+		photo2.setPostId("1");
+		photo2.setCaption("Post 1 Photo 1");
+		photo2.setOffset("o1");
+		entityManager.persist(photo2);
+		Photo photo3 = new Photo();
+		photo3.setPostId("2");
+		photo3.setCaption("Post 2 Photo 1");
+		photo3.setOffset("o1");
+		entityManager.persist(photo3);
+		Photo photo4 = new Photo();
+		photo4.setPostId("3");
+		photo4.setCaption("Post 3 Photo 1");
+		photo4.setOffset("o1");
+		entityManager.persist(photo4);
+		entityManager.flush();
+
+		List<Photo> returnedPhotos = photoRepo.findByPostIdInOrderByPostIdAscOffsetAscIdAsc(Arrays.asList("1", "2"));
+
+		assertThat(returnedPhotos).extracting(Photo::getCaption).containsExactly(photo2.getCaption(),
+				photo3.getCaption(), photo1.getCaption());
+	}
+
 }
@@ -0,0 +1,211 @@
+package com.tiyb.tev.media;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tiyb.tev.TevTestingClass;
+
+/**
+ * Unit tests for the {@link MediaFetcher}, run against a local HTTP server
+ *
+ * @author tiyb
+ *
+ */
+public class MediaFetcherUnitTests extends TevTestingClass {
+
+    private static final int FILE_LENGTH = 10000;
+    private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+    @Rule
+    public TemporaryFolder mediaFolder = new TemporaryFolder();
+
+    @Autowired
+    private MediaFetcher mediaFetcher;
+
+    private HttpServer server;
+
+    private byte[] fileContents;
+
+    /**
+     * Number of requests to fail with a 503 before the file is served
+     */
+    private AtomicInteger failuresRemaining = new AtomicInteger();
+
+    private Queue<String> rangeHeaders = new ConcurrentLinkedQueue<String>();
+
+    private AtomicInteger requests = new AtomicInteger();
+
+    private AtomicInteger activeRequests = new AtomicInteger();
+
+    private AtomicInteger maxActiveRequests = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        fileContents = new byte[FILE_LENGTH];
+        for (int i = 0; i < FILE_LENGTH; i++) {
+            fileContents[i] = (byte) (i % 251);
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/media/", this::serveMedia);
+        server.createContext("/missing/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetchFile() throws Exception {
+        Path target = fetchAndWait("/media/1.jpg", "180784644740_0.jpg");
+
+        assertThat(Files.readAllBytes(target)).isEqualTo(fileContents);
+        assertThat(mediaFolder.getRoot().list()).containsExactly("180784644740_0.jpg");
+    }
+
+    /**
+     * Temporary failures should be retried
+     */
+    @Test
+    public void fetchRetriesFailures() throws Exception {
+        failuresRemaining.set(2);
+
+        Path target = fetchAndWait("/media/1.jpg", "180784644740_0.jpg");
+
+        assertThat(Files.readAllBytes(target)).isEqualTo(fileContents);
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    /**
+     * A 404 isn't going to get better, so it shouldn't be retried
+     */
+    @Test
+    public void fetchMissingFile() throws Exception {
+        CompletableFuture<Path> download = mediaFetcher.fetch(url("/missing/1.jpg"),
+                mediaFolder.getRoot().toPath().resolve("180784644740_0.jpg"));
+
+        try {
+            download.get(10, TimeUnit.SECONDS);
+            fail("Download of missing file should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(mediaFolder.getRoot().list()).isEmpty();
+    }
+
+    /**
+     * An interrupted download should be resumed from where it left off, rather than starting again
+     */
+    @Test
+    public void fetchResumesPartialDownload() throws Exception {
+        Files.write(new File(mediaFolder.getRoot(), ".180784644740_0.jpg.part").toPath(),
+                Arrays.copyOf(fileContents, 4000));
+
+        Path target = fetchAndWait("/media/1.jpg", "180784644740_0.jpg");
+
+        assertThat(rangeHeaders).containsExactly("bytes=4000-");
+        assertThat(Files.readAllBytes(target)).isEqualTo(fileContents);
+        assertThat(mediaFolder.getRoot().list()).containsExactly("180784644740_0.jpg");
+    }
+
+    /**
+     * No more than the configured number of downloads should run against one host at a time
+     */
+    @Test
+    public void fetchLimitsConnectionsPerHost() throws Exception {
+        List<CompletableFuture<Path>> downloads = new ArrayList<CompletableFuture<Path>>();
+        for (int i = 0; i < 8; i++) {
+            downloads.add(mediaFetcher.fetch(url("/media/slow" + i + ".jpg"),
+                    mediaFolder.getRoot().toPath().resolve(String.format("180784644740_%d.jpg", i))));
+        }
+
+        CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        assertThat(mediaFolder.getRoot().list()).hasSize(8);
+        assertThat(maxActiveRequests.get()).isLessThanOrEqualTo(MAX_CONNECTIONS_PER_HOST);
+    }
+
+    private Path fetchAndWait(String path, String fileName)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return mediaFetcher.fetch(url(path), mediaFolder.getRoot().toPath().resolve(fileName)).get(10,
+                TimeUnit.SECONDS);
+    }
+
+    private String url(String path) {
+        return String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), path);
+    }
+
+    /**
+     * Serves the test file, honouring simple <code>bytes=n-</code> ranges, after failing as many
+     * requests as requested. Requests for "slow" files take a while, to test concurrency limits.
+     */
+    private void serveMedia(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int active = activeRequests.incrementAndGet();
+        maxActiveRequests.accumulateAndGet(active, Math::max);
+        try {
+            if (failuresRemaining.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            if (exchange.getRequestURI().getPath().contains("slow")) {
+                Thread.sleep(100);
+            }
+
+            int start = 0;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                rangeHeaders.add(range);
+                start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                exchange.getResponseHeaders().set("Content-Range",
+                        String.format("bytes %d-%d/%d", start, FILE_LENGTH - 1, FILE_LENGTH));
+                exchange.sendResponseHeaders(206, FILE_LENGTH - start);
+            } else {
+                exchange.sendResponseHeaders(200, FILE_LENGTH);
+            }
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(fileContents, start, FILE_LENGTH - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            activeRequests.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
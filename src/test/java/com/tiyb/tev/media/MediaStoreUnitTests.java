@@ -0,0 +1,126 @@
+package com.tiyb.tev.media;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+
+import com.tiyb.tev.html.HtmlTestingClass;
+
+/**
+ * Unit tests for the content-addressed {@link MediaStore}
+ *
+ * @author tiyb
+ *
+ */
+@TestPropertySource(properties = "tev.media.store.enabled=true")
+public class MediaStoreUnitTests extends HtmlTestingClass {
+
+    /**
+     * Created under target, like the store, so that files can be hard-linked into it
+     */
+    @Rule
+    public TemporaryFolder mediaFolder = new TemporaryFolder(new File("target"));
+
+    @Autowired
+    private MediaStore mediaStore;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Before
+    public void setupData() {
+        restInitDataForMainBlog(Optional.of(mediaFolder.getRoot().getAbsolutePath()));
+    }
+
+    /**
+     * Files with the same contents should be stored once, and share their data
+     */
+    @Test
+    public void storeDeduplicates() throws IOException {
+        Path first = writeFile("180784644740_0.jpg", "same contents");
+        Path second = writeFile("180254465582_0.jpg", "same contents");
+        Path third = writeFile("180254465582_1.jpg", "different contents");
+
+        String firstDigest = mediaStore.store(first);
+        String secondDigest = mediaStore.store(second);
+        String thirdDigest = mediaStore.store(third);
+
+        assertThat(secondDigest).isEqualTo(firstDigest);
+        assertThat(thirdDigest).isNotEqualTo(firstDigest);
+        assertThat(mediaStore.resolve("180784644740_0.jpg")).isEqualTo(mediaStore.resolve("180254465582_0.jpg"));
+        assertThat(Files.isSameFile(first, second)).isTrue();
+        assertThat(Files.readAllBytes(second)).isEqualTo("same contents".getBytes());
+    }
+
+    /**
+     * Once a file is in the store, the viewer serves it from there
+     */
+    @Test
+    public void getMediaResolvesThroughStore() throws IOException {
+        Path file = writeFile("180784644740_0.jpg", "stored image");
+        mediaStore.store(file);
+        Files.delete(file);
+
+        ResponseEntity<byte[]> response = restTemplate.getForEntity(
+                String.format("%s/viewerMedia/%s", baseUri(), "180784644740_0.jpg"), byte[].class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo("stored image".getBytes());
+    }
+
+    /**
+     * Removing the last file with some contents removes them from the store
+     */
+    @Test
+    public void removeDeletesUnreferencedContents() throws IOException {
+        Path file = writeFile("180784644740_0.jpg", "contents to be removed");
+        mediaStore.store(file);
+        Path stored = mediaStore.resolve("180784644740_0.jpg");
+        assertThat(stored).exists();
+
+        mediaStore.remove("180784644740_0.jpg");
+
+        assertThat(mediaStore.resolve("180784644740_0.jpg")).isNull();
+        assertThat(stored).doesNotExist();
+    }
+
+    /**
+     * The same contents under different extensions are stored once per extension, and each stored
+     * copy is only removed with the last file that uses it
+     */
+    @Test
+    public void removeCountsReferencesPerExtension() throws IOException {
+        mediaStore.store(writeFile("180784644740_0.jpg", "same contents"));
+        mediaStore.store(writeFile("180254465582_0.jpeg", "same contents"));
+        mediaStore.store(writeFile("180254465582_1.jpeg", "same contents"));
+        Path storedJpg = mediaStore.resolve("180784644740_0.jpg");
+        Path storedJpeg = mediaStore.resolve("180254465582_0.jpeg");
+        assertThat(storedJpeg).isNotEqualTo(storedJpg);
+
+        mediaStore.remove("180254465582_0.jpeg");
+        assertThat(storedJpeg).exists();
+
+        mediaStore.remove("180254465582_1.jpeg");
+        assertThat(storedJpeg).doesNotExist();
+        assertThat(storedJpg).exists();
+        assertThat(mediaStore.resolve("180784644740_0.jpg")).isEqualTo(storedJpg);
+    }
+
+    private Path writeFile(String name, String contents) throws IOException {
+        return Files.write(mediaFolder.getRoot().toPath().resolve(name), contents.getBytes());
+    }
+}
@@ -0,0 +1,52 @@
+package com.tiyb.tev.startup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import com.tiyb.tev.TevTestingClass;
+
+/**
+ * Unit tests for the {@link SchemaVersionGate}
+ *
+ * @author tiyb
+ *
+ */
+@TestPropertySource(properties = "tev.schema.skipUnchanged=true")
+public class SchemaVersionGateUnitTests extends TevTestingClass {
+
+    @Autowired
+    private SchemaVersionGate schemaVersionGate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Verifies that the schema is updated (halting on any error) when no version has been recorded,
+     * and that the update is skipped once the current version has been recorded
+     */
+    @Test
+    public void updateSkippedWhenUnchanged() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS tev_schema_version");
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        schemaVersionGate.customize(properties);
+        assertThat(properties.get(AvailableSettings.HBM2DDL_AUTO)).isEqualTo("update");
+        assertThat(properties.get(AvailableSettings.HBM2DDL_HALT_ON_ERROR)).isEqualTo("true");
+
+        schemaVersionGate.recordSchemaVersion();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tev_schema_version", Integer.class))
+                .isEqualTo(1);
+
+        properties = new HashMap<String, Object>();
+        schemaVersionGate.customize(properties);
+        assertThat(properties.get(AvailableSettings.HBM2DDL_AUTO)).isEqualTo("none");
+    }
+}
@@ -2,6 +2,7 @@ package com.tiyb.tev.xml;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -10,6 +11,9 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
@@ -21,6 +25,8 @@ import org.springframework.core.io.Resource;
 import com.tiyb.tev.TevTestingClass;
 import com.tiyb.tev.controller.TEVMetadataRestController;
 import com.tiyb.tev.controller.TEVPostRestController;
+import com.tiyb.tev.datamodel.Post;
+import com.tiyb.tev.xml.helper.ExportFilter;
 
 public class ExportWritingUnitTests extends TevTestingClass {
 
@@ -81,6 +87,90 @@ public class ExportWritingUnitTests extends TevTestingClass {
         checkSinglePostResponse(this.multiplePhotoXML, MULTIPLEPHOTO_POST_ID);
     }
 
+    /**
+     * Verifies that exporting several posts of different types at once gives the same post content,
+     * in the same order, as exporting each of them individually
+     */
+    @Test
+    public void exportMultiplePostsInOrder() throws IOException {
+        List<String> postIDs = new ArrayList<String>();
+        postIDs.add(MULTIPLEPHOTO_POST_ID);
+        postIDs.add(REGULAR_POST_ID);
+        postIDs.add(LINK_POST_ID);
+        postIDs.add(ANSWER_POST_ID);
+        postIDs.add(SINGLEPHOTO_POST_ID);
+
+        String result = BlogXmlWriter.getStagedPostXMLForBlog(postIDs, postController, MAIN_BLOG_NAME);
+
+        String expectedPosts = getPostsContent(getExpectedResponse(multiplePhotoXML))
+                + getPostsContent(getExpectedResponse(regularXML)) + getPostsContent(getExpectedResponse(linkXML))
+                + getPostsContent(getExpectedResponse(answerXML))
+                + getPostsContent(getExpectedResponse(singlePhotoXML));
+        assertThat(getPostsContent(result)).isEqualToIgnoringWhitespace(expectedPosts);
+    }
+
+    /**
+     * Verifies that the full-blog export, which renders posts in parallel, produces exactly the same
+     * document as the sequential staged-post export of the same posts
+     */
+    @Test
+    public void exportFullBlogMatchesSequential() throws IOException, XMLStreamException {
+        List<String> allIDs = postController.getPostIdsForBlogExport(MAIN_BLOG_NAME, new ExportFilter());
+        assertThat(allIDs).hasSize(postController.getAllPostsForBlog(MAIN_BLOG_NAME).size());
+
+        String sequential = BlogXmlWriter.getStagedPostXMLForBlog(allIDs, postController, MAIN_BLOG_NAME);
+        String parallel = exportBlog(new ExportFilter());
+
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    @Test
+    public void exportFullBlogByType() throws IOException, XMLStreamException {
+        long numRegulars = postController.getAllPostsForBlog(MAIN_BLOG_NAME).stream()
+                .filter(p -> Post.POST_TYPE_REGULAR.equals(p.getType())).count();
+
+        String result = exportBlog(new ExportFilter(Optional.of(Post.POST_TYPE_REGULAR), Optional.empty(),
+                Optional.empty(), Optional.empty()));
+
+        assertThat(StringUtils.countMatches(result, "<post ")).isEqualTo(numRegulars);
+        assertThat(StringUtils.countMatches(result, "type=\"" + Post.POST_TYPE_REGULAR + "\""))
+                .isEqualTo(numRegulars);
+    }
+
+    @Test
+    public void exportFullBlogByTag() throws IOException, XMLStreamException {
+        String result = exportBlog(
+                new ExportFilter(Optional.empty(), Optional.of("TAG10"), Optional.empty(), Optional.empty()));
+
+        assertThat(StringUtils.countMatches(result, "<post ")).isEqualTo(1);
+        assertThat(result).contains("<tag>tag10</tag>");
+    }
+
+    @Test
+    public void exportFullBlogNoMatches() throws IOException, XMLStreamException {
+        String result = exportBlog(new ExportFilter(Optional.empty(), Optional.of("no such tag"), Optional.empty(),
+                Optional.empty()));
+
+        assertThat(StringUtils.countMatches(result, "<post ")).isEqualTo(0);
+        assertThat(result).contains("<posts>").contains("</posts>").endsWith("</tumblr>");
+    }
+
+    private String exportBlog(ExportFilter filter) throws IOException, XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BlogExportWriter.writeBlogExport(filter, postController, MAIN_BLOG_NAME, out, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String getPostsContent(String document) {
+        return StringUtils.substringBetween(document, "<posts>", "</posts>");
+    }
+
     private String getExpectedResponse(Resource resource) throws IOException {
         File expectedResponseFile = resource.getFile();
         List<String> expectedResponseStrings = Files.readAllLines(expectedResponseFile.toPath(),